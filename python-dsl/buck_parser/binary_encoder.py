@@ -0,0 +1,142 @@
+# Copyright (c) Facebook, Inc. and its affiliates.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+from __future__ import absolute_import, division, print_function, with_statement
+
+import struct
+
+from six import PY3, integer_types, iteritems, text_type
+
+from .json_encoder import BuckJSONEncoder
+
+
+# See com.facebook.buck.util.stringtable.StringTableValueConstants for the format description.
+_HEADER = b"\x00\x53\x01"
+
+_TAG_NULL = 0x00
+_TAG_TRUE = 0x01
+_TAG_FALSE = 0x02
+_TAG_INT = 0x03
+_TAG_REAL = 0x05
+_TAG_STRING = 0x06
+_TAG_LIST = 0x07
+_TAG_MAP = 0x0A
+
+_MIN_INT64 = -(1 << 63)
+_MAX_INT64 = (1 << 63) - 1
+
+
+def _write_varint(out, value):
+    while value > 0x7F:
+        out.append((value & 0x7F) | 0x80)
+        value >>= 7
+    out.append(value)
+
+
+def _to_utf8(string):
+    if isinstance(string, text_type):
+        # Keep the same lenient behavior as JSON, which escapes lone surrogates.
+        return string.encode("utf-8", "surrogatepass" if PY3 else "strict")
+    # Python 2 byte strings are already UTF-8 encoded.
+    return string
+
+
+def _map_key(key):
+    # Convert keys the same way as the JSON encoder does.
+    if isinstance(key, (text_type, str)):
+        return key
+    if key is True:
+        return "true"
+    if key is False:
+        return "false"
+    if key is None:
+        return "null"
+    if isinstance(key, integer_types):
+        return str(key)
+    if isinstance(key, float):
+        return repr(key)
+    raise TypeError(
+        "keys must be str, int, float, bool or None, not {}".format(
+            type(key).__name__
+        )
+    )
+
+
+class BuckBinaryEncoder(object):
+    """Encodes results in the compact binary format understood by Buck.
+
+    Every distinct string is written to a string table once and referenced by
+    index afterwards. Accepts the same values as BuckJSONEncoder and produces
+    values of the same shape once decoded.
+    """
+
+    def __init__(self):
+        self._json_encoder = BuckJSONEncoder()
+
+    def encode(self, obj):
+        # type: (object) -> bytes
+        strings = {}
+        string_table = bytearray()
+        body = bytearray()
+        self._encode_value(obj, body, strings, string_table)
+        payload = bytearray()
+        _write_varint(payload, len(strings))
+        payload += string_table
+        payload += body
+        return _HEADER + struct.pack(">I", len(payload)) + bytes(payload)
+
+    def _encode_value(self, obj, out, strings, string_table):
+        if isinstance(obj, (text_type, str)):
+            out.append(_TAG_STRING)
+            self._encode_string(obj, out, strings, string_table)
+        elif obj is None:
+            out.append(_TAG_NULL)
+        elif obj is True:
+            out.append(_TAG_TRUE)
+        elif obj is False:
+            out.append(_TAG_FALSE)
+        elif isinstance(obj, integer_types):
+            if obj < _MIN_INT64 or obj > _MAX_INT64:
+                raise ValueError("integer {} does not fit into 64 bits".format(obj))
+            out.append(_TAG_INT)
+            _write_varint(out, (obj << 1) ^ (obj >> 63))
+        elif isinstance(obj, float):
+            out.append(_TAG_REAL)
+            out += struct.pack(">d", obj)
+        elif isinstance(obj, (list, tuple)):
+            out.append(_TAG_LIST)
+            _write_varint(out, len(obj))
+            for element in obj:
+                self._encode_value(element, out, strings, string_table)
+        elif isinstance(obj, dict):
+            out.append(_TAG_MAP)
+            _write_varint(out, len(obj))
+            for key, value in iteritems(obj):
+                self._encode_string(_map_key(key), out, strings, string_table)
+                self._encode_value(value, out, strings, string_table)
+        else:
+            # Handles map-like, list-like and select() objects or raises TypeError.
+            self._encode_value(
+                self._json_encoder.default(obj), out, strings, string_table
+            )
+
+    def _encode_string(self, string, out, strings, string_table):
+        data = _to_utf8(string)
+        index = strings.get(data)
+        if index is None:
+            index = len(strings)
+            strings[data] = index
+            _write_varint(string_table, len(data))
+            string_table += data
+        _write_varint(out, index)
@@ -0,0 +1,139 @@
+# Copyright (c) Facebook, Inc. and its affiliates.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+from __future__ import absolute_import, division, print_function, with_statement
+
+import json
+import struct
+import unittest
+from collections import OrderedDict
+
+from .binary_encoder import BuckBinaryEncoder
+from .json_encoder import BuckJSONEncoder
+from .select_support import SelectorList, SelectorValue
+
+
+def _decode(data):
+    """Minimal decoder of the binary format which mirrors the Java implementation."""
+    data = bytearray(data)
+    assert data[:3] == bytearray(b"\x00\x53\x01")
+    (length,) = struct.unpack(">I", bytes(data[3:7]))
+    assert len(data) == 7 + length
+    position = [7]
+
+    def read_byte():
+        value = data[position[0]]
+        position[0] += 1
+        return value
+
+    def read_varint():
+        result = 0
+        shift = 0
+        while True:
+            b = read_byte()
+            result |= (b & 0x7F) << shift
+            if not b & 0x80:
+                return result
+            shift += 7
+
+    strings = []
+    for _ in range(read_varint()):
+        size = read_varint()
+        strings.append(bytes(data[position[0] : position[0] + size]).decode("utf-8"))
+        position[0] += size
+
+    def read_value():
+        tag = read_byte()
+        if tag == 0x00:
+            return None
+        if tag == 0x01:
+            return True
+        if tag == 0x02:
+            return False
+        if tag == 0x03:
+            value = read_varint()
+            return (value >> 1) ^ -(value & 1)
+        if tag == 0x05:
+            (value,) = struct.unpack(">d", bytes(data[position[0] : position[0] + 8]))
+            position[0] += 8
+            return value
+        if tag == 0x06:
+            return strings[read_varint()]
+        if tag == 0x07:
+            return [read_value() for _ in range(read_varint())]
+        if tag == 0x0A:
+            result = OrderedDict()
+            for _ in range(read_varint()):
+                key = strings[read_varint()]
+                result[key] = read_value()
+            return result
+        raise ValueError("Unexpected tag {}".format(tag))
+
+    result = read_value()
+    assert position[0] == len(data)
+    return result
+
+
+class BinaryEncoderTest(unittest.TestCase):
+    def assertSameAsJson(self, value):
+        decoded = _decode(BuckBinaryEncoder().encode(value))
+        self.assertEqual(json.loads(BuckJSONEncoder().encode(value)), decoded)
+
+    def test_scalars(self):
+        for value in [None, True, False, 0, 1, -1, 300, -(1 << 63), (1 << 63) - 1, 1.5]:
+            self.assertSameAsJson(value)
+        self.assertSameAsJson(u"привет")
+
+    def test_collections(self):
+        self.assertSameAsJson(
+            {
+                "values": [
+                    {"name": "foo", "deps": [":bar", ":baz"], "buck.type": "java_library"},
+                    {"name": "bar", "deps": (":baz",), "labels": frozenset(["a"])},
+                ],
+                "diagnostics": [],
+            }
+        )
+
+    def test_non_string_keys_are_converted_like_json(self):
+        self.assertSameAsJson({1: "a", True: "b", None: "c", 1.5: "d"})
+
+    def test_selects_are_converted_like_json(self):
+        self.assertSameAsJson(
+            {
+                "srcs": SelectorList(
+                    [["a.java"], SelectorValue({"//c:x": ["b.java"]}, "no match")]
+                )
+            }
+        )
+
+    def test_strings_are_stored_once(self):
+        data = BuckBinaryEncoder().encode(["repeated"] * 10)
+        self.assertEqual(1, bytearray(data).count(bytearray(b"repeated")))
+
+    def test_map_keys_are_kept_in_order(self):
+        value = OrderedDict([("b", 1), ("a", 2), ("c", 3)])
+        self.assertEqual(
+            ["b", "a", "c"], list(_decode(BuckBinaryEncoder().encode(value)).keys())
+        )
+
+    def test_unsupported_values_are_rejected(self):
+        with self.assertRaises(TypeError):
+            BuckBinaryEncoder().encode({"srcs": [object()]})
+        with self.assertRaises(ValueError):
+            BuckBinaryEncoder().encode(1 << 64)
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -53,9 +53,11 @@ from six import PY3, iteritems, itervalues, string_types
 # Python 2.6, 2.7, use iterator filter from Python 3
 from six.moves import builtins, filter
 
+from .binary_encoder import BuckBinaryEncoder
 from .deterministic_set import DeterministicSet
 from .glob_internal import glob_internal
 from .glob_watchman import SyncCookieState, glob_watchman
+from .interpreter_pool import InterpreterPool
 from .json_encoder import BuckJSONEncoder
 from .module_whitelist import ImportWhitelistManager
 from .profiler import Profiler, Tracer, emit_trace, scoped_trace, traced
@@ -1889,6 +1891,17 @@ class BuildFileProcessor(object):
         self._include_cache[build_include.path] = build_env, mod
         return build_env, mod
 
+    def preload_includes(self, includes):
+        # type: (List[str]) -> None
+        """Loads implicit includes and the given extension files into the include cache.
+
+        :param includes: include paths in the same form as implicit includes.
+        """
+        for include in self._implicit_includes:
+            self._process_include(self._resolve_include(include), True)
+        for include in includes:
+            self._process_include(self._resolve_include(include), False)
+
     def _process_build_file(
         self, watch_root, project_prefix, path, package_implicit_load
     ):
@@ -1989,14 +2002,14 @@ def format_exception_info(exception_info):
     return formatted
 
 
-def encode_result(values, diagnostics, profile):
-    # type: (List[Dict[str, object]], List[Diagnostic], Optional[str]) -> str
+def encode_result(values, diagnostics, profile, binary=False):
+    # type: (List[Dict[str, object]], List[Diagnostic], Optional[str], bool) -> Union[str, bytes]
     result = {
         "values": [
             {k: v for k, v in iteritems(value) if v is not None} for value in values
         ]
     }
-    json_encoder = BuckJSONEncoder()
+    encoder = BuckBinaryEncoder() if binary else BuckJSONEncoder()
     if diagnostics:
         encoded_diagnostics = []
         for d in diagnostics:
@@ -2008,7 +2021,7 @@ def encode_result(values, diagnostics, profile):
     if profile is not None:
         result["profile"] = profile
     try:
-        return json_encoder.encode(result)
+        return encoder.encode(result)
     except Exception as e:
         # Try again without the values
         result["values"] = []
@@ -2022,10 +2035,12 @@ def encode_result(values, diagnostics, profile):
                 "exception": format_exception_info(sys.exc_info()),
             }
         )
-        return json_encoder.encode(result)
+        return encoder.encode(result)
 
 
-def process_with_diagnostics(build_file_query, build_file_processor, to_parent):
+def process_with_diagnostics(
+    build_file_query, build_file_processor, to_parent, binary_output=False
+):
     start_time = time.time()
     build_file = build_file_query.get("buildFile")
     watch_root = build_file_query.get("watchRoot")
@@ -2066,20 +2081,29 @@ def process_with_diagnostics(build_file_query, build_file_processor, to_parent):
             )
         raise
     finally:
-        java_process_send_result(to_parent, values, diagnostics, None)
+        java_process_send_result(
+            to_parent, values, diagnostics, None, binary=binary_output
+        )
 
     end_time = time.time()
     return end_time - start_time
 
 
-def java_process_send_result(to_parent, values, diagnostics, profile_result):
+def java_process_send_result(
+    to_parent, values, diagnostics, profile_result, binary=False
+):
     """Sends result to the Java process"""
-    data = encode_result(values, diagnostics, profile_result)
-    if PY3:
+    to_parent.write(encode_result_bytes(values, diagnostics, profile_result, binary))
+    to_parent.flush()
+
+
+def encode_result_bytes(values, diagnostics, profile_result, binary=False):
+    # type: (List[Dict[str, object]], List[Diagnostic], Optional[str], bool) -> bytes
+    data = encode_result(values, diagnostics, profile_result, binary)
+    if PY3 and not binary:
         # in Python 3 write expects bytes instead of string
         data = data.encode("utf-8")
-    to_parent.write(data)
-    to_parent.flush()
+    return data
 
 
 def silent_excepthook(exctype, value, tb):
@@ -2228,6 +2252,25 @@ def main():
         action="store_true",
         help="Allow user defined rules' primitives in build files.",
     )
+    parser.add_option(
+        "--binary_output",
+        action="store_true",
+        help="Send results to Buck in the binary format instead of JSON.",
+    )
+    parser.add_option(
+        "--worker_count",
+        action="store",
+        type="int",
+        dest="worker_count",
+        default=0,
+        help="Serve queries from a pool of interpreters forked after loading includes.",
+    )
+    parser.add_option(
+        "--preload",
+        action="append",
+        dest="preload",
+        help="Extension files to load before forking the pool of interpreters.",
+    )
     (options, args) = parser.parse_args()
 
     # Even though project_root is absolute path, it may not be concise. For
@@ -2318,34 +2361,36 @@ def main():
                     "projectPrefix": project_root,
                 }
                 duration = process_with_diagnostics(
-                    query, build_file_processor, to_parent
+                    query, build_file_processor, to_parent, options.binary_output
                 )
                 processed_build_file.append(
                     {"buildFile": build_file, "duration": duration}
                 )
 
-            # From https://docs.python.org/2/using/cmdline.html :
-            #
-            # Note that there is internal buffering in file.readlines()
-            # and File Objects (for line in sys.stdin) which is not
-            # influenced by this option. To work around this, you will
-            # want to use file.readline() inside a while 1: loop.
-            for line in wait_and_read_build_file_query():
-                if line == "":
-                    break
-                build_file_query = json.loads(line)
-                if build_file_query.get("command") == "report_profile":
-                    report_profile(options, to_parent, processed_build_file, profiler)
-                else:
-                    duration = process_with_diagnostics(
-                        build_file_query, build_file_processor, to_parent
-                    )
-                    processed_build_file.append(
-                        {
-                            "buildFile": build_file_query["buildFile"],
-                            "duration": duration,
-                        }
-                    )
+            if options.worker_count > 0:
+                serve_from_interpreter_pool(
+                    options,
+                    build_file_processor,
+                    watchman_client,
+                    to_parent,
+                    processed_build_file,
+                    profiler,
+                )
+            else:
+                # From https://docs.python.org/2/using/cmdline.html :
+                #
+                # Note that there is internal buffering in file.readlines()
+                # and File Objects (for line in sys.stdin) which is not
+                # influenced by this option. To work around this, you will
+                # want to use file.readline() inside a while 1: loop.
+                serve_build_file_queries(
+                    options,
+                    build_file_processor,
+                    to_parent,
+                    wait_and_read_build_file_query(),
+                    processed_build_file,
+                    profiler,
+                )
 
     if options.quiet:
         sys.excepthook = orig_excepthook
@@ -2359,6 +2404,73 @@ def main():
         pass
 
 
+def serve_build_file_queries(
+    options, build_file_processor, to_parent, lines, processed_build_file, profiler
+):
+    for line in lines:
+        if line == "":
+            break
+        build_file_query = json.loads(line)
+        if build_file_query.get("command") == "report_profile":
+            report_profile(options, to_parent, processed_build_file, profiler)
+        else:
+            duration = process_with_diagnostics(
+                build_file_query, build_file_processor, to_parent, options.binary_output
+            )
+            processed_build_file.append(
+                {"buildFile": build_file_query["buildFile"], "duration": duration}
+            )
+
+
+def serve_from_interpreter_pool(
+    options,
+    build_file_processor,
+    watchman_client,
+    to_parent,
+    processed_build_file,
+    profiler,
+):
+    """Loads includes once and serves queries from interpreters forked afterwards."""
+    try:
+        build_file_processor.preload_includes(options.preload or [])
+    except Exception:
+        # includes that fail to load are not cached, workers report the error when build
+        # files load them
+        pass
+
+    def serve(lines, worker_to_parent):
+        if watchman_client is not None:
+            # workers must not share the connection of the parent
+            watchman_client.close()
+        serve_build_file_queries(
+            options,
+            build_file_processor,
+            worker_to_parent,
+            lines,
+            processed_build_file,
+            profiler,
+        )
+
+    def lost_query_result(query):
+        message = "Build file parser interpreter exited while processing {}".format(
+            json.loads(query).get("buildFile")
+        )
+        return encode_result_bytes(
+            [],
+            [Diagnostic(message=message, level="fatal", source="parse", exception=None)],
+            None,
+            options.binary_output,
+        )
+
+    pool = InterpreterPool(
+        options.worker_count,
+        serve,
+        lost_query_result,
+        inherited_fds=[sys.stdin.fileno(), to_parent.fileno()],
+    )
+    pool.run(sys.stdin.fileno(), to_parent)
+
+
 def wait_build_file_query():
     _select([sys.stdin], [], [])
 
@@ -2406,13 +2518,15 @@ def report_profile(options, to_parent, processed_build_file, profiler):
             extra_result += "\n\n"
             profile_result = extra_result + profile_result
             profile_result += Tracer.get_all_traces_and_reset()
-            java_process_send_result(to_parent, [], [], profile_result)
+            java_process_send_result(
+                to_parent, [], [], profile_result, binary=options.binary_output
+            )
         except Exception:
             trace = traceback.format_exc()
             print(str(trace))
             raise
     else:
-        java_process_send_result(to_parent, [], [], None)
+        java_process_send_result(to_parent, [], [], None, binary=options.binary_output)
 
 
 def make_glob(pat):
@@ -0,0 +1,255 @@
+# Copyright (c) Facebook, Inc. and its affiliates.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""Serves build file queries from interpreters forked from a warm parent process.
+
+The parent loads implicit includes and other commonly used extension files once and then forks
+workers, so every worker starts with those modules already in its include cache instead of
+importing them again.
+
+Queries arrive on the parent's input as lines of the form ``<channel> <json query>``. Every
+query is dispatched to the least loaded worker and its result is written back as
+``<channel:u32> <length:u32> <result>``. Buck never has more than one query in flight per
+channel, so results of a channel come back in order.
+
+A worker that stops after a fatal parse error is replaced by a fresh fork of the parent, which
+is much cheaper than starting a new interpreter.
+"""
+
+from __future__ import absolute_import, division, print_function, with_statement
+
+import collections
+import errno
+import os
+import select
+import struct
+import sys
+
+
+# Number of queries a worker may have queued, including the one it is processing. Keeping more
+# than one query queued hides the round trip to the parent.
+_MAX_QUERIES_PER_WORKER = 2
+
+# Sent by a worker that exits after answering every query it has read.
+_EXIT_MARKER = 0xFFFFFFFF
+
+_FRAME_HEADER = struct.Struct(">I")
+_CHANNEL_FRAME_HEADER = struct.Struct(">II")
+
+
+class _Worker(object):
+    def __init__(self, pid, query_fd, result_fd):
+        self.pid = pid
+        self.query_fd = query_fd
+        self.result_fd = result_fd
+        # (channel, query) pairs dispatched to this worker and not answered yet, in order.
+        self.queries = collections.deque()
+        self.buffer = b""
+        self.exited_cleanly = False
+
+
+class _ResultWriter(object):
+    """File-like object used by a worker to send results, one result per flush()."""
+
+    def __init__(self, fd):
+        self._fd = fd
+        self._chunks = []
+        self.results = 0
+
+    def write(self, data):
+        self._chunks.append(data)
+
+    def flush(self):
+        data = b"".join(self._chunks)
+        self._chunks = []
+        _write_fully(self._fd, _FRAME_HEADER.pack(len(data)) + data)
+        self.results += 1
+
+    def close(self):
+        pass
+
+
+def _write_fully(fd, data):
+    while data:
+        data = data[os.write(fd, data) :]
+
+
+def _retry_on_eintr(func, *args):
+    while True:
+        try:
+            return func(*args)
+        except (OSError, IOError, select.error) as e:
+            if e.args[0] != errno.EINTR:
+                raise
+
+
+class InterpreterPool(object):
+    def __init__(self, worker_count, serve, lost_query_result, inherited_fds=()):
+        """
+        :param int worker_count: number of workers to fork.
+        :param serve: function called in every worker with an iterable of query lines and a
+            file-like object for results. Every flush() of the object completes a result.
+        :param lost_query_result: function called with a query that a worker was processing when
+            it crashed, returns the result to send instead.
+        :param inherited_fds: file descriptors of the parent that workers should close.
+        """
+        if worker_count < 1:
+            raise ValueError("At least one worker is required")
+        self._worker_count = worker_count
+        self._serve = serve
+        self._lost_query_result = lost_query_result
+        self._inherited_fds = list(inherited_fds)
+        self._workers = {}  # result_fd -> _Worker
+        self._pending = collections.deque()
+
+    def run(self, query_fd, to_parent):
+        """Serves queries read from query_fd until it is closed."""
+        for _ in range(self._worker_count):
+            self._fork_worker()
+        buffer = b""
+        try:
+            while True:
+                readable, _, _ = _retry_on_eintr(
+                    select.select, [query_fd] + list(self._workers), [], []
+                )
+                for fd in readable:
+                    if fd != query_fd:
+                        self._read_results(self._workers[fd], to_parent)
+                        continue
+                    data = _retry_on_eintr(os.read, query_fd, 65536)
+                    if not data:
+                        return
+                    lines = (buffer + data).split(b"\n")
+                    buffer = lines.pop()
+                    for line in lines:
+                        if line.strip():
+                            channel, query = line.split(b" ", 1)
+                            self._pending.append((int(channel), query))
+                self._dispatch()
+        finally:
+            self._shutdown()
+
+    def _fork_worker(self):
+        query_read, query_write = os.pipe()
+        result_read, result_write = os.pipe()
+        # do not let workers inherit and flush buffered output of the parent
+        sys.stdout.flush()
+        sys.stderr.flush()
+        pid = os.fork()
+        if pid == 0:
+            status = 1
+            try:
+                os.close(query_write)
+                os.close(result_read)
+                for fd in self._inherited_fds:
+                    os.close(fd)
+                for worker in self._workers.values():
+                    os.close(worker.query_fd)
+                    os.close(worker.result_fd)
+                self._run_worker(query_read, result_write)
+                status = 0
+            finally:
+                # never return into the parent's stack
+                os._exit(status)
+        os.close(query_read)
+        os.close(result_write)
+        worker = _Worker(pid, query_write, result_read)
+        self._workers[result_read] = worker
+        return worker
+
+    def _run_worker(self, query_fd, result_fd):
+        writer = _ResultWriter(result_fd)
+        state = {"read": 0}
+
+        def read_queries(queries):
+            while True:
+                line = queries.readline()
+                if not line:
+                    return
+                state["read"] += 1
+                yield line
+
+        try:
+            with os.fdopen(query_fd, "r") as queries:
+                self._serve(read_queries(queries), writer)
+        except BaseException:
+            # the error has been reported as part of the result
+            pass
+        finally:
+            if writer.results == state["read"]:
+                _write_fully(result_fd, _FRAME_HEADER.pack(_EXIT_MARKER))
+
+    def _read_results(self, worker, to_parent):
+        data = _retry_on_eintr(os.read, worker.result_fd, 65536)
+        if not data:
+            self._replace_worker(worker, to_parent)
+            return
+        worker.buffer += data
+        while len(worker.buffer) >= _FRAME_HEADER.size:
+            (length,) = _FRAME_HEADER.unpack_from(worker.buffer)
+            if length == _EXIT_MARKER:
+                worker.exited_cleanly = True
+                worker.buffer = worker.buffer[_FRAME_HEADER.size :]
+                continue
+            end = _FRAME_HEADER.size + length
+            if len(worker.buffer) < end:
+                break
+            result = worker.buffer[_FRAME_HEADER.size : end]
+            worker.buffer = worker.buffer[end:]
+            channel, _ = worker.queries.popleft()
+            self._send(to_parent, channel, result)
+
+    def _replace_worker(self, worker, to_parent):
+        self._close_worker(worker)
+        queries = worker.queries
+        if queries and not worker.exited_cleanly:
+            # the worker crashed while processing the first query, do not retry it
+            channel, query = queries.popleft()
+            self._send(to_parent, channel, self._lost_query_result(query))
+        self._pending.extendleft(reversed(queries))
+        self._fork_worker()
+
+    def _dispatch(self):
+        while self._pending:
+            worker = min(self._workers.values(), key=lambda w: len(w.queries))
+            if len(worker.queries) >= _MAX_QUERIES_PER_WORKER:
+                return
+            channel, query = self._pending.popleft()
+            worker.queries.append((channel, query))
+            try:
+                _write_fully(worker.query_fd, query + b"\n")
+            except OSError as e:
+                # the worker has exited, its queries are dispatched again once its results
+                # pipe is closed
+                if e.errno != errno.EPIPE:
+                    raise
+
+    @staticmethod
+    def _send(to_parent, channel, result):
+        to_parent.write(_CHANNEL_FRAME_HEADER.pack(channel, len(result)) + result)
+        to_parent.flush()
+
+    def _close_worker(self, worker):
+        del self._workers[worker.result_fd]
+        for fd in (worker.query_fd, worker.result_fd):
+            try:
+                os.close(fd)
+            except OSError:
+                pass
+        _retry_on_eintr(os.waitpid, worker.pid, 0)
+
+    def _shutdown(self):
+        # closing query pipes lets workers finish their current query and exit
+        for worker in list(self._workers.values()):
+            self._close_worker(worker)
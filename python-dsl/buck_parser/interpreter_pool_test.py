@@ -0,0 +1,131 @@
+# Copyright (c) Facebook, Inc. and its affiliates.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+from __future__ import absolute_import, division, print_function, with_statement
+
+import json
+import os
+import struct
+import time
+import unittest
+
+from .interpreter_pool import InterpreterPool
+
+
+def _serve(lines, to_parent):
+    for line in lines:
+        query = json.loads(line)
+        if query.get("crash"):
+            os._exit(1)
+        time.sleep(query.get("sleep", 0))
+        to_parent.write(
+            json.dumps({"echo": query["value"], "pid": os.getpid()}).encode("utf-8")
+        )
+        to_parent.flush()
+        if query.get("fail"):
+            raise Exception("fatal error")
+
+
+def _lost_query_result(query):
+    return json.dumps({"lost": json.loads(query)["value"]}).encode("utf-8")
+
+
+class InterpreterPoolTest(unittest.TestCase):
+    def setUp(self):
+        query_read, self.query_write = os.pipe()
+        self.result_read, result_write = os.pipe()
+        self.pid = os.fork()
+        if self.pid == 0:
+            try:
+                os.close(self.query_write)
+                os.close(self.result_read)
+                pool = InterpreterPool(
+                    2, _serve, _lost_query_result, inherited_fds=[result_write]
+                )
+                with os.fdopen(result_write, "wb") as to_parent:
+                    pool.run(query_read, to_parent)
+            finally:
+                os._exit(0)
+        os.close(query_read)
+        os.close(result_write)
+
+    def tearDown(self):
+        os.close(self.query_write)
+        os.close(self.result_read)
+        os.waitpid(self.pid, 0)
+
+    def send(self, channel, **query):
+        line = "{} {}\n".format(channel, json.dumps(query)).encode("utf-8")
+        os.write(self.query_write, line)
+
+    def _read_fully(self, size):
+        data = b""
+        while len(data) < size:
+            chunk = os.read(self.result_read, size - len(data))
+            self.assertTrue(chunk, "unexpected end of results")
+            data += chunk
+        return data
+
+    def receive(self):
+        channel, length = struct.unpack(">II", self._read_fully(8))
+        return channel, json.loads(self._read_fully(length).decode("utf-8"))
+
+    def test_results_are_sent_to_the_channel_of_the_query(self):
+        self.send(1, value="a")
+        self.send(2, value="b")
+        results = dict(self.receive() for _ in range(2))
+
+        self.assertEqual("a", results[1]["echo"])
+        self.assertEqual("b", results[2]["echo"])
+
+    def test_queries_are_dispatched_to_least_loaded_worker(self):
+        self.send(1, value="a", sleep=0.5)
+        self.send(2, value="b", sleep=0.5)
+        results = dict(self.receive() for _ in range(2))
+
+        self.assertNotEqual(results[1]["pid"], results[2]["pid"])
+
+    def test_worker_is_replaced_after_fatal_error(self):
+        self.send(1, value="a", fail=True)
+        self.assertEqual((1, "a"), self._echo(self.receive()))
+        for value in "bcd":
+            self.send(1, value=value)
+            self.assertEqual((1, value), self._echo(self.receive()))
+
+    def test_queries_queued_on_exiting_worker_are_dispatched_again(self):
+        self.send(1, value="a", fail=True, sleep=0.2)
+        self.send(2, value="b", sleep=0.2)
+        self.send(3, value="c")
+        self.send(4, value="d")
+        results = dict(self.receive() for _ in range(4))
+
+        self.assertEqual(
+            {1: "a", 2: "b", 3: "c", 4: "d"},
+            {channel: result["echo"] for channel, result in results.items()},
+        )
+
+    def test_crashed_query_is_reported_as_lost(self):
+        self.send(1, value="a", crash=True)
+        self.assertEqual((1, {"lost": "a"}), self.receive())
+        self.send(1, value="b")
+        self.assertEqual((1, "b"), self._echo(self.receive()))
+
+    @staticmethod
+    def _echo(result):
+        channel, value = result
+        return channel, value["echo"]
+
+
+if __name__ == "__main__":
+    unittest.main()
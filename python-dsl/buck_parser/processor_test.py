@@ -356,6 +356,39 @@ class BuckTest(unittest.TestCase):
             build_file.root, build_file.prefix, build_file.path, [], None
         )
 
+    def test_preloaded_includes_are_not_loaded_again(self):
+        """
+        Verify that includes loaded before processing any build file are served from the cache.
+        """
+
+        implicit_inc = ProjectFile(
+            self.project_root, path="implicit", contents=("FOO = 1",)
+        )
+        explicit_inc = ProjectFile(
+            self.project_root, path="explicit", contents=("BAR = FOO",)
+        )
+        build_file = ProjectFile(
+            self.project_root,
+            path="BUCK",
+            contents=("include_defs({0!r})".format(explicit_inc.name), "BAR"),
+        )
+        self.write_files(implicit_inc, explicit_inc, build_file)
+        build_file_processor = self.create_build_file_processor(
+            includes=[implicit_inc.name]
+        )
+        build_file_processor.preload_includes([explicit_inc.name])
+
+        # the build file still works once the includes are gone
+        os.remove(os.path.join(self.project_root, implicit_inc.path))
+        os.remove(os.path.join(self.project_root, explicit_inc.path))
+        results = build_file_processor.process(
+            build_file.root, build_file.prefix, build_file.path, [], None
+        )
+
+        includes = get_includes_from_results(results)
+        self.assertIn(os.path.join(self.project_root, implicit_inc.path), includes)
+        self.assertIn(os.path.join(self.project_root, explicit_inc.path), includes)
+
     def test_all_list_is_respected(self):
         """
         Verify that the `__all__` list in included files can be used to narrow
@@ -400,7 +400,8 @@ public class RobolectricTestDescription
               transitiveClasspathDeps,
               transitiveClasspaths,
               javaBuckConfig.shouldCacheBinaries(),
-              javaBuckConfig.getDuplicatesLogLevel());
+              javaBuckConfig.getDuplicatesLogLevel(),
+              javaBuckConfig.getJarCompressionThreads());
 
       graphBuilder.addToIndex(javaBinary);
 
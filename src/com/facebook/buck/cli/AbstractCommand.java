@@ -171,8 +171,8 @@ public abstract class AbstractCommand extends CommandWithPluginManager {
   @Option(
       name = GlobalCliOptions.PROFILE_PARSER_LONG_ARG,
       usage =
-          "Enable profiling of buck.py internals (not the target being compiled) in the debug"
-              + "log and trace.")
+          "Enable profiling of buck.py internals and of Skylark build file evaluation (not the "
+              + "target being compiled) in the debug log and trace.")
   private boolean enableParserProfiling = false;
 
   @Option(
@@ -431,6 +431,8 @@ public abstract class AbstractCommand extends CommandWithPluginManager {
                 buckConfig.getView(RuleKeyConfig.class).getRuleKeyDiagnosticsMode())
             .setConcurrencyLimit(getConcurrencyLimit(params.getBuckConfig()))
             .setPersistentWorkerPools(params.getPersistentWorkerPools())
+            .setClassStubCache(params.getGlobalState().getClassStubCache())
+            .setWarmTestJvmPool(params.getGlobalState().getWarmTestJvmPool())
             .setProjectFilesystemFactory(params.getProjectFilesystemFactory())
             .setTruncateFailingCommandEnabled(cliConfig.getEnableFailingCommandTruncation());
     return builder;
@@ -246,6 +246,14 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
       outputFormat = generateBFSOutput ? OutputFormat.DOT_BFS : OutputFormat.DOT;
     }
 
+    // Only list and JSON output can be printed from query results without the target graph the
+    // environment builds while evaluating queries.
+    if ((outputFormat == OutputFormat.LIST || outputFormat == OutputFormat.JSON)
+        && !sortOutputFormat.needToSortByRank()
+        && params.getBuckConfig().getView(ParserConfig.class).getEnableDaemonQueryCache()) {
+      env.setResultCache(params.getParser().getPermState().getQueryResultCache());
+    }
+
     String queryFormat = arguments.get(0);
     List<String> formatArgs = arguments.subList(1, arguments.size());
     if (queryFormat.contains(QueryNormalizer.SET_SUBSTITUTOR)) {
@@ -37,13 +37,16 @@ import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.versions.VersionException;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.SortedSet;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
@@ -73,6 +76,14 @@ public class AuditActionGraphCommand extends AbstractCommand {
       forbids = {"---dot"})
   private boolean generateDotOutputInCompactMode;
 
+  @Option(
+      name = "--binary",
+      usage =
+          "Print result as a stream of length delimited Thrift compact records with interned "
+              + "strings. See BinaryGraphWriter for the format.",
+      forbids = {"--dot", "--dot-compact"})
+  private boolean generateBinaryOutput;
+
   @Option(
       name = "--node-view",
       usage = "Whether to include additional build rule parameters as node attributes")
@@ -123,6 +134,13 @@ public class AuditActionGraphCommand extends AbstractCommand {
             nodeView,
             params.getConsole().getStdOut(),
             generateDotOutputInCompactMode);
+      } else if (generateBinaryOutput) {
+        dumpAsBinary(
+            actionGraphAndBuilder.getActionGraph(),
+            actionGraphAndBuilder.getActionGraphBuilder(),
+            includeRuntimeDeps,
+            nodeView,
+            params.getConsole().getStdOut());
       } else {
         dumpAsJson(
             actionGraphAndBuilder.getActionGraph(),
@@ -216,6 +234,53 @@ public class AuditActionGraphCommand extends AbstractCommand {
     json.writeEndObject();
   }
 
+  /**
+   * Dump basic information about the action graph to the given stream in the format of {@link
+   * BinaryGraphWriter}, one rule at a time. The output path of a rule and the extended attributes
+   * are written as node attributes, named as in the JSON format.
+   *
+   * <p>The passed in stream is not closed after this operation.
+   */
+  private static void dumpAsBinary(
+      ActionGraph graph,
+      ActionGraphBuilder actionGraphBuilder,
+      boolean includeRuntimeDeps,
+      NodeView nodeView,
+      OutputStream out)
+      throws IOException {
+    try (BinaryGraphWriter writer = new BinaryGraphWriter(out)) {
+      for (BuildRule node : graph.getNodes()) {
+        ImmutableSortedMap.Builder<String, String> attributes = ImmutableSortedMap.naturalOrder();
+        SourcePath sourcePathToOutput = node.getSourcePathToOutput();
+        if (sourcePathToOutput != null) {
+          attributes.put(
+              "outputPath",
+              actionGraphBuilder
+                  .getSourcePathResolver()
+                  .getAbsolutePath(sourcePathToOutput)
+                  .toString());
+        }
+        if (nodeView == NodeView.Extended) {
+          getNodeAttributes(node).forEach((key, value) -> attributes.put("buck_" + key, value));
+        }
+        writer.writeNode(
+            node.getFullyQualifiedName(),
+            node.getType(),
+            toNames(node.getBuildDeps()),
+            includeRuntimeDeps
+                ? Optional.of(toNames(getRuntimeDeps(node, actionGraphBuilder)))
+                : Optional.empty(),
+            attributes.build());
+      }
+    }
+  }
+
+  private static ImmutableList<String> toNames(Collection<BuildRule> rules) {
+    return rules.stream()
+        .map(BuildRule::getFullyQualifiedName)
+        .collect(ImmutableList.toImmutableList());
+  }
+
   private static void dumpAsDot(
       ActionGraph graph,
       ActionGraphBuilder actionGraphBuilder,
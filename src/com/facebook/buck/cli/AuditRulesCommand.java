@@ -100,7 +100,8 @@ public class AuditRulesCommand extends AbstractCommand {
                 params.getConsole(),
                 new ParserPythonInterpreterProvider(
                     params.getCells().getRootCell().getBuckConfig(), params.getExecutableFinder()),
-                params.getKnownRuleTypesProvider())
+                params.getKnownRuleTypesProvider(),
+                Optional.of(params.getParser().getPermState().getPythonDslInterpreterPools()))
             .createFileParser(
                 params.getBuckEventBus(),
                 params.getCells().getRootCell(),
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+/**
+ * Writes a graph as a stream of length delimited records serialized with the Thrift compact
+ * protocol, one node at a time, so that neither the writer nor the reader has to hold the whole
+ * graph in memory.
+ *
+ * <p>Every record is a 4 byte big endian length followed by a {@code GraphRecord}:
+ *
+ * <pre>
+ * struct GraphNode {
+ *   1: i32 name;
+ *   2: i32 type;
+ *   3: list&lt;i32&gt; deps;
+ *   4: optional list&lt;i32&gt; runtimeDeps;
+ *   5: optional map&lt;i32, i32&gt; attributes;
+ * }
+ *
+ * union GraphRecord {
+ *   1: string string;
+ *   2: GraphNode node;
+ * }
+ * </pre>
+ *
+ * <p>Strings are interned: a {@code string} record assigns the next id, starting from 0, to its
+ * value, and the fields of nodes refer to strings by these ids. Every string is defined before the
+ * first node that uses it. Dependencies refer to the names of other nodes, which may appear later
+ * in the stream.
+ */
+public class BinaryGraphWriter implements Closeable {
+
+  private static final TStruct RECORD_STRUCT = new TStruct("GraphRecord");
+  private static final TField STRING_FIELD = new TField("string", TType.STRING, (short) 1);
+  private static final TField NODE_FIELD = new TField("node", TType.STRUCT, (short) 2);
+
+  private static final TStruct NODE_STRUCT = new TStruct("GraphNode");
+  private static final TField NAME_FIELD = new TField("name", TType.I32, (short) 1);
+  private static final TField TYPE_FIELD = new TField("type", TType.I32, (short) 2);
+  private static final TField DEPS_FIELD = new TField("deps", TType.LIST, (short) 3);
+  private static final TField RUNTIME_DEPS_FIELD =
+      new TField("runtimeDeps", TType.LIST, (short) 4);
+  private static final TField ATTRIBUTES_FIELD = new TField("attributes", TType.MAP, (short) 5);
+
+  private final DataOutputStream out;
+  private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+  private final TProtocol protocol = new TCompactProtocol(new TIOStreamTransport(record));
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final List<String> newStrings = new ArrayList<>();
+
+  /** @param out stream to write records to. It is flushed, but not closed, by {@link #close()}. */
+  public BinaryGraphWriter(OutputStream out) {
+    this.out = new DataOutputStream(out);
+  }
+
+  /**
+   * Writes a node of the graph, preceded by the definitions of the strings it uses for the first
+   * time.
+   *
+   * @param runtimeDeps if absent, the node is written without the runtime dependencies field.
+   */
+  public void writeNode(
+      String name,
+      String type,
+      Collection<String> deps,
+      Optional<? extends Collection<String>> runtimeDeps,
+      Map<String, String> attributes)
+      throws IOException {
+    int nameId = intern(name);
+    int typeId = intern(type);
+    int[] depIds = internAll(deps);
+    Optional<int[]> runtimeDepIds = runtimeDeps.map(this::internAll);
+    int[] attributeIds = new int[attributes.size() * 2];
+    int i = 0;
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      attributeIds[i++] = intern(attribute.getKey());
+      attributeIds[i++] = intern(attribute.getValue());
+    }
+
+    try {
+      for (String string : newStrings) {
+        writeStringRecord(string);
+      }
+      newStrings.clear();
+
+      protocol.writeStructBegin(RECORD_STRUCT);
+      protocol.writeFieldBegin(NODE_FIELD);
+      protocol.writeStructBegin(NODE_STRUCT);
+      protocol.writeFieldBegin(NAME_FIELD);
+      protocol.writeI32(nameId);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(TYPE_FIELD);
+      protocol.writeI32(typeId);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(DEPS_FIELD);
+      writeIdList(depIds);
+      protocol.writeFieldEnd();
+      if (runtimeDepIds.isPresent()) {
+        protocol.writeFieldBegin(RUNTIME_DEPS_FIELD);
+        writeIdList(runtimeDepIds.get());
+        protocol.writeFieldEnd();
+      }
+      if (attributeIds.length > 0) {
+        protocol.writeFieldBegin(ATTRIBUTES_FIELD);
+        protocol.writeMapBegin(new TMap(TType.I32, TType.I32, attributeIds.length / 2));
+        for (int id : attributeIds) {
+          protocol.writeI32(id);
+        }
+        protocol.writeMapEnd();
+        protocol.writeFieldEnd();
+      }
+      protocol.writeFieldStop();
+      protocol.writeStructEnd();
+      protocol.writeFieldEnd();
+      protocol.writeFieldStop();
+      protocol.writeStructEnd();
+      flushRecord();
+    } catch (TException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void writeIdList(int[] ids) throws TException {
+    protocol.writeListBegin(new TList(TType.I32, ids.length));
+    for (int id : ids) {
+      protocol.writeI32(id);
+    }
+    protocol.writeListEnd();
+  }
+
+  private int[] internAll(Collection<String> strings) {
+    int[] ids = new int[strings.size()];
+    int i = 0;
+    for (String string : strings) {
+      ids[i++] = intern(string);
+    }
+    return ids;
+  }
+
+  private int intern(String string) {
+    Integer id = stringIds.get(string);
+    if (id == null) {
+      id = stringIds.size();
+      stringIds.put(string, id);
+      newStrings.add(string);
+    }
+    return id;
+  }
+
+  private void writeStringRecord(String string) throws TException, IOException {
+    protocol.writeStructBegin(RECORD_STRUCT);
+    protocol.writeFieldBegin(STRING_FIELD);
+    protocol.writeString(string);
+    protocol.writeFieldEnd();
+    protocol.writeFieldStop();
+    protocol.writeStructEnd();
+    flushRecord();
+  }
+
+  private void flushRecord() throws IOException {
+    Preconditions.checkState(record.size() > 0);
+    out.writeInt(record.size());
+    record.writeTo(out);
+    record.reset();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.flush();
+  }
+}
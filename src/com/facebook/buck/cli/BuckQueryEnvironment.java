@@ -26,6 +26,7 @@ import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildFileTree;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.CellRelativePath;
 import com.facebook.buck.core.model.QueryTarget;
 import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
@@ -34,6 +35,8 @@ import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.util.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.core.util.graph.AcyclicDepthFirstPostOrderTraversalWithPayload;
+import com.facebook.buck.core.util.graph.CompactDirectedGraph;
+import com.facebook.buck.core.util.graph.CompactDirectedGraph.Direction;
 import com.facebook.buck.core.util.graph.CycleException;
 import com.facebook.buck.core.util.graph.DirectedAcyclicGraph;
 import com.facebook.buck.core.util.graph.GraphTraversableWithPayload;
@@ -46,6 +49,7 @@ import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserMessages;
 import com.facebook.buck.parser.ParsingContext;
 import com.facebook.buck.parser.PerBuildState;
+import com.facebook.buck.parser.QueryResultCache;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
@@ -66,6 +70,7 @@ import com.facebook.buck.query.QueryEnvironment;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.query.QueryExpression;
 import com.facebook.buck.query.QueryFileTarget;
+import com.facebook.buck.query.QueryGraphIndex;
 import com.facebook.buck.query.RdepsFunction;
 import com.facebook.buck.query.TestsOfFunction;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
@@ -81,6 +86,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Streams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -88,7 +94,9 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -101,6 +109,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 
 /**
  * The environment of a Buck query that can evaluate queries to produce a result.
@@ -143,8 +152,15 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   // traverses the graph in parallel.
   private MutableDirectedGraph<TargetNode<?>> graph = MutableDirectedGraph.createConcurrent();
   private Map<BuildTarget, TargetNode<?>> targetsToNodes = new ConcurrentHashMap<>();
+  // Snapshot of `graph` used by graph functions, dropped whenever new nodes are added to `graph`.
+  @Nullable private GraphIndex graphIndex;
   private TemporaryUnconfiguredTargetToTargetUniquenessChecker checker;
 
+  private Optional<QueryResultCache> resultCache = Optional.empty();
+  // Targets parsed outside of `graph`, their packages are dependencies of cached query results.
+  private final Set<BuildTarget> targetsLookedUpByParser = ConcurrentHashMap.newKeySet();
+  private boolean resultDependsOnFiles;
+
   @VisibleForTesting
   protected BuckQueryEnvironment(
       Cell rootCell,
@@ -228,6 +244,14 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return parserState;
   }
 
+  /**
+   * Makes this environment reuse results of queries evaluated by earlier commands, and store
+   * results of queries it evaluates, in {@code resultCache}.
+   */
+  public void setResultCache(QueryResultCache resultCache) {
+    this.resultCache = Optional.of(resultCache);
+  }
+
   public void preloadTargetPatterns(Iterable<String> patterns)
       throws QueryException, InterruptedException {
     try {
@@ -250,10 +274,57 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       throws QueryException, InterruptedException {
     Set<String> targetLiterals = new HashSet<>();
     expr.collectTargetPatterns(targetLiterals);
+    if (!resultCache.isPresent()
+        || targetLiterals.stream().anyMatch(targetPatternEvaluator::isFilePattern)) {
+      return evaluateQuery(expr, targetLiterals);
+    }
+
+    QueryResultCache.Key key = targetPatternEvaluator.getQueryResultCacheKey(expr.toString());
+    Optional<ImmutableSet<QueryTarget>> cachedResult = resultCache.get().get(key);
+    if (cachedResult.isPresent()) {
+      return cachedResult.get();
+    }
+    long generation = resultCache.get().getGeneration();
+    resultDependsOnFiles = false;
+    Set<QueryTarget> result = evaluateQuery(expr, targetLiterals);
+    if (!resultDependsOnFiles) {
+      resultCache
+          .get()
+          .put(
+              key,
+              generation,
+              ImmutableSet.copyOf(result),
+              getPackagesReadSoFar(),
+              targetPatternEvaluator.getResolvedRecursiveRoots());
+    }
+    return result;
+  }
+
+  private Set<QueryTarget> evaluateQuery(
+      QueryExpression<QueryBuildTarget> expr, Set<String> targetLiterals)
+      throws QueryException, InterruptedException {
     preloadTargetPatterns(targetLiterals);
     return new NoopQueryEvaluator<QueryBuildTarget>().eval(expr, this);
   }
 
+  /** @return folders of all packages this environment has read target nodes from. */
+  private ImmutableSet<AbsPath> getPackagesReadSoFar() {
+    Set<CellRelativePath> basePaths = new HashSet<>();
+    for (BuildTarget buildTarget :
+        Iterables.concat(targetsToNodes.keySet(), targetsLookedUpByParser)) {
+      basePaths.add(buildTarget.getCellRelativeBasePath());
+    }
+    ImmutableSet.Builder<AbsPath> packages = ImmutableSet.builder();
+    packages.addAll(targetPatternEvaluator.getResolvedPackages());
+    for (CellRelativePath basePath : basePaths) {
+      Cell cell = rootCell.getCell(basePath.getCellName());
+      packages.add(
+          cell.getRoot()
+              .resolve(basePath.getPath().toRelPath(cell.getFilesystem().getFileSystem())));
+    }
+    return packages.build();
+  }
+
   public Set<QueryTarget> evaluateQuery(String query) throws QueryException, InterruptedException {
     return evaluateQuery(QueryExpression.parse(query, this));
   }
@@ -265,6 +336,9 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       return node;
     }
 
+    if (resultCache.isPresent()) {
+      targetsLookedUpByParser.add(buildTarget);
+    }
     try {
       return parser.getTargetNodeAssertCompatible(
           parserState, buildTarget, DependencyStack.top(buildTarget));
@@ -380,6 +454,10 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
             .map(target -> ((QueryBuildTarget) target).getBuildTarget())
             .filter(buildTarget -> !targetsToNodes.containsKey(buildTarget))
             .collect(ImmutableSet.toImmutableSet());
+    if (newBuildTargets.isEmpty()) {
+      return;
+    }
+    graphIndex = null;
 
     // TODO(mkosiba): This looks more and more like the Parser.buildTargetGraph method. Unify the
     // two.
@@ -447,6 +525,19 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     jobsCache.keySet().forEach(this::getOrCreateQueryBuildTarget);
   }
 
+  @Override
+  public Optional<QueryGraphIndex<QueryBuildTarget>> getGraphIndex() {
+    if (graphIndex == null) {
+      // Dependencies are ordered like the results of getFwdDeps.
+      graphIndex =
+          new GraphIndex(
+              CompactDirectedGraph.of(
+                  graph,
+                  Comparator.comparing((TargetNode<?> node) -> node.getBuildTarget().toString())));
+    }
+    return Optional.of(graphIndex);
+  }
+
   private Optional<ListenableFuture<Unit>> discoverNewTargetsConcurrently(
       BuildTarget buildTarget,
       DependencyStack dependencyStack,
@@ -544,6 +635,7 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
 
   @Override
   public ImmutableSet<QueryBuildTarget> getFileOwners(ImmutableList<String> files) {
+    resultDependsOnFiles = true;
     OwnersReport report = ownersReportBuilder.build(buildFileTrees, files);
     report
         .getInputsWithNoOwners()
@@ -587,6 +679,79 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return queryTargetEvaluator;
   }
 
+  /** {@link QueryGraphIndex} backed by a compact snapshot of the target graph. */
+  private class GraphIndex implements QueryGraphIndex<QueryBuildTarget> {
+    private final CompactDirectedGraph<TargetNode<?>> compactGraph;
+
+    private GraphIndex(CompactDirectedGraph<TargetNode<?>> compactGraph) {
+      this.compactGraph = compactGraph;
+    }
+
+    private int getId(QueryBuildTarget target) {
+      TargetNode<?> node = targetsToNodes.get(target.getBuildTarget());
+      return node == null ? -1 : compactGraph.getId(node);
+    }
+
+    @Override
+    public Optional<BitSet> getIds(Iterable<QueryBuildTarget> targets) {
+      BitSet ids = new BitSet(compactGraph.getNodeCount());
+      for (QueryBuildTarget target : targets) {
+        int id = getId(target);
+        if (id < 0) {
+          return Optional.empty();
+        }
+        ids.set(id);
+      }
+      return Optional.of(ids);
+    }
+
+    @Override
+    public BitSet getIndexedIds(Iterable<QueryBuildTarget> targets) {
+      BitSet ids = new BitSet(compactGraph.getNodeCount());
+      for (QueryBuildTarget target : targets) {
+        int id = getId(target);
+        if (id >= 0) {
+          ids.set(id);
+        }
+      }
+      return ids;
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getTargetsInDepsOrder(
+        Iterable<QueryBuildTarget> roots, BitSet ids) {
+      return getTargetsInBreadthFirstOrder(roots, ids, Direction.OUTGOING);
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getTargetsInReverseDepsOrder(
+        Iterable<QueryBuildTarget> roots, BitSet ids) {
+      return getTargetsInBreadthFirstOrder(roots, ids, Direction.INCOMING);
+    }
+
+    private ImmutableSet<QueryBuildTarget> getTargetsInBreadthFirstOrder(
+        Iterable<QueryBuildTarget> roots, BitSet ids, Direction direction) {
+      int[] rootIds =
+          Streams.stream(roots).mapToInt(this::getId).filter(id -> id >= 0).toArray();
+      ImmutableSet.Builder<QueryBuildTarget> result =
+          ImmutableSet.builderWithExpectedSize(ids.cardinality());
+      for (TargetNode<?> node : compactGraph.getNodesInBreadthFirstOrder(rootIds, direction, ids)) {
+        result.add(getOrCreateQueryBuildTarget(node.getBuildTarget()));
+      }
+      return result.build();
+    }
+
+    @Override
+    public BitSet getTransitiveDeps(BitSet roots, int maxDepth) {
+      return compactGraph.traverse(roots, maxDepth, Direction.OUTGOING, null);
+    }
+
+    @Override
+    public BitSet getTransitiveReverseDeps(BitSet roots, int maxDepth, BitSet universe) {
+      return compactGraph.traverse(roots, maxDepth, Direction.INCOMING, universe);
+    }
+  }
+
   private static class TargetEvaluator implements QueryEnvironment.TargetEvaluator {
     private final TargetPatternEvaluator evaluator;
 
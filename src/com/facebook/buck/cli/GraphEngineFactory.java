@@ -110,7 +110,8 @@ public class GraphEngineFactory {
             new DefaultTypeCoercerFactory(),
             params.getConsole(),
             new ParserPythonInterpreterProvider(cell.getBuckConfig(), params.getExecutableFinder()),
-            params.getKnownRuleTypesProvider());
+            params.getKnownRuleTypesProvider(),
+            Optional.of(params.getParser().getPermState().getPythonDslInterpreterPools()));
 
     ProjectBuildFileParser buildFileParser =
         projectBuildFileParserFactory.createFileParser(
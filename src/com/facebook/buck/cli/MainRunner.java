@@ -50,6 +50,7 @@ import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.TargetConfigurationSerializer;
 import com.facebook.buck.core.model.UnconfiguredTargetConfiguration;
+import com.facebook.buck.core.model.actiongraph.computation.ActionGraphConfig;
 import com.facebook.buck.core.model.actiongraph.computation.ActionGraphFactory;
 import com.facebook.buck.core.model.actiongraph.computation.ActionGraphProvider;
 import com.facebook.buck.core.model.impl.JsonTargetConfigurationSerializer;
@@ -126,9 +127,11 @@ import com.facebook.buck.log.ConsoleHandlerState;
 import com.facebook.buck.log.GlobalStateManager;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.log.LogConfig;
+import com.facebook.buck.parser.BackgroundSpeculativeParser;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserFactory;
 import com.facebook.buck.parser.ParserPythonInterpreterProvider;
+import com.facebook.buck.parser.PerBuildStateFactory;
 import com.facebook.buck.parser.TargetSpecResolver;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.remoteexecution.MetadataProviderFactory;
@@ -263,6 +266,7 @@ import java.util.OptionalLong;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -991,7 +995,13 @@ public final class MainRunner {
 
       LogBuckConfig logBuckConfig = buckConfig.getView(LogBuckConfig.class);
 
-      try (TaskManagerCommandScope managerScope =
+      try (@Nullable
+              BackgroundSpeculativeParser.CommandScope speculativeParsingScope =
+                  buckGlobalState
+                      .getBackgroundSpeculativeParser()
+                      .map(BackgroundSpeculativeParser::startCommand)
+                      .orElse(null);
+          TaskManagerCommandScope managerScope =
               bgTaskManager.getNewScope(
                   buildId,
                   !context.isPresent()
@@ -1080,9 +1090,11 @@ public final class MainRunner {
                 graphCpuExecutorService =
                     getExecutorWrapper(
                         listeningDecorator(
-                            MostExecutors.newMultiThreadExecutor(
-                                "graph-cpu",
-                                buckConfig.getView(BuildBuckConfig.class).getNumThreads())),
+                            newGraphCpuExecutor(
+                                buckConfig.getView(BuildBuckConfig.class).getNumThreads(),
+                                buckConfig
+                                    .getView(ActionGraphConfig.class)
+                                    .isForkJoinActionGraphEnabled())),
                         ExecutorPool.GRAPH_CPU.toString(),
                         EXECUTOR_SERVICES_TIMEOUT_SECONDS);
             // Create a thread pool for network I/O tasks
@@ -1411,6 +1423,20 @@ public final class MainRunner {
                   hostConfiguration.orElse(UnconfiguredTargetConfiguration.INSTANCE),
                   targetSpecResolver);
 
+          if (context.isPresent() && speculativeParsingScope != null) {
+            scheduleBackgroundSpeculativeParsing(
+                speculativeParsingScope,
+                cells,
+                filesystem,
+                buckConfig,
+                watchman,
+                buckGlobalState,
+                buildEventBus,
+                executableFinder,
+                buildTargetFactory,
+                hostConfiguration.orElse(UnconfiguredTargetConfiguration.INSTANCE));
+          }
+
           // Because the Parser is potentially constructed before the CounterRegistry,
           // we need to manually register its counters after it's created.
           //
@@ -1568,10 +1594,15 @@ public final class MainRunner {
             depsAwareExecutorSupplier.get(),
             rootCell.getCellProvider(),
             buckGlobalState.getDirectoryListCaches(),
-            buckGlobalState.getFileTreeCaches());
+            buckGlobalState.getFileTreeCaches(),
+            buckGlobalState.getBuildPackagePathsCaches());
       case WATCHMAN:
         return TargetSpecResolver.createWithWatchmanCrawler(
-            buildEventBus, watchman, depsAwareExecutorSupplier.get(), rootCell.getCellProvider());
+            buildEventBus,
+            watchman,
+            depsAwareExecutorSupplier.get(),
+            rootCell.getCellProvider(),
+            buckGlobalState.getBuildPackagePathsCaches());
     }
     throw new IllegalStateException("Unexpected build file search method: " + searchMethod);
   }
@@ -1855,26 +1886,8 @@ public final class MainRunner {
       TargetConfiguration hostConfiguration,
       TargetSpecResolver targetSpecResolver)
       throws IOException, InterruptedException {
-    Optional<WatchmanWatcher> watchmanWatcher = Optional.empty();
-    if (watchman.getTransportPath().isPresent()) {
-      try {
-        watchmanWatcher =
-            Optional.of(
-                new WatchmanWatcher(
-                    watchman,
-                    buckGlobalState.getFileEventBus(),
-                    ImmutableSet.<PathMatcher>builder()
-                        .addAll(filesystem.getIgnorePaths())
-                        .addAll(DEFAULT_IGNORE_GLOBS)
-                        .build(),
-                    buckGlobalState.getWatchmanCursor(),
-                    buckConfig.getView(BuildBuckConfig.class).getNumThreads()));
-      } catch (WatchmanWatcherException e) {
-        buildEventBus.post(
-            ConsoleEvent.warning(
-                "Watchman threw an exception while parsing file changes.\n%s", e.getMessage()));
-      }
-    }
+    Optional<WatchmanWatcher> watchmanWatcher =
+        createWatchmanWatcher(filesystem, buckConfig, watchman, buckGlobalState, buildEventBus);
 
     ParserConfig parserConfig = rootCell.getBuckConfig().getView(ParserConfig.class);
     TypeCoercerFactory typeCoercerFactory = buckGlobalState.getTypeCoercerFactory();
@@ -1927,6 +1940,75 @@ public final class MainRunner {
         defaultRuleKeyFactoryCacheRecycler);
   }
 
+  private static Optional<WatchmanWatcher> createWatchmanWatcher(
+      ProjectFilesystem filesystem,
+      BuckConfig buckConfig,
+      Watchman watchman,
+      BuckGlobalState buckGlobalState,
+      BuckEventBus buildEventBus) {
+    if (!watchman.getTransportPath().isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(
+          new WatchmanWatcher(
+              watchman,
+              buckGlobalState.getFileEventBus(),
+              ImmutableSet.<PathMatcher>builder()
+                  .addAll(filesystem.getIgnorePaths())
+                  .addAll(DEFAULT_IGNORE_GLOBS)
+                  .build(),
+              buckGlobalState.getWatchmanCursor(),
+              buckConfig.getView(BuildBuckConfig.class).getNumThreads()));
+    } catch (WatchmanWatcherException e) {
+      buildEventBus.post(
+          ConsoleEvent.warning(
+              "Watchman threw an exception while parsing file changes.\n%s", e.getMessage()));
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Lets the daemon re-parse, while it is idle after this command, build files that get
+   * invalidated by file changes.
+   */
+  private static void scheduleBackgroundSpeculativeParsing(
+      BackgroundSpeculativeParser.CommandScope speculativeParsingScope,
+      Cells cells,
+      ProjectFilesystem filesystem,
+      BuckConfig buckConfig,
+      Watchman watchman,
+      BuckGlobalState buckGlobalState,
+      BuckEventBus buildEventBus,
+      ExecutableFinder executableFinder,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      TargetConfiguration hostConfiguration) {
+    ParserConfig parserConfig = cells.getRootCell().getBuckConfig().getView(ParserConfig.class);
+    Optional<WatchmanWatcher> watchmanWatcher =
+        createWatchmanWatcher(filesystem, buckConfig, watchman, buckGlobalState, buildEventBus);
+    speculativeParsingScope.scheduleWhenIdle(
+        cells,
+        eventBus ->
+            new PerBuildStateFactory(
+                buckGlobalState.getTypeCoercerFactory(),
+                new DefaultConstructorArgMarshaller(),
+                buckGlobalState.getKnownRuleTypesProvider(),
+                new ParserPythonInterpreterProvider(parserConfig, executableFinder),
+                watchman,
+                eventBus,
+                unconfiguredBuildTargetFactory,
+                hostConfiguration),
+        eventBus -> {
+          if (watchmanWatcher.isPresent()) {
+            // Events consumed here are not seen by the next command, so a fresh instance has to
+            // invalidate everything.
+            buckGlobalState.watchFileSystem(
+                eventBus, watchmanWatcher.get(), FreshInstanceAction.POST_OVERFLOW_EVENT);
+          }
+        },
+        parserConfig.getBackgroundSpeculativeParsingIdleDelayMs());
+  }
+
   private static void registerClientDisconnectedListener(
       NGContext context, BuckGlobalState buckGlobalState) {
     Thread mainThread = Thread.currentThread();
@@ -2072,6 +2154,18 @@ public final class MainRunner {
         });
   }
 
+  /**
+   * Creates the executor of {@link ExecutorPool#GRAPH_CPU}. With {@code
+   * build.action_graph_fork_join} it is a work-stealing pool, which compensates threads that wait
+   * for build rules created by other threads.
+   */
+  private static ExecutorService newGraphCpuExecutor(int numThreads, boolean forkJoin) {
+    if (forkJoin) {
+      return new ForkJoinPool(numThreads);
+    }
+    return MostExecutors.newMultiThreadExecutor("graph-cpu", numThreads);
+  }
+
   private static <T extends ExecutorService>
       ThrowingCloseableWrapper<T, InterruptedException> getExecutorWrapper(
           T executor, String executorName, long closeTimeoutSeconds) {
@@ -21,6 +21,7 @@ import com.facebook.buck.core.config.BuckConfig;
 import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.CellRelativePath;
 import com.facebook.buck.core.model.QueryTarget;
 import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTarget;
@@ -28,7 +29,9 @@ import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParsingContext;
+import com.facebook.buck.parser.QueryResultCache;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
+import com.facebook.buck.parser.spec.BuildFileSpec;
 import com.facebook.buck.parser.spec.BuildTargetMatcherTargetNodeParser;
 import com.facebook.buck.parser.spec.TargetNodeSpec;
 import com.facebook.buck.query.QueryBuildTarget;
@@ -44,9 +47,11 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 class TargetPatternEvaluator {
   private static final Logger LOG = Logger.get(TargetPatternEvaluator.class);
@@ -54,6 +59,7 @@ class TargetPatternEvaluator {
   private final Parser parser;
   private final ParsingContext parsingContext;
   private final AbsPath projectRoot;
+  private final AbsPath absoluteClientWorkingDir;
   private final CommandLineTargetNodeSpecParser targetNodeSpecParser;
   private final BuckConfig buckConfig;
   private final Cell rootCell;
@@ -61,6 +67,10 @@ class TargetPatternEvaluator {
 
   private Map<String, ImmutableSet<QueryTarget>> resolvedTargets = new HashMap<>();
 
+  // Packages and recursive pattern roots read while resolving build target patterns.
+  private final Set<AbsPath> resolvedPackages = new HashSet<>();
+  private final Set<AbsPath> resolvedRecursiveRoots = new HashSet<>();
+
   public TargetPatternEvaluator(
       Cell rootCell,
       Path absoluteClientWorkingDir,
@@ -73,6 +83,7 @@ class TargetPatternEvaluator {
     this.parsingContext = parsingContext;
     this.buckConfig = buckConfig;
     this.projectRoot = rootCell.getFilesystem().getRootPath();
+    this.absoluteClientWorkingDir = AbsPath.of(absoluteClientWorkingDir);
     this.targetNodeSpecParser =
         new CommandLineTargetNodeSpecParser(
             rootCell,
@@ -117,10 +128,7 @@ class TargetPatternEvaluator {
         //     something with a ':' in it
         //  2) By putting a ':' in the filename, you're already dooming yourself to never work on
         //     windows. Don't do that.
-        if (pattern.contains("//")
-            || pattern.contains(":")
-            || pattern.endsWith("/...")
-            || pattern.equals("...")) {
+        if (isBuildTargetPattern(pattern)) {
           unresolved.put(pattern, pattern);
         } else {
           ImmutableSet<QueryTarget> fileTargets = resolveFilePattern(pattern);
@@ -141,6 +149,41 @@ class TargetPatternEvaluator {
     return resolved.build();
   }
 
+  private static boolean isBuildTargetPattern(String pattern) {
+    return pattern.contains("//")
+        || pattern.contains(":")
+        || pattern.endsWith("/...")
+        || pattern.equals("...");
+  }
+
+  /** @return whether {@code pattern} is resolved to files rather than to build targets. */
+  boolean isFilePattern(String pattern) {
+    return !isBuildTargetPattern(pattern)
+        && AliasConfig.from(buckConfig).getBuildTargetsForAlias(pattern).isEmpty();
+  }
+
+  /** @return folders of packages that were read to resolve build target patterns so far. */
+  ImmutableSet<AbsPath> getResolvedPackages() {
+    return ImmutableSet.copyOf(resolvedPackages);
+  }
+
+  /**
+   * @return folders under which all packages were read to resolve recursive build target patterns
+   *     so far.
+   */
+  ImmutableSet<AbsPath> getResolvedRecursiveRoots() {
+    return ImmutableSet.copyOf(resolvedRecursiveRoots);
+  }
+
+  /** @return key of the result of {@code query} evaluated with patterns resolved by this object. */
+  QueryResultCache.Key getQueryResultCacheKey(String query) {
+    return QueryResultCache.Key.of(
+        query,
+        absoluteClientWorkingDir,
+        targetConfiguration,
+        parsingContext.excludeUnsupportedTargets());
+  }
+
   private ImmutableSet<QueryTarget> resolveFilePattern(String pattern) throws IOException {
     ImmutableSet<RelPath> filePaths =
         PathArguments.getCanonicalFilesUnderProjectRoot(projectRoot, ImmutableList.of(pattern))
@@ -161,6 +204,19 @@ class TargetPatternEvaluator {
     for (String pattern : patterns) {
       specs.addAll(targetNodeSpecParser.parse(rootCell, pattern));
     }
+    for (TargetNodeSpec spec : specs) {
+      BuildFileSpec buildFileSpec = spec.getBuildFileSpec();
+      CellRelativePath basePath = buildFileSpec.getCellRelativeBaseName();
+      Cell cell = rootCell.getCell(basePath.getCellName());
+      AbsPath folder =
+          cell.getRoot()
+              .resolve(basePath.getPath().toRelPath(cell.getFilesystem().getFileSystem()));
+      if (buildFileSpec.isRecursive()) {
+        resolvedRecursiveRoots.add(folder);
+      } else {
+        resolvedPackages.add(folder);
+      }
+    }
     ImmutableList<ImmutableSet<BuildTarget>> buildTargets =
         parser.resolveTargetSpecs(parsingContext, specs, targetConfiguration);
     LOG.verbose("Resolved target patterns %s -> targets %s", patterns, buildTargets);
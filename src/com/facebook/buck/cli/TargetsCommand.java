@@ -121,6 +121,7 @@ import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -172,6 +173,14 @@ public class TargetsCommand extends AbstractCommand {
   @Option(name = "--json", usage = "Print JSON representation of each target")
   private boolean json;
 
+  @Option(
+      name = "--binary",
+      usage =
+          "Print targets, their types and dependencies as a stream of length delimited Thrift "
+              + "compact records with interned strings. See BinaryGraphWriter for the format.",
+      forbids = {"--json", "--dot", "--print0"})
+  private boolean binary;
+
   @Option(
       name = "--dot",
       usage =
@@ -547,7 +556,10 @@ public class TargetsCommand extends AbstractCommand {
                     .getTargetGraph()
                     .getAll(targetGraphAndBuildTargetsForShowRules.getBuildTargets())));
 
-    if (shouldUseJsonFormat()) {
+    if (binary) {
+      printBinaryForShowRules(
+          targetGraphAndBuildTargetsForShowRules.getTargetGraph(), showRulesResult, params);
+    } else if (shouldUseJsonFormat()) {
       ImmutableSetMultimap.Builder<BuildTarget, OutputLabel> builder =
           ImmutableSetMultimap.builder();
       for (BuildTargetWithOutputs buildTargetWithOutputs : showRulesResult.keySet()) {
@@ -715,8 +727,19 @@ public class TargetsCommand extends AbstractCommand {
       CommandRunnerParams params,
       ListeningExecutorService executor,
       SortedMap<String, TargetNode<?>> matchingNodes)
-      throws BuildFileParseException {
-    if (shouldUseJsonFormat()) {
+      throws BuildFileParseException, IOException {
+    if (binary) {
+      try (BinaryGraphWriter writer = new BinaryGraphWriter(params.getConsole().getStdOut())) {
+        for (TargetNode<?> targetNode : matchingNodes.values()) {
+          writer.writeNode(
+              targetNode.getBuildTarget().getFullyQualifiedName(),
+              targetNode.getRuleType().getName(),
+              toFullyQualifiedNames(targetNode.getBuildDeps()),
+              Optional.empty(),
+              ImmutableMap.of());
+        }
+      }
+    } else if (shouldUseJsonFormat()) {
       printJsonForTargets(
           params,
           executor,
@@ -859,6 +882,44 @@ public class TargetsCommand extends AbstractCommand {
     }
   }
 
+  /**
+   * Writes the targets along with their dependencies in the format of {@link BinaryGraphWriter}.
+   * Rule keys, target hashes and output paths are written as node attributes, named as in the JSON
+   * format.
+   */
+  private void printBinaryForShowRules(
+      TargetGraph targetGraph,
+      ImmutableSortedMap<BuildTargetWithOutputs, TargetResult> showRulesResult,
+      CommandRunnerParams params)
+      throws IOException {
+    try (BinaryGraphWriter writer = new BinaryGraphWriter(params.getConsole().getStdOut())) {
+      for (Entry<BuildTargetWithOutputs, TargetResult> entry : showRulesResult.entrySet()) {
+        TargetNode<?> targetNode = targetGraph.get(entry.getKey().getBuildTarget());
+        ImmutableSortedMap.Builder<String, String> attributes = ImmutableSortedMap.naturalOrder();
+        for (TargetResultFieldName field : TargetResultFieldName.values()) {
+          // Output paths by label are only available in the JSON format.
+          field
+              .getter
+              .apply(entry.getValue())
+              .filter(String.class::isInstance)
+              .ifPresent(value -> attributes.put(field.name, (String) value));
+        }
+        writer.writeNode(
+            entry.getKey().toString(),
+            targetNode.getRuleType().getName(),
+            toFullyQualifiedNames(targetNode.getBuildDeps()),
+            Optional.empty(),
+            attributes.build());
+      }
+    }
+  }
+
+  private static ImmutableList<String> toFullyQualifiedNames(Collection<BuildTarget> targets) {
+    return targets.stream()
+        .map(BuildTarget::getFullyQualifiedName)
+        .collect(ImmutableList.toImmutableList());
+  }
+
   @Override
   public boolean isReadOnly() {
     return true;
@@ -1441,7 +1502,8 @@ public class TargetsCommand extends AbstractCommand {
                               params.getCells().getRootCell(),
                               node,
                               DependencyStack.top(node.getBuildTarget())),
-                  getHashFunction())
+                  getHashFunction(),
+                  Optional.of(params.getGlobalState().getTargetNodeHashCache()))
               .hashTargetGraph();
     }
 
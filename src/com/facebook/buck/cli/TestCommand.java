@@ -74,6 +74,7 @@ import com.facebook.buck.util.MoreExceptions;
 import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.collect.MoreSets;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.versions.VersionException;
@@ -81,9 +82,11 @@ import com.facebook.infer.annotation.SuppressFieldNotInitialized;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
@@ -279,6 +282,10 @@ public class TestCommand extends BuildCommand {
             .setJavaTempDir(params.getBuckConfig().getView(JavaBuckConfig.class).getJavaTempDir());
 
     TestBuckConfig testBuckConfig = params.getBuckConfig().getView(TestBuckConfig.class);
+    builder.setJavaTestShards(isDebugEnabled() ? 1 : testBuckConfig.getJavaTestShards());
+    builder.setJavaTestWarmJvms(testBuckConfig.getJavaTestWarmJvms());
+    builder.setSkippingUnchangedJavaTests(testBuckConfig.isSkippingUnchangedJavaTests());
+    builder.setJavaTestWarmJvmSharedClasspath(testBuckConfig.getJavaTestWarmJvmSharedClasspath());
     Optional<ImmutableList<String>> coverageIncludes = testBuckConfig.getCoverageIncludes();
     Optional<ImmutableList<String>> coverageExcludes = testBuckConfig.getCoverageExcludes();
 
@@ -314,12 +321,24 @@ public class TestCommand extends BuildCommand {
 
     try (CommandThreadManager testPool =
         new CommandThreadManager("Test-Run", getTestConcurrencyLimit(params))) {
+      // Tests that run in parts, like sharded Java tests, run them on the test pool, so that they
+      // count against the test threads.
+      ExecutionContext buildExecutionContext = build.getExecutionContext();
+      ExecutionContext testExecutionContext =
+          ExecutionContext.builder()
+              .from(buildExecutionContext)
+              .setExecutors(
+                  ImmutableMap.<ExecutorPool, ListeningExecutorService>builder()
+                      .putAll(buildExecutionContext.getExecutors())
+                      .put(ExecutorPool.TEST, testPool.getWeightedListeningExecutorService())
+                      .build())
+              .build();
       int exitCodeInt =
           TestRunning.runTests(
               params,
               ruleResolver,
               testRules,
-              build.getExecutionContext(),
+              testExecutionContext,
               getTestRunningOptions(params),
               testPool.getWeightedListeningExecutorService(),
               buildEngine,
@@ -52,6 +52,17 @@ public abstract class BuildBuckConfig implements ConfigView<BuckConfig> {
     return getDelegate().getInteger(CACHE_SECTION, "max_action_graph_cache_entries").orElse(1);
   }
 
+  /**
+   * @return number of most recent action graphs whose build rules are kept in memory to be reused
+   *     by incremental action graph construction.
+   */
+  @Value.Lazy
+  public int getMaxIncrementalActionGraphs() {
+    return Math.max(
+        1,
+        getDelegate().getInteger(CACHE_SECTION, "max_incremental_action_graphs").orElse(3));
+  }
+
   /**
    * Whether Buck should use Buck binary hash or git commit id as the core key in all rule keys.
    *
@@ -28,6 +28,8 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ThrowableConsoleEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystemFactory;
 import com.facebook.buck.jvm.core.JavaPackageFinder;
+import com.facebook.buck.jvm.java.WarmTestJvmPool;
+import com.facebook.buck.jvm.java.abi.ClassStubCache;
 import com.facebook.buck.util.Ansi;
 import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
@@ -77,6 +79,18 @@ public abstract class ExecutionContext implements Closeable {
    */
   public abstract Optional<ConcurrentMap<String, WorkerProcessPool>> getPersistentWorkerPools();
 
+  /**
+   * Stubs of the classes of libraries, kept across buck invocations inside buck daemon so that the
+   * ABI jar of a rebuilt library only stubs the classes that changed. Absent when disabled.
+   */
+  public abstract Optional<ClassStubCache> getClassStubCache();
+
+  /**
+   * JVMs kept running across buck invocations inside buck daemon to run Java tests, when enabled by
+   * test.java_test_warm_jvms.
+   */
+  public abstract Optional<WarmTestJvmPool> getWarmTestJvmPool();
+
   public abstract CellPathResolver getCellPathResolver();
 
   public abstract Cells getCells();
@@ -19,6 +19,7 @@ package com.facebook.buck.core.model.actiongraph.computation;
 import com.facebook.buck.core.model.actiongraph.ActionGraphAndBuilder;
 import com.facebook.buck.core.model.targetgraph.TargetGraph;
 import com.facebook.buck.core.rules.ActionGraphBuilder;
+import com.facebook.buck.core.rules.analysis.impl.IncrementalRuleAnalysisCache;
 import com.facebook.buck.event.BuckEventBus;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -29,13 +30,30 @@ public class ActionGraphCache {
 
   private final Cache<TargetGraph, ActionGraphAndBuilder> previousActionGraphs;
   private final IncrementalActionGraphGenerator incrementalActionGraphGenerator;
+  private final IncrementalRuleAnalysisCache ruleAnalysisCache = new IncrementalRuleAnalysisCache();
 
   public ActionGraphCache(int maxEntries) {
+    this(maxEntries, 1);
+  }
+
+  /**
+   * @param maxEntries number of whole action graphs to cache by their target graph.
+   * @param maxIncrementalGraphs number of most recent action graphs whose build rules are retained
+   *     for incremental action graph construction.
+   */
+  public ActionGraphCache(int maxEntries, int maxIncrementalGraphs) {
     previousActionGraphs = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
-    incrementalActionGraphGenerator = new IncrementalActionGraphGenerator();
+    incrementalActionGraphGenerator = new IncrementalActionGraphGenerator(maxIncrementalGraphs);
   }
 
+  /** Drops the cached action graphs and the rule analysis results retained across them. */
   public void invalidateCache() {
+    invalidateActionGraphs();
+    ruleAnalysisCache.invalidateAll();
+  }
+
+  /** Drops the cached action graphs, but keeps the rule analysis results for later graphs. */
+  public void invalidateActionGraphs() {
     previousActionGraphs.invalidateAll();
   }
 
@@ -56,6 +74,11 @@ public class ActionGraphCache {
     previousActionGraphs.put(targetGraph, actionGraphAndBuilder);
   }
 
+  /** @return rule analysis results retained across action graphs. */
+  public IncrementalRuleAnalysisCache getRuleAnalysisCache() {
+    return ruleAnalysisCache;
+  }
+
   public void populateActionGraphBuilderWithCachedRules(
       BuckEventBus eventBus, TargetGraph targetGraph, ActionGraphBuilder graphBuilder) {
     incrementalActionGraphGenerator.populateActionGraphBuilderWithCachedRules(
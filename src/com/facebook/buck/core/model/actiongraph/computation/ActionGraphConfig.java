@@ -51,6 +51,16 @@ public abstract class ActionGraphConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("cache", "action_graph_cache_check_enabled", false);
   }
 
+  /**
+   * @return whether the graph executor of a command should be a work-stealing fork-join pool, so
+   *     that threads waiting for rules of dependencies keep executing rule creation of independent
+   *     subgraphs.
+   */
+  @Value.Derived
+  public boolean isForkJoinActionGraphEnabled() {
+    return getDelegate().getBooleanValue("build", "action_graph_fork_join", false);
+  }
+
   /**
    * @return whether the current invocation of Buck should skip the Action Graph cache, leaving the
    *     cached Action Graph in memory for the next request and creating a fresh Action Graph for
@@ -18,6 +18,7 @@ package com.facebook.buck.core.model.actiongraph.computation;
 
 import com.facebook.buck.core.cell.CellProvider;
 import com.facebook.buck.core.config.BuckConfig;
+import com.facebook.buck.core.description.RuleDescription;
 import com.facebook.buck.core.graph.transformation.GraphComputation;
 import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.model.ComputeResult;
@@ -45,8 +46,11 @@ import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.randomizedtrial.RandomizedTrial;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 public class ActionGraphFactory {
 
@@ -57,9 +61,12 @@ public class ActionGraphFactory {
       CloseableMemoizedSupplier<DepsAwareExecutor<? super ComputeResult, ?>> depsAwareExecutor,
       BuckConfig buckConfig) {
     ActionGraphConfig actionGraphConfig = buckConfig.getView(ActionGraphConfig.class);
+    // GRAPH_CPU is a fork-join pool if build.action_graph_fork_join is set.
     return new ActionGraphFactory(
         new ParallelActionGraphFactory(
-            () -> executorSupplier.get(ExecutorPool.GRAPH_CPU), cellProvider),
+            () -> executorSupplier.get(ExecutorPool.GRAPH_CPU),
+            cellProvider,
+            Optional.of(eventBus)),
         buckConfig.getView(RuleAnalysisConfig.class).getComputationMode(),
         eventBus,
         actionGraphConfig.getIncrementalActionGraphExperimentGroups(),
@@ -91,6 +98,26 @@ public class ActionGraphFactory {
       TargetGraph targetGraph,
       IncrementalActionGraphMode incrementalActionGraphMode,
       ActionGraphCreationLifecycleListener actionGraphCreationLifecycleListener) {
+    return createActionGraph(
+        transformer,
+        targetGraph,
+        incrementalActionGraphMode,
+        actionGraphCreationLifecycleListener,
+        RuleAnalysisCacheImpl::new);
+  }
+
+  /**
+   * Creates an action graph for the given target graph.
+   *
+   * @param ruleAnalysisCacheSupplier provides the cache of rule analysis results used when rule
+   *     analysis is enabled, which allows reusing results of previous commands.
+   */
+  public ActionGraphAndBuilder createActionGraph(
+      TargetNodeToBuildRuleTransformer transformer,
+      TargetGraph targetGraph,
+      IncrementalActionGraphMode incrementalActionGraphMode,
+      ActionGraphCreationLifecycleListener actionGraphCreationLifecycleListener,
+      Supplier<RuleAnalysisCache> ruleAnalysisCacheSupplier) {
 
     if (incrementalActionGraphMode == IncrementalActionGraphMode.EXPERIMENT) {
       incrementalActionGraphMode =
@@ -116,17 +143,18 @@ public class ActionGraphFactory {
     if (ruleAnalysisComputationMode == RuleAnalysisComputationMode.COMPATIBLE) {
       graphBuilderDecorator =
           builderConstructor -> {
-            RuleAnalysisCache ruleAnalysisCache = new RuleAnalysisCacheImpl();
+            RuleAnalysisCache ruleAnalysisCache = ruleAnalysisCacheSupplier.get();
             RuleAnalysisGraph ruleAnalysisComputation =
                 RuleAnalysisGraphImpl.of(
                     targetGraph, depsAwareExecutor.get(), ruleAnalysisCache, eventBus);
+            analyzeRuleDescriptions(targetGraph, ruleAnalysisComputation);
             return new RuleAnalysisCompatibleDelegatingActionGraphBuilder(
                 transformer, builderConstructor, ruleAnalysisComputation);
           };
     } else if (ruleAnalysisComputationMode == RuleAnalysisComputationMode.PROVIDER_COMPATIBLE) {
       graphBuilderDecorator =
           builderConstructor -> {
-            RuleAnalysisCache ruleAnalysisCache = new RuleAnalysisCacheImpl();
+            RuleAnalysisCache ruleAnalysisCache = ruleAnalysisCacheSupplier.get();
             GraphComputation<RuleAnalysisKey, RuleAnalysisResult> ruleAnalysisComputation;
             ruleAnalysisComputation =
                 new LegacyCompatibleRuleAnalysisComputation(
@@ -138,6 +166,7 @@ public class ActionGraphFactory {
                     targetGraph,
                     depsAwareExecutor.get(),
                     ruleAnalysisCache);
+            analyzeRuleDescriptions(targetGraph, ruleAnalysisGraph);
 
             return builderConstructor.apply(
                 new LegacyRuleAnalysisProviderCompatibleTargetNodeToBuildRuleTransformer(
@@ -149,6 +178,24 @@ public class ActionGraphFactory {
     return delegate.create(transformer, targetGraph, listener, graphBuilderDecorator);
   }
 
+  /**
+   * Analyzes all targets of rules implemented with the rule analysis framework, such as user
+   * defined rules, up front. The analysis graph schedules independent targets in parallel on the
+   * deps aware executor, so the action graph walk later only picks up the results instead of
+   * analyzing targets one by one as their build rules are required.
+   */
+  private static void analyzeRuleDescriptions(
+      TargetGraph targetGraph, RuleAnalysisGraph ruleAnalysisGraph) {
+    ImmutableSet<RuleAnalysisKey> keys =
+        targetGraph.getNodes().stream()
+            .filter(node -> node.getDescription() instanceof RuleDescription)
+            .map(node -> RuleAnalysisKey.of(node.getBuildTarget()))
+            .collect(ImmutableSet.toImmutableSet());
+    if (!keys.isEmpty()) {
+      ruleAnalysisGraph.getAll(keys);
+    }
+  }
+
   interface ActionGraphCreationLifecycleListener {
     void onCreate(ActionGraphBuilder graphBuilder);
   }
@@ -24,6 +24,8 @@ import com.facebook.buck.core.model.targetgraph.TargetGraphCreationResult;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
+import com.facebook.buck.core.rules.analysis.cache.RuleAnalysisCache;
+import com.facebook.buck.core.rules.analysis.impl.RuleAnalysisCacheImpl;
 import com.facebook.buck.core.rules.transformer.TargetNodeToBuildRuleTransformer;
 import com.facebook.buck.core.rules.transformer.impl.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.core.util.log.Logger;
@@ -39,6 +41,7 @@ import com.google.common.collect.Maps;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Class that transforms {@link TargetGraph} to {@link ActionGraph}. It also holds a cache for the
@@ -149,12 +152,13 @@ public class ActionGraphProvider {
           eventBus.post(ActionGraphEvent.Cache.missWithTargetGraphDifference());
         }
         out =
-            createActionGraph(
-                transformer,
-                targetGraph,
-                skipActionGraphCache
-                    ? IncrementalActionGraphMode.DISABLED
-                    : incrementalActionGraphMode);
+            skipActionGraphCache
+                ? createActionGraph(transformer, targetGraph, IncrementalActionGraphMode.DISABLED)
+                : createActionGraph(
+                    transformer,
+                    targetGraph,
+                    incrementalActionGraphMode,
+                    () -> actionGraphCache.getRuleAnalysisCache().forTargetGraph(targetGraph));
         if (!skipActionGraphCache) {
           LOG.info("ActionGraph cache assignment.");
           actionGraphCache.put(targetGraph, out);
@@ -205,6 +209,15 @@ public class ActionGraphProvider {
       TargetNodeToBuildRuleTransformer transformer,
       TargetGraph targetGraph,
       IncrementalActionGraphMode incrementalActionGraphMode) {
+    return createActionGraph(
+        transformer, targetGraph, incrementalActionGraphMode, RuleAnalysisCacheImpl::new);
+  }
+
+  private ActionGraphAndBuilder createActionGraph(
+      TargetNodeToBuildRuleTransformer transformer,
+      TargetGraph targetGraph,
+      IncrementalActionGraphMode incrementalActionGraphMode,
+      Supplier<RuleAnalysisCache> ruleAnalysisCacheSupplier) {
 
     return actionGraphFactory.createActionGraph(
         transformer,
@@ -214,13 +227,14 @@ public class ActionGraphProvider {
           // Any previously cached action graphs are no longer valid, as we may use build rules
           // from those graphs to construct a new graph incrementally, and update those build
           // rules to use a new BuildRuleResolver.
-          actionGraphCache.invalidateCache();
+          actionGraphCache.invalidateActionGraphs();
 
           // Populate the new build rule graphBuilder with all of the usable rules from the last
           // build rule graphBuilder for incremental action graph generation.
           actionGraphCache.populateActionGraphBuilderWithCachedRules(
               eventBus, targetGraph, graphBuilder);
-        });
+        },
+        ruleAnalysisCacheSupplier);
   }
 
   private static Map<BuildRule, RuleKey> getRuleKeysFromBuildRules(
@@ -20,7 +20,6 @@ import com.facebook.buck.core.description.BaseDescription;
 import com.facebook.buck.core.description.Description;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.ConfigurationForConfigurationTargets;
-import com.facebook.buck.core.model.UnflavoredBuildTarget;
 import com.facebook.buck.core.model.targetgraph.TargetGraph;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.rules.ActionGraphBuilder;
@@ -29,140 +28,229 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
- * Provides a way to incrementally construct a new {@link ActionGraphBuilder} from a previous one.
+ * Provides a way to incrementally construct a new {@link ActionGraphBuilder} from previous ones.
  *
- * <p>This works by grabbing all the build rules from the previous {@link ActionGraphBuilder} with
- * unflavored targets that were not invalidated when doing a target graph walk to check for changes.
+ * <p>This works by retaining the build rules of the most recently built action graphs, grouped by
+ * their unflavored target and target configuration, and loading the groups that were not
+ * invalidated when doing a target graph walk to check for changes. Retaining more than one graph
+ * lets builds alternate between different sets of top-level targets or target configurations
+ * without reconstructing the rules they share; memory use is bounded by the number of retained
+ * graphs.
  */
 public class IncrementalActionGraphGenerator {
   private static final Logger LOG = Logger.get(IncrementalActionGraphGenerator.class);
 
+  /** Number of most recent action graphs whose build rules are retained. */
+  private final int retainedGraphs;
+
+  /**
+   * Build rules of the retained action graphs, keyed by the unflavored target (with its target
+   * configuration) they were created for.
+   */
+  private final Map<BuildTarget, RuleGroup> ruleGroups = new HashMap<>();
+
   @Nullable private ActionGraphBuilder lastActionGraphBuilder;
   @Nullable private TargetGraph lastTargetGraph;
 
+  /** Groups of the last target graph whose build rules were not loaded from previous graphs. */
+  private Set<BuildTarget> lastRebuiltGroups = ImmutableSet.of();
+
+  /** Number of action graphs populated so far. */
+  private int generation;
+
+  public IncrementalActionGraphGenerator() {
+    this(1);
+  }
+
+  public IncrementalActionGraphGenerator(int retainedGraphs) {
+    Preconditions.checkArgument(retainedGraphs > 0, "At least one action graph must be retained");
+    this.retainedGraphs = retainedGraphs;
+  }
+
   /**
    * Populates the given {@link ActionGraphBuilder} with the rules from the previously used {@link
-   * ActionGraphBuilder} that are deemed usable after checking for invalidations with a target graph
-   * walk.
+   * ActionGraphBuilder}s that are deemed usable after checking for invalidations with a target
+   * graph walk.
    */
   public void populateActionGraphBuilderWithCachedRules(
       BuckEventBus eventBus, TargetGraph targetGraph, ActionGraphBuilder graphBuilder) {
     int reusedRuleCount = 0;
     if (lastActionGraphBuilder != null) {
-      Objects.requireNonNull(lastTargetGraph);
+      retainRulesOfLastActionGraph();
 
       // We first walk the new target graph to find new nodes. A new node will invalidate all nodes
       // with the same unflavored target.
-      Set<UnflavoredBuildTarget> unflavoredTargetsForNewNodes =
-          findUnflavoredTargetsForNewNodes(targetGraph);
+      Set<BuildTarget> groupsForNewNodes = findGroupsForNewNodes(targetGraph);
 
-      // We figure out which build rules we can reuse from the last action graph by performing an
-      // invalidation walk over the new target graph.
-      Set<UnflavoredBuildTarget> invalidUnflavoredTargets = new HashSet<>();
-      Set<UnflavoredBuildTarget> allUnflavoredTargetsInNewGraph = new HashSet<>();
-      invalidateChangedTargets(
-          targetGraph,
-          allUnflavoredTargetsInNewGraph,
-          invalidUnflavoredTargets,
-          unflavoredTargetsForNewNodes);
+      // We figure out which build rules we can reuse from the retained action graphs by performing
+      // an invalidation walk over the new target graph.
+      Set<BuildTarget> invalidGroups = new HashSet<>();
+      Set<BuildTarget> allGroupsInNewGraph = new HashSet<>();
+      invalidateChangedTargets(targetGraph, allGroupsInNewGraph, invalidGroups, groupsForNewNodes);
 
-      // Now we can load in all build rules whose unflavored targets weren't invalidated for
-      // incremental action graph generation.
+      // Now we can load in all build rules whose groups weren't invalidated for incremental action
+      // graph generation.
       reusedRuleCount =
-          addValidRulesToActionGraphBuilder(
-              graphBuilder, allUnflavoredTargetsInNewGraph, invalidUnflavoredTargets);
+          addValidRulesToActionGraphBuilder(graphBuilder, allGroupsInNewGraph, invalidGroups);
 
-      // Invalidate the previous {@see ActionGraphBuilder}, which we no longer need, to make sure
-      // nobody unexpectedly accesses it after this point.
-      lastActionGraphBuilder.invalidate();
+      Set<BuildTarget> rebuiltGroups = new HashSet<>();
+      for (BuildTarget group : allGroupsInNewGraph) {
+        if (invalidGroups.contains(group) || !ruleGroups.containsKey(group)) {
+          rebuiltGroups.add(group);
+        }
+      }
+      lastRebuiltGroups = rebuiltGroups;
     }
 
+    generation++;
     lastTargetGraph = targetGraph;
     lastActionGraphBuilder = graphBuilder;
     eventBus.post(new ActionGraphEvent.IncrementalLoad(reusedRuleCount));
   }
 
-  private Set<UnflavoredBuildTarget> findUnflavoredTargetsForNewNodes(TargetGraph targetGraph) {
-    ImmutableSet.Builder<UnflavoredBuildTarget> unflavoredTargetsForNewNodes =
-        new ImmutableSet.Builder<>();
+  /**
+   * Moves the rules of the last action graph into {@link #ruleGroups}, and drops retained rules
+   * which cannot be reused anymore.
+   */
+  private void retainRulesOfLastActionGraph() {
+    TargetGraph targetGraph = Objects.requireNonNull(lastTargetGraph);
+    ActionGraphBuilder actionGraphBuilder = Objects.requireNonNull(lastActionGraphBuilder);
+
+    Map<BuildTarget, RuleGroup> lastGroups = new HashMap<>();
+    for (TargetNode<?> node : targetGraph.getNodes()) {
+      RuleGroup group =
+          lastGroups.computeIfAbsent(
+              getGroup(node.getBuildTarget()), ignored -> new RuleGroup(generation - 1));
+      group.nodes.put(node.getBuildTarget(), node);
+      for (TargetNode<?> dep : targetGraph.getOutgoingNodesFor(node)) {
+        group.deps.add(getGroup(dep.getBuildTarget()));
+      }
+    }
+    for (BuildRule buildRule : actionGraphBuilder.getSuccessfullyConstructedBuildRules()) {
+      RuleGroup group = lastGroups.get(getGroup(buildRule.getBuildTarget()));
+      if (group != null) {
+        group.rules.add(buildRule);
+      }
+    }
+
+    // Invalidate the previous {@see ActionGraphBuilder}, which we no longer need, to make sure
+    // nobody unexpectedly accesses it after this point.
+    actionGraphBuilder.invalidate();
+
+    // Rules retained from older graphs may reference rules of groups which were rebuilt for the
+    // last graph, so they have to be dropped together with their dependents.
+    Map<BuildTarget, List<BuildTarget>> dependents = new HashMap<>();
+    for (Map.Entry<BuildTarget, RuleGroup> entry : ruleGroups.entrySet()) {
+      if (!lastGroups.containsKey(entry.getKey())) {
+        for (BuildTarget dep : entry.getValue().deps) {
+          dependents.computeIfAbsent(dep, ignored -> new ArrayList<>()).add(entry.getKey());
+        }
+      }
+    }
+    Deque<BuildTarget> evicted = new ArrayDeque<>(lastRebuiltGroups);
+    while (!evicted.isEmpty()) {
+      for (BuildTarget dependent : dependents.getOrDefault(evicted.pop(), ImmutableList.of())) {
+        if (ruleGroups.remove(dependent) != null) {
+          evicted.add(dependent);
+        }
+      }
+    }
+
+    ruleGroups.putAll(lastGroups);
+    ruleGroups.values().removeIf(group -> generation - group.generation > retainedGraphs);
+  }
+
+  private static BuildTarget getGroup(BuildTarget target) {
+    return target.withoutFlavors();
+  }
+
+  private Set<BuildTarget> findGroupsForNewNodes(TargetGraph targetGraph) {
+    ImmutableSet.Builder<BuildTarget> groupsForNewNodes = new ImmutableSet.Builder<>();
     Set<BuildTarget> explored = new HashSet<>();
     for (TargetNode<?> root : targetGraph.getNodesWithNoIncomingEdges()) {
-      findUnflavoredTargetsForNewNodes(root, targetGraph, explored, unflavoredTargetsForNewNodes);
+      findGroupsForNewNodes(root, targetGraph, explored, groupsForNewNodes);
     }
-    return unflavoredTargetsForNewNodes.build();
+    return groupsForNewNodes.build();
   }
 
-  private void findUnflavoredTargetsForNewNodes(
+  private void findGroupsForNewNodes(
       TargetNode<?> node,
       TargetGraph targetGraph,
       Set<BuildTarget> explored,
-      ImmutableSet.Builder<UnflavoredBuildTarget> unflavoredTargetsForNewNodes) {
+      ImmutableSet.Builder<BuildTarget> groupsForNewNodes) {
     if (explored.contains(node.getBuildTarget())) {
       return;
     }
     explored.add(node.getBuildTarget());
 
-    if (!lastTargetGraph.getExactOptional(node.getBuildTarget()).isPresent()) {
-      unflavoredTargetsForNewNodes.add(node.getBuildTarget().getUnflavoredBuildTarget());
+    if (getPreviousTargetNode(node.getBuildTarget()) == null) {
+      groupsForNewNodes.add(getGroup(node.getBuildTarget()));
     }
 
     for (TargetNode<?> child : targetGraph.getOutgoingNodesFor(node)) {
-      findUnflavoredTargetsForNewNodes(child, targetGraph, explored, unflavoredTargetsForNewNodes);
+      findGroupsForNewNodes(child, targetGraph, explored, groupsForNewNodes);
     }
   }
 
+  @Nullable
+  private TargetNode<?> getPreviousTargetNode(BuildTarget target) {
+    RuleGroup group = ruleGroups.get(getGroup(target));
+    return group == null ? null : group.nodes.get(target);
+  }
+
   private int addValidRulesToActionGraphBuilder(
       ActionGraphBuilder graphBuilder,
-      Set<UnflavoredBuildTarget> allUnflavoredTargetsInNewGraph,
-      Set<UnflavoredBuildTarget> invalidUnflavoredTargets) {
+      Set<BuildTarget> allGroupsInNewGraph,
+      Set<BuildTarget> invalidGroups) {
     int totalRuleCount = 0;
     int reusedRuleCount = 0;
-    for (BuildRule buildRule :
-        Objects.requireNonNull(lastActionGraphBuilder).getSuccessfullyConstructedBuildRules()) {
-      UnflavoredBuildTarget unflavoredTarget =
-          buildRule.getBuildTarget().getUnflavoredBuildTarget();
-      if (!invalidUnflavoredTargets.contains(unflavoredTarget)
-          && allUnflavoredTargetsInNewGraph.contains(unflavoredTarget)) {
+    for (Map.Entry<BuildTarget, RuleGroup> entry : ruleGroups.entrySet()) {
+      List<BuildRule> rules = entry.getValue().rules;
+      totalRuleCount += rules.size();
+      if (invalidGroups.contains(entry.getKey())
+          || !allGroupsInNewGraph.contains(entry.getKey())) {
+        continue;
+      }
+      for (BuildRule buildRule : rules) {
         graphBuilder.addToIndex(buildRule);
 
         // Update build rule resolvers for all reused rules. Build rules may use build rule
-        // resolvers to locate and construct other build rules during construction. Furthermore, if
-        // we didn't update them, we'd leak previous action graphs.
+        // resolvers to locate and construct other build rules during construction.
         buildRule.updateBuildRuleResolver(graphBuilder);
 
         reusedRuleCount++;
       }
-      totalRuleCount++;
     }
 
-    LOG.debug("reused %d of %d build rules", reusedRuleCount, totalRuleCount);
+    LOG.debug(
+        "reused %d of %d build rules retained from %d action graphs",
+        reusedRuleCount, totalRuleCount, Math.min(generation, retainedGraphs));
     return reusedRuleCount;
   }
 
   private void invalidateChangedTargets(
       TargetGraph targetGraph,
-      Set<UnflavoredBuildTarget> allUnflavoredTargetsInNewGraph,
-      Set<UnflavoredBuildTarget> invalidUnflavoredTargets,
-      Set<UnflavoredBuildTarget> unflavoredTargetsForNewNodes) {
+      Set<BuildTarget> allGroupsInNewGraph,
+      Set<BuildTarget> invalidGroups,
+      Set<BuildTarget> groupsForNewNodes) {
     Map<BuildTarget, Boolean> explored = new HashMap<>();
     for (TargetNode<?> root : targetGraph.getNodesWithNoIncomingEdges()) {
       invalidateChangedTargets(
-          root,
-          targetGraph,
-          explored,
-          allUnflavoredTargetsInNewGraph,
-          invalidUnflavoredTargets,
-          unflavoredTargetsForNewNodes);
+          root, targetGraph, explored, allGroupsInNewGraph, invalidGroups, groupsForNewNodes);
     }
   }
 
@@ -170,14 +258,14 @@ public class IncrementalActionGraphGenerator {
       TargetNode<?> node,
       TargetGraph targetGraph,
       Map<BuildTarget, Boolean> explored,
-      Set<UnflavoredBuildTarget> allUnflavoredTargetsInNewGraph,
-      Set<UnflavoredBuildTarget> invalidUnflavoredTargets,
-      Set<UnflavoredBuildTarget> unflavoredTargetsForNewNodes) {
+      Set<BuildTarget> allGroupsInNewGraph,
+      Set<BuildTarget> invalidGroups,
+      Set<BuildTarget> groupsForNewNodes) {
     if (explored.containsKey(node.getBuildTarget())) {
       return explored.get(node.getBuildTarget());
     }
 
-    allUnflavoredTargetsInNewGraph.add(node.getBuildTarget().getUnflavoredBuildTarget());
+    allGroupsInNewGraph.add(getGroup(node.getBuildTarget()));
 
     // Recursively check if any node in a child subgraph causes invalidation of its parent chain.
     boolean ancestorInvalidated = false;
@@ -186,23 +274,18 @@ public class IncrementalActionGraphGenerator {
       // subgraphs get properly invalidated in turn.
       ancestorInvalidated |=
           invalidateChangedTargets(
-              child,
-              targetGraph,
-              explored,
-              allUnflavoredTargetsInNewGraph,
-              invalidUnflavoredTargets,
-              unflavoredTargetsForNewNodes);
+              child, targetGraph, explored, allGroupsInNewGraph, invalidGroups, groupsForNewNodes);
     }
 
     boolean invalidateParent = false;
-    if (ancestorInvalidated || shouldInvalidateParentChain(node, unflavoredTargetsForNewNodes)) {
+    if (ancestorInvalidated || shouldInvalidateParentChain(node, groupsForNewNodes)) {
       if (LOG.isVerboseEnabled()) {
         LOG.verbose("invalidating target %s", node.getBuildTarget().toString());
       }
       invalidateParent = true;
 
       // This node is invalid. We can't load any of its flavors from cache.
-      invalidUnflavoredTargets.add(node.getBuildTarget().getUnflavoredBuildTarget());
+      invalidGroups.add(getGroup(node.getBuildTarget()));
     }
 
     explored.put(node.getBuildTarget(), invalidateParent);
@@ -210,10 +293,9 @@ public class IncrementalActionGraphGenerator {
   }
 
   private boolean shouldInvalidateParentChain(
-      TargetNode<?> targetNode, Set<UnflavoredBuildTarget> unflavoredTargetsForNewNodes) {
-    if (unflavoredTargetsForNewNodes.contains(
-        targetNode.getBuildTarget().getUnflavoredBuildTarget())) {
-      // If this node wasn't present in the previous graph, we need to invalidate, as flavored
+      TargetNode<?> targetNode, Set<BuildTarget> groupsForNewNodes) {
+    if (groupsForNewNodes.contains(getGroup(targetNode.getBuildTarget()))) {
+      // If this node wasn't present in the retained graphs, we need to invalidate, as flavored
       // versions of rules might be reconstructed differently. Furthermore, there are cases where a
       // flavored version of a node without the unflavored version shows up in the new target graph,
       // when the previous target graph had only the unflavored version, e.g. when a
@@ -227,33 +309,29 @@ public class IncrementalActionGraphGenerator {
       return true;
     }
 
-    if (lastTargetGraph != null) {
-      Optional<TargetNode<?>> previousTargetNode =
-          lastTargetGraph.getExactOptional(targetNode.getBuildTarget());
-      if (previousTargetNode.isPresent()) {
-        if (targetNode.getBuildTarget().getTargetConfiguration()
-            != ConfigurationForConfigurationTargets.INSTANCE) {
-          // Config nodes don't appear on action graphs
-          Preconditions.checkState(
-              lastActionGraphBuilder.getRuleOptional(targetNode.getBuildTarget()).isPresent(),
-              "Target not found in previous action graph: %s",
-              targetNode.getBuildTarget());
-        }
-        // If the target node has changed, then invalidate parent chains, as ancestors might
-        // generate their subgraphs differently given the change.
-        if (!targetNode.equals(previousTargetNode.get())) {
-          if (LOG.isVerboseEnabled()) {
-            LOG.verbose(
-                "target %s caused invalidation due to target node change",
-                targetNode.getBuildTarget().toString());
-          }
-          return true;
-        }
-      } else {
+    TargetNode<?> previousTargetNode = getPreviousTargetNode(targetNode.getBuildTarget());
+    if (previousTargetNode != null) {
+      if (targetNode.getBuildTarget().getTargetConfiguration()
+          != ConfigurationForConfigurationTargets.INSTANCE) {
+        // Config nodes don't appear on action graphs
         Preconditions.checkState(
-            unflavoredTargetsForNewNodes.contains(
-                targetNode.getBuildTarget().getUnflavoredBuildTarget()));
+            ruleGroups.get(getGroup(targetNode.getBuildTarget())).rules.stream()
+                .anyMatch(rule -> rule.getBuildTarget().equals(targetNode.getBuildTarget())),
+            "Target not found in previous action graph: %s",
+            targetNode.getBuildTarget());
+      }
+      // If the target node has changed, then invalidate parent chains, as ancestors might
+      // generate their subgraphs differently given the change.
+      if (!targetNode.equals(previousTargetNode)) {
+        if (LOG.isVerboseEnabled()) {
+          LOG.verbose(
+              "target %s caused invalidation due to target node change",
+              targetNode.getBuildTarget().toString());
+        }
+        return true;
       }
+    } else {
+      Preconditions.checkState(groupsForNewNodes.contains(getGroup(targetNode.getBuildTarget())));
     }
 
     // Incremental caching is only supported for {@link Description}s known to
@@ -272,4 +350,21 @@ public class IncrementalActionGraphGenerator {
     }
     return false;
   }
+
+  /**
+   * Build rules created for a single unflavored target in a single target configuration, along
+   * with the target nodes they were created from.
+   */
+  private static class RuleGroup {
+    /** Number of the action graph the rules were last used by. */
+    private final int generation;
+
+    private final Map<BuildTarget, TargetNode<?>> nodes = new HashMap<>();
+    private final Set<BuildTarget> deps = new HashSet<>();
+    private final List<BuildRule> rules = new ArrayList<>();
+
+    private RuleGroup(int generation) {
+      this.generation = generation;
+    }
+  }
 }
@@ -28,9 +28,12 @@ import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.config.registry.ConfigurationRuleRegistry;
 import com.facebook.buck.core.rules.config.registry.impl.ConfigurationRuleRegistryFactory;
 import com.facebook.buck.core.rules.resolver.impl.MultiThreadedActionGraphBuilder;
+import com.facebook.buck.core.rules.resolver.impl.RuleResolutionStats;
 import com.facebook.buck.core.rules.transformer.TargetNodeToBuildRuleTransformer;
 import com.facebook.buck.core.util.graph.AbstractBottomUpTraversal;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.ActionGraphPerfStatEvent;
+import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.util.concurrent.MoreFutures;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
@@ -39,6 +42,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
@@ -46,11 +50,24 @@ public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
 
   private final Supplier<ListeningExecutorService> executorSupplier;
   private final CellProvider cellProvider;
+  private final Optional<BuckEventBus> eventBus;
 
   public ParallelActionGraphFactory(
       Supplier<ListeningExecutorService> executorSupplier, CellProvider cellProvider) {
+    this(executorSupplier, cellProvider, Optional.empty());
+  }
+
+  /**
+   * @param eventBus if present, receives {@link ActionGraphPerfStatEvent.RuleResolution} events
+   *     with contention statistics of each action graph construction.
+   */
+  public ParallelActionGraphFactory(
+      Supplier<ListeningExecutorService> executorSupplier,
+      CellProvider cellProvider,
+      Optional<BuckEventBus> eventBus) {
     this.executorSupplier = executorSupplier;
     this.cellProvider = cellProvider;
+    this.eventBus = eventBus;
   }
 
   @Override
@@ -62,6 +79,7 @@ public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
     ListeningExecutorService executorService = executorSupplier.get();
     ConfigurationRuleRegistry configurationRuleRegistry =
         ConfigurationRuleRegistryFactory.createRegistry(targetGraph);
+    RuleResolutionStats resolutionStats = new RuleResolutionStats();
 
     ActionGraphBuilder graphBuilder =
         actionGraphBuilderDecorator.create(
@@ -71,13 +89,15 @@ public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
                     targetGraph,
                     configurationRuleRegistry,
                     nodeTransformer,
-                    cellProvider));
+                    cellProvider,
+                    resolutionStats));
 
     HashMap<BuildTarget, ListenableFuture<BuildRule>> futures = new HashMap<>();
 
     actionGraphCreationLifecycleListener.onCreate(graphBuilder);
 
     LOG.debug("start target graph walk");
+    long start = System.currentTimeMillis();
     new AbstractBottomUpTraversal<TargetNode<?>, RuntimeException>(targetGraph) {
       @Override
       public void visit(TargetNode<?> node) {
@@ -103,7 +123,21 @@ public class ParallelActionGraphFactory implements ActionGraphFactoryDelegate {
     // Wait for completion. The results are ignored as we only care about the rules populated in
     // the graphBuilder, which is a superset of the rules generated directly from target nodes.
     MoreFutures.getUncheckedInterruptibly(Futures.allAsList(futures.values()));
-    LOG.debug("end target graph walk");
+    long elapsedMillis = System.currentTimeMillis() - start;
+    LOG.debug(
+        "end target graph walk: %d tasks in %d ms, %d contended waits (%d ms)",
+        resolutionStats.getComputedTasks(),
+        elapsedMillis,
+        resolutionStats.getContendedWaits(),
+        resolutionStats.getContendedWaitMillis());
+    eventBus.ifPresent(
+        bus ->
+            bus.post(
+                ActionGraphPerfStatEvent.ruleResolution(
+                    elapsedMillis,
+                    resolutionStats.getComputedTasks(),
+                    resolutionStats.getContendedWaits(),
+                    resolutionStats.getContendedWaitMillis())));
 
     return ActionGraphAndBuilder.of(new ActionGraph(graphBuilder.getBuildRules()), graphBuilder);
   }
@@ -32,6 +32,7 @@ import com.facebook.buck.util.hashing.StringHashing;
 import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.hash.HashCode;
@@ -45,8 +46,10 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -69,6 +72,7 @@ public class TargetGraphHashing {
   private final RuleKeyConfiguration ruleKeyConfiguration;
   private final Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider;
   private final HashFunction hashFunction;
+  private final Optional<TargetNodeHashCache> hashCache;
 
   public TargetGraphHashing(
       BuckEventBus eventBus,
@@ -79,6 +83,33 @@ public class TargetGraphHashing {
       RuleKeyConfiguration ruleKeyConfiguration,
       Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider,
       HashFunction hashFunction) {
+    this(
+        eventBus,
+        targetGraph,
+        fileHashLoader,
+        roots,
+        executor,
+        ruleKeyConfiguration,
+        targetNodeRawAttributesProvider,
+        hashFunction,
+        Optional.empty());
+  }
+
+  /**
+   * @param hashCache if present, hashes of nodes that did not change since they were stored in the
+   *     cache are reused instead of being recomputed, and newly computed hashes are stored.
+   */
+  public TargetGraphHashing(
+      BuckEventBus eventBus,
+      TargetGraph targetGraph,
+      FileHashLoader fileHashLoader,
+      Iterable<TargetNode<?>> roots,
+      ListeningExecutorService executor,
+      RuleKeyConfiguration ruleKeyConfiguration,
+      Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider,
+      HashFunction hashFunction,
+      Optional<TargetNodeHashCache> hashCache) {
+    this.hashCache = hashCache;
     this.eventBus = eventBus;
     this.targetGraph = targetGraph;
     this.fileHashLoader = fileHashLoader;
@@ -107,13 +138,30 @@ public class TargetGraphHashing {
 
     private final Map<BuildTarget, ListenableFuture<HashCode>> futures =
         new ConcurrentHashMap<>(targetGraph.getSize());
+    private final LongAdder reusedHashes = new LongAdder();
+
+    /** @return hashes of the contents of all input files and directories of the node. */
+    private ImmutableList<HashCode> hashInputs(TargetNode<?> node) {
+      ProjectFilesystem cellFilesystem = node.getFilesystem();
+      ImmutableList.Builder<HashCode> inputHashes = ImmutableList.builder();
+      for (ForwardRelativePath input : ImmutableSortedSet.copyOf(node.getInputs())) {
+        try {
+          inputHashes.add(fileHashLoader.get(cellFilesystem.resolve(input)));
+        } catch (IOException e) {
+          throw new HumanReadableException(
+              e, "Error reading path %s for rule %s", input, node.getBuildTarget());
+        }
+      }
+      return inputHashes.build();
+    }
 
     /**
      * The initial hashing phase of a node, which hashes everything except its dependencies.
      *
      * @return the partial {@link Hasher}.
      */
-    private Hasher startNode(TargetNode<?> node, Object nodeAttributes) {
+    private Hasher startNode(
+        TargetNode<?> node, Object nodeAttributes, ImmutableList<HashCode> inputHashes) {
       Hasher hasher = hashFunction.newHasher();
 
       // Hash the node's build target and rules.
@@ -122,15 +170,8 @@ public class TargetGraphHashing {
       JsonObjectHashing.hashJsonObject(hasher, nodeAttributes);
       hasher.putString(ruleKeyConfiguration.getCoreKey(), StandardCharsets.UTF_8);
 
-      // Hash the contents of all input files and directories.
-      ProjectFilesystem cellFilesystem = node.getFilesystem();
-      for (ForwardRelativePath input : ImmutableSortedSet.copyOf(node.getInputs())) {
-        try {
-          hasher.putBytes(fileHashLoader.get(cellFilesystem.resolve(input)).asBytes());
-        } catch (IOException e) {
-          throw new HumanReadableException(
-              e, "Error reading path %s for rule %s", input, node.getBuildTarget());
-        }
+      for (HashCode inputHash : inputHashes) {
+        hasher.putBytes(inputHash.asBytes());
       }
 
       return hasher;
@@ -179,31 +220,89 @@ public class TargetGraphHashing {
       // *starting* to hash a node after it's dependencies have completed.
       ListenableFuture<HashCode> future = futures.get(node.getBuildTarget());
       if (future == null) {
-        future =
-            Futures.transformAsync(
-                // Start hashing a node.
-                Futures.transform(
-                    targetNodeRawAttributesProvider.apply(node),
-                    attributes -> startNode(node, attributes),
-                    executor),
-                // Wait for all dependencies to finish hashing.
-                hasher ->
-                    Futures.transform(
-                        getDepPairsFuture(node),
-                        depPairs -> finishNode(node.getBuildTarget(), hasher, depPairs),
-                        executor),
-                executor);
+        if (hashCache.isPresent()) {
+          future =
+              Futures.transformAsync(
+                  executor.submit(() -> hashInputs(node)),
+                  inputHashes -> getHashIfUnchanged(node, hashCache.get(), inputHashes),
+                  executor);
+        } else {
+          future = computeHash(node, Optional.empty());
+        }
         futures.put(node.getBuildTarget(), future);
       }
       return future;
     }
 
+    /**
+     * Reuses the cached hash of a node if neither the node, nor its inputs, nor the hashes of its
+     * dependencies changed. A node that changed is rehashed right away, in parallel with its
+     * dependencies, as there is nothing to gain by waiting for them.
+     */
+    private ListenableFuture<HashCode> getHashIfUnchanged(
+        TargetNode<?> node, TargetNodeHashCache cache, ImmutableList<HashCode> inputHashes) {
+      Optional<TargetNodeHashCache.Entry> entry =
+          cache.getIfNodeUnchanged(
+              node, hashFunction, ruleKeyConfiguration.getCoreKey(), inputHashes);
+      if (!entry.isPresent()) {
+        return computeHash(node, Optional.of(inputHashes));
+      }
+      return Futures.transformAsync(
+          getDepPairsFuture(node),
+          depPairs -> {
+            Optional<HashCode> hash = entry.get().getHashIfDepsUnchanged(depPairs);
+            if (hash.isPresent()) {
+              reusedHashes.increment();
+              cache.recordReuse();
+              return Futures.immediateFuture(hash.get());
+            }
+            return computeHash(node, Optional.of(inputHashes));
+          },
+          executor);
+    }
+
+    private ListenableFuture<HashCode> computeHash(
+        TargetNode<?> node, Optional<ImmutableList<HashCode>> knownInputHashes) {
+      return Futures.transformAsync(
+          // Start hashing a node.
+          Futures.transform(
+              targetNodeRawAttributesProvider.apply(node),
+              attributes -> {
+                ImmutableList<HashCode> inputHashes =
+                    knownInputHashes.orElseGet(() -> hashInputs(node));
+                return new Pair<>(inputHashes, startNode(node, attributes, inputHashes));
+              },
+              executor),
+          // Wait for all dependencies to finish hashing.
+          inputHashesAndHasher ->
+              Futures.transform(
+                  getDepPairsFuture(node),
+                  depPairs -> {
+                    HashCode hash =
+                        finishNode(
+                            node.getBuildTarget(), inputHashesAndHasher.getSecond(), depPairs);
+                    hashCache.ifPresent(
+                        cache ->
+                            cache.put(
+                                node,
+                                hashFunction,
+                                ruleKeyConfiguration.getCoreKey(),
+                                inputHashesAndHasher.getFirst(),
+                                depPairs,
+                                hash));
+                    return hash;
+                  },
+                  executor),
+          executor);
+    }
+
     /**
      * @return a map of all {@link BuildTarget}s to {@link HashCode}s for the graph defined by the
      *     given roots.
      */
     private ImmutableMap<BuildTarget, HashCode> run()
         throws InterruptedException, ExecutionException {
+      hashCache.ifPresent(cache -> cache.retainNodesOf(targetGraph));
 
       // Kick off future chain and wait for roots to complete.  Due to the recursive nature of
       // target hashes, once these have completed, all transitive deps should be finished as well.
@@ -214,6 +313,9 @@ public class TargetGraphHashing {
       for (Map.Entry<BuildTarget, ListenableFuture<HashCode>> ent : futures.entrySet()) {
         results.put(ent.getKey(), ent.getValue().get());
       }
+      if (hashCache.isPresent()) {
+        LOG.debug("Reused %d of %d target hashes", reusedHashes.sum(), futures.size());
+      }
       return results.build();
     }
   }
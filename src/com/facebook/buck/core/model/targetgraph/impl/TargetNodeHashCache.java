@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.model.targetgraph.impl;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.targetgraph.TargetGraph;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.util.types.Pair;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Target hashes computed by {@link TargetGraphHashing} that are kept between commands, so hashing
+ * the target graph again only rehashes nodes whose build file, input files or dependencies
+ * changed.
+ *
+ * <p>A hash is reused for the same {@link TargetNode} instance, which the daemon parser keeps for
+ * as long as the node's build file does not change, when the contents of its input files and the
+ * hashes of its dependencies are the same as when the hash was computed. Any change therefore
+ * rehashes the changed node and the nodes on reverse dependency paths from it, and nothing else.
+ *
+ * <p>Only the nodes of the most recently hashed graph are kept, and everything is dropped when the
+ * file watcher overflows.
+ */
+public class TargetNodeHashCache {
+  private static final Logger LOG = Logger.get(TargetNodeHashCache.class);
+
+  private final ConcurrentHashMap<BuildTarget, Entry> entries = new ConcurrentHashMap<>();
+  private final LongAdder reusedCount = new LongAdder();
+
+  /** Drops the hashes of nodes that are not in the given graph, which can never be reused. */
+  void retainNodesOf(TargetGraph targetGraph) {
+    entries
+        .entrySet()
+        .removeIf(
+            entry ->
+                targetGraph.getOptional(entry.getKey()).orElse(null) != entry.getValue().node);
+  }
+
+  /**
+   * @return the cached entry for the node if it was hashed from the same node instance with the
+   *     same hash function, core key and input file contents.
+   */
+  Optional<Entry> getIfNodeUnchanged(
+      TargetNode<?> node, HashFunction hashFunction, String coreKey, List<HashCode> inputHashes) {
+    Entry entry = entries.get(node.getBuildTarget());
+    if (entry == null
+        || entry.node != node
+        || !entry.hashFunction.equals(hashFunction)
+        || !entry.coreKey.equals(coreKey)
+        || !entry.inputHashes.equals(inputHashes)) {
+      return Optional.empty();
+    }
+    return Optional.of(entry);
+  }
+
+  void put(
+      TargetNode<?> node,
+      HashFunction hashFunction,
+      String coreKey,
+      List<HashCode> inputHashes,
+      List<Pair<BuildTarget, HashCode>> depHashes,
+      HashCode hash) {
+    entries.put(
+        node.getBuildTarget(),
+        new Entry(
+            node,
+            hashFunction,
+            coreKey,
+            ImmutableList.copyOf(inputHashes),
+            ImmutableList.copyOf(depHashes),
+            hash));
+  }
+
+  void recordReuse() {
+    reusedCount.increment();
+  }
+
+  /** Drops all cached hashes. */
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  @Subscribe
+  public void invalidateBasedOn(WatchmanOverflowEvent event) {
+    LOG.debug("Dropping cached target hashes on watch event %s.", event);
+    invalidateAll();
+  }
+
+  /** @return number of cached hashes. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** @return number of times a cached hash was reused. */
+  public long getReusedCount() {
+    return reusedCount.sum();
+  }
+
+  /** Hash of a node along with everything it was computed from. */
+  static class Entry {
+    private final TargetNode<?> node;
+    private final HashFunction hashFunction;
+    private final String coreKey;
+    private final ImmutableList<HashCode> inputHashes;
+    private final ImmutableList<Pair<BuildTarget, HashCode>> depHashes;
+    private final HashCode hash;
+
+    private Entry(
+        TargetNode<?> node,
+        HashFunction hashFunction,
+        String coreKey,
+        ImmutableList<HashCode> inputHashes,
+        ImmutableList<Pair<BuildTarget, HashCode>> depHashes,
+        HashCode hash) {
+      this.node = node;
+      this.hashFunction = hashFunction;
+      this.coreKey = coreKey;
+      this.inputHashes = inputHashes;
+      this.depHashes = depHashes;
+      this.hash = hash;
+    }
+
+    /** @return the cached hash if it was computed from the same dependency hashes. */
+    Optional<HashCode> getHashIfDepsUnchanged(List<Pair<BuildTarget, HashCode>> depHashes) {
+      return Objects.equals(this.depHashes, depHashes) ? Optional.of(hash) : Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.parser;
+
+import com.facebook.buck.core.filesystems.RelPath;
+import com.facebook.buck.core.graph.transformation.GraphEngineCache;
+import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.io.watchman.WatchmanEvent.Kind;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.Subscribe;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Stores locations of all build packages of a cell as a trie of path components, so recursive
+ * build target patterns like {@code //foo/...} can be resolved without file system or Watchman
+ * queries.
+ *
+ * <p>The trie is populated lazily: once package paths for a recursive pattern are discovered, the
+ * whole subtree below the pattern base path is known. After that, creation and removal of build
+ * files reported by Watchman update the trie in place instead of invalidating it, so the subtree
+ * stays complete for as long as the daemon lives, unless Watchman overflows.
+ *
+ * <p>Only recursive patterns are served from this cache; single package patterns are cheap to
+ * resolve from {@link com.facebook.buck.core.files.DirectoryListCache}.
+ */
+public class BuildPackagePathsCache
+    implements GraphEngineCache<BuildTargetPatternToBuildPackagePathKey, BuildPackagePaths> {
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  @GuardedBy("lock")
+  private Node root = new Node();
+
+  private final FileSystem filesystem;
+  private final Invalidator invalidator;
+
+  private BuildPackagePathsCache(Path rootPath, String buildFileName) {
+    filesystem = rootPath.getFileSystem();
+    invalidator = new Invalidator(this, rootPath, buildFileName);
+  }
+
+  /**
+   * Create a new instance of {@link BuildPackagePathsCache}
+   *
+   * @param rootPath Absolute path to the root folder of the cell for which packages are cached
+   * @param buildFileName Name of the build file that determines a package root folder, for example
+   *     'BUCK'
+   */
+  public static BuildPackagePathsCache of(Path rootPath, String buildFileName) {
+    return new BuildPackagePathsCache(rootPath, buildFileName);
+  }
+
+  @Override
+  public Optional<BuildPackagePaths> get(BuildTargetPatternToBuildPackagePathKey key) {
+    if (!key.getPattern().isRecursive()) {
+      return Optional.empty();
+    }
+
+    Path basePath = getBasePath(key);
+    lock.readLock().lock();
+    try {
+      Node node = root;
+      boolean complete = node.complete;
+      for (String component : toComponents(basePath)) {
+        node = node.children.get(component);
+        if (node == null) {
+          // Folders without packages are not stored, let the computation verify that the folder
+          // exists and report an error otherwise
+          return Optional.empty();
+        }
+        complete |= node.complete;
+      }
+      if (!complete) {
+        return Optional.empty();
+      }
+      ImmutableSortedSet.Builder<Path> packageRoots = ImmutableSortedSet.naturalOrder();
+      collectPackageRoots(node, basePath, packageRoots);
+      return Optional.of(ImmutableBuildPackagePaths.of(packageRoots.build()));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(BuildTargetPatternToBuildPackagePathKey key, BuildPackagePaths value) {
+    if (!key.getPattern().isRecursive()) {
+      return;
+    }
+
+    Path basePath = getBasePath(key);
+    lock.writeLock().lock();
+    try {
+      Node base = getOrCreateNode(toComponents(basePath));
+      base.children.clear();
+      base.isPackage = false;
+      for (Path packageRoot : value.getPackageRoots()) {
+        getOrCreateNode(toComponents(packageRoot)).isPackage = true;
+      }
+      base.complete = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private Path getBasePath(BuildTargetPatternToBuildPackagePathKey key) {
+    return key.getPattern().getCellRelativeBasePath().getPath().toPath(filesystem);
+  }
+
+  private static List<String> toComponents(Path path) {
+    List<String> components = new ArrayList<>(path.getNameCount());
+    if (MorePaths.isEmpty(path)) {
+      return components;
+    }
+    for (Path component : path) {
+      components.add(component.toString());
+    }
+    return components;
+  }
+
+  @GuardedBy("lock")
+  private Node getOrCreateNode(List<String> components) {
+    Node node = root;
+    for (String component : components) {
+      node = node.children.computeIfAbsent(component, ignored -> new Node());
+    }
+    return node;
+  }
+
+  private static void collectPackageRoots(
+      Node node, Path path, ImmutableSortedSet.Builder<Path> packageRoots) {
+    if (node.isPackage) {
+      packageRoots.add(path);
+    }
+    for (Map.Entry<String, Node> child : node.children.entrySet()) {
+      collectPackageRoots(child.getValue(), path.resolve(child.getKey()), packageRoots);
+    }
+  }
+
+  /**
+   * Adds or removes a package rooted at {@code packageRoot} if the trie is complete for any of its
+   * ancestors; otherwise the package is going to be discovered once a pattern is resolved.
+   */
+  private void updatePackage(Path packageRoot, boolean isPackage) {
+    List<String> components = toComponents(packageRoot);
+    lock.writeLock().lock();
+    try {
+      Node node = root;
+      boolean complete = node.complete;
+      List<Node> ancestors = new ArrayList<>(components.size() + 1);
+      ancestors.add(node);
+      for (String component : components) {
+        Node child = node.children.get(component);
+        if (child == null) {
+          if (!isPackage || !complete) {
+            return;
+          }
+          child = new Node();
+          node.children.put(component, child);
+        }
+        node = child;
+        complete |= node.complete;
+        ancestors.add(node);
+      }
+      if (!complete) {
+        return;
+      }
+      node.isPackage = isPackage;
+      if (!isPackage) {
+        prune(ancestors, components);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Removes nodes that do not carry any information anymore, starting from the deepest one */
+  private static void prune(List<Node> ancestors, List<String> components) {
+    for (int i = components.size(); i > 0; i--) {
+      Node node = ancestors.get(i);
+      if (node.isPackage || node.complete || !node.children.isEmpty()) {
+        return;
+      }
+      ancestors.get(i - 1).children.remove(components.get(i - 1));
+    }
+  }
+
+  private void clear() {
+    lock.writeLock().lock();
+    try {
+      root = new Node();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** @return class that listens to watchman events and updates internal cache state */
+  public Invalidator getInvalidator() {
+    return invalidator;
+  }
+
+  /** Folder in the package trie */
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+
+    /** Whether this folder contains a build file */
+    private boolean isPackage;
+
+    /** Whether all packages below this folder are known */
+    private boolean complete;
+  }
+
+  /**
+   * Subscribes to watchman event and updates internal state of a provided {@link
+   * BuildPackagePathsCache}
+   */
+  public static class Invalidator {
+    private final BuildPackagePathsCache cache;
+    private final Path rootPath;
+    private final String buildFileName;
+
+    private Invalidator(BuildPackagePathsCache cache, Path rootPath, String buildFileName) {
+      this.cache = cache;
+      this.rootPath = rootPath;
+      this.buildFileName = buildFileName;
+    }
+
+    /** Invoked asynchronously by event bus when file system change is detected with Watchman */
+    @Subscribe
+    public void onFileSystemChange(WatchmanPathEvent event) {
+      if (event.getKind() == Kind.MODIFY) {
+        // file modifications do not add or remove packages, do nothing
+        return;
+      }
+
+      if (!rootPath.equals(event.getCellPath().getPath())) {
+        // must be same cell
+        return;
+      }
+
+      Path fileName = event.getPath().getPath().getFileName();
+      if (fileName == null || !buildFileName.equals(fileName.toString())) {
+        return;
+      }
+
+      RelPath packageRoot = MorePaths.getParentOrEmpty(event.getPath());
+      cache.updatePackage(packageRoot.getPath(), event.getKind() == Kind.CREATE);
+    }
+
+    /**
+     * Invoked asynchronously by event bus when Watchman detects too many files changed or unable to
+     * detect changes, this should drop the cache
+     */
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void onFileSystemChange(WatchmanOverflowEvent event) {
+      cache.clear();
+    }
+  }
+}
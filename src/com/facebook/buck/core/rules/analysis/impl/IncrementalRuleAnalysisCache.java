@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.rules.analysis.impl;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.targetgraph.TargetGraph;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.rules.analysis.RuleAnalysisKey;
+import com.facebook.buck.core.rules.analysis.RuleAnalysisResult;
+import com.facebook.buck.core.rules.analysis.cache.RuleAnalysisCache;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rule analysis results that outlive a single command, so that analysis of targets that did not
+ * change is not repeated by subsequent commands of the daemon.
+ *
+ * <p>A result is reused only if the {@link TargetNode} it was computed from is equal to the node in
+ * the current target graph, and every dependency result it was computed from is itself reused.
+ * This way any change to a node invalidates the analysis of all its transitive dependents, while
+ * independent parts of the graph keep their results.
+ *
+ * <p>Results are checked against a target graph through the {@link RuleAnalysisCache} returned by
+ * {@link #forTargetGraph(TargetGraph)}.
+ */
+public class IncrementalRuleAnalysisCache {
+
+  private final ConcurrentHashMap<RuleAnalysisKey, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Drops the results of targets that are not in the given graph, and returns a {@link
+   * RuleAnalysisCache} for computing rule analysis of the graph that reuses valid results of
+   * previous graphs and stores newly computed ones for later graphs.
+   */
+  public Session forTargetGraph(TargetGraph targetGraph) {
+    entries.keySet().removeIf(key -> !targetGraph.getOptional(key.getBuildTarget()).isPresent());
+    return new Session(targetGraph);
+  }
+
+  /** Drops all stored results. */
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  /** @return number of stored results. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** A view of the stored results that are valid for a single target graph. */
+  public class Session implements RuleAnalysisCache {
+
+    private final TargetGraph targetGraph;
+    private final ConcurrentHashMap<RuleAnalysisKey, Optional<RuleAnalysisResult>> validated =
+        new ConcurrentHashMap<>();
+    private final LongAdder reused = new LongAdder();
+
+    private Session(TargetGraph targetGraph) {
+      this.targetGraph = targetGraph;
+    }
+
+    @Override
+    public Optional<RuleAnalysisResult> get(RuleAnalysisKey key) {
+      Optional<RuleAnalysisResult> result = validated.get(key);
+      if (result != null) {
+        return result;
+      }
+      result = validate(key);
+      // Concurrent validations of the same key produce the same answer, so the first one wins.
+      Optional<RuleAnalysisResult> previous = validated.putIfAbsent(key, result);
+      if (previous != null) {
+        return previous;
+      }
+      if (result.isPresent()) {
+        reused.increment();
+      }
+      return result;
+    }
+
+    private Optional<RuleAnalysisResult> validate(RuleAnalysisKey key) {
+      Entry entry = entries.get(key);
+      if (entry == null) {
+        return Optional.empty();
+      }
+      Optional<TargetNode<?>> node = targetGraph.getOptional(key.getBuildTarget());
+      if (!node.isPresent() || !node.get().equals(entry.node)) {
+        entries.remove(key, entry);
+        return Optional.empty();
+      }
+      for (Map.Entry<RuleAnalysisKey, RuleAnalysisResult> dep : entry.deps.entrySet()) {
+        Optional<RuleAnalysisResult> depResult = get(dep.getKey());
+        if (!depResult.isPresent() || depResult.get() != dep.getValue()) {
+          entries.remove(key, entry);
+          return Optional.empty();
+        }
+      }
+      return Optional.of(entry.result);
+    }
+
+    @Override
+    public void put(RuleAnalysisKey key, RuleAnalysisResult result) {
+      TargetNode<?> node = targetGraph.get(key.getBuildTarget());
+      // Dependencies are computed, or reused, before their dependents, so every result this one
+      // was computed from is known to this session by now. Dependencies that were not analysed did
+      // not contribute to the result.
+      ImmutableMap.Builder<RuleAnalysisKey, RuleAnalysisResult> deps = ImmutableMap.builder();
+      for (BuildTarget dep : node.getParseDeps()) {
+        RuleAnalysisKey depKey = RuleAnalysisKey.of(dep);
+        Optional<RuleAnalysisResult> depResult = validated.get(depKey);
+        if (depResult != null && depResult.isPresent()) {
+          deps.put(depKey, depResult.get());
+        }
+      }
+      validated.put(key, Optional.of(result));
+      entries.put(key, new Entry(node, result, deps.build()));
+    }
+
+    /** @return number of results of previous target graphs that were reused. */
+    public long getReusedCount() {
+      return reused.sum();
+    }
+  }
+
+  private static class Entry {
+    private final TargetNode<?> node;
+    private final RuleAnalysisResult result;
+    private final ImmutableMap<RuleAnalysisKey, RuleAnalysisResult> deps;
+
+    private Entry(
+        TargetNode<?> node,
+        RuleAnalysisResult result,
+        ImmutableMap<RuleAnalysisKey, RuleAnalysisResult> deps) {
+      this.node = node;
+      this.result = result;
+      this.deps = deps;
+    }
+  }
+}
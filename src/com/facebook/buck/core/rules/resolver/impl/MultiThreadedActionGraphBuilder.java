@@ -41,7 +41,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
@@ -71,6 +74,11 @@ import javax.annotation.Nullable;
  * directly asked for (i.e. stack traces will look nice). In the case where work is done by another
  * thread, stack traces will be captured on that thread and then re-thrown from the thread that
  * requested the work.
+ *
+ * <p>Waiting for a rule that is being created by another thread is a managed block, so when the
+ * executor is a {@link ForkJoinPool} it can compensate with another worker instead of losing
+ * parallelism while popular rules are created. Such waits are counted in {@link
+ * RuleResolutionStats}.
  */
 public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder {
   // TODO(cjhopman): We could consider rewriting the stack trace for work that throws on the
@@ -89,6 +97,7 @@ public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder
   private final ConcurrentHashMap<BuildTarget, Task<BuildRule>> buildRuleIndex;
   private final Parallelizer parallelizer;
   private final Cells cells;
+  private final RuleResolutionStats resolutionStats;
 
   public MultiThreadedActionGraphBuilder(
       ListeningExecutorService executor,
@@ -96,10 +105,27 @@ public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder
       ConfigurationRuleRegistry configurationRuleRegistry,
       TargetNodeToBuildRuleTransformer buildRuleGenerator,
       CellProvider cellProvider) {
+    this(
+        executor,
+        targetGraph,
+        configurationRuleRegistry,
+        buildRuleGenerator,
+        cellProvider,
+        new RuleResolutionStats());
+  }
+
+  public MultiThreadedActionGraphBuilder(
+      ListeningExecutorService executor,
+      TargetGraph targetGraph,
+      ConfigurationRuleRegistry configurationRuleRegistry,
+      TargetNodeToBuildRuleTransformer buildRuleGenerator,
+      CellProvider cellProvider,
+      RuleResolutionStats resolutionStats) {
     this.targetGraph = targetGraph;
     this.configurationRuleRegistry = configurationRuleRegistry;
     this.buildRuleGenerator = buildRuleGenerator;
     this.cells = cellProvider.getRootCell();
+    this.resolutionStats = resolutionStats;
 
     this.executor = executor;
 
@@ -125,6 +151,11 @@ public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder
         };
   }
 
+  /** @return counters of work done and contention hit while resolving rules. */
+  public RuleResolutionStats getResolutionStats() {
+    return resolutionStats;
+  }
+
   @Override
   public Iterable<BuildRule> getBuildRules() {
     Preconditions.checkState(isValid);
@@ -294,7 +325,7 @@ public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder
     return new Task<>(value);
   }
 
-  private static final class Task<V> {
+  private final class Task<V> {
     @Nullable private volatile Thread workThread;
     // The work to be performed. This field should be set to null when the work no longer need to
     // be performed in order to avoid any lambda captures from being retained.
@@ -318,9 +349,38 @@ public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder
 
     private V get() {
       tryComplete();
+      if (!future.isDone()) {
+        awaitCompletionByOtherThread();
+      }
       return MoreFutures.getUncheckedInterruptibly(future);
     }
 
+    private void awaitCompletionByOtherThread() {
+      long start = System.nanoTime();
+      try {
+        ForkJoinPool.managedBlock(
+            new ForkJoinPool.ManagedBlocker() {
+              @Override
+              public boolean block() throws InterruptedException {
+                try {
+                  future.get();
+                } catch (ExecutionException | CancellationException e) {
+                  // Rethrown when the caller gets the value of the future.
+                }
+                return true;
+              }
+
+              @Override
+              public boolean isReleasable() {
+                return future.isDone();
+              }
+            });
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      resolutionStats.recordContendedWait(System.nanoTime() - start);
+    }
+
     private @Nullable V getOrNullOnExecutionException() {
       try {
         return get();
@@ -334,7 +394,9 @@ public class MultiThreadedActionGraphBuilder extends AbstractActionGraphBuilder
     }
 
     private void tryComplete() {
-      tryComplete(Supplier::get);
+      if (tryComplete(Supplier::get)) {
+        resolutionStats.recordComputedTask();
+      }
     }
 
     private boolean tryComplete(Function<Supplier<V>, V> worker) {
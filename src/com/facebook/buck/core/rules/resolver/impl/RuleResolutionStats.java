@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.rules.resolver.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing how much work {@link MultiThreadedActionGraphBuilder} did and how often
+ * threads had to wait for a rule that was being created by another thread.
+ */
+public class RuleResolutionStats {
+
+  private final LongAdder computedTasks = new LongAdder();
+  private final LongAdder contendedWaits = new LongAdder();
+  private final LongAdder contendedWaitNanos = new LongAdder();
+
+  void recordComputedTask() {
+    computedTasks.increment();
+  }
+
+  void recordContendedWait(long waitNanos) {
+    contendedWaits.increment();
+    contendedWaitNanos.add(waitNanos);
+  }
+
+  /** @return number of rule creations and parallelized transforms that were performed. */
+  public long getComputedTasks() {
+    return computedTasks.sum();
+  }
+
+  /** @return number of times a thread waited for a rule that another thread was creating. */
+  public long getContendedWaits() {
+    return contendedWaits.sum();
+  }
+
+  /** @return total time threads spent waiting for rules that other threads were creating. */
+  public long getContendedWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(contendedWaitNanos.sum());
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.util.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable snapshot of a directed graph in compressed sparse row form: every node is assigned a
+ * dense integer id, and outgoing and incoming edges of all nodes are stored in two flat {@code
+ * int} arrays each.
+ *
+ * <p>Sets of nodes are represented as {@link BitSet}s of node ids, so unions and intersections of
+ * large node sets are word-wise operations, and traversals do not allocate per-node objects.
+ * Traversals expand the graph level by level and process large levels in parallel.
+ *
+ * @param <T> the type of object stored as nodes in this graph
+ */
+public final class CompactDirectedGraph<T> {
+
+  /** Levels with fewer nodes than this are expanded on the calling thread. */
+  private static final int PARALLEL_LEVEL_SIZE = 1024;
+
+  /** Direction in which edges are followed during a traversal. */
+  public enum Direction {
+    /** From nodes to their dependencies. */
+    OUTGOING,
+    /** From nodes to their dependents. */
+    INCOMING,
+  }
+
+  private final Map<T, Integer> ids;
+  private final List<T> nodes;
+  private final int[] outgoingOffsets;
+  private final int[] outgoingEdges;
+  private final int[] incomingOffsets;
+  private final int[] incomingEdges;
+
+  private CompactDirectedGraph(
+      Map<T, Integer> ids,
+      List<T> nodes,
+      int[] outgoingOffsets,
+      int[] outgoingEdges,
+      int[] incomingOffsets,
+      int[] incomingEdges) {
+    this.ids = ids;
+    this.nodes = nodes;
+    this.outgoingOffsets = outgoingOffsets;
+    this.outgoingEdges = outgoingEdges;
+    this.incomingOffsets = incomingOffsets;
+    this.incomingEdges = incomingEdges;
+  }
+
+  /**
+   * Creates a snapshot of the current nodes and edges of {@code graph}. Edges of every node keep
+   * the order in which {@code graph} returns them.
+   */
+  public static <T> CompactDirectedGraph<T> of(TraversableGraph<T> graph) {
+    return of(graph, null);
+  }
+
+  /**
+   * Creates a snapshot of the current nodes and edges of {@code graph}.
+   *
+   * @param outgoingOrder if not {@code null}, order of the outgoing edges of every node, otherwise
+   *     edges keep the order in which {@code graph} returns them.
+   */
+  public static <T> CompactDirectedGraph<T> of(
+      TraversableGraph<T> graph, @Nullable Comparator<? super T> outgoingOrder) {
+    List<T> nodes = new ArrayList<>();
+    Map<T, Integer> ids = new HashMap<>();
+    for (T node : graph.getNodes()) {
+      ids.put(node, nodes.size());
+      nodes.add(node);
+    }
+
+    int nodeCount = nodes.size();
+    int[] outgoingOffsets = new int[nodeCount + 1];
+    int[] incomingOffsets = new int[nodeCount + 1];
+    int[] outgoingEdges = new int[16];
+    int[] incomingEdges = new int[16];
+    for (int id = 0; id < nodeCount; id++) {
+      T node = nodes.get(id);
+      Iterable<T> sinks = graph.getOutgoingNodesFor(node);
+      if (outgoingOrder != null) {
+        List<T> sortedSinks = Lists.newArrayList(sinks);
+        sortedSinks.sort(outgoingOrder);
+        sinks = sortedSinks;
+      }
+      outgoingEdges = addRow(outgoingEdges, outgoingOffsets, id, sinks, ids);
+      Iterable<T> sources = graph.getIncomingNodesFor(node);
+      incomingEdges = addRow(incomingEdges, incomingOffsets, id, sources, ids);
+    }
+
+    return new CompactDirectedGraph<>(
+        ids,
+        nodes,
+        outgoingOffsets,
+        Arrays.copyOf(outgoingEdges, outgoingOffsets[nodeCount]),
+        incomingOffsets,
+        Arrays.copyOf(incomingEdges, incomingOffsets[nodeCount]));
+  }
+
+  /**
+   * Appends the ids of {@code neighbors} to {@code edges} as the row of node {@code id}.
+   *
+   * @return {@code edges} or a larger copy of it if it had to grow.
+   */
+  private static <T> int[] addRow(
+      int[] edges, int[] offsets, int id, Iterable<T> neighbors, Map<T, Integer> ids) {
+    int edgeCount = offsets[id];
+    for (T neighbor : neighbors) {
+      Integer neighborId = ids.get(neighbor);
+      Preconditions.checkState(
+          neighborId != null, "Edge to %s leads outside of the graph", neighbor);
+      if (edgeCount == edges.length) {
+        edges = Arrays.copyOf(edges, edgeCount * 2);
+      }
+      edges[edgeCount++] = neighborId;
+    }
+    offsets[id + 1] = edgeCount;
+    return edges;
+  }
+
+  /** @return number of nodes in the graph. */
+  public int getNodeCount() {
+    return nodes.size();
+  }
+
+  /** @return id of {@code node} or {@code -1} if the node is not in the graph. */
+  public int getId(T node) {
+    Integer id = ids.get(node);
+    return id == null ? -1 : id;
+  }
+
+  /** @return node with the given id. */
+  public T getNode(int id) {
+    return nodes.get(id);
+  }
+
+  /** @return nodes whose ids are set in {@code ids}, in ascending id order. */
+  public List<T> getNodes(BitSet ids) {
+    List<T> result = new ArrayList<>(ids.cardinality());
+    for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+      result.add(nodes.get(id));
+    }
+    return result;
+  }
+
+  /**
+   * Finds all nodes reachable from {@code roots} by following at most {@code maxDepth} edges in
+   * the given direction.
+   *
+   * @param universe if not {@code null}, nodes outside of this set are neither visited nor
+   *     traversed through, including roots.
+   * @return ids of the visited nodes, including the roots.
+   */
+  public BitSet traverse(
+      BitSet roots, int maxDepth, Direction direction, @Nullable BitSet universe) {
+    int[] offsets = direction == Direction.OUTGOING ? outgoingOffsets : incomingOffsets;
+    int[] edges = direction == Direction.OUTGOING ? outgoingEdges : incomingEdges;
+
+    BitSet visited = (BitSet) roots.clone();
+    if (universe != null) {
+      visited.and(universe);
+    }
+    BitSet level = (BitSet) visited.clone();
+    for (int depth = 0; depth < maxDepth && !level.isEmpty(); depth++) {
+      int[] levelIds = level.stream().toArray();
+      BitSet next;
+      if (levelIds.length < PARALLEL_LEVEL_SIZE) {
+        next = new BitSet(nodes.size());
+        for (int id : levelIds) {
+          addSuccessors(next, id, offsets, edges);
+        }
+      } else {
+        next =
+            Arrays.stream(levelIds)
+                .parallel()
+                .collect(
+                    () -> new BitSet(nodes.size()),
+                    (successors, id) -> addSuccessors(successors, id, offsets, edges),
+                    BitSet::or);
+      }
+      next.andNot(visited);
+      if (universe != null) {
+        next.and(universe);
+      }
+      visited.or(next);
+      level = next;
+    }
+    return visited;
+  }
+
+  /**
+   * Lists nodes in the order in which a breadth first search from {@code roots} visits them, when
+   * it follows edges in the given direction and only visits nodes in {@code ids}. Roots come first,
+   * in the given order, and the nodes of every level are ordered by their predecessors and then by
+   * the order of edges. Nodes in {@code ids} that are not reachable this way are left out.
+   */
+  public List<T> getNodesInBreadthFirstOrder(int[] roots, Direction direction, BitSet ids) {
+    int[] offsets = direction == Direction.OUTGOING ? outgoingOffsets : incomingOffsets;
+    int[] edges = direction == Direction.OUTGOING ? outgoingEdges : incomingEdges;
+
+    int[] queue = new int[ids.cardinality()];
+    int queueSize = 0;
+    BitSet visited = new BitSet(nodes.size());
+    for (int root : roots) {
+      if (ids.get(root) && !visited.get(root)) {
+        visited.set(root);
+        queue[queueSize++] = root;
+      }
+    }
+    for (int head = 0; head < queueSize; head++) {
+      int id = queue[head];
+      for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+        int successor = edges[i];
+        if (ids.get(successor) && !visited.get(successor)) {
+          visited.set(successor);
+          queue[queueSize++] = successor;
+        }
+      }
+    }
+
+    List<T> result = new ArrayList<>(queueSize);
+    for (int i = 0; i < queueSize; i++) {
+      result.add(nodes.get(queue[i]));
+    }
+    return result;
+  }
+
+  private static void addSuccessors(BitSet successors, int id, int[] offsets, int[] edges) {
+    for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+      successors.set(edges[i]);
+    }
+  }
+}
@@ -104,6 +104,64 @@ public class ActionGraphPerfStatEvent extends AbstractBuckEvent {
     return targetNodeDescriptionName;
   }
 
+  /**
+   * Creates an event summarizing how rule resolution contended while constructing a whole action
+   * graph.
+   */
+  public static RuleResolution ruleResolution(
+      long elapsedMillis, long computedTasks, long contendedWaits, long contendedWaitMillis) {
+    return new RuleResolution(elapsedMillis, computedTasks, contendedWaits, contendedWaitMillis);
+  }
+
+  /** Summary of the parallelism of a whole action graph construction. */
+  public static class RuleResolution extends AbstractBuckEvent {
+
+    private final long elapsedMillis;
+    private final long computedTasks;
+    private final long contendedWaits;
+    private final long contendedWaitMillis;
+
+    private RuleResolution(
+        long elapsedMillis, long computedTasks, long contendedWaits, long contendedWaitMillis) {
+      super(EventKey.unique());
+      this.elapsedMillis = elapsedMillis;
+      this.computedTasks = computedTasks;
+      this.contendedWaits = contendedWaits;
+      this.contendedWaitMillis = contendedWaitMillis;
+    }
+
+    @Override
+    protected String getValueString() {
+      return String.format(
+          "%d tasks in %d ms, %d contended waits (%d ms)",
+          computedTasks, elapsedMillis, contendedWaits, contendedWaitMillis);
+    }
+
+    @Override
+    public String getEventName() {
+      return "ActionGraphRuleResolutionStats";
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /** @return number of rule creations and parallelized transforms performed. */
+    public long getComputedTasks() {
+      return computedTasks;
+    }
+
+    /** @return number of times a thread waited for a rule that another thread was creating. */
+    public long getContendedWaits() {
+      return contendedWaits;
+    }
+
+    /** @return total time threads spent waiting for rules other threads were creating. */
+    public long getContendedWaitMillis() {
+      return contendedWaitMillis;
+    }
+  }
+
   /** Class representing the start of timing */
   public static class Start {
 
@@ -37,7 +37,9 @@ public class ParserProfilerLoggerListener implements BuckEventListener {
   @Subscribe
   public void parseProfilerReported(ParseBuckProfilerReportEvent event) throws IOException {
     Path tracePath =
-        info.getLogDirectoryPath().resolve("parser-profiler" + event.getEventKey() + ".log");
+        info.getLogDirectoryPath()
+            .resolve(
+                "parser-profiler" + event.getEventKey() + "." + event.getReportFileExtension());
     filesystem.createParentDirs(tracePath);
     filesystem.writeContentsToPath(event.getReport(), tracePath);
   }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.json;
+
+import com.facebook.buck.util.stringtable.StringTableValueDeserializer;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Deserializes the output of {@code buck.py} into {@link BuildFilePythonResult} when it is run
+ * with {@code --binary_output}, i.e. when it writes results in the string table value format
+ * instead of JSON.
+ *
+ * <p>The decoded values have the same shape as the ones produced by {@link
+ * BuildFilePythonResultDeserializer}.
+ */
+public final class BuildFilePythonResultBinaryDeserializer {
+
+  private static final StringTableValueDeserializer DESERIALIZER =
+      new StringTableValueDeserializer(
+          ImmutableList.of(), BuildFilePythonResultDeserializer.STRING_INTERNER::intern);
+
+  private BuildFilePythonResultBinaryDeserializer() {}
+
+  /** Reads exactly one result from {@code inputStream}. */
+  @SuppressWarnings("unchecked")
+  public static BuildFilePythonResult deserialize(InputStream inputStream) throws IOException {
+    Object result = DESERIALIZER.deserialize(inputStream);
+    if (!(result instanceof Map)) {
+      throw new IOException("Expected result object, got: " + result);
+    }
+    Map<String, Object> resultObject = (Map<String, Object>) result;
+    for (String fieldName : resultObject.keySet()) {
+      switch (fieldName) {
+        case "values":
+        case "diagnostics":
+        case "profile":
+          break;
+        default:
+          throw new IOException("Unexpected field name: " + fieldName);
+      }
+    }
+    return BuildFilePythonResult.of(
+        getObjectList(resultObject, "values"),
+        getObjectList(resultObject, "diagnostics"),
+        Optional.ofNullable((String) resultObject.get("profile")));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ImmutableList<Map<String, Object>> getObjectList(
+      Map<String, Object> resultObject, String fieldName) throws IOException {
+    Object value = resultObject.get(fieldName);
+    if (value == null) {
+      return ImmutableList.of();
+    }
+    if (!(value instanceof ImmutableList)) {
+      throw new IOException("Expected list of objects for " + fieldName + ", got: " + value);
+    }
+    for (Object element : (ImmutableList<Object>) value) {
+      if (!(element instanceof Map)) {
+        throw new IOException("Expected object in " + fieldName + ", got: " + element);
+      }
+    }
+    return (ImmutableList<Map<String, Object>>) value;
+  }
+}
@@ -40,7 +40,7 @@ import javax.annotation.Nullable;
  * with {@link ImmutableMapWithNullValues} to allow {@code null} values in the maps.
  */
 final class BuildFilePythonResultDeserializer extends StdDeserializer<BuildFilePythonResult> {
-  private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+  static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
 
   public BuildFilePythonResultDeserializer() {
     super(BuildFilePythonResult.class);
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * File attributes of an archive on the classpath that change whenever it is rewritten, which is
+ * cheaper than hashing its contents before every compilation.
+ */
+final class ArchiveStamp {
+  private final long size;
+  private final FileTime lastModifiedTime;
+  @Nullable private final Object fileKey;
+
+  private ArchiveStamp(BasicFileAttributes attributes) {
+    this.size = attributes.size();
+    this.lastModifiedTime = attributes.lastModifiedTime();
+    this.fileKey = attributes.fileKey();
+  }
+
+  static ArchiveStamp read(Path archive) throws IOException {
+    return new ArchiveStamp(Files.readAttributes(archive, BasicFileAttributes.class));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof ArchiveStamp)) {
+      return false;
+    }
+    ArchiveStamp that = (ArchiveStamp) other;
+    return size == that.size
+        && lastModifiedTime.equals(that.lastModifiedTime)
+        && Objects.equals(fileKey, that.fileKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(size, lastModifiedTime, fileKey);
+  }
+}
@@ -27,7 +27,6 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 public class CalculateClassAbiStep implements Step {
-
   private final ProjectFilesystem filesystem;
   private final Path binaryJar;
   private final Path abiJar;
@@ -48,7 +47,9 @@ public class CalculateClassAbiStep implements Step {
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
     try {
       Path binJar = filesystem.resolve(binaryJar);
-      new StubJar(binJar).setCompatibilityMode(compatibilityMode).writeTo(filesystem, abiJar);
+      StubJar stubJar = new StubJar(binJar).setCompatibilityMode(compatibilityMode);
+      context.getClassStubCache().ifPresent(stubJar::setStubCache);
+      stubJar.writeTo(filesystem, abiJar);
     } catch (IllegalArgumentException e) {
       context.logError(e, "Failed to calculate ABI for %s.", binaryJar);
       return StepExecutionResults.ERROR;
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+/**
+ * What incremental compilation needs to know about a compiled class: a hash of the parts of it
+ * that other classes can compile against, a hash of the constant values that javac inlines into
+ * other classes, and the names of the classes it refers to.
+ */
+final class ClassFileSummary {
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+
+  /** The constants hash of a class that has no constant fields. */
+  static final String NO_CONSTANTS = Hashing.murmur3_128().newHasher().hash().toString();
+
+  private final String name;
+  private final Optional<String> sourceFile;
+  private final String abiHash;
+  private final String constantsHash;
+  private final ImmutableSortedSet<String> supertypes;
+  private final ImmutableSortedSet<String> references;
+
+  private ClassFileSummary(
+      String name,
+      Optional<String> sourceFile,
+      String abiHash,
+      String constantsHash,
+      ImmutableSortedSet<String> supertypes,
+      ImmutableSortedSet<String> references) {
+    this.name = name;
+    this.sourceFile = sourceFile;
+    this.abiHash = abiHash;
+    this.constantsHash = constantsHash;
+    this.supertypes = supertypes;
+    this.references = references;
+  }
+
+  static ClassFileSummary read(byte[] classFile) {
+    ClassReader reader = new ClassReader(classFile);
+    SummaryVisitor visitor = new SummaryVisitor();
+    reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+    // Method bodies only refer to other classes through the constant pool, so reading it is
+    // cheaper than visiting every instruction.
+    char[] buffer = new char[reader.getMaxStringLength()];
+    for (int i = 1; i < reader.getItemCount(); i++) {
+      int offset = reader.getItem(i);
+      if (offset == 0) {
+        // The second slot of a long or double constant.
+        continue;
+      }
+      switch (classFile[offset - 1]) {
+        case CONSTANT_CLASS:
+          visitor.addInternalName(reader.readUTF8(offset, buffer));
+          break;
+        case CONSTANT_NAME_AND_TYPE:
+          visitor.addDescriptor(reader.readUTF8(offset + 2, buffer));
+          break;
+        case CONSTANT_METHOD_TYPE:
+          visitor.addDescriptor(reader.readUTF8(offset, buffer));
+          break;
+        default:
+          break;
+      }
+    }
+
+    String name = reader.getClassName();
+    visitor.references.remove(name);
+    return new ClassFileSummary(
+        name,
+        Optional.ofNullable(visitor.sourceFile),
+        visitor.abi.hash().toString(),
+        visitor.constants.hash().toString(),
+        ImmutableSortedSet.copyOf(visitor.supertypes),
+        ImmutableSortedSet.copyOf(visitor.references));
+  }
+
+  /** @return the internal name of the class, e.g. {@code com/example/Foo$Bar}. */
+  String getName() {
+    return name;
+  }
+
+  /** @return the name of the source file the class was compiled from, if it was recorded. */
+  Optional<String> getSourceFile() {
+    return sourceFile;
+  }
+
+  String getAbiHash() {
+    return abiHash;
+  }
+
+  String getConstantsHash() {
+    return constantsHash;
+  }
+
+  /**
+   * @return the internal names of the direct superclass and interfaces of the class, whose ABIs
+   *     are part of its ABI.
+   */
+  ImmutableSortedSet<String> getSupertypes() {
+    return supertypes;
+  }
+
+  /** @return the internal names of the classes this class refers to. */
+  ImmutableSortedSet<String> getReferences() {
+    return references;
+  }
+
+  private static class SummaryVisitor extends ClassVisitor {
+    private final Hasher abi = Hashing.murmur3_128().newHasher();
+    private final Hasher constants = Hashing.murmur3_128().newHasher();
+    private final Set<String> supertypes = new HashSet<>();
+    private final Set<String> references = new HashSet<>();
+    @Nullable private String sourceFile;
+
+    SummaryVisitor() {
+      super(Opcodes.ASM7);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        @Nullable String signature,
+        @Nullable String superName,
+        @Nullable String[] interfaces) {
+      abi.putInt(access);
+      putString(abi, name);
+      putString(abi, signature);
+      putString(abi, superName);
+      if (superName != null) {
+        supertypes.add(superName);
+      }
+      if (interfaces != null) {
+        for (String anInterface : interfaces) {
+          putString(abi, anInterface);
+          supertypes.add(anInterface);
+        }
+      }
+      addSignature(signature);
+    }
+
+    @Override
+    public void visitSource(@Nullable String source, @Nullable String debug) {
+      sourceFile = source;
+    }
+
+    @Override
+    @Nullable
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+      putString(abi, descriptor);
+      addDescriptor(descriptor);
+      return null;
+    }
+
+    @Override
+    public void visitInnerClass(
+        String name, @Nullable String outerName, @Nullable String innerName, int access) {
+      putString(abi, name);
+      putString(abi, outerName);
+      putString(abi, innerName);
+      abi.putInt(access);
+    }
+
+    @Override
+    @Nullable
+    public FieldVisitor visitField(
+        int access,
+        String name,
+        String descriptor,
+        @Nullable String signature,
+        @Nullable Object value) {
+      addDescriptor(descriptor);
+      addSignature(signature);
+      if ((access & Opcodes.ACC_PRIVATE) != 0) {
+        return null;
+      }
+
+      abi.putInt(access);
+      putString(abi, name);
+      putString(abi, descriptor);
+      putString(abi, signature);
+      if (value != null) {
+        String constant = value.getClass().getName() + ":" + value;
+        putString(abi, constant);
+        putString(constants, name);
+        putString(constants, constant);
+      }
+      return null;
+    }
+
+    @Override
+    @Nullable
+    public MethodVisitor visitMethod(
+        int access,
+        String name,
+        String descriptor,
+        @Nullable String signature,
+        @Nullable String[] exceptions) {
+      addDescriptor(descriptor);
+      addSignature(signature);
+      if ((access & Opcodes.ACC_PRIVATE) != 0) {
+        return null;
+      }
+
+      abi.putInt(access);
+      putString(abi, name);
+      putString(abi, descriptor);
+      putString(abi, signature);
+      if (exceptions != null) {
+        for (String exception : exceptions) {
+          putString(abi, exception);
+        }
+      }
+      return null;
+    }
+
+    void addInternalName(String internalName) {
+      if (internalName.startsWith("[")) {
+        addType(Type.getType(internalName));
+      } else {
+        references.add(internalName);
+      }
+    }
+
+    void addDescriptor(String descriptor) {
+      Type type = Type.getType(descriptor);
+      if (type.getSort() == Type.METHOD) {
+        for (Type argumentType : type.getArgumentTypes()) {
+          addType(argumentType);
+        }
+        addType(type.getReturnType());
+      } else {
+        addType(type);
+      }
+    }
+
+    private void addType(Type type) {
+      Type elementType = type.getSort() == Type.ARRAY ? type.getElementType() : type;
+      if (elementType.getSort() == Type.OBJECT) {
+        references.add(elementType.getInternalName());
+      }
+    }
+
+    private void addSignature(@Nullable String signature) {
+      if (signature == null) {
+        return;
+      }
+      new SignatureReader(signature)
+          .accept(
+              new SignatureVisitor(Opcodes.ASM7) {
+                @Override
+                public void visitClassType(String name) {
+                  references.add(name);
+                }
+              });
+    }
+
+    private static void putString(Hasher hasher, @Nullable String value) {
+      if (value == null) {
+        hasher.putInt(-1);
+      } else {
+        hasher.putInt(value.length()).putUnencodedChars(value);
+      }
+    }
+  }
+}
@@ -82,7 +82,7 @@ class ClassUsageTracker implements FileManagerListener {
     Path jarFilePath = Paths.get(jarFileUri);
 
     // Using URI.create here for de-escaping
-    Path classPath = Paths.get(URI.create(split[1]).toString());
+    Path classPath = Paths.get(URI.create(split[1]).getPath());
 
     Preconditions.checkState(jarFilePath.isAbsolute());
     Preconditions.checkState(!classPath.isAbsolute());
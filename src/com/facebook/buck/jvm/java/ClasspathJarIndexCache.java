@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Indexes of classpath jars shared by all compilations, so that each jar's central directory is
+ * read once rather than by every compilation that has the jar on its classpath.
+ *
+ * <p>An index is reused for as long as the jar's {@link ArchiveStamp} does not change. The cache
+ * holds a reference to each of its indexes, and so does each compilation that uses one. An index is
+ * dropped from the cache when its jar is rewritten or deleted, or when it is the least recently
+ * used one of a full cache, and its file is unmapped once no compilation uses it anymore.
+ */
+class ClasspathJarIndexCache {
+  private static final Logger LOG = Logger.get(ClasspathJarIndexCache.class);
+
+  /** The number of jars whose indexes are kept by default, which covers most classpaths. */
+  private static final int DEFAULT_MAX_INDEXES = 4096;
+
+  private final Cache<Path, MappedJarIndex> indexes;
+  private final Cache<Path, ArchiveStamp> unindexableJars;
+
+  ClasspathJarIndexCache() {
+    this(DEFAULT_MAX_INDEXES);
+  }
+
+  ClasspathJarIndexCache(int maxIndexes) {
+    this.indexes =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxIndexes)
+            .removalListener(
+                (RemovalNotification<Path, MappedJarIndex> removed) ->
+                    Objects.requireNonNull(removed.getValue()).release())
+            .build();
+    this.unindexableJars = CacheBuilder.newBuilder().maximumSize(maxIndexes).build();
+  }
+
+  /**
+   * @return the index of the jar at the given path, with a reference that must be released with
+   *     {@link MappedJarIndex#release} when done, or empty if the jar cannot be indexed and should
+   *     be read by javac itself.
+   * @throws IOException if the jar cannot be accessed
+   */
+  Optional<MappedJarIndex> acquire(Path jar) throws IOException {
+    ArchiveStamp stamp;
+    try {
+      stamp = ArchiveStamp.read(jar);
+    } catch (IOException e) {
+      indexes.invalidate(jar);
+      unindexableJars.invalidate(jar);
+      throw e;
+    }
+
+    MappedJarIndex index = indexes.getIfPresent(jar);
+    if (index != null && index.getStamp().equals(stamp) && index.retain()) {
+      return Optional.of(index);
+    }
+    if (stamp.equals(unindexableJars.getIfPresent(jar))) {
+      return Optional.empty();
+    }
+
+    try {
+      index = MappedJarIndex.open(jar, stamp);
+    } catch (IOException e) {
+      LOG.debug(e, "Cannot index %s, javac will read it.", jar);
+      indexes.invalidate(jar);
+      unindexableJars.put(jar, stamp);
+      return Optional.empty();
+    }
+    unindexableJars.invalidate(jar);
+    index.retain();
+    indexes.put(jar, index);
+    return Optional.of(index);
+  }
+
+  /** @return the number of jars whose indexes are cached. */
+  long size() {
+    return indexes.size();
+  }
+}
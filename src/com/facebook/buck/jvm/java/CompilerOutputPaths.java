@@ -71,6 +71,11 @@ public abstract class CompilerOutputPaths {
         .resolve("used-classes.json");
   }
 
+  /** @return the directory where incremental compilation keeps its state between builds. */
+  public static Path getIncrementalStateDir(BuildTarget target, ProjectFilesystem filesystem) {
+    return BuildTargetPaths.getScratchPath(filesystem, target, "lib__%s__incremental");
+  }
+
   public static Path getClassesDir(BuildTarget target, ProjectFilesystem filesystem) {
     return CompilerOutputPaths.of(target, filesystem).getClassesDir();
   }
@@ -100,7 +100,7 @@ class DefaultClassUsageFileReader {
     return builder.build();
   }
 
-  private static Path convertRecordedJarPathToAbsolute(
+  static Path convertRecordedJarPathToAbsolute(
       ProjectFilesystem projectFilesystem, CellPathResolver cellPathResolver, String jarPath) {
     Path recordedPath = Paths.get(jarPath);
     Path jarAbsolutePath =
@@ -76,7 +76,9 @@ public class ExternalJavacProvider implements JavacProvider {
         Preconditions.checkState(spec.getJavacJarPath().isPresent());
         return new JarBackedJavacProvider(spec.getJavacJarPath().get(), compilerClassName);
       case JDK:
-        return new ConstantJavacProvider(new JdkProvidedInMemoryJavac());
+        return new ConstantJavacProvider(
+            new JdkProvidedInMemoryJavac(
+                spec.getReuseFileManagers(), spec.getUseSharedClasspathIndex()));
     }
     throw new AssertionError("Unknown javac source: " + javacSource);
   }
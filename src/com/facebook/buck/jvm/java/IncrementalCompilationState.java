@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleValue;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.util.Optional;
+
+/** What {@link IncrementalJavacStep} remembers about the previous compilation of a library. */
+@BuckStyleValue
+@JsonSerialize(as = ImmutableIncrementalCompilationState.class)
+@JsonDeserialize(as = ImmutableIncrementalCompilationState.class)
+abstract class IncrementalCompilationState {
+  /** Hash of the options javac was invoked with; compiling with other options starts over. */
+  public abstract String getOptionsHash();
+
+  /** Hashes of the classpath entries, keyed by absolute path. */
+  public abstract ImmutableSortedMap<String, String> getClasspath();
+
+  /** The compiled sources, keyed by path relative to the project root. */
+  public abstract ImmutableSortedMap<String, SourceState> getSources();
+
+  /** The compiled classes, keyed by internal name. */
+  public abstract ImmutableSortedMap<String, ClassState> getClasses();
+
+  /**
+   * The classpath classes javac read, keyed by jar as recorded in the dep file and then by entry
+   * name. Empty if class usage was not tracked.
+   */
+  public abstract Optional<ImmutableSortedMap<String, ImmutableSortedMap<String, ClassAbi>>>
+      getUsedClasses();
+
+  /** A compiled source file. */
+  @BuckStyleValue
+  @JsonSerialize(as = ImmutableSourceState.class)
+  @JsonDeserialize(as = ImmutableSourceState.class)
+  abstract static class SourceState {
+    public abstract String getHash();
+
+    /** Internal names of the classes compiled from the source. */
+    public abstract ImmutableSortedSet<String> getClasses();
+
+    static SourceState of(String hash, ImmutableSortedSet<String> classes) {
+      return ImmutableSourceState.of(hash, classes);
+    }
+  }
+
+  /** The parts of a class that classes compiled against it depend on. */
+  @BuckStyleValue
+  @JsonSerialize(as = ImmutableClassAbi.class)
+  @JsonDeserialize(as = ImmutableClassAbi.class)
+  abstract static class ClassAbi {
+    public abstract String getAbiHash();
+
+    public abstract String getConstantsHash();
+
+    /** Internal names of the direct supertypes of the class. */
+    public abstract ImmutableSortedSet<String> getSupertypes();
+
+    static ClassAbi of(ClassFileSummary summary) {
+      return ImmutableClassAbi.of(
+          summary.getAbiHash(), summary.getConstantsHash(), summary.getSupertypes());
+    }
+  }
+
+  /** A compiled class. */
+  @BuckStyleValue
+  @JsonSerialize(as = ImmutableClassState.class)
+  @JsonDeserialize(as = ImmutableClassState.class)
+  abstract static class ClassState {
+    public abstract ClassAbi getAbi();
+
+    /** Internal names of the classes this class refers to. */
+    public abstract ImmutableSortedSet<String> getReferences();
+
+    static ClassState of(ClassFileSummary summary) {
+      return ImmutableClassState.of(ClassAbi.of(summary), summary.getReferences());
+    }
+  }
+}
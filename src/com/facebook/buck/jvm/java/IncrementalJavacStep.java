@@ -0,0 +1,769 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.IncrementalCompilationState.ClassAbi;
+import com.facebook.buck.jvm.java.IncrementalCompilationState.ClassState;
+import com.facebook.buck.jvm.java.IncrementalCompilationState.SourceState;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compiles a java library incrementally: javac is only given the sources that changed since the
+ * previous build and, until no more ABIs change, the sources that refer to classes whose ABI
+ * changed as a result. The classes of the other sources are restored from the previous build.
+ *
+ * <p>The classes each source refers to are read from its class files. The classpath classes the
+ * library uses are read from the dep file written by {@link ClassUsageTracker}, so that when a
+ * dependency is rebuilt only the sources that refer to the classes of it whose ABI changed are
+ * recompiled. Every source is compiled whenever that is not enough to tell what to recompile,
+ * e.g. when the javac options change or when a constant that javac may have inlined changes.
+ */
+class IncrementalJavacStep implements Step {
+  private static final Logger LOG = Logger.get(IncrementalJavacStep.class);
+
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolverAdapter resolver;
+  private final ProjectFilesystem filesystem;
+  private final CompilerParameters parameters;
+  private final Path stateFile;
+  private final Path savedClassesDir;
+
+  IncrementalJavacStep(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolverAdapter resolver,
+      ProjectFilesystem filesystem,
+      CompilerParameters parameters) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.parameters = parameters;
+    Path stateDir = CompilerOutputPaths.getIncrementalStateDir(invokingRule, filesystem);
+    this.stateFile = filesystem.resolve(stateDir.resolve("state.json"));
+    this.savedClassesDir = filesystem.resolve(stateDir.resolve("classes"));
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Path classesDir = filesystem.resolve(parameters.getOutputPaths().getClassesDir());
+    // Resources have already been copied to the classes directory, and may include class files.
+    ImmutableSet<String> resourceClasses = listClasses(classesDir);
+
+    Optional<Inputs> inputs = readInputs(context);
+    if (!inputs.isPresent()) {
+      Files.deleteIfExists(stateFile);
+      return newJavacStep(parameters).execute(context);
+    }
+
+    Optional<IncrementalCompilationState> previous = readState(inputs.get());
+    if (previous.isPresent()) {
+      Compilation compilation = new Compilation(context, inputs.get(), classesDir, resourceClasses);
+      Optional<StepExecutionResult> result = compilation.compileIncrementally(previous.get());
+      if (result.isPresent()) {
+        return result.get();
+      }
+      LOG.debug("Cannot compile %s incrementally, compiling every source.", invokingRule);
+      for (String name : listClasses(classesDir)) {
+        if (!resourceClasses.contains(name)) {
+          Files.delete(getClassFile(classesDir, name));
+        }
+      }
+    }
+
+    Files.deleteIfExists(stateFile);
+    return new Compilation(context, inputs.get(), classesDir, resourceClasses).compileFully();
+  }
+
+  @Override
+  public String getShortName() {
+    return javac.getShortName();
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return newJavacStep(parameters).getDescription(context);
+  }
+
+  private JavacStep newJavacStep(CompilerParameters compilerParameters) {
+    return new JavacStep(
+        javac,
+        javacOptions,
+        invokingRule,
+        resolver,
+        filesystem,
+        new ClasspathChecker(),
+        compilerParameters,
+        null,
+        null);
+  }
+
+  /** @return the inputs of the compilation, or empty if it cannot be done incrementally. */
+  private Optional<Inputs> readInputs(ExecutionContext context) throws IOException {
+    ImmutableSortedMap.Builder<String, String> sources = ImmutableSortedMap.naturalOrder();
+    for (Path source : parameters.getSourceFilePaths()) {
+      if (!source.toString().endsWith(".java")) {
+        // Archives of sources are extracted by javac, so their classes cannot be told apart.
+        return Optional.empty();
+      }
+      sources.put(source.toString(), filesystem.computeSha1(source).getHash());
+    }
+
+    ImmutableSortedMap.Builder<String, String> classpath = ImmutableSortedMap.naturalOrder();
+    for (Path entry : parameters.getClasspathEntries()) {
+      Path path = filesystem.resolve(entry).normalize();
+      if (Files.isDirectory(path)) {
+        // The classes used from directories are not tracked.
+        return Optional.empty();
+      }
+      classpath.put(
+          path.toString(), Files.exists(path) ? filesystem.computeSha1(path).getHash() : "");
+    }
+
+    Hasher options = Hashing.murmur3_128().newHasher();
+    options.putUnencodedChars(javac.getShortName());
+    for (String option :
+        newJavacStep(parameters).getOptions(context, parameters.getClasspathEntries())) {
+      options.putInt(option.length()).putUnencodedChars(option);
+    }
+    options.putBoolean(parameters.shouldTrackClassUsage());
+
+    return Optional.of(new Inputs(options.hash().toString(), sources.build(), classpath.build()));
+  }
+
+  private Optional<IncrementalCompilationState> readState(Inputs inputs) {
+    if (!Files.exists(stateFile)) {
+      return Optional.empty();
+    }
+    IncrementalCompilationState state;
+    try {
+      state = ObjectMappers.readValue(stateFile, IncrementalCompilationState.class);
+    } catch (IOException e) {
+      LOG.warn(e, "Cannot read %s, compiling every source of %s.", stateFile, invokingRule);
+      return Optional.empty();
+    }
+    if (!state.getOptionsHash().equals(inputs.optionsHash)) {
+      return Optional.empty();
+    }
+    return Optional.of(state);
+  }
+
+  private static ImmutableSet<String> listClasses(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return ImmutableSet.of();
+    }
+    try (Stream<Path> files = Files.walk(dir)) {
+      return files
+          .filter(file -> file.getFileName().toString().endsWith(".class"))
+          .map(file -> getClassName(dir.relativize(file)))
+          .collect(ImmutableSet.toImmutableSet());
+    }
+  }
+
+  private static String getClassName(Path classFile) {
+    String path = classFile.toString().replace(classFile.getFileSystem().getSeparator(), "/");
+    return path.substring(0, path.length() - ".class".length());
+  }
+
+  private static String getPackage(String className) {
+    return className.substring(0, className.lastIndexOf('/') + 1);
+  }
+
+  private static String getSimpleName(String className) {
+    int nameStart = Math.max(className.lastIndexOf('/'), className.lastIndexOf('$')) + 1;
+    return className.substring(nameStart);
+  }
+
+  private static Path getClassFile(Path dir, String className) {
+    return dir.resolve(className + ".class");
+  }
+
+  private static void copyClass(String className, Path fromDir, Path toDir) throws IOException {
+    Path target = getClassFile(toDir, className);
+    Files.createDirectories(target.getParent());
+    Files.copy(getClassFile(fromDir, className), target, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * @return the ABIs of the given entries of a jar that exist, keyed by entry name. The ABIs of
+   *     entries of a jar that does not exist are all missing.
+   */
+  private static ImmutableSortedMap<String, ClassAbi> readClassAbis(
+      Path jar, Collection<String> entryNames) throws IOException {
+    ImmutableSortedMap.Builder<String, ClassAbi> abis = ImmutableSortedMap.naturalOrder();
+    if (!Files.isRegularFile(jar)) {
+      return abis.build();
+    }
+    try (ZipFile zip = new ZipFile(jar.toFile())) {
+      for (String entryName : entryNames) {
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null) {
+          continue;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+          abis.put(entryName, ClassAbi.of(ClassFileSummary.read(ByteStreams.toByteArray(in))));
+        }
+      }
+    }
+    return abis.build();
+  }
+
+  /**
+   * @return the source among the given ones that a class was compiled from, or empty if that
+   *     cannot be told.
+   */
+  static Optional<String> findSource(ClassFileSummary summary, Collection<String> sources) {
+    String name = summary.getName();
+    int packageEnd = name.lastIndexOf('/');
+    String packagePath = name.substring(0, packageEnd + 1);
+    String fileName =
+        summary
+            .getSourceFile()
+            .orElseGet(
+                () -> {
+                  String simpleName = name.substring(packageEnd + 1);
+                  int nestedStart = simpleName.indexOf('$');
+                  return (nestedStart < 0 ? simpleName : simpleName.substring(0, nestedStart))
+                      + ".java";
+                });
+
+    Optional<String> source = findOnlySourceEndingWith(sources, packagePath + fileName);
+    if (source.isPresent()) {
+      return source;
+    }
+    // Buck does not require sources to be in directories that match their packages.
+    return findOnlySourceEndingWith(sources, fileName);
+  }
+
+  private static Optional<String> findOnlySourceEndingWith(
+      Collection<String> sources, String suffix) {
+    List<String> matches =
+        sources.stream()
+            .filter(source -> source.equals(suffix) || source.endsWith("/" + suffix))
+            .limit(2)
+            .collect(Collectors.toList());
+    return matches.size() == 1 ? Optional.of(matches.get(0)) : Optional.empty();
+  }
+
+  /** Hashes of everything the compilation reads. */
+  private static class Inputs {
+    private final String optionsHash;
+    private final ImmutableSortedMap<String, String> sources;
+    private final ImmutableSortedMap<String, String> classpath;
+
+    Inputs(
+        String optionsHash,
+        ImmutableSortedMap<String, String> sources,
+        ImmutableSortedMap<String, String> classpath) {
+      this.optionsHash = optionsHash;
+      this.sources = sources;
+      this.classpath = classpath;
+    }
+  }
+
+  /** The state of one compilation, which may invoke javac several times. */
+  private class Compilation {
+    private final ExecutionContext context;
+    private final Inputs inputs;
+    private final Path classesDir;
+    private final ImmutableSet<String> resourceClasses;
+    private final Path depFile;
+
+    private final Map<String, SourceState> sources = new TreeMap<>();
+    private final Map<String, ClassState> classes = new TreeMap<>();
+    private final Set<String> compiledClasses = new HashSet<>();
+    /** The classpath classes javac read, keyed by jar as in the dep file. */
+    private final Map<String, SortedSet<String>> usedClasses = new TreeMap<>();
+    /** The ABIs of classpath classes that are already known, keyed like {@link #usedClasses}. */
+    private final Map<String, ImmutableSortedMap<String, ClassAbi>> usedClassAbis =
+        new HashMap<>();
+
+    Compilation(
+        ExecutionContext context,
+        Inputs inputs,
+        Path classesDir,
+        ImmutableSet<String> resourceClasses) {
+      this.context = context;
+      this.inputs = inputs;
+      this.classesDir = classesDir;
+      this.resourceClasses = resourceClasses;
+      this.depFile =
+          filesystem.resolve(CompilerOutputPaths.getDepFilePath(invokingRule, filesystem));
+    }
+
+    StepExecutionResult compileFully() throws IOException, InterruptedException {
+      StepExecutionResult result = compile(inputs.sources.keySet(), false);
+      if (!result.isSuccess()) {
+        return result;
+      }
+      if (collectCompiledClasses(inputs.sources.keySet())) {
+        save(Optional.empty());
+      } else {
+        LOG.debug("Cannot tell which sources of %s the classes were compiled from.", invokingRule);
+      }
+      return result;
+    }
+
+    /**
+     * @return the result of the compilation, or empty if every source needs to be compiled
+     *     instead.
+     */
+    Optional<StepExecutionResult> compileIncrementally(IncrementalCompilationState previous)
+        throws IOException, InterruptedException {
+      if (parameters.shouldTrackClassUsage() && !previous.getUsedClasses().isPresent()) {
+        return Optional.empty();
+      }
+      Optional<Set<String>> changedClasses = findChangedClasspathClasses(previous);
+      if (!changedClasses.isPresent()) {
+        return Optional.empty();
+      }
+
+      sources.putAll(previous.getSources());
+      classes.putAll(previous.getClasses());
+      previous
+          .getUsedClasses()
+          .ifPresent(
+              used ->
+                  used.forEach(
+                      (jar, entries) -> usedClasses.put(jar, new TreeSet<>(entries.keySet()))));
+
+      Map<String, ClassState> staleClasses = new HashMap<>();
+      Set<String> toCompile = new TreeSet<>();
+      for (Map.Entry<String, SourceState> source : previous.getSources().entrySet()) {
+        String hash = inputs.sources.get(source.getKey());
+        if (hash == null) {
+          removeSource(source.getKey(), staleClasses);
+        } else if (!hash.equals(source.getValue().getHash())) {
+          toCompile.add(source.getKey());
+        }
+      }
+      for (String source : inputs.sources.keySet()) {
+        if (!previous.getSources().containsKey(source)) {
+          toCompile.add(source);
+        }
+      }
+      toCompile.addAll(findSourcesDependingOn(changedClasses.get()));
+      // The classes of deleted sources are gone, so the sources that refer to them must fail.
+      for (ClassState removed : staleClasses.values()) {
+        if (!removed.getAbi().getConstantsHash().equals(ClassFileSummary.NO_CONSTANTS)) {
+          return Optional.empty();
+        }
+      }
+      toCompile.addAll(findSourcesDependingOn(staleClasses.keySet()));
+
+      for (Map.Entry<String, SourceState> source : sources.entrySet()) {
+        if (toCompile.contains(source.getKey())) {
+          continue;
+        }
+        for (String className : source.getValue().getClasses()) {
+          if (!Files.exists(getClassFile(savedClassesDir, className))) {
+            return Optional.empty();
+          }
+          copyClass(className, savedClassesDir, classesDir);
+        }
+      }
+
+      Set<String> knownClasses = new HashSet<>(classes.keySet());
+      knownClasses.addAll(staleClasses.keySet());
+      while (!toCompile.isEmpty()) {
+        for (String source : toCompile) {
+          removeSource(source, staleClasses);
+        }
+        LOG.debug("Compiling %d sources of %s.", toCompile.size(), invokingRule);
+        StepExecutionResult result = compile(toCompile, true);
+        if (!result.isSuccess()) {
+          return Optional.of(result);
+        }
+        if (!collectCompiledClasses(toCompile)) {
+          return Optional.empty();
+        }
+        Set<String> addedClasses = new HashSet<>();
+        for (String source : toCompile) {
+          for (String className : sources.get(source).getClasses()) {
+            if (knownClasses.add(className)) {
+              addedClasses.add(className);
+            }
+          }
+        }
+
+        Set<String> changedAbis = new HashSet<>();
+        for (Map.Entry<String, ClassState> stale : staleClasses.entrySet()) {
+          ClassAbi before = stale.getValue().getAbi();
+          ClassState after = classes.get(stale.getKey());
+          String constantsAfter =
+              after == null ? ClassFileSummary.NO_CONSTANTS : after.getAbi().getConstantsHash();
+          if (!constantsAfter.equals(before.getConstantsHash())) {
+            // javac inlines constants, so the classes that use them do not refer to their class.
+            return Optional.empty();
+          }
+          if (after == null || !after.getAbi().equals(before)) {
+            changedAbis.add(stale.getKey());
+          }
+        }
+        staleClasses.clear();
+        // The sources compiled together were compiled against each other's new ABIs.
+        Set<String> compiled = toCompile;
+        toCompile = findSourcesDependingOn(changedAbis);
+        toCompile.addAll(findSourcesShadowedBy(addedClasses));
+        toCompile.removeAll(compiled);
+      }
+
+      save(Optional.of(previous));
+      return Optional.of(StepExecutionResults.SUCCESS);
+    }
+
+    /**
+     * @return the classpath classes whose ABI changed since the previous compilation, or empty if
+     *     that cannot be told.
+     */
+    private Optional<Set<String>> findChangedClasspathClasses(
+        IncrementalCompilationState previous) throws IOException {
+      previous.getUsedClasses().ifPresent(usedClassAbis::putAll);
+      Set<String> changedClasses = new HashSet<>();
+      if (previous.getClasspath().equals(inputs.classpath)) {
+        return Optional.of(changedClasses);
+      }
+      if (!previous.getClasspath().keySet().equals(inputs.classpath.keySet())
+          || !previous.getUsedClasses().isPresent()) {
+        return Optional.empty();
+      }
+
+      Set<String> changedJars = new HashSet<>();
+      inputs.classpath.forEach(
+          (jar, hash) -> {
+            if (!hash.equals(previous.getClasspath().get(jar))) {
+              changedJars.add(jar);
+            }
+          });
+
+      for (Map.Entry<String, ImmutableSortedMap<String, ClassAbi>> jar :
+          previous.getUsedClasses().get().entrySet()) {
+        Path path = resolveRecordedJar(jar.getKey());
+        if (!changedJars.remove(path.toString())) {
+          continue;
+        }
+        ImmutableSortedMap<String, ClassAbi> abis = readClassAbis(path, jar.getValue().keySet());
+        for (Map.Entry<String, ClassAbi> entry : jar.getValue().entrySet()) {
+          ClassAbi before = entry.getValue();
+          ClassAbi after = abis.get(entry.getKey());
+          String constantsAfter =
+              after == null ? ClassFileSummary.NO_CONSTANTS : after.getConstantsHash();
+          if (!constantsAfter.equals(before.getConstantsHash())) {
+            return Optional.empty();
+          }
+          if (after == null || !after.getAbiHash().equals(before.getAbiHash())) {
+            changedClasses.add(getClassName(Paths.get(entry.getKey())));
+          }
+        }
+        usedClassAbis.put(jar.getKey(), abis);
+      }
+
+      // javac did not read any class from the remaining jars, unless they are outside of the
+      // cells and so were left out of the dep file.
+      for (String jar : changedJars) {
+        Path path = Paths.get(jar);
+        if (context.getCellPathResolver().getKnownRoots().stream()
+            .noneMatch(root -> path.startsWith(root.getPath()))) {
+          return Optional.empty();
+        }
+      }
+      return Optional.of(changedClasses);
+    }
+
+    private Path resolveRecordedJar(String jar) {
+      return DefaultClassUsageFileReader.convertRecordedJarPathToAbsolute(
+              filesystem, context.getCellPathResolver(), jar)
+          .normalize();
+    }
+
+    /**
+     * @return the sources that refer to the given classes or to their subtypes, whose ABIs include
+     *     theirs.
+     */
+    private Set<String> findSourcesDependingOn(Set<String> changedClasses) {
+      Set<String> dependents = new TreeSet<>();
+      if (changedClasses.isEmpty()) {
+        return dependents;
+      }
+
+      Map<String, Set<String>> subtypes = new HashMap<>();
+      classes.forEach(
+          (name, state) -> addSubtype(subtypes, name, state.getAbi().getSupertypes()));
+      for (ImmutableSortedMap<String, ClassAbi> abis : usedClassAbis.values()) {
+        abis.forEach(
+            (entry, abi) ->
+                addSubtype(subtypes, getClassName(Paths.get(entry)), abi.getSupertypes()));
+      }
+
+      Set<String> affectedClasses = new HashSet<>(changedClasses);
+      Deque<String> queue = new ArrayDeque<>(changedClasses);
+      while (!queue.isEmpty()) {
+        for (String subtype : subtypes.getOrDefault(queue.remove(), ImmutableSet.of())) {
+          if (affectedClasses.add(subtype)) {
+            queue.add(subtype);
+          }
+        }
+      }
+
+      sources.forEach(
+          (source, state) -> {
+            for (String className : state.getClasses()) {
+              ClassState classState = classes.get(className);
+              if (affectedClasses.contains(className)
+                  || classState.getReferences().stream().anyMatch(affectedClasses::contains)) {
+                dependents.add(source);
+                return;
+              }
+            }
+          });
+      return dependents;
+    }
+
+    /**
+     * @return the sources in the packages of the given new top-level classes and the sources that
+     *     refer to classes with the same simple names, which the new classes may shadow. New nested
+     *     classes only shadow names in the scope of their enclosing classes, whose ABIs change.
+     */
+    private Set<String> findSourcesShadowedBy(Set<String> addedClasses) {
+      Set<String> dependents = new TreeSet<>();
+      Set<String> packages = new HashSet<>();
+      Set<String> simpleNames = new HashSet<>();
+      for (String className : addedClasses) {
+        if (className.indexOf('$') < 0) {
+          packages.add(getPackage(className));
+          simpleNames.add(getSimpleName(className));
+        }
+      }
+      if (packages.isEmpty()) {
+        return dependents;
+      }
+
+      sources.forEach(
+          (source, state) -> {
+            for (String className : state.getClasses()) {
+              if (addedClasses.contains(className)) {
+                continue;
+              }
+              if (packages.contains(getPackage(className))
+                  || classes.get(className).getReferences().stream()
+                      .anyMatch(
+                          reference ->
+                              !addedClasses.contains(reference)
+                                  && simpleNames.contains(getSimpleName(reference)))) {
+                dependents.add(source);
+                return;
+              }
+            }
+          });
+      return dependents;
+    }
+
+    private void addSubtype(
+        Map<String, Set<String>> subtypes, String name, Collection<String> supertypes) {
+      for (String supertype : supertypes) {
+        subtypes.computeIfAbsent(supertype, key -> new HashSet<>()).add(name);
+      }
+    }
+
+    /** Forgets a source and its classes, remembering the classes' previous states. */
+    private void removeSource(String source, Map<String, ClassState> staleClasses)
+        throws IOException {
+      SourceState state = sources.remove(source);
+      if (state == null) {
+        return;
+      }
+      for (String className : state.getClasses()) {
+        ClassState classState = classes.remove(className);
+        if (classState != null) {
+          staleClasses.putIfAbsent(className, classState);
+        }
+        compiledClasses.remove(className);
+        Files.deleteIfExists(getClassFile(classesDir, className));
+      }
+    }
+
+    private StepExecutionResult compile(Set<String> sourcesToCompile, boolean incremental)
+        throws IOException, InterruptedException {
+      ImmutableSortedSet.Builder<Path> classpath = ImmutableSortedSet.naturalOrder();
+      classpath.addAll(parameters.getClasspathEntries());
+      if (incremental) {
+        classpath.add(classesDir);
+      }
+      CompilerParameters compilerParameters =
+          CompilerParameters.builder()
+              .from(parameters)
+              .setSourceFilePaths(
+                  sourcesToCompile.stream()
+                      .map(Paths::get)
+                      .collect(ImmutableSortedSet.toImmutableSortedSet(Path::compareTo)))
+              .setClasspathEntries(classpath.build())
+              .build();
+      StepExecutionResult result = newJavacStep(compilerParameters).execute(context);
+
+      if (result.isSuccess() && parameters.shouldTrackClassUsage() && Files.exists(depFile)) {
+        ImmutableMap<String, ImmutableList<String>> used =
+            ObjectMappers.readValue(
+                depFile, new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {});
+        used.forEach(
+            (jar, entries) ->
+                usedClasses.computeIfAbsent(jar, key -> new TreeSet<>()).addAll(entries));
+      }
+      return result;
+    }
+
+    /**
+     * Records the classes javac just compiled from the given sources.
+     *
+     * @return whether the source of each class could be told
+     */
+    private boolean collectCompiledClasses(Set<String> compiledSources) throws IOException {
+      Map<String, ImmutableSortedSet.Builder<String>> classesBySource = new HashMap<>();
+      for (String source : compiledSources) {
+        classesBySource.put(source, ImmutableSortedSet.naturalOrder());
+      }
+
+      for (String className : listClasses(classesDir)) {
+        if (resourceClasses.contains(className) || classes.containsKey(className)) {
+          continue;
+        }
+        ClassFileSummary summary =
+            ClassFileSummary.read(Files.readAllBytes(getClassFile(classesDir, className)));
+        Optional<String> source = findSource(summary, compiledSources);
+        if (!source.isPresent()) {
+          LOG.debug("Cannot tell which source %s was compiled from.", className);
+          return false;
+        }
+        classesBySource.get(source.get()).add(className);
+        classes.put(className, ClassState.of(summary));
+        compiledClasses.add(className);
+      }
+
+      classesBySource.forEach(
+          (source, sourceClasses) ->
+              sources.put(
+                  source, SourceState.of(inputs.sources.get(source), sourceClasses.build())));
+      return true;
+    }
+
+    /** Saves the compiled classes and what is needed to compile them incrementally next time. */
+    private void save(Optional<IncrementalCompilationState> previous) throws IOException {
+      Files.deleteIfExists(stateFile);
+      if (previous.isPresent()) {
+        for (String className : previous.get().getClasses().keySet()) {
+          if (!classes.containsKey(className)) {
+            Files.deleteIfExists(getClassFile(savedClassesDir, className));
+          }
+        }
+      } else {
+        MostFiles.deleteRecursivelyIfExists(savedClassesDir);
+      }
+      for (String className : compiledClasses) {
+        copyClass(className, classesDir, savedClassesDir);
+      }
+
+      Optional<ImmutableSortedMap<String, ImmutableSortedMap<String, ClassAbi>>> usedClassAbis =
+          Optional.empty();
+      if (parameters.shouldTrackClassUsage()) {
+        // Each invocation of javac wrote the classes it used, so the dep file lists the classes
+        // used by any of them, including classes that the recompiled sources no longer use.
+        ObjectMappers.WRITER.writeValue(depFile.toFile(), usedClasses);
+        usedClassAbis = Optional.of(readUsedClassAbis());
+      }
+
+      Files.createDirectories(stateFile.getParent());
+      ObjectMappers.WRITER.writeValue(
+          stateFile.toFile(),
+          ImmutableIncrementalCompilationState.of(
+              inputs.optionsHash,
+              inputs.classpath,
+              ImmutableSortedMap.copyOf(sources),
+              ImmutableSortedMap.copyOf(classes),
+              usedClassAbis));
+    }
+
+    private ImmutableSortedMap<String, ImmutableSortedMap<String, ClassAbi>> readUsedClassAbis()
+        throws IOException {
+      ImmutableSortedMap.Builder<String, ImmutableSortedMap<String, ClassAbi>> abis =
+          ImmutableSortedMap.naturalOrder();
+      for (Map.Entry<String, SortedSet<String>> jar : usedClasses.entrySet()) {
+        ImmutableSortedMap<String, ClassAbi> known =
+            usedClassAbis.getOrDefault(jar.getKey(), ImmutableSortedMap.of());
+        Set<String> unknown = new TreeSet<>(jar.getValue());
+        unknown.removeAll(known.keySet());
+        ImmutableSortedMap<String, ClassAbi> read =
+            unknown.isEmpty()
+                ? ImmutableSortedMap.of()
+                : readClassAbis(resolveRecordedJar(jar.getKey()), unknown);
+
+        ImmutableSortedMap.Builder<String, ClassAbi> jarAbis = ImmutableSortedMap.naturalOrder();
+        for (String entry : jar.getValue()) {
+          ClassAbi abi = known.containsKey(entry) ? known.get(entry) : read.get(entry);
+          if (abi != null) {
+            jarAbis.put(entry, abi);
+          }
+        }
+        abis.put(jar.getKey(), jarAbis.build());
+      }
+      return abis.build();
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+/**
+ * A file manager that lists and opens classes on the classpath through the shared {@link
+ * ClasspathJarIndexCache} instead of through the file manager it wraps, which would open and index
+ * every jar again for each compilation.
+ *
+ * <p>A location is served from the indexes only if every entry of it is a jar that can be indexed;
+ * locations that contain directories or unsupported jars are left to the wrapped file manager.
+ * Entries are listed in classpath order, so the first of several classes with the same name wins
+ * as it does in javac.
+ */
+class IndexedClasspathFileManager extends ForwardingStandardJavaFileManager {
+  private final ClasspathJarIndexCache indexCache;
+  private final ImmutableSet<Location> indexedLocations;
+  private final Map<Location, Optional<ImmutableList<MappedJarIndex>>> locationIndexes =
+      new HashMap<>();
+
+  /** The indexes this file manager holds a reference to, which it releases when it is closed. */
+  private final List<MappedJarIndex> acquiredIndexes = new ArrayList<>();
+
+  /**
+   * @param indexedLocations locations to serve from the indexes when possible. javac maps some
+   *     default platform classes to symbol files, so the platform classpath should only be indexed
+   *     when it is set explicitly.
+   */
+  IndexedClasspathFileManager(
+      StandardJavaFileManager fileManager,
+      ClasspathJarIndexCache indexCache,
+      ImmutableSet<Location> indexedLocations) {
+    super(fileManager);
+    this.indexCache = indexCache;
+    this.indexedLocations = indexedLocations;
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+      throws IOException {
+    Optional<ImmutableList<MappedJarIndex>> indexes = getIndexes(location);
+    if (!indexes.isPresent()) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    String directory = packageName.replace('.', '/');
+    List<JavaFileObject> files = new ArrayList<>();
+    for (MappedJarIndex index : indexes.get()) {
+      for (MappedJarIndex.Entry entry : index.getEntries(directory, recurse)) {
+        JavaFileObject.Kind kind = getKind(entry.getName());
+        if (kinds.contains(kind)) {
+          files.add(new IndexedJarFileObject(index, entry, kind));
+        }
+      }
+    }
+    return files;
+  }
+
+  @Override
+  @Nullable
+  public JavaFileObject getJavaFileForInput(
+      Location location, String className, JavaFileObject.Kind kind) throws IOException {
+    Optional<ImmutableList<MappedJarIndex>> indexes = getIndexes(location);
+    if (!indexes.isPresent()) {
+      return super.getJavaFileForInput(location, className, kind);
+    }
+
+    String name = className.replace('.', '/') + kind.extension;
+    for (MappedJarIndex index : indexes.get()) {
+      Optional<MappedJarIndex.Entry> entry = index.getEntry(name);
+      if (entry.isPresent()) {
+        return new IndexedJarFileObject(index, entry.get(), kind);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof IndexedJarFileObject) {
+      return ((IndexedJarFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof IndexedJarFileObject || b instanceof IndexedJarFileObject) {
+      return a.toUri().equals(b.toUri());
+    }
+    return super.isSameFile(a, b);
+  }
+
+  @Override
+  public boolean handleOption(String current, Iterator<String> remaining) {
+    locationIndexes.clear();
+    return super.handleOption(current, remaining);
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    locationIndexes.remove(location);
+    super.setLocation(location, path);
+  }
+
+  @Override
+  public void close() throws IOException {
+    locationIndexes.clear();
+    acquiredIndexes.forEach(MappedJarIndex::release);
+    acquiredIndexes.clear();
+    super.close();
+  }
+
+  private Optional<ImmutableList<MappedJarIndex>> getIndexes(Location location) {
+    if (!indexedLocations.contains(location)) {
+      return Optional.empty();
+    }
+    Optional<ImmutableList<MappedJarIndex>> indexes = locationIndexes.get(location);
+    if (indexes == null) {
+      indexes = indexLocation(location);
+      locationIndexes.put(location, indexes);
+    }
+    return indexes;
+  }
+
+  private Optional<ImmutableList<MappedJarIndex>> indexLocation(Location location) {
+    Iterable<? extends File> path = getLocation(location);
+    if (path == null) {
+      return Optional.empty();
+    }
+
+    ImmutableList.Builder<MappedJarIndex> indexes = ImmutableList.builder();
+    for (File entry : path) {
+      if (!entry.exists()) {
+        // javac skips classpath entries that do not exist.
+        continue;
+      }
+      if (!entry.isFile()) {
+        return Optional.empty();
+      }
+      Optional<MappedJarIndex> index;
+      try {
+        index = indexCache.acquire(entry.toPath());
+      } catch (IOException e) {
+        index = Optional.empty();
+      }
+      if (!index.isPresent()) {
+        return Optional.empty();
+      }
+      acquiredIndexes.add(index.get());
+      indexes.add(index.get());
+    }
+    return Optional.of(indexes.build());
+  }
+
+  private static JavaFileObject.Kind getKind(String name) {
+    for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+      if (kind != JavaFileObject.Kind.OTHER && name.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return JavaFileObject.Kind.OTHER;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileObject;
+
+/**
+ * A read-only {@link JavaFileObject} for an entry of a {@link MappedJarIndex}. Its URI
+ * has the same form as the URIs javac gives to entries of jars on the classpath, so class usage
+ * tracking treats both the same.
+ */
+class IndexedJarFileObject implements JavaFileObject {
+  private final MappedJarIndex jar;
+  private final MappedJarIndex.Entry entry;
+  private final Kind kind;
+  private final URI uri;
+
+  IndexedJarFileObject(MappedJarIndex jar, MappedJarIndex.Entry entry, Kind kind) {
+    this.jar = jar;
+    this.entry = entry;
+    this.kind = kind;
+    this.uri = createJarUri(jar, entry);
+  }
+
+  private static URI createJarUri(MappedJarIndex jar, MappedJarIndex.Entry entry) {
+    try {
+      // Entry names may contain characters that must be quoted in a URI, like spaces or '%'. The
+      // multi-argument constructor quotes them; the leading slash keeps a colon in the first
+      // segment from being read as a scheme.
+      String entryPath = new URI(null, null, "/" + entry.getName(), null).getRawPath();
+      return new URI("jar:" + jar.getPath().toUri().normalize() + "!" + entryPath);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(
+          String.format("Invalid entry %s in %s", entry.getName(), jar.getPath()), e);
+    }
+  }
+
+  /** @return the binary name of the class in this entry, e.g. {@code com.example.Foo$Bar}. */
+  String getBinaryName() {
+    String name = entry.getName();
+    int extensionStart = name.lastIndexOf('.');
+    return (extensionStart > name.lastIndexOf('/') ? name.substring(0, extensionStart) : name)
+        .replace('/', '.');
+  }
+
+  @Override
+  public URI toUri() {
+    return uri;
+  }
+
+  @Override
+  public String getName() {
+    return jar.getPath() + "(" + entry.getName() + ")";
+  }
+
+  @Override
+  public boolean isNameCompatible(String simpleName, Kind kind) {
+    String baseName = simpleName + kind.extension;
+    String name = entry.getName();
+    return kind.equals(this.kind) && (baseName.equals(name) || name.endsWith("/" + baseName));
+  }
+
+  @Override
+  public Kind getKind() {
+    return kind;
+  }
+
+  @Override
+  @Nullable
+  public NestingKind getNestingKind() {
+    return null;
+  }
+
+  @Override
+  @Nullable
+  public Modifier getAccessLevel() {
+    return null;
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    return new ByteArrayInputStream(jar.read(entry));
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    return new String(jar.read(entry), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+    return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public OutputStream openOutputStream() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Writer openWriter() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean delete() {
+    return false;
+  }
+
+  @Override
+  public long getLastModified() {
+    return entry.getLastModified();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof IndexedJarFileObject
+        && ((IndexedJarFileObject) other).uri.equals(uri);
+  }
+
+  @Override
+  public int hashCode() {
+    return uri.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
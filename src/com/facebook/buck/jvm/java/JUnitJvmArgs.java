@@ -23,6 +23,7 @@ import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
 import com.facebook.buck.test.selectors.TestSelectorList;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.env.BuckClasspath;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.File;
@@ -44,6 +45,9 @@ abstract class JUnitJvmArgs {
   private static final String MODULE_BASE_PATH_PROPERTY = "com.facebook.buck.moduleBasePath";
   private static final String STD_OUT_LOG_LEVEL_PROPERTY = "com.facebook.buck.stdOutLogLevel";
   private static final String STD_ERR_LOG_LEVEL_PROPERTY = "com.facebook.buck.stdErrLogLevel";
+  private static final String WARM_JVM_MAIN_CLASS = "com.facebook.buck.testrunner.TestRunnerServer";
+  private static final String WARM_JVM_SHARED_CLASSPATH_PROPERTY =
+      "buck.testrunner_shared_classpath";
 
   /** @return The version of Java we think we're targeting. */
   abstract int getTargetJavaVersion();
@@ -94,6 +98,12 @@ abstract class JUnitJvmArgs {
   /** @return The filesystem path to a JVM agent (i.e., a profiler). */
   abstract Optional<String> getPathToJavaAgent();
 
+  /**
+   * @return The filesystem path to the jar that loads the agent recording the classes each test
+   *     class uses, if they should be recorded.
+   */
+  abstract Optional<Path> getPathToClassUsageAgent();
+
   /** @return Unique identifier for the build. */
   abstract BuildId getBuildId();
 
@@ -162,27 +172,12 @@ abstract class JUnitJvmArgs {
       args.add(String.format("-agentpath:%s", getPathToJavaAgent().get()));
     }
 
-    // Include the buildId
-    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
-
-    // Include the baseDir
-    args.add(
-        String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath()));
-
-    // Disable the Java icon from appearing in the OS X Dock while running tests
-    args.add("-Dapple.awt.UIElement=true");
-
-    // Include log levels
-    if (getStdOutLogLevel().isPresent()) {
-      args.add(String.format("-D%s=%s", STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
-    }
-    if (getStdErrLogLevel().isPresent()) {
-      args.add(String.format("-D%s=%s", STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
+    if (getPathToClassUsageAgent().isPresent()) {
+      args.add(String.format("-javaagent:%s", getPathToClassUsageAgent().get()));
     }
 
-    if (getRobolectricLogPath().isPresent()) {
-      args.add(String.format("-Drobolectric.logging=%s", getRobolectricLogPath().get()));
-    }
+    getTestRunnerProperties()
+        .forEach((key, value) -> args.add(String.format("-D%s=%s", key, value)));
 
     if (isDebugEnabled()) {
       // This is the default config used by IntelliJ. By doing this, all a user
@@ -216,6 +211,75 @@ abstract class JUnitJvmArgs {
     // responsible for running the tests.
     args.add(getTestType().getDefaultTestRunner());
 
+    args.addAll(getTestRunnerArgs(defaultTestTimeoutMillis));
+  }
+
+  /**
+   * Formats the arguments of a JVM that is kept running to run the tests of many {@link
+   * JUnitStep}s, each of which sends its test runner arguments to the JVM. Only the arguments that
+   * have to be passed when the JVM starts are included.
+   *
+   * @param sharedClasspath the classpath entries that are loaded once for all the tests the JVM
+   *     runs.
+   */
+  public void formatWarmJvmCommandLineArgsToList(
+      ImmutableList.Builder<String> args,
+      ImmutableList<Path> sharedClasspath,
+      Verbosity verbosity) {
+    args.add(
+        String.format(
+            "-D%s=%s", FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY, getTestRunnerClasspath()));
+    args.add(
+        String.format(
+            "-D%s=%s",
+            WARM_JVM_SHARED_CLASSPATH_PROPERTY,
+            Joiner.on(File.pathSeparatorChar).join(sharedClasspath)));
+
+    // Disable the Java icon from appearing in the OS X Dock while running tests
+    args.add("-Dapple.awt.UIElement=true");
+
+    if (getExtraJvmArgs().isPresent()) {
+      args.addAll(getExtraJvmArgs().get());
+    }
+    if (verbosity.shouldUseVerbosityFlagIfAvailable()) {
+      args.add("-verbose");
+    }
+
+    args.add("-classpath", getTestRunnerClasspath().toString());
+    args.add(WARM_JVM_MAIN_CLASS);
+  }
+
+  /** @return the system properties that the test runner reads. */
+  public ImmutableMap<String, String> getTestRunnerProperties() {
+    ImmutableMap.Builder<String, String> properties = ImmutableMap.builder();
+
+    // Include the buildId
+    properties.put(BUILD_ID_PROPERTY, getBuildId().toString());
+
+    // Include the baseDir
+    properties.put(MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath().toString());
+
+    // Disable the Java icon from appearing in the OS X Dock while running tests
+    properties.put("apple.awt.UIElement", "true");
+
+    // Include log levels
+    if (getStdOutLogLevel().isPresent()) {
+      properties.put(STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get().toString());
+    }
+    if (getStdErrLogLevel().isPresent()) {
+      properties.put(STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get().toString());
+    }
+
+    if (getRobolectricLogPath().isPresent()) {
+      properties.put("robolectric.logging", getRobolectricLogPath().get().toString());
+    }
+    return properties.build();
+  }
+
+  /** @return the arguments of the test runner, which come after the name of its class. */
+  public ImmutableList<String> getTestRunnerArgs(long defaultTestTimeoutMillis) {
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+
     // The first argument to the test runner is where the test results should be written. It is not
     // reliable to write test results to stdout or stderr because there may be output from the unit
     // tests written to those file descriptors, as well.
@@ -243,6 +307,7 @@ abstract class JUnitJvmArgs {
     for (String testClassName : getTestClasses()) {
       args.add(testClassName);
     }
+    return args.build();
   }
 
   public Map<String, String> getEnvironment() {
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.XmlTestResultParser;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** Splits the test classes of a {@link JavaTest} between JVMs that run at the same time. */
+final class JUnitShards {
+  private static final Logger LOG = Logger.get(JUnitShards.class);
+
+  private JUnitShards() {}
+
+  /**
+   * Splits the test classes into at most the given number of shards, so that the shards take about
+   * as long as each other to run. Each class is expected to take as long as it did the last time it
+   * ran, and classes that have not run before are expected to take the average of the others.
+   */
+  static ImmutableList<ImmutableSet<String>> partition(
+      Iterable<String> testClasses, int maxShards, Map<String, Long> durations) {
+    long averageDuration =
+        (long) durations.values().stream().mapToLong(Long::longValue).average().orElse(1);
+    List<String> longestFirst = new ArrayList<>();
+    testClasses.forEach(longestFirst::add);
+    Comparator<String> byDuration =
+        Comparator.comparingLong(testClass -> durations.getOrDefault(testClass, averageDuration));
+    longestFirst.sort(byDuration.reversed().thenComparing(Comparator.naturalOrder()));
+
+    // Give each class to the shard that has the least work so far.
+    int shardCount = Math.min(maxShards, longestFirst.size());
+    PriorityQueue<Shard> shards =
+        new PriorityQueue<>(
+            Comparator.comparingLong((Shard shard) -> shard.duration)
+                .thenComparingInt(shard -> shard.index));
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new Shard(i));
+    }
+    for (String testClass : longestFirst) {
+      Shard shard = shards.remove();
+      shard.testClasses.add(testClass);
+      shard.duration += durations.getOrDefault(testClass, averageDuration);
+      shards.add(shard);
+    }
+
+    return shards.stream()
+        .sorted(Comparator.comparingInt(shard -> shard.index))
+        .map(shard -> shard.testClasses.build())
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * @return how long each of the given test classes took the last time its results were written to
+   *     the given directory, in milliseconds
+   */
+  static ImmutableMap<String, Long> readDurations(
+      Path testResultsDir, Iterable<String> testClasses) {
+    ImmutableMap.Builder<String, Long> durations = ImmutableMap.builder();
+    for (String testClass : testClasses) {
+      Path testResultFile = testResultsDir.resolve(testClass + ".xml");
+      if (!Files.isRegularFile(testResultFile)) {
+        continue;
+      }
+      try {
+        TestCaseSummary summary = XmlTestResultParser.parse(testResultFile);
+        durations.put(testClass, summary.getTotalTime());
+      } catch (IOException | RuntimeException e) {
+        LOG.debug(e, "Cannot read the duration of %s from %s.", testClass, testResultFile);
+      }
+    }
+    return durations.build();
+  }
+
+  private static class Shard {
+    private final int index;
+    private final ImmutableSet.Builder<String> testClasses = ImmutableSet.builder();
+    private long duration = 0;
+
+    private Shard(int index) {
+      this.index = index;
+    }
+  }
+}
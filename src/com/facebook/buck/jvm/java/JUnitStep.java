@@ -29,15 +29,20 @@ import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 public class JUnitStep extends ShellStep {
   private static final Logger LOG = Logger.get(JUnitStep.class);
@@ -49,6 +54,9 @@ public class JUnitStep extends ShellStep {
   private final Optional<Long> testCaseTimeoutMs;
   private final ImmutableMap<String, String> env;
   private final JUnitJvmArgs junitJvmArgs;
+  private final Optional<WarmTestJvmPool> warmJvmPool;
+  private final int maxIdleWarmJvms;
+  private final ImmutableList<Pattern> warmJvmSharedClasspath;
   private Supplier<Path> classpathArgfile;
 
   // Set when the junit command times out.
@@ -62,6 +70,36 @@ public class JUnitStep extends ShellStep {
       ImmutableMap<String, String> env,
       ImmutableList<String> javaRuntimeLauncher,
       JUnitJvmArgs junitJvmArgs) {
+    this(
+        filesystem,
+        nativeLibsEnvironment,
+        testRuleTimeoutMs,
+        testCaseTimeoutMs,
+        env,
+        javaRuntimeLauncher,
+        junitJvmArgs,
+        Optional.empty(),
+        0,
+        ImmutableList.of());
+  }
+
+  /**
+   * @param warmJvmPool if present, the tests run in a JVM from this pool instead of a new one.
+   * @param maxIdleWarmJvms the number of idle JVMs the pool keeps after the tests have run.
+   * @param warmJvmSharedClasspath matches the classpath entries that a JVM from the pool loads once
+   *     for all the tests it runs.
+   */
+  public JUnitStep(
+      ProjectFilesystem filesystem,
+      Map<String, String> nativeLibsEnvironment,
+      Optional<Long> testRuleTimeoutMs,
+      Optional<Long> testCaseTimeoutMs,
+      ImmutableMap<String, String> env,
+      ImmutableList<String> javaRuntimeLauncher,
+      JUnitJvmArgs junitJvmArgs,
+      Optional<WarmTestJvmPool> warmJvmPool,
+      int maxIdleWarmJvms,
+      ImmutableList<Pattern> warmJvmSharedClasspath) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
@@ -70,6 +108,9 @@ public class JUnitStep extends ShellStep {
     this.testCaseTimeoutMs = testCaseTimeoutMs;
     this.env = env;
     this.junitJvmArgs = junitJvmArgs;
+    this.warmJvmPool = warmJvmPool;
+    this.maxIdleWarmJvms = maxIdleWarmJvms;
+    this.warmJvmSharedClasspath = warmJvmSharedClasspath;
 
     this.classpathArgfile =
         MoreSuppliers.memoize(
@@ -122,10 +163,83 @@ public class JUnitStep extends ShellStep {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws InterruptedException, IOException {
+    if (warmJvmPool.isPresent()) {
+      return executeInWarmJvm(context, warmJvmPool.get());
+    }
     ensureClasspathArgfile();
     return super.execute(context);
   }
 
+  /** Runs the tests in a JVM that is kept running to run the tests of other steps too. */
+  private StepExecutionResult executeInWarmJvm(ExecutionContext context, WarmTestJvmPool pool)
+      throws IOException {
+    ImmutableList.Builder<Path> sharedClasspath = ImmutableList.builder();
+    ImmutableList.Builder<String> classpath = ImmutableList.builder();
+    Hasher sharedClasspathStamp = Hashing.murmur3_128().newHasher();
+    for (String entry : filesystem.readLines(junitJvmArgs.getClasspathFile())) {
+      Path path = filesystem.resolve(entry);
+      if (!Files.exists(path)) {
+        continue;
+      }
+      if (warmJvmSharedClasspath.stream().anyMatch(pattern -> pattern.matcher(entry).find())) {
+        sharedClasspath.add(path);
+        // Rebuilding a shared entry makes the JVMs that loaded it unusable.
+        sharedClasspathStamp
+            .putUnencodedChars(path.toString())
+            .putLong(Files.getLastModifiedTime(path).toMillis())
+            .putLong(Files.size(path));
+      } else {
+        classpath.add(path.toString());
+      }
+    }
+
+    ImmutableList.Builder<String> command = ImmutableList.builder();
+    command.addAll(javaRuntimeLauncher);
+    junitJvmArgs.formatWarmJvmCommandLineArgsToList(
+        command, sharedClasspath.build(), context.getVerbosity());
+
+    // Every test gets the same environment as a new JVM would. That includes the classpath file,
+    // which tests may read, so a JVM is only reused by tests with the same classpath file.
+    Map<String, String> environment = new HashMap<>(context.getEnvironment());
+    environment.put("PWD", workingDirectory.toString());
+    environment.putAll(getEnvironmentVariables(context));
+
+    ProcessExecutorParams params =
+        ProcessExecutorParams.builder()
+            .setCommand(command.build())
+            .setEnvironment(ImmutableMap.copyOf(environment))
+            .setDirectory(context.getBuildCellRootPath().resolve(workingDirectory))
+            .build();
+    WarmTestJvm jvm =
+        pool.borrow(context.getProcessExecutor(), params, sharedClasspathStamp.hash().toString());
+    ProcessExecutor.Result result;
+    try {
+      result =
+          jvm.run(
+              junitJvmArgs.getTestRunnerProperties(),
+              classpath.build(),
+              junitJvmArgs.getTestType().getDefaultTestRunner(),
+              junitJvmArgs.getTestRunnerArgs(
+                  testCaseTimeoutMs.orElse(context.getDefaultTestTimeoutMillis())),
+              testRuleTimeoutMs);
+    } finally {
+      pool.release(jvm, maxIdleWarmJvms);
+    }
+
+    int exitCode = getExitCodeFromResult(context, result);
+    Optional<String> output = result.getStderr();
+    if (output.isPresent()
+        && !output.get().isEmpty()
+        && (exitCode != 0 || context.getVerbosity().shouldPrintOutput())) {
+      context.getStdErr().print(output.get());
+    }
+    return StepExecutionResult.builder()
+        .setExitCode(exitCode)
+        .setExecutedCommand(result.getCommand())
+        .setStderr(output)
+        .build();
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
     ImmutableMap.Builder<String, String> env = ImmutableMap.builder();
@@ -238,6 +352,11 @@ public class JUnitStep extends ShellStep {
     return exitCode;
   }
 
+  /** @return the test classes this step runs. */
+  public ImmutableList<String> getTestClasses() {
+    return junitJvmArgs.getTestClasses();
+  }
+
   public boolean hasTimedOut() {
     return hasTimedOut;
   }
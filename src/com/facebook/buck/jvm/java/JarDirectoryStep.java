@@ -86,6 +86,8 @@ public class JarDirectoryStep implements Step {
             .setShouldDisallowAllDuplicates(parameters.getDisallowAllDuplicates())
             .setShouldHashEntries(parameters.getHashEntries())
             .setRemoveEntryPredicate(parameters.getRemoveEntryPredicate())
+            .setShouldReusePrecompressedEntries(parameters.getReusePrecompressedEntries())
+            .setCompressionThreads(parameters.getCompressionThreads())
             .createJarFile(filesystem.resolve(parameters.getJarPath())));
   }
 }
@@ -59,6 +59,18 @@ public abstract class JarParameters {
     return Level.INFO;
   }
 
+  /** Whether entries of input jars are copied as they are compressed, without recompressing. */
+  @Value.Default
+  public boolean getReusePrecompressedEntries() {
+    return false;
+  }
+
+  /** Number of threads that compress entries of the jar. */
+  @Value.Default
+  public int getCompressionThreads() {
+    return 1;
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -85,6 +85,7 @@ public class JavaBinary extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
   private final boolean cache;
   private Level duplicatesLogLevel;
+  private final int jarCompressionThreads;
 
   public JavaBinary(
       BuildTarget buildTarget,
@@ -100,7 +101,8 @@ public class JavaBinary extends AbstractBuildRuleWithDeclaredAndExtraDeps
       ImmutableSet<JavaLibrary> transitiveClasspathDeps,
       ImmutableSet<SourcePath> transitiveClasspaths,
       boolean cache,
-      Level duplicatesLogLevel) {
+      Level duplicatesLogLevel,
+      int jarCompressionThreads) {
     super(buildTarget, projectFilesystem, params);
     this.javaRuntimeLauncher = javaRuntimeLauncher;
     this.mainClass = mainClass;
@@ -117,6 +119,7 @@ public class JavaBinary extends AbstractBuildRuleWithDeclaredAndExtraDeps
     this.transitiveClasspaths = transitiveClasspaths;
     this.cache = cache;
     this.duplicatesLogLevel = duplicatesLogLevel;
+    this.jarCompressionThreads = jarCompressionThreads;
   }
 
   @Override
@@ -172,6 +175,8 @@ public class JavaBinary extends AbstractBuildRuleWithDeclaredAndExtraDeps
                 .setMergeManifests(mergeManifests)
                 .setDisallowAllDuplicates(disallowAllDuplicates)
                 .setDuplicatesLogLevel(duplicatesLogLevel)
+                .setReusePrecompressedEntries(true)
+                .setCompressionThreads(jarCompressionThreads)
                 .setRemoveEntryPredicate(
                     entry ->
                         blacklistPatternsMatcher.substringMatches(((ZipEntry) entry).getName()))
@@ -142,7 +142,8 @@ public class JavaBinaryDescription
             transitiveClasspathDeps,
             transitiveClasspaths,
             javaBuckConfig.shouldCacheBinaries(),
-            javaBuckConfig.getDuplicatesLogLevel());
+            javaBuckConfig.getDuplicatesLogLevel(),
+            javaBuckConfig.getJarCompressionThreads());
 
     // If we're packaging native libraries, construct the rule to build the fat JAR, which packages
     // up the original binary JAR and any required native libraries.
@@ -28,6 +28,7 @@ import com.facebook.buck.core.toolchain.toolprovider.impl.ConstantToolProvider;
 import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.facebook.buck.rules.args.StringArg;
+import com.facebook.buck.util.unit.SizeUnit;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -48,6 +49,7 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
 
   public static final String SECTION = "java";
   public static final String PROPERTY_COMPILE_AGAINST_ABIS = "compile_against_abis";
+  private static final long DEFAULT_CLASS_STUB_CACHE_SIZE = 64 * 1024 * 1024;
   public static final CommandTool DEFAULT_JAVA_TOOL =
       new CommandTool.Builder().addArg("java").build();
   static final JavaOptions DEFAULT_JAVA_OPTIONS =
@@ -69,6 +71,10 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
                 .setJavacPath(getJavacPath(targetConfiguration))
                 .setJavacJarPath(getJavacJarPath(targetConfiguration))
                 .setCompilerClassName(delegate.getValue("tools", "compiler_class_name"))
+                .setReuseFileManagers(
+                    delegate.getBooleanValue(SECTION, "reuse_javac_file_managers", false))
+                .setUseSharedClasspathIndex(
+                    delegate.getBooleanValue(SECTION, "shared_classpath_index", false))
                 .build();
   }
 
@@ -112,6 +118,9 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     if (trackJavacPhaseEvents.isPresent()) {
       builder.setTrackJavacPhaseEvents(trackJavacPhaseEvents.get());
     }
+    delegate
+        .getBoolean(SECTION, "incremental_compilation")
+        .ifPresent(builder::setIncrementalCompilation);
 
     Optional<JavacOptions.SpoolMode> spoolMode =
         delegate.getEnum(SECTION, "jar_spool_mode", JavacOptions.SpoolMode.class);
@@ -224,6 +233,22 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getBooleanValue(SECTION, "cache_binaries", true);
   }
 
+  /** @return the number of threads that compress entries of the jars of java_binary rules. */
+  public int getJarCompressionThreads() {
+    return delegate.getInteger(SECTION, "jar_compression_threads").orElse(1);
+  }
+
+  /**
+   * @return the number of bytes of class stubs that are kept for the ABI jars of rebuilt libraries,
+   *     given with a unit like {@code 64MB} or as a plain number of bytes. 0 disables the cache.
+   */
+  public long getClassStubCacheSize() {
+    return delegate
+        .getValue(SECTION, "class_stub_cache_size")
+        .map(size -> size.matches("\\d+") ? Long.parseLong(size) : SizeUnit.parseBytes(size))
+        .orElse(DEFAULT_CLASS_STUB_CACHE_SIZE);
+  }
+
   public OptionalInt getDxThreadCount() {
     return delegate.getInteger(SECTION, "dx_threads");
   }
@@ -43,6 +43,7 @@ import com.facebook.buck.core.toolchain.tool.Tool;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.BuildCellRelativePath;
+import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.core.HasClasspathEntries;
 import com.facebook.buck.jvm.core.JavaLibrary;
@@ -68,6 +69,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -81,6 +83,7 @@ import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -98,6 +101,9 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
   public static final Flavor COMPILED_TESTS_LIBRARY_FLAVOR = InternalFlavor.of("testsjar");
 
+  /** Tests with this label always run in a new JVM, even when warm JVMs are enabled. */
+  public static final String WARM_JVM_UNSAFE_LABEL = "warm_jvm_unsafe";
+
   // TODO(#9027062): Migrate this to a PackagedResource so we don't make assumptions
   // about the ant build.
   private static final Path TESTRUNNER_CLASSES =
@@ -138,10 +144,16 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
   private static final int TEST_CLASSES_SHUFFLE_SEED = 0xFACEB00C;
 
+  /** Stands in for the id of the build, which changes every build, in the test selection key. */
+  private static final BuildId TEST_SELECTION_BUILD_ID = new BuildId("test-selection");
+
   private static final Logger LOG = Logger.get(JavaTest.class);
 
   @Nullable private ImmutableList<JUnitStep> junits;
 
+  /** The logs written by the JVMs of the last run, one per shard when the test is sharded. */
+  private ImmutableList<Path> pathsToTestLogs;
+
   @Nullable private JUnitStep externalJunitStep;
 
   private final boolean runTestSeparately;
@@ -190,6 +202,7 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
     this.stdErrLogLevel = stdErrLogLevel;
     this.unbundledResourcesRoot = unbundledResourcesRoot;
     this.pathToTestLogs = getPathToTestOutputDirectory().resolve("logs.txt");
+    this.pathsToTestLogs = ImmutableList.of(pathToTestLogs);
   }
 
   @Override
@@ -212,6 +225,25 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         getProjectFilesystem(), getBuildTarget(), "%s/classpath-file");
   }
 
+  /** @return where {@link JavaTestSelection} keeps what it knows about the test classes. */
+  private Path getPathToTestSelectionState() {
+    return BuildTargetPaths.getGenPath(
+        getProjectFilesystem(), getBuildTarget(), "__java_test_%s_selection__");
+  }
+
+  /**
+   * Unchanged test classes can only be skipped when the classes they use are recorded, and when
+   * all of their tests run.
+   */
+  private boolean shouldSkipUnchangedTestClasses(
+      ExecutionContext executionContext, TestRunningOptions options) {
+    return options.isSkippingUnchangedJavaTests()
+        && testType == TestType.JUNIT
+        && options.getTestSelectorList().isEmpty()
+        && !executionContext.isDebugEnabled()
+        && !executionContext.isCodeCoverageEnabled();
+  }
+
   private JUnitStep getJUnitStep(
       ExecutionContext executionContext,
       SourcePathResolverAdapter pathResolver,
@@ -219,7 +251,32 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
       Optional<Path> outDir,
       Optional<Path> robolectricLogPath,
       Set<String> testClassNames) {
+    JUnitJvmArgs args =
+        getJUnitJvmArgs(
+            executionContext, pathResolver, options, outDir, robolectricLogPath, testClassNames);
 
+    return new JUnitStep(
+        getProjectFilesystem(),
+        nativeLibsEnvironment,
+        testRuleTimeoutMs,
+        testCaseTimeoutMs,
+        Arg.stringify(env, pathResolver),
+        javaRuntimeLauncher.getCommandPrefix(pathResolver),
+        args,
+        canUseWarmJvm(executionContext, options)
+            ? executionContext.getWarmTestJvmPool()
+            : Optional.empty(),
+        options.getJavaTestWarmJvms(),
+        options.getJavaTestWarmJvmSharedClasspath());
+  }
+
+  private JUnitJvmArgs getJUnitJvmArgs(
+      ExecutionContext executionContext,
+      SourcePathResolverAdapter pathResolver,
+      TestRunningOptions options,
+      Optional<Path> outDir,
+      Optional<Path> robolectricLogPath,
+      Set<String> testClassNames) {
     Iterable<String> reorderedTestClasses =
         reorderClasses(testClassNames, options.isShufflingTests());
 
@@ -233,8 +290,7 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
     BuckEventBus buckEventBus = executionContext.getBuckEventBus();
     BuildId buildId = buckEventBus.getBuildId();
     TestSelectorList testSelectorList = options.getTestSelectorList();
-    JUnitJvmArgs args =
-        ImmutableJUnitJvmArgs.builder()
+    return ImmutableJUnitJvmArgs.builder()
             .setTargetJavaVersion(targetJavaVersion)
             .setTestType(testType)
             .setDirectoryForTestResults(outDir)
@@ -244,6 +300,12 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
             .setInclNoLocationClassesEnabled(executionContext.isInclNoLocationClassesEnabled())
             .setDebugEnabled(executionContext.isDebugEnabled())
             .setPathToJavaAgent(options.getPathToJavaAgent())
+            .setPathToClassUsageAgent(
+                outDir.isPresent() && shouldSkipUnchangedTestClasses(executionContext, options)
+                    ? Optional.of(
+                        JavaTestSelection.getAgentJar(
+                            getProjectFilesystem().resolve(getPathToTestSelectionState())))
+                    : Optional.empty())
             .setBuildId(buildId)
             .setBuckModuleBaseSourceCodePath(
                 getBuildTarget()
@@ -258,15 +320,72 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
             .setShouldExplainTestSelectorList(options.shouldExplainTestSelectorList())
             .setTestSelectorList(testSelectorList)
             .build();
+  }
 
-    return new JUnitStep(
+  /**
+   * @return a key of everything but the classes they use that decides how the test classes run:
+   *     the command line of their JVM without the test classes to run and the build id, the
+   *     environment of the JVM and the java binary it runs.
+   */
+  private String getTestSelectionRunKey(
+      ExecutionContext executionContext,
+      SourcePathResolverAdapter pathResolver,
+      TestRunningOptions options) {
+    JUnitJvmArgs args =
+        ImmutableJUnitJvmArgs.builder()
+            .from(
+                getJUnitJvmArgs(
+                    executionContext,
+                    pathResolver,
+                    options,
+                    Optional.of(getPathToTestOutputDirectory()),
+                    Optional.of(pathToTestLogs),
+                    ImmutableSet.of()))
+            .setBuildId(TEST_SELECTION_BUILD_ID)
+            .build();
+    ImmutableList<String> launcher = javaRuntimeLauncher.getCommandPrefix(pathResolver);
+    ImmutableList.Builder<String> commandLine = ImmutableList.builder();
+    commandLine.addAll(launcher);
+    args.formatCommandLineArgsToList(
+        commandLine,
         getProjectFilesystem(),
-        nativeLibsEnvironment,
-        testRuleTimeoutMs,
-        testCaseTimeoutMs,
-        Arg.stringify(env, pathResolver),
-        javaRuntimeLauncher.getCommandPrefix(pathResolver),
-        args);
+        this::getClassPathFile,
+        executionContext.getVerbosity(),
+        testCaseTimeoutMs.orElse(executionContext.getDefaultTestTimeoutMillis()));
+
+    Map<String, String> environment = new TreeMap<>(Arg.stringify(env, pathResolver));
+    environment.putAll(nativeLibsEnvironment);
+    environment.putAll(args.getEnvironment());
+
+    Optional<Path> javaBinary =
+        launcher.isEmpty()
+            ? Optional.empty()
+            : new ExecutableFinder(executionContext.getPlatform())
+                .getOptionalExecutable(
+                    Paths.get(launcher.get(0)), executionContext.getEnvironment());
+    ImmutableList.Builder<Path> ownClasspathEntries = ImmutableList.builder();
+    unbundledResourcesRoot.map(pathResolver::getAbsolutePath).ifPresent(ownClasspathEntries::add);
+    compiledTestsLibrary.getOutputClasspaths().stream()
+        .map(pathResolver::getAbsolutePath)
+        .forEach(ownClasspathEntries::add);
+    return JavaTestSelection.getRunKey(
+        commandLine.build(), environment, javaBinary, ownClasspathEntries.build());
+  }
+
+  /**
+   * Tests can run in a warm JVM when it behaves like a new one would: their JVM must not be
+   * debugged or collect coverage or run an agent until it exits, and they must not rely on having
+   * the JVM to themselves.
+   */
+  private boolean canUseWarmJvm(ExecutionContext executionContext, TestRunningOptions options) {
+    return options.getJavaTestWarmJvms() > 0
+        && testType == TestType.JUNIT
+        && forkMode() != ForkMode.PER_TEST
+        && !labels.contains(WARM_JVM_UNSAFE_LABEL)
+        && !executionContext.isDebugEnabled()
+        && !executionContext.isCodeCoverageEnabled()
+        && !options.getPathToJavaAgent().isPresent()
+        && !shouldSkipUnchangedTestClasses(executionContext, options);
   }
 
   /** Returns the underlying java library containing the compiled tests. */
@@ -300,15 +419,50 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     Path pathToTestOutput = getPathToTestOutputDirectory();
+    Path pathToTestSelectionState = getProjectFilesystem().resolve(getPathToTestSelectionState());
+
+    boolean skipUnchangedTestClasses = shouldSkipUnchangedTestClasses(executionContext, options);
+    String testSelectionRunKey =
+        skipUnchangedTestClasses
+            ? getTestSelectionRunKey(
+                executionContext, buildContext.getSourcePathResolver(), options)
+            : "";
+    ImmutableSet<String> unchangedTestClassNames =
+        skipUnchangedTestClasses
+            ? JavaTestSelection.findUnchangedTestClasses(
+                pathToTestSelectionState, testSelectionRunKey, testClassNames)
+            : ImmutableSet.of();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Skipping these unchanged classes: %s", unchangedTestClassNames);
+    }
+    Set<String> testClassNamesToRun =
+        ImmutableSet.copyOf(Sets.difference(testClassNames, unchangedTestClassNames));
 
     steps.addAll(
         MakeCleanDirectoryStep.of(
             BuildCellRelativePath.fromCellRelativePath(
                 buildContext.getBuildCellRootPath(), getProjectFilesystem(), pathToTestOutput)));
+    if (skipUnchangedTestClasses) {
+      steps.add(
+          new AbstractExecutionStep("restore results of unchanged test classes") {
+            @Override
+            public StepExecutionResult execute(ExecutionContext context) throws IOException {
+              JavaTestSelection.writeAgentJar(pathToTestSelectionState);
+              JavaTestSelection.restoreResults(
+                  pathToTestSelectionState,
+                  getProjectFilesystem().resolve(pathToTestOutput),
+                  unchangedTestClassNames);
+              return StepExecutionResults.SUCCESS;
+            }
+          });
+    }
     addPreTestSteps(buildContext, steps);
-    if (forkMode() == ForkMode.PER_TEST) {
+    pathsToTestLogs = ImmutableList.of(pathToTestLogs);
+    if (testClassNamesToRun.isEmpty()) {
+      junits = ImmutableList.of();
+    } else if (forkMode() == ForkMode.PER_TEST) {
       ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
-      for (String testClass : testClassNames) {
+      for (String testClass : testClassNamesToRun) {
         junitsBuilder.add(
             getJUnitStep(
                 executionContext,
@@ -319,6 +473,32 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
                 Collections.singleton(testClass)));
       }
       junits = junitsBuilder.build();
+      steps.addAll(junits);
+    } else if (options.getJavaTestShards() > 1 && testClassNamesToRun.size() > 1) {
+      // The results of the previous run have not been cleaned yet when the steps are created.
+      ImmutableMap<String, Long> durations =
+          JUnitShards.readDurations(
+              getProjectFilesystem().resolve(pathToTestOutput), testClassNamesToRun);
+      ImmutableList<ImmutableSet<String>> shards =
+          JUnitShards.partition(testClassNamesToRun, options.getJavaTestShards(), durations);
+      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
+      ImmutableList.Builder<Path> logsBuilder = ImmutableList.builder();
+      for (int i = 0; i < shards.size(); i++) {
+        // Shards run at the same time, so each of them writes a log of its own.
+        Path pathToShardLogs = pathToTestOutput.resolve(String.format("logs-%d.txt", i));
+        logsBuilder.add(pathToShardLogs);
+        junitsBuilder.add(
+            getJUnitStep(
+                executionContext,
+                buildContext.getSourcePathResolver(),
+                options,
+                Optional.of(pathToTestOutput),
+                Optional.of(pathToShardLogs),
+                shards.get(i)));
+      }
+      junits = junitsBuilder.build();
+      pathsToTestLogs = logsBuilder.build();
+      steps.add(new ShardedJUnitStep(junits));
     } else {
       junits =
           ImmutableList.of(
@@ -328,9 +508,23 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
                   options,
                   Optional.of(pathToTestOutput),
                   Optional.of(pathToTestLogs),
-                  testClassNames));
+                  testClassNamesToRun));
+      steps.addAll(junits);
+    }
+    if (skipUnchangedTestClasses) {
+      steps.add(
+          new AbstractExecutionStep("record classes used by passing test classes") {
+            @Override
+            public StepExecutionResult execute(ExecutionContext context) throws IOException {
+              JavaTestSelection.recordResults(
+                  pathToTestSelectionState,
+                  getProjectFilesystem().resolve(pathToTestOutput),
+                  testSelectionRunKey,
+                  testClassNamesToRun);
+              return StepExecutionResults.SUCCESS;
+            }
+          });
     }
-    steps.addAll(junits);
     return steps.build();
   }
 
@@ -432,6 +626,9 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         if (!isUsingTestSelectors && !Files.isRegularFile(testResultFile)) {
           String message;
           for (JUnitStep junit : Objects.requireNonNull(junits)) {
+            if (!junit.getTestClasses().contains(testClass)) {
+              continue;
+            }
             if (junit.hasTimedOut()) {
               message = "test timed out before generating results file";
             } else {
@@ -460,7 +657,10 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
           .setTestCases(summaries)
           .setContacts(contacts)
           .setLabels(labels.stream().map(Object::toString).collect(ImmutableSet.toImmutableSet()))
-          .addTestLogPaths(getProjectFilesystem().resolve(pathToTestLogs))
+          .addAllTestLogPaths(
+              pathsToTestLogs.stream()
+                  .map(getProjectFilesystem()::resolve)
+                  .collect(ImmutableList.toImmutableList()))
           .build();
     };
   }
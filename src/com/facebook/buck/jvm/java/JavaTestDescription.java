@@ -217,7 +217,8 @@ public class JavaTestDescription
               transitiveClasspathDeps,
               transitiveClasspaths,
               javaBuckConfig.shouldCacheBinaries(),
-              javaBuckConfig.getDuplicatesLogLevel());
+              javaBuckConfig.getDuplicatesLogLevel(),
+              javaBuckConfig.getJarCompressionThreads());
 
       graphBuilder.addToIndex(javaBinary);
 
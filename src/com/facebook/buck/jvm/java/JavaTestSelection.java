@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.XmlTestResultParser;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * Skips the test classes of a {@link JavaTest} that passed the last time they ran, and none of
+ * whose classes have changed since. The classes a test class used are recorded while it runs by
+ * {@code com.facebook.buck.testrunner.ClassUsageAgent}.
+ *
+ * <p>For each test class that passed, the state directory holds the classes it used, a
+ * fingerprint of their contents at the time, and its results, which stand in for the results of
+ * the test class when it is skipped.
+ *
+ * <p>The agent only sees classes, so the other files of the classpath entries that the test owns,
+ * like its resources, are part of the run key instead. Changing any of them runs all test classes
+ * again.
+ */
+final class JavaTestSelection {
+  private static final Logger LOG = Logger.get(JavaTestSelection.class);
+
+  private static final String AGENT_CLASS = "com.facebook.buck.testrunner.ClassUsageAgent";
+  private static final String AGENT_JAR = "class-usage-agent.jar";
+  private static final String USED_CLASSES_SUFFIX = ".used-classes";
+  private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+  private static final String RESULTS_SUFFIX = ".xml";
+
+  private JavaTestSelection() {}
+
+  /** @return the jar that loads the agent with {@code -javaagent:}. */
+  static Path getAgentJar(Path stateDir) {
+    return stateDir.resolve(AGENT_JAR);
+  }
+
+  /**
+   * Writes the jar that loads the agent. It only has a manifest, as the agent is on the classpath
+   * of the test runner.
+   */
+  static void writeAgentJar(Path stateDir) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(new Attributes.Name("Premain-Class"), AGENT_CLASS);
+    Files.createDirectories(stateDir);
+    new JarOutputStream(Files.newOutputStream(getAgentJar(stateDir)), manifest).close();
+  }
+
+  /**
+   * @param ownClasspathEntries jars and directories of the test itself, whose files other than
+   *     classes are hashed
+   * @return a key of the command line of the JVM the test classes run in, its environment, the
+   *     identity of the java binary, which is its real path, its size and its modification time,
+   *     and the contents of the files other than classes in {@code ownClasspathEntries}.
+   */
+  static String getRunKey(
+      Iterable<String> commandLine,
+      Map<String, String> environment,
+      Optional<Path> javaBinary,
+      Iterable<Path> ownClasspathEntries) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String arg : commandLine) {
+      hasher.putInt(arg.length()).putUnencodedChars(arg);
+    }
+    for (Map.Entry<String, String> variable : new TreeMap<>(environment).entrySet()) {
+      hasher.putInt(variable.getKey().length()).putUnencodedChars(variable.getKey());
+      hasher.putInt(variable.getValue().length()).putUnencodedChars(variable.getValue());
+    }
+    if (javaBinary.isPresent()) {
+      try {
+        Path path = javaBinary.get().toRealPath();
+        hasher
+            .putUnencodedChars(path.toString())
+            .putLong(Files.size(path))
+            .putLong(Files.getLastModifiedTime(path).toMillis());
+      } catch (IOException e) {
+        LOG.debug(e, "Cannot read %s.", javaBinary.get());
+      }
+    }
+    for (Path classpathEntry : ownClasspathEntries) {
+      hasher.putUnencodedChars(classpathEntry.toString());
+      try {
+        hashResources(classpathEntry, hasher);
+      } catch (IOException e) {
+        // A key that never matches again makes all test classes run.
+        LOG.debug(e, "Cannot read %s, so all test classes run.", classpathEntry);
+        hasher.putUnencodedChars(UUID.randomUUID().toString());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Hashes the names and contents of the files other than classes in a jar or directory. */
+  private static void hashResources(Path classpathEntry, Hasher hasher) throws IOException {
+    if (Files.isRegularFile(classpathEntry)) {
+      try (ZipFile jar = new ZipFile(classpathEntry.toFile())) {
+        SortedMap<String, ZipEntry> resources = new TreeMap<>();
+        for (ZipEntry entry : Collections.list(jar.entries())) {
+          if (!entry.isDirectory() && !entry.getName().endsWith(".class")) {
+            resources.put(entry.getName(), entry);
+          }
+        }
+        for (Map.Entry<String, ZipEntry> resource : resources.entrySet()) {
+          try (InputStream in = jar.getInputStream(resource.getValue())) {
+            hasher
+                .putUnencodedChars(resource.getKey())
+                .putBytes(Hashing.murmur3_128().hashBytes(ByteStreams.toByteArray(in)).asBytes());
+          }
+        }
+      }
+    } else if (Files.isDirectory(classpathEntry)) {
+      SortedSet<Path> resources;
+      try (Stream<Path> files = Files.walk(classpathEntry)) {
+        resources =
+            files
+                .filter(Files::isRegularFile)
+                .filter(path -> !path.getFileName().toString().endsWith(".class"))
+                .collect(Collectors.toCollection(TreeSet::new));
+      }
+      for (Path resource : resources) {
+        hasher
+            .putUnencodedChars(classpathEntry.relativize(resource).toString())
+            .putBytes(Hashing.murmur3_128().hashBytes(Files.readAllBytes(resource)).asBytes());
+      }
+    }
+  }
+
+  /**
+   * @return the test classes that passed the last time they ran with the same run key, and whose
+   *     used classes have the same contents as they had then.
+   */
+  static ImmutableSet<String> findUnchangedTestClasses(
+      Path stateDir, String runKey, Iterable<String> testClasses) {
+    Map<String, HashCode> classHashes = new HashMap<>();
+    ImmutableSet.Builder<String> unchanged = ImmutableSet.builder();
+    for (String testClass : testClasses) {
+      Path fingerprintFile = stateDir.resolve(testClass + FINGERPRINT_SUFFIX);
+      Path usedClassesFile = stateDir.resolve(testClass + USED_CLASSES_SUFFIX);
+      if (!Files.isRegularFile(fingerprintFile)
+          || !Files.isRegularFile(usedClassesFile)
+          || !Files.isRegularFile(stateDir.resolve(testClass + RESULTS_SUFFIX))) {
+        continue;
+      }
+      try {
+        String fingerprint =
+            new String(Files.readAllBytes(fingerprintFile), StandardCharsets.UTF_8);
+        if (fingerprint.equals(fingerprint(usedClassesFile, runKey, classHashes))) {
+          unchanged.add(testClass);
+        }
+      } catch (IOException e) {
+        LOG.debug(e, "Cannot tell whether %s changed, so it runs.", testClass);
+      }
+    }
+    return unchanged.build();
+  }
+
+  /** Copies the results of test classes that are skipped to where their results would go. */
+  static void restoreResults(Path stateDir, Path testResultsDir, Iterable<String> testClasses)
+      throws IOException {
+    for (String testClass : testClasses) {
+      Files.copy(
+          stateDir.resolve(testClass + RESULTS_SUFFIX),
+          testResultsDir.resolve(testClass + RESULTS_SUFFIX),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Remembers the used classes and the results of the test classes that ran and passed, and
+   * forgets the test classes that ran and did not pass.
+   */
+  static void recordResults(
+      Path stateDir, Path testResultsDir, String runKey, Iterable<String> testClasses)
+      throws IOException {
+    Files.createDirectories(stateDir);
+    Map<String, HashCode> classHashes = new HashMap<>();
+    for (String testClass : testClasses) {
+      Path resultsFile = testResultsDir.resolve(testClass + RESULTS_SUFFIX);
+      Path usedClassesFile = testResultsDir.resolve(testClass + USED_CLASSES_SUFFIX);
+      Path fingerprintFile = stateDir.resolve(testClass + FINGERPRINT_SUFFIX);
+      Files.deleteIfExists(fingerprintFile);
+      if (!Files.isRegularFile(resultsFile)
+          || !Files.isRegularFile(usedClassesFile)
+          || !hasPassed(resultsFile)) {
+        continue;
+      }
+
+      Files.move(
+          usedClassesFile,
+          stateDir.resolve(testClass + USED_CLASSES_SUFFIX),
+          StandardCopyOption.REPLACE_EXISTING);
+      Files.copy(
+          resultsFile,
+          stateDir.resolve(testClass + RESULTS_SUFFIX),
+          StandardCopyOption.REPLACE_EXISTING);
+      Files.write(
+          fingerprintFile,
+          fingerprint(stateDir.resolve(testClass + USED_CLASSES_SUFFIX), runKey, classHashes)
+              .getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static boolean hasPassed(Path resultsFile) {
+    try {
+      TestCaseSummary summary = XmlTestResultParser.parse(resultsFile);
+      return summary.isSuccess() && !summary.isDryRun();
+    } catch (IOException | RuntimeException e) {
+      LOG.debug(e, "Cannot read the results in %s.", resultsFile);
+      return false;
+    }
+  }
+
+  /**
+   * Hashes the run key and the contents of the used classes listed in a file. A class that cannot
+   * be found, like one that was generated at runtime, counts as empty.
+   *
+   * @param runKey the key of how the test classes ran, from {@link #getRunKey}
+   * @param classHashes hashes of the classes already read, keyed by line of the file
+   */
+  static String fingerprint(
+      Path usedClassesFile, String runKey, Map<String, HashCode> classHashes) throws IOException {
+    // Group the classes by classpath entry, so that each jar is opened once.
+    SortedMap<String, SortedSet<String>> classesByEntry = new TreeMap<>();
+    for (String line : Files.readAllLines(usedClassesFile, StandardCharsets.UTF_8)) {
+      int tab = line.indexOf('\t');
+      if (tab < 0) {
+        continue;
+      }
+      classesByEntry
+          .computeIfAbsent(line.substring(0, tab), entry -> new TreeSet<>())
+          .add(line.substring(tab + 1));
+    }
+
+    Hasher hasher = Hashing.murmur3_128().newHasher().putUnencodedChars(runKey);
+    for (Map.Entry<String, SortedSet<String>> classes : classesByEntry.entrySet()) {
+      Path classpathEntry = Paths.get(classes.getKey());
+      Optional<ZipFile> jar = Optional.empty();
+      try {
+        if (Files.isRegularFile(classpathEntry)) {
+          jar = Optional.of(new ZipFile(classpathEntry.toFile()));
+        }
+        for (String classFile : classes.getValue()) {
+          String key = classes.getKey() + '\t' + classFile;
+          HashCode hash = classHashes.get(key);
+          if (hash == null) {
+            hash = hashClass(classpathEntry, jar, classFile);
+            classHashes.put(key, hash);
+          }
+          hasher.putUnencodedChars(key).putBytes(hash.asBytes());
+        }
+      } finally {
+        if (jar.isPresent()) {
+          jar.get().close();
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static HashCode hashClass(Path classpathEntry, Optional<ZipFile> jar, String classFile)
+      throws IOException {
+    if (jar.isPresent()) {
+      ZipEntry entry = jar.get().getEntry(classFile);
+      if (entry == null) {
+        return Hashing.murmur3_128().hashInt(0);
+      }
+      try (InputStream in = jar.get().getInputStream(entry)) {
+        return Hashing.murmur3_128().hashBytes(ByteStreams.toByteArray(in));
+      }
+    }
+    Path path = classpathEntry.resolve(classFile);
+    if (!Files.isRegularFile(path)) {
+      return Hashing.murmur3_128().hashInt(0);
+    }
+    return Hashing.murmur3_128().hashBytes(Files.readAllBytes(path));
+  }
+}
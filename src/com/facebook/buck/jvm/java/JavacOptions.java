@@ -131,6 +131,12 @@ public abstract class JavacOptions implements AddsToRuleKey {
     return false;
   }
 
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  public boolean isIncrementalCompilation() {
+    return false;
+  }
+
   public void validateOptions(Function<String, Boolean> classpathChecker) throws IOException {
     if (getBootclasspath().isPresent()) {
       String bootclasspath = getBootclasspath().get();
@@ -30,6 +30,24 @@ public abstract class JavacSpec {
 
   public abstract Optional<String> getCompilerClassName();
 
+  /**
+   * Whether invocations of the in-memory javac provided by the JDK reuse the file managers of
+   * earlier invocations.
+   */
+  @Value.Default
+  public boolean getReuseFileManagers() {
+    return false;
+  }
+
+  /**
+   * Whether invocations of the in-memory javac provided by the JDK read classpath jars through
+   * indexes shared between them.
+   */
+  @Value.Default
+  public boolean getUseSharedClasspathIndex() {
+    return false;
+  }
+
   @Value.Lazy
   public JavacProvider getJavacProvider() {
     return ExternalJavacProvider.getProviderForSpec(this);
@@ -99,6 +99,21 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
 
     addAnnotationGenFolderStep(invokingRule, projectFilesystem, steps, buildableContext, context);
 
+    if (buildTimeOptions.isIncrementalCompilation()
+        && JavaAbis.isLibraryTarget(invokingRule)
+        && buildTimeOptions.getJavaAnnotationProcessorParams().isEmpty()
+        && buildTimeOptions.getStandardJavacPluginParams().isEmpty()) {
+      steps.add(
+          new IncrementalJavacStep(
+              javac,
+              buildTimeOptions,
+              invokingRule,
+              context.getSourcePathResolver(),
+              projectFilesystem,
+              parameters));
+      return;
+    }
+
     steps.add(
         new JavacStep(
             javac,
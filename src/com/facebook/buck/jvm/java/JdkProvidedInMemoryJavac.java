@@ -17,11 +17,49 @@
 package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.core.rulekey.DefaultFieldSerialization;
+import com.facebook.buck.core.rulekey.ExcludeFromRuleKey;
+import com.facebook.buck.core.rulekey.IgnoredFieldInputs;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import java.util.Optional;
 import javax.tools.JavaCompiler;
 
 public class JdkProvidedInMemoryJavac extends Jsr199Javac {
+  /**
+   * The system compiler is loaded once per process, so its file managers can be kept for as long as
+   * the daemon runs.
+   */
+  private static final StandardJavaFileManagerPool FILE_MANAGER_POOL =
+      new StandardJavaFileManagerPool(Runtime.getRuntime().availableProcessors());
+
+  @ExcludeFromRuleKey(
+      reason = "Reusing file managers does not change the output of the compiler.",
+      serialization = DefaultFieldSerialization.class,
+      inputs = IgnoredFieldInputs.class)
+  private final boolean reuseFileManagers;
+
+  @ExcludeFromRuleKey(
+      reason = "Reading classpath jars through shared indexes does not change the output.",
+      serialization = DefaultFieldSerialization.class,
+      inputs = IgnoredFieldInputs.class)
+  private final boolean useSharedClasspathIndex;
+
+  public JdkProvidedInMemoryJavac() {
+    this(false, false);
+  }
+
+  /**
+   * @param reuseFileManagers whether invocations reuse the file managers of earlier invocations,
+   *     along with the classpath archives they opened.
+   * @param useSharedClasspathIndex whether invocations read classpath jars through indexes shared
+   *     between them.
+   */
+  public JdkProvidedInMemoryJavac(boolean reuseFileManagers, boolean useSharedClasspathIndex) {
+    this.reuseFileManagers = reuseFileManagers;
+    this.useSharedClasspathIndex = useSharedClasspathIndex;
+  }
+
   @Override
   protected JavaCompiler createCompiler(
       JavacExecutionContext context, SourcePathResolverAdapter pathResolver) {
@@ -34,4 +72,14 @@ public class JdkProvidedInMemoryJavac extends Jsr199Javac {
 
     return compiler;
   }
+
+  @Override
+  Optional<StandardJavaFileManagerPool> getFileManagerPool() {
+    return reuseFileManagers ? Optional.of(FILE_MANAGER_POOL) : Optional.empty();
+  }
+
+  @Override
+  boolean shouldUseSharedClasspathIndex() {
+    return useSharedClasspathIndex;
+  }
 }
@@ -23,13 +23,21 @@ import com.facebook.buck.jvm.java.abi.source.api.SourceOnlyAbiRuleInfoFactory;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Path;
+import java.util.Optional;
 import javax.annotation.Nullable;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.StandardLocation;
 
 /** Command used to compile java libraries with a variety of ways to handle dependencies. */
 public abstract class Jsr199Javac implements Javac {
+  /** Indexes of classpath jars, shared by all compilations for as long as the daemon runs. */
+  private static final ClasspathJarIndexCache CLASSPATH_JAR_INDEX_CACHE =
+      new ClasspathJarIndexCache();
+
   @Override
   public String getDescription(
       ImmutableList<String> options,
@@ -61,6 +69,19 @@ public abstract class Jsr199Javac implements Javac {
   protected abstract JavaCompiler createCompiler(
       JavacExecutionContext context, SourcePathResolverAdapter resolver);
 
+  /**
+   * @return the pool to take the file managers of invocations from, or empty if every invocation
+   *     creates its own.
+   */
+  Optional<StandardJavaFileManagerPool> getFileManagerPool() {
+    return Optional.empty();
+  }
+
+  /** @return whether invocations read classpath jars through indexes shared between them. */
+  boolean shouldUseSharedClasspathIndex() {
+    return false;
+  }
+
   @Override
   public Invocation newBuildInvocation(
       JavacExecutionContext context,
@@ -79,8 +100,25 @@ public abstract class Jsr199Javac implements Javac {
       AbiGenerationMode abiGenerationMode,
       AbiGenerationMode abiCompatibilityMode,
       @Nullable SourceOnlyAbiRuleInfoFactory ruleInfoFactory) {
+    StandardJavaFileManagerFactory fileManagerFactory =
+        getFileManagerPool()
+            .<StandardJavaFileManagerFactory>map(
+                pool -> compiler -> pool.acquire(compiler, options))
+            .orElse(compiler -> compiler.getStandardFileManager(null, null, null));
+    if (shouldUseSharedClasspathIndex()) {
+      StandardJavaFileManagerFactory unindexedFactory = fileManagerFactory;
+      ImmutableSet<Location> indexedLocations =
+          options.contains("-bootclasspath")
+              ? ImmutableSet.of(StandardLocation.CLASS_PATH, StandardLocation.PLATFORM_CLASS_PATH)
+              : ImmutableSet.of(StandardLocation.CLASS_PATH);
+      fileManagerFactory =
+          compiler ->
+              new IndexedClasspathFileManager(
+                  unindexedFactory.create(compiler), CLASSPATH_JAR_INDEX_CACHE, indexedLocations);
+    }
     return new Jsr199JavacInvocation(
         () -> createCompiler(context, resolver),
+        fileManagerFactory,
         context,
         invokingRule,
         options,
@@ -83,6 +83,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       "No Java files provided for library compilation";
 
   private final Supplier<JavaCompiler> compilerConstructor;
+  private final StandardJavaFileManagerFactory fileManagerFactory;
   private final JavacExecutionContext context;
   private final BuildTarget invokingRule;
   private final BuildTarget libraryTarget;
@@ -103,6 +104,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
 
   public Jsr199JavacInvocation(
       Supplier<JavaCompiler> compilerConstructor,
+      StandardJavaFileManagerFactory fileManagerFactory,
       JavacExecutionContext context,
       BuildTarget invokingRule,
       ImmutableList<String> options,
@@ -118,6 +120,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       AbiGenerationMode abiCompatibilityMode,
       @Nullable SourceOnlyAbiRuleInfoFactory ruleInfoFactory) {
     this.compilerConstructor = compilerConstructor;
+    this.fileManagerFactory = fileManagerFactory;
     this.context = context;
     this.invokingRule = invokingRule;
     this.libraryTarget =
@@ -503,8 +506,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
         try {
           JavaCompiler compiler = compilerConstructor.get();
 
-          StandardJavaFileManager standardFileManager =
-              compiler.getStandardFileManager(null, null, null);
+          StandardJavaFileManager standardFileManager = fileManagerFactory.create(compiler);
           addCloseable(standardFileManager);
 
           // Ensure plugins are loaded from their own classloader.
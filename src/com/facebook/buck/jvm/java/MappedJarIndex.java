@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of the entries of a jar, read from its central directory through a read-only memory
+ * mapping of the file. Entries are grouped by the directory they are in, so listing a package does
+ * not scan the whole jar, and their contents are read straight from the mapping.
+ *
+ * <p>Only the plain zip format is supported. Jars that need zip64 extensions, are encrypted or are
+ * larger than 2GB cannot be indexed.
+ *
+ * <p>The index is reference counted: whoever opens it holds the first reference, and the file is
+ * unmapped as soon as the last reference is released, instead of whenever the mapping is garbage
+ * collected. Entries must only be read while holding a reference.
+ */
+final class MappedJarIndex {
+  private static final Logger LOG = Logger.get(MappedJarIndex.class);
+
+  private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+  private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+  private static final int ENCRYPTED_FLAG = 1;
+
+  private final Path path;
+  private final ArchiveStamp stamp;
+  private final ByteBuffer map;
+  private final ImmutableListMultimap<String, Entry> entriesByDirectory;
+  private final ImmutableMap<String, Entry> entriesByName;
+
+  /** Guarded by this. */
+  private int references = 1;
+
+  private MappedJarIndex(
+      Path path,
+      ArchiveStamp stamp,
+      ByteBuffer map,
+      ImmutableListMultimap<String, Entry> entriesByDirectory) {
+    this.path = path;
+    this.stamp = stamp;
+    this.map = map;
+    this.entriesByDirectory = entriesByDirectory;
+    Map<String, Entry> entriesByName = new HashMap<>();
+    for (Entry entry : entriesByDirectory.values()) {
+      // Like ZipFile, the first of several entries with the same name wins.
+      entriesByName.putIfAbsent(entry.getName(), entry);
+    }
+    this.entriesByName = ImmutableMap.copyOf(entriesByName);
+  }
+
+  /** Maps the given jar and reads its central directory. */
+  static MappedJarIndex open(Path path, ArchiveStamp stamp) throws IOException {
+    ByteBuffer map;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      check(size >= ZipEntry.ENDHDR, "too small to be a zip file");
+      check(size <= Integer.MAX_VALUE, "too large to be mapped");
+      map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    map.order(ByteOrder.LITTLE_ENDIAN);
+
+    try {
+      return new MappedJarIndex(path, stamp, map, readCentralDirectory(map));
+    } catch (IndexOutOfBoundsException | InternalError e) {
+      // InternalError is how a fault while accessing a mapping of a truncated file surfaces.
+      throw new IOException(String.format("Cannot read central directory of %s", path), e);
+    }
+  }
+
+  private static ImmutableListMultimap<String, Entry> readCentralDirectory(ByteBuffer map)
+      throws IOException {
+    int endOffset = findEndOfCentralDirectory(map);
+    int entryCount = Short.toUnsignedInt(map.getShort(endOffset + ZipEntry.ENDTOT));
+    long directoryOffset = Integer.toUnsignedLong(map.getInt(endOffset + ZipEntry.ENDOFF));
+    check(
+        entryCount != ZIP64_MAGICCOUNT && directoryOffset != ZIP64_MAGICVAL,
+        "zip64 is not supported");
+
+    ImmutableListMultimap.Builder<String, Entry> entries = ImmutableListMultimap.builder();
+    int offset = (int) directoryOffset;
+    for (int i = 0; i < entryCount; i++) {
+      check(map.getInt(offset) == ZipEntry.CENSIG, "expected central directory header signature");
+      check(
+          (map.getShort(offset + ZipEntry.CENFLG) & ENCRYPTED_FLAG) == 0,
+          "encryption is not supported");
+      int method = Short.toUnsignedInt(map.getShort(offset + ZipEntry.CENHOW));
+      long compressedSize = Integer.toUnsignedLong(map.getInt(offset + ZipEntry.CENSIZ));
+      long size = Integer.toUnsignedLong(map.getInt(offset + ZipEntry.CENLEN));
+      long localHeaderOffset = Integer.toUnsignedLong(map.getInt(offset + ZipEntry.CENOFF));
+      check(
+          compressedSize != ZIP64_MAGICVAL
+              && size != ZIP64_MAGICVAL
+              && localHeaderOffset != ZIP64_MAGICVAL,
+          "zip64 is not supported");
+      check(
+          method == ZipEntry.STORED || method == ZipEntry.DEFLATED,
+          "unsupported compression method");
+      int nameLength = Short.toUnsignedInt(map.getShort(offset + ZipEntry.CENNAM));
+      String name = readString(map, offset + ZipEntry.CENHDR, nameLength);
+
+      if (!name.endsWith("/")) {
+        int lastSlash = name.lastIndexOf('/');
+        entries.put(
+            lastSlash < 0 ? "" : name.substring(0, lastSlash),
+            new Entry(
+                name,
+                method,
+                (int) compressedSize,
+                (int) size,
+                (int) localHeaderOffset,
+                map.getInt(offset + ZipEntry.CENTIM)));
+      }
+
+      offset +=
+          ZipEntry.CENHDR
+              + nameLength
+              + Short.toUnsignedInt(map.getShort(offset + ZipEntry.CENEXT))
+              + Short.toUnsignedInt(map.getShort(offset + ZipEntry.CENCOM));
+    }
+    return entries.build();
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer map) throws IOException {
+    int lowest = Math.max(0, map.limit() - ZipEntry.ENDHDR - MAX_COMMENT_LENGTH);
+    for (int offset = map.limit() - ZipEntry.ENDHDR; offset >= lowest; offset--) {
+      if (map.getInt(offset) == ZipEntry.ENDSIG
+          && offset + ZipEntry.ENDHDR + Short.toUnsignedInt(map.getShort(offset + ZipEntry.ENDCOM))
+              == map.limit()) {
+        return offset;
+      }
+    }
+    throw new IOException("End of central directory not found");
+  }
+
+  private static String readString(ByteBuffer map, int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer slice = map.duplicate();
+    slice.position(offset);
+    slice.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void check(boolean expression, String message) throws IOException {
+    if (!expression) {
+      throw new IOException(message);
+    }
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  /**
+   * Adds a reference to this index.
+   *
+   * @return false if this index has been released by all who used it, and is not mapped anymore
+   */
+  synchronized boolean retain() {
+    if (references == 0) {
+      return false;
+    }
+    references++;
+    return true;
+  }
+
+  /** Releases a reference to this index, and unmaps the file if that was the last one. */
+  void release() {
+    synchronized (this) {
+      if (--references > 0) {
+        return;
+      }
+    }
+    unmap();
+  }
+
+  /** @return whether the file is still mapped. */
+  synchronized boolean isMapped() {
+    return references > 0;
+  }
+
+  private void unmap() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        // Java 8 only exposes the cleaner of the buffer.
+        Method getCleaner = map.getClass().getMethod("cleaner");
+        getCleaner.setAccessible(true);
+        Object cleaner = getCleaner.invoke(map);
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), map);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.debug(e, "Cannot unmap %s, it is unmapped when it is garbage collected.", path);
+    }
+  }
+
+  ArchiveStamp getStamp() {
+    return stamp;
+  }
+
+  /**
+   * @return the entries directly in the given directory, or also in its subdirectories if {@code
+   *     recurse} is set, in the order they appear in the jar.
+   */
+  ImmutableList<Entry> getEntries(String directory, boolean recurse) {
+    if (!recurse) {
+      return entriesByDirectory.get(directory);
+    }
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    String prefix = directory + "/";
+    for (Map.Entry<String, Entry> entry : entriesByDirectory.entries()) {
+      if (directory.isEmpty()
+          || entry.getKey().equals(directory)
+          || entry.getKey().startsWith(prefix)) {
+        entries.add(entry.getValue());
+      }
+    }
+    return entries.build();
+  }
+
+  Optional<Entry> getEntry(String name) {
+    return Optional.ofNullable(entriesByName.get(name));
+  }
+
+  /** @return the uncompressed contents of the given entry of this jar. */
+  byte[] read(Entry entry) throws IOException {
+    try {
+      int localHeaderOffset = entry.localHeaderOffset;
+      check(map.getInt(localHeaderOffset) == ZipEntry.LOCSIG, "expected local header signature");
+      int dataOffset =
+          localHeaderOffset
+              + ZipEntry.LOCHDR
+              + Short.toUnsignedInt(map.getShort(localHeaderOffset + ZipEntry.LOCNAM))
+              + Short.toUnsignedInt(map.getShort(localHeaderOffset + ZipEntry.LOCEXT));
+      ByteBuffer data = map.duplicate();
+      data.position(dataOffset);
+
+      if (entry.method == ZipEntry.STORED) {
+        byte[] contents = new byte[entry.size];
+        data.get(contents);
+        return contents;
+      }
+
+      // The inflater needs an extra byte of input for some raw deflate streams.
+      byte[] compressed = new byte[entry.compressedSize + 1];
+      data.get(compressed, 0, entry.compressedSize);
+      return inflate(compressed, entry.size);
+    } catch (IndexOutOfBoundsException | InternalError e) {
+      throw new IOException(String.format("Cannot read %s from %s", entry.getName(), path), e);
+    }
+  }
+
+  private byte[] inflate(byte[] compressed, int size) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      byte[] contents = new byte[size];
+      int read = 0;
+      while (read < size) {
+        int inflated = inflater.inflate(contents, read, size - read);
+        if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+          break;
+        }
+        read += inflated;
+      }
+      check(read == size, "unexpected end of compressed data");
+      return contents;
+    } catch (DataFormatException e) {
+      throw new IOException(String.format("Corrupt compressed data in %s", path), e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /** An entry of an indexed jar. */
+  static final class Entry {
+    private final String name;
+    private final int method;
+    private final int compressedSize;
+    private final int size;
+    private final int localHeaderOffset;
+    private final int dosTime;
+
+    private Entry(
+        String name,
+        int method,
+        int compressedSize,
+        int size,
+        int localHeaderOffset,
+        int dosTime) {
+      this.name = name;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+      this.dosTime = dosTime;
+    }
+
+    /** @return the path of the entry within the jar. */
+    String getName() {
+      return name;
+    }
+
+    /** @return the modification time of the entry, in the same way as {@link ZipEntry#getTime}. */
+    long getLastModified() {
+      try {
+        return LocalDateTime.of(
+                ((dosTime >> 25) & 0x7f) + 1980,
+                (dosTime >> 21) & 0x0f,
+                (dosTime >> 16) & 0x1f,
+                (dosTime >> 11) & 0x1f,
+                (dosTime >> 5) & 0x3f,
+                (dosTime << 1) & 0x3e)
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+      } catch (DateTimeException e) {
+        return 0L;
+      }
+    }
+  }
+}
@@ -118,6 +118,7 @@ public class MavenUberJar extends AbstractBuildRuleWithDeclaredAndExtraDeps
                 .setEntriesToJar(
                     toOutputPaths(context.getSourcePathResolver(), traversedDeps.packagedDeps))
                 .setMergeManifests(true)
+                .setReusePrecompressedEntries(true)
                 .build());
     return ImmutableList.of(mkOutputDirStep, mergeOutputsStep);
   }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.concurrent.ExecutorPool;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the shards of a test, each in its own JVM, at the same time. Every shard writes the results
+ * of its test classes to the same directory, so the results are read as if one JVM had run all of
+ * the classes.
+ *
+ * <p>Shards run on the {@link ExecutorPool#TEST} executor, so they count against the test threads
+ * like any other test. The thread that runs the step runs every shard that no test thread has
+ * started yet itself, so the step never waits for shards queued behind it, and runs the shards one
+ * after the other when there is no test executor.
+ */
+public class ShardedJUnitStep implements Step {
+  private final ImmutableList<JUnitStep> shards;
+
+  public ShardedJUnitStep(ImmutableList<JUnitStep> shards) {
+    this.shards = shards;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    List<ShardRun> runs = new ArrayList<>();
+    for (JUnitStep shard : shards) {
+      runs.add(new ShardRun(shard));
+    }
+
+    ListeningExecutorService executor = context.getExecutors().get(ExecutorPool.TEST);
+    List<Future<?>> submitted = new ArrayList<>();
+    try {
+      if (executor != null) {
+        for (ShardRun run : runs.subList(1, runs.size())) {
+          submitted.add(executor.submit(() -> run.runIfNotStarted(context)));
+        }
+      }
+      for (ShardRun run : runs) {
+        run.runIfNotStarted(context);
+      }
+
+      // Wait for every shard, so that no JVM outlives the step, and report the first failure.
+      StepExecutionResult result = StepExecutionResults.SUCCESS;
+      for (ShardRun run : runs) {
+        StepExecutionResult next = getResult(run.result);
+        if (result.isSuccess() && !next.isSuccess()) {
+          result = next;
+        }
+      }
+      return result;
+    } finally {
+      for (Future<?> future : submitted) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private static StepExecutionResult getResult(Future<StepExecutionResult> result)
+      throws IOException, InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), InterruptedException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "junit";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return shards.stream()
+        .map(shard -> shard.getDescription(context))
+        .collect(Collectors.joining(" & "));
+  }
+
+  /** A shard and its result, run by whichever thread gets to it first. */
+  private static class ShardRun {
+    private final JUnitStep shard;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final SettableFuture<StepExecutionResult> result = SettableFuture.create();
+
+    ShardRun(JUnitStep shard) {
+      this.shard = shard;
+    }
+
+    void runIfNotStarted(ExecutionContext context) {
+      if (!started.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        result.set(shard.execute(context));
+      } catch (Throwable t) {
+        result.setException(t);
+      }
+    }
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Keeps the {@link StandardJavaFileManager}s of finished javac invocations, so that later
+ * invocations with the same compiler and platform start with the platform classes and the classpath
+ * archives already opened and indexed instead of reading them again.
+ *
+ * <p>The compiler API supports reusing a standard file manager for sequential compilations. A
+ * pooled file manager is lent to one invocation at a time. javac only reads the file manager
+ * options of an invocation, like {@code -d} and {@code -encoding}, into a file manager that has not
+ * been used yet, so a reused file manager gets the locations and the encoding of every invocation
+ * set explicitly. All other options a file manager handles, like {@code -bootclasspath} or {@code
+ * --system}, and the options that javac turns into a platform classpath, like {@code --release},
+ * are part of the pool key instead, so file managers are only reused with the same values. A file
+ * manager keeps the archives it opened, so it is discarded rather than lent to an invocation whose
+ * classpath has an archive that was modified since the file manager was last used with it.
+ */
+class StandardJavaFileManagerPool {
+  private static final Logger LOG = Logger.get(StandardJavaFileManagerPool.class);
+
+  /**
+   * The locations that invocations set with options, and those options. The platform classpath is
+   * not among them, as file managers are only reused with the same platform options.
+   */
+  private static final ImmutableMap<StandardLocation, ImmutableList<String>> LOCATION_OPTIONS =
+      ImmutableMap.of(
+          StandardLocation.CLASS_OUTPUT, ImmutableList.of("-d"),
+          StandardLocation.SOURCE_OUTPUT, ImmutableList.of("-s"),
+          StandardLocation.SOURCE_PATH, ImmutableList.of("-sourcepath"),
+          StandardLocation.ANNOTATION_PROCESSOR_PATH, ImmutableList.of("-processorpath"),
+          StandardLocation.CLASS_PATH, ImmutableList.of("-classpath", "-cp"));
+
+  /** Options that {@link #configure} sets on every reused file manager. */
+  private static final ImmutableSet<String> CONFIGURED_OPTIONS =
+      ImmutableSet.<String>builder()
+          .addAll(Iterables.concat(LOCATION_OPTIONS.values()))
+          .add("-encoding")
+          .build();
+
+  /**
+   * Compiler options that javac translates into the platform classpath of the file manager, which
+   * a file manager keeps once it has been set.
+   */
+  private static final ImmutableSet<String> PLATFORM_OPTIONS =
+      ImmutableSet.of("--release", "-source", "--source", "-target", "--target");
+
+  private final int maxIdlePerKey;
+  private final Map<JavaCompiler, Map<ImmutableList<String>, Deque<PooledEntry>>> idleEntries =
+      new IdentityHashMap<>();
+
+  /** Unused file managers of every compiler, which tell the options file managers handle. */
+  private final Map<JavaCompiler, StandardJavaFileManager> optionCheckers = new IdentityHashMap<>();
+
+  /** @param maxIdlePerKey file managers kept per compiler and platform options when not in use. */
+  StandardJavaFileManagerPool(int maxIdlePerKey) {
+    this.maxIdlePerKey = maxIdlePerKey;
+  }
+
+  /**
+   * @return a file manager for an invocation of the given compiler with the given options, which
+   *     returns to the pool when it is closed.
+   */
+  StandardJavaFileManager acquire(JavaCompiler compiler, ImmutableList<String> options) {
+    ImmutableMap<Path, ArchiveStamp> archives = stampArchives(options);
+
+    PooledEntry entry = null;
+    ImmutableList<String> key;
+    List<PooledEntry> staleEntries = new ArrayList<>();
+    synchronized (this) {
+      key = getKey(compiler, options);
+      Deque<PooledEntry> entries = getIdleEntries(compiler, key);
+      while (entry == null && !entries.isEmpty()) {
+        PooledEntry candidate = entries.pollFirst();
+        if (candidate.isUpToDate(archives)) {
+          entry = candidate;
+        } else {
+          staleEntries.add(candidate);
+        }
+      }
+    }
+    if (entry != null) {
+      try {
+        configure(entry.fileManager, options);
+      } catch (IOException | IllegalArgumentException e) {
+        LOG.debug(e, "Could not configure file manager, discarding it.");
+        staleEntries.add(entry);
+        entry = null;
+      }
+    }
+    staleEntries.forEach(PooledEntry::discard);
+
+    if (entry == null) {
+      entry = new PooledEntry(compiler.getStandardFileManager(null, null, null));
+    }
+    entry.archives.putAll(archives);
+    return new PooledFileManager(compiler, key, entry);
+  }
+
+  /**
+   * @return the options of an invocation that a file manager keeps once it has been used with them,
+   *     along with their values. These are the options the file manager handles itself, except for
+   *     those that {@link #configure} resets, and the options that select the platform classpath.
+   */
+  private synchronized ImmutableList<String> getKey(
+      JavaCompiler compiler, ImmutableList<String> options) {
+    StandardJavaFileManager optionChecker =
+        optionCheckers.computeIfAbsent(
+            compiler, key -> compiler.getStandardFileManager(null, null, null));
+    ImmutableList.Builder<String> key = ImmutableList.builder();
+    for (int i = 0; i < options.size(); i++) {
+      String option = options.get(i);
+      int arguments;
+      if (CONFIGURED_OPTIONS.contains(option)) {
+        i++;
+        continue;
+      } else if (PLATFORM_OPTIONS.contains(option)) {
+        arguments = 1;
+      } else {
+        arguments = optionChecker.isSupportedOption(option);
+        if (arguments < 0) {
+          continue;
+        }
+      }
+      int end = Math.min(i + 1 + arguments, options.size());
+      key.addAll(options.subList(i, end));
+      i = end - 1;
+    }
+    return key.build();
+  }
+
+  @VisibleForTesting
+  synchronized int getIdleCount() {
+    return idleEntries.values().stream()
+        .flatMap(entriesByKey -> entriesByKey.values().stream())
+        .mapToInt(Deque::size)
+        .sum();
+  }
+
+  /**
+   * Sets the locations and the encoding of a reused file manager from the options of the invocation
+   * it is lent to, or back to their defaults if the invocation has no option for them.
+   */
+  private static void configure(StandardJavaFileManager fileManager, ImmutableList<String> options)
+      throws IOException {
+    for (Map.Entry<StandardLocation, ImmutableList<String>> location :
+        LOCATION_OPTIONS.entrySet()) {
+      Optional<String> value =
+          location.getValue().stream()
+              .map(option -> getOptionValue(options, option))
+              .filter(Optional::isPresent)
+              .map(Optional::get)
+              .findFirst();
+      fileManager.setLocation(
+          location.getKey(), value.map(StandardJavaFileManagerPool::toFiles).orElse(null));
+    }
+    String encoding =
+        getOptionValue(options, "-encoding").orElse(Charset.defaultCharset().name());
+    fileManager.handleOption("-encoding", Iterators.singletonIterator(encoding));
+  }
+
+  private static ImmutableList<File> toFiles(String path) {
+    return Arrays.stream(path.split(File.pathSeparator))
+        .filter(entry -> !entry.isEmpty())
+        .map(File::new)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private void release(JavaCompiler compiler, ImmutableList<String> key, PooledEntry entry) {
+    try {
+      entry.fileManager.flush();
+    } catch (IOException e) {
+      LOG.debug(e, "Could not flush file manager, discarding it.");
+      entry.discard();
+      return;
+    }
+
+    synchronized (this) {
+      Deque<PooledEntry> entries = getIdleEntries(compiler, key);
+      if (entries.size() < maxIdlePerKey) {
+        entries.addFirst(entry);
+        return;
+      }
+    }
+    entry.discard();
+  }
+
+  private Deque<PooledEntry> getIdleEntries(JavaCompiler compiler, ImmutableList<String> key) {
+    return idleEntries
+        .computeIfAbsent(compiler, ignored -> new HashMap<>())
+        .computeIfAbsent(key, ignored -> new ArrayDeque<>());
+  }
+
+  private static Optional<String> getOptionValue(ImmutableList<String> options, String option) {
+    int index = options.lastIndexOf(option);
+    return index >= 0 && index + 1 < options.size()
+        ? Optional.of(options.get(index + 1))
+        : Optional.empty();
+  }
+
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  private static ImmutableMap<Path, ArchiveStamp> stampArchives(ImmutableList<String> options) {
+    Map<Path, ArchiveStamp> archives = new HashMap<>();
+    for (String option : ImmutableList.of("-bootclasspath", "-classpath")) {
+      String value = getOptionValue(options, option).orElse("");
+      for (String entry : value.split(File.pathSeparator)) {
+        if (!entry.endsWith(".jar") && !entry.endsWith(".zip")) {
+          continue;
+        }
+        Path path = Paths.get(entry);
+        try {
+          archives.put(path, ArchiveStamp.read(path));
+        } catch (IOException e) {
+          // javac reports missing classpath entries itself.
+        }
+      }
+    }
+    return ImmutableMap.copyOf(archives);
+  }
+
+  /** A pooled file manager along with the archives it may have opened. */
+  private static class PooledEntry {
+    private final StandardJavaFileManager fileManager;
+    private final Map<Path, ArchiveStamp> archives = new HashMap<>();
+
+    private PooledEntry(StandardJavaFileManager fileManager) {
+      this.fileManager = fileManager;
+    }
+
+    private boolean isUpToDate(Map<Path, ArchiveStamp> currentArchives) {
+      for (Map.Entry<Path, ArchiveStamp> archive : currentArchives.entrySet()) {
+        ArchiveStamp stamp = archives.get(archive.getKey());
+        if (stamp != null && !stamp.equals(archive.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void discard() {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to close %s; we may be leaking memory.", fileManager);
+      }
+    }
+  }
+
+  /** The file manager lent to an invocation, which returns it to the pool instead of closing it. */
+  private class PooledFileManager extends ForwardingStandardJavaFileManager {
+    private final JavaCompiler compiler;
+    private final ImmutableList<String> key;
+    private final PooledEntry entry;
+    private boolean released = false;
+
+    private PooledFileManager(JavaCompiler compiler, ImmutableList<String> key, PooledEntry entry) {
+      super(entry.fileManager);
+      this.compiler = compiler;
+      this.key = key;
+      this.entry = entry;
+    }
+
+    @Override
+    public void close() {
+      // Wrapping file managers close their delegate too, so this may be called more than once.
+      if (released) {
+        return;
+      }
+      released = true;
+      release(compiler, key, entry);
+    }
+  }
+}
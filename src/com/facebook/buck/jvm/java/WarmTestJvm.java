@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JVM that runs {@code com.facebook.buck.testrunner.TestRunnerServer}, which runs one batch of
+ * tests after another, each in its own ClassLoader. See that class for the protocol.
+ *
+ * <p>The JVM connects back to a socket of ours rather than talking over its stdin and stdout, so
+ * that nothing the tests write can be mistaken for the protocol. A JVM that breaks the protocol in
+ * any way is destroyed, and is never used again.
+ */
+final class WarmTestJvm implements Closeable {
+  private static final Logger LOG = Logger.get(WarmTestJvm.class);
+
+  /** Matches {@code TestRunnerServer.MAX_OUTPUT_LENGTH}. */
+  private static final int MAX_OUTPUT_LENGTH = 64 * 1024 * 1024;
+
+  /** Matches {@code TestRunnerServer.MAX_STRING_LENGTH}. */
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private static final long CONNECT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final ScheduledExecutorService TIMEOUTS =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("warm-test-jvm-timeout")
+              .build());
+
+  private final ProcessExecutor executor;
+  private final ProcessExecutorParams params;
+  private final String sharedClasspathStamp;
+  private final ProcessExecutor.LaunchedProcess process;
+  private final Socket socket;
+  private final DataOutputStream requests;
+  private final DataInputStream results;
+  private volatile boolean timedOut = false;
+  private volatile boolean broken = false;
+  private volatile boolean closed = false;
+
+  private WarmTestJvm(
+      ProcessExecutor executor,
+      ProcessExecutorParams params,
+      String sharedClasspathStamp,
+      ProcessExecutor.LaunchedProcess process,
+      Socket socket)
+      throws IOException {
+    this.executor = executor;
+    this.params = params;
+    this.sharedClasspathStamp = sharedClasspathStamp;
+    this.process = process;
+    this.socket = socket;
+    this.requests = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    this.results = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+  }
+
+  /**
+   * Starts a JVM.
+   *
+   * @param sharedClasspathStamp identifies the contents of the classpath that the JVM loads once,
+   *     so that a JVM is not reused after that classpath has changed.
+   */
+  static WarmTestJvm launch(
+      ProcessExecutor executor, ProcessExecutorParams params, String sharedClasspathStamp)
+      throws IOException {
+    LOG.debug("Starting warm test JVM: %s", params.getCommand());
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      // The server is told where to connect to, and proves that it is the JVM we started.
+      String token = UUID.randomUUID().toString();
+      ProcessExecutor.LaunchedProcess process =
+          executor.launchProcess(
+              ProcessExecutorParams.builder()
+                  .from(params)
+                  .addCommand(String.valueOf(serverSocket.getLocalPort()), token)
+                  .build());
+      // Tests write to stdout and stderr through the server, which only writes to stderr itself if
+      // something goes wrong, so the JVM's own output is only logged.
+      logOutput(process.getStdout(), "warm-test-jvm-stdout");
+      logOutput(process.getStderr(), "warm-test-jvm-stderr");
+
+      try {
+        return new WarmTestJvm(
+            executor, params, sharedClasspathStamp, process, accept(serverSocket, process, token));
+      } catch (IOException | RuntimeException e) {
+        executor.destroyLaunchedProcess(process);
+        throw e;
+      }
+    }
+  }
+
+  /** Waits for the JVM to connect, ignoring connections that do not come from it. */
+  private static Socket accept(
+      ServerSocket serverSocket, ProcessExecutor.LaunchedProcess process, String token)
+      throws IOException {
+    long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+    serverSocket.setSoTimeout(100);
+    while (process.isAlive() && System.currentTimeMillis() < deadline) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (SocketTimeoutException e) {
+        continue;
+      }
+      try {
+        socket.setSoTimeout((int) CONNECT_TIMEOUT_MS);
+        if (readToken(new DataInputStream(socket.getInputStream()), token)) {
+          socket.setSoTimeout(0);
+          return socket;
+        }
+      } catch (IOException e) {
+        LOG.debug(e, "Ignoring connection that is not from the warm test JVM.");
+      }
+      socket.close();
+    }
+    throw new IOException("Warm test JVM did not connect.");
+  }
+
+  /** Reads a string the way the server writes it, giving up early if it cannot be the token. */
+  private static boolean readToken(DataInputStream in, String token) throws IOException {
+    byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+    if (in.readInt() != expected.length) {
+      return false;
+    }
+    byte[] actual = new byte[expected.length];
+    in.readFully(actual);
+    return Arrays.equals(actual, expected);
+  }
+
+  private static void logOutput(InputStream output, String threadName) {
+    Thread reader =
+        new Thread(
+            () -> {
+              try (BufferedReader lines =
+                  new BufferedReader(new InputStreamReader(output, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                  LOG.debug("Warm test JVM: %s", line);
+                }
+              } catch (IOException e) {
+                LOG.debug(e, "Stopped reading output of warm test JVM.");
+              }
+            },
+            threadName);
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /** @return whether this JVM was started with the given parameters and shared classpath. */
+  boolean canRun(ProcessExecutorParams params, String sharedClasspathStamp) {
+    return this.params.equals(params) && this.sharedClasspathStamp.equals(sharedClasspathStamp);
+  }
+
+  boolean isAlive() {
+    return !timedOut && !broken && !closed && process.isAlive();
+  }
+
+  /**
+   * Runs a batch of tests. If the batch does not finish within the timeout, the JVM is destroyed,
+   * and the result says that it timed out. The JVM is destroyed too if it breaks the protocol.
+   *
+   * @return the result of the batch, with the output of the tests as its stderr.
+   */
+  ProcessExecutor.Result run(
+      ImmutableMap<String, String> properties,
+      ImmutableList<String> classpath,
+      String runnerClass,
+      ImmutableList<String> runnerArgs,
+      Optional<Long> timeoutMs) {
+    Optional<ScheduledFuture<?>> timeout =
+        timeoutMs.map(
+            ms ->
+                TIMEOUTS.schedule(
+                    () -> {
+                      timedOut = true;
+                      executor.destroyLaunchedProcess(process);
+                    },
+                    ms,
+                    TimeUnit.MILLISECONDS));
+    boolean finished = false;
+    try {
+      requests.writeInt(properties.size());
+      for (Map.Entry<String, String> property : properties.entrySet()) {
+        writeString(property.getKey());
+        writeString(property.getValue());
+      }
+      writeStrings(classpath);
+      writeString(runnerClass);
+      writeStrings(runnerArgs);
+      requests.flush();
+
+      int exitCode = results.readInt();
+      int outputLength = results.readInt();
+      if (outputLength < 0 || outputLength > MAX_OUTPUT_LENGTH) {
+        throw new IOException(String.format("Invalid length of test output: %d", outputLength));
+      }
+      byte[] output = new byte[outputLength];
+      results.readFully(output);
+      finished = true;
+      return new ProcessExecutor.Result(
+          exitCode,
+          /* timedOut */ false,
+          Optional.empty(),
+          Optional.of(new String(output, StandardCharsets.UTF_8)),
+          params.getCommand());
+    } catch (IOException e) {
+      if (timedOut) {
+        return new ProcessExecutor.Result(
+            1, /* timedOut */ true, Optional.empty(), Optional.empty(), params.getCommand());
+      }
+      LOG.warn(e, "Warm test JVM failed while running %s.", runnerArgs);
+      return new ProcessExecutor.Result(
+          1,
+          /* timedOut */ false,
+          Optional.empty(),
+          Optional.of("The JVM running the tests failed before they finished: " + e),
+          params.getCommand());
+    } finally {
+      timeout.ifPresent(future -> future.cancel(false));
+      if (!finished) {
+        // Whatever is left of the batch on the socket would be read as the next one's result.
+        broken = true;
+        executor.destroyLaunchedProcess(process);
+      }
+    }
+  }
+
+  private void writeStrings(ImmutableList<String> strings) throws IOException {
+    requests.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(string);
+    }
+  }
+
+  /** Writes a string as its length and UTF-8 bytes, which unlike writeUTF has no 64KB limit. */
+  private void writeString(String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_STRING_LENGTH) {
+      throw new IOException(String.format("String of %d bytes is too long.", bytes.length));
+    }
+    requests.writeInt(bytes.length);
+    requests.write(bytes);
+  }
+
+  @Override
+  public void close() {
+    LOG.debug("Stopping warm test JVM: %s", params.getCommand());
+    closed = true;
+    try {
+      // The server exits when the socket is closed.
+      socket.close();
+    } catch (IOException e) {
+      LOG.debug(e, "Failed to close the socket of warm test JVM.");
+    }
+    executor.destroyLaunchedProcess(process);
+  }
+}
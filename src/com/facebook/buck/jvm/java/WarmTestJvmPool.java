@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Idle {@link WarmTestJvm}s, which are reused by tests that start them with the same command line,
+ * environment and shared classpath. The pool is owned by the daemon, and stops its JVMs when it is
+ * closed.
+ */
+@ThreadSafe
+public final class WarmTestJvmPool implements Closeable {
+  /** The most recently used JVM comes first. */
+  private final Deque<WarmTestJvm> idleJvms = new ArrayDeque<>();
+
+  private boolean closed = false;
+
+  /** Takes an idle JVM that can run the tests, or starts a new one if there is none. */
+  WarmTestJvm borrow(
+      ProcessExecutor executor, ProcessExecutorParams params, String sharedClasspathStamp)
+      throws IOException {
+    List<WarmTestJvm> dead = new ArrayList<>();
+    try {
+      synchronized (this) {
+        Iterator<WarmTestJvm> iterator = idleJvms.iterator();
+        while (iterator.hasNext()) {
+          WarmTestJvm jvm = iterator.next();
+          if (jvm.canRun(params, sharedClasspathStamp)) {
+            iterator.remove();
+            if (jvm.isAlive()) {
+              return jvm;
+            }
+            dead.add(jvm);
+          }
+        }
+      }
+    } finally {
+      dead.forEach(WarmTestJvm::close);
+    }
+    return WarmTestJvm.launch(executor, params, sharedClasspathStamp);
+  }
+
+  /**
+   * Makes a JVM available to other tests, unless it has stopped. Stops the least recently used
+   * JVMs beyond the given number of idle ones.
+   */
+  void release(WarmTestJvm jvm, int maxIdleJvms) {
+    List<WarmTestJvm> stopped = new ArrayList<>();
+    synchronized (this) {
+      if (jvm.isAlive() && !closed) {
+        idleJvms.addFirst(jvm);
+      } else {
+        stopped.add(jvm);
+      }
+      while (idleJvms.size() > maxIdleJvms) {
+        stopped.add(idleJvms.removeLast());
+      }
+    }
+    stopped.forEach(WarmTestJvm::close);
+  }
+
+  /** @return the number of idle JVMs. */
+  synchronized int getIdleCount() {
+    return idleJvms.size();
+  }
+
+  /** Stops the idle JVMs, and the ones that are in use once they are released. */
+  @Override
+  public void close() {
+    List<WarmTestJvm> stopped;
+    synchronized (this) {
+      closed = true;
+      stopped = new ArrayList<>(idleJvms);
+      idleJvms.clear();
+    }
+    stopped.forEach(WarmTestJvm::close);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Stubs of individual class files, keyed by a hash of the class file and the compatibility mode it
+ * was stubbed in. A library whose jar is rebuilt after a small change mostly contains classes whose
+ * bytes did not change, and only those that did are stubbed again.
+ *
+ * <p>Classes of Kotlin modules are never cached, because whether the bodies of their methods are
+ * retained depends on the other classes of the module.
+ */
+public class ClassStubCache {
+  /** Roughly what an entry costs on top of the bytes of its stub. */
+  private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+  private final Cache<HashCode, Optional<byte[]>> stubs;
+
+  public ClassStubCache(long maxBytes) {
+    stubs =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .<HashCode, Optional<byte[]>>weigher(
+                (key, stub) -> ENTRY_OVERHEAD_BYTES + stub.map(bytes -> bytes.length).orElse(0))
+            .recordStats()
+            .build();
+  }
+
+  CacheStats getStats() {
+    return stubs.stats();
+  }
+
+  /**
+   * @return the entry for the class at the given path, or null if the class is not part of the
+   *     ABI.
+   */
+  @Nullable
+  StubJarEntry get(LibraryReader input, Path path, @Nullable AbiGenerationMode compatibilityMode)
+      throws IOException {
+    Optional<byte[]> classFile = input.readClassFile(path);
+    if (!classFile.isPresent()) {
+      return stub(input, path, compatibilityMode);
+    }
+
+    HashCode key =
+        Hashing.murmur3_128()
+            .newHasher()
+            .putInt(compatibilityMode == null ? -1 : compatibilityMode.ordinal())
+            .putBytes(classFile.get())
+            .hash();
+    Optional<byte[]> stub = stubs.getIfPresent(key);
+    if (stub == null) {
+      StubJarClassEntry entry = stub(input, path, compatibilityMode);
+      stub = entry == null ? Optional.empty() : Optional.of(entry.toByteArray());
+      stubs.put(key, stub);
+    }
+    return stub.map(bytes -> new StubJarCachedClassEntry(path, bytes)).orElse(null);
+  }
+
+  @Nullable
+  private static StubJarClassEntry stub(
+      LibraryReader input, Path path, @Nullable AbiGenerationMode compatibilityMode)
+      throws IOException {
+    return StubJarClassEntry.of(input, path, compatibilityMode, false, Collections.emptyMap());
+  }
+}
@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -67,6 +68,14 @@ class DirectoryReader implements LibraryReader {
     }
   }
 
+  @Override
+  public Optional<byte[]> readClassFile(Path relativePath) throws IOException {
+    if (!isClass(relativePath)) {
+      throw new IllegalArgumentException();
+    }
+    return Optional.of(Files.readAllBytes(root.resolve(relativePath)));
+  }
+
   @Override
   public void close() {
     // Nothing in particular needed
@@ -27,6 +27,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Supplier;
 import javax.annotation.processing.Messager;
 import javax.lang.model.SourceVersion;
@@ -85,6 +86,12 @@ class ElementsReader implements LibraryReader {
         .driveVisitor(element, cv);
   }
 
+  @Override
+  public Optional<byte[]> readClassFile(Path relativePath) {
+    // The classes are generated from elements rather than read from class files.
+    return Optional.empty();
+  }
+
   @Override
   public void close() {
     // Nothing
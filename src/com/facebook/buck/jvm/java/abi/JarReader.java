@@ -24,6 +24,7 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import javax.annotation.Nullable;
 import org.objectweb.asm.ClassVisitor;
 
@@ -53,6 +54,11 @@ class JarReader implements LibraryReader {
     getInner().visitClass(relativePath, cv, skipCode);
   }
 
+  @Override
+  public Optional<byte[]> readClassFile(Path relativePath) throws IOException {
+    return getInner().readClassFile(relativePath);
+  }
+
   @Override
   public void close() throws IOException {
     if (fileSystem != null) {
@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import javax.annotation.processing.Messager;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -55,6 +56,12 @@ interface LibraryReader extends AutoCloseable {
 
   void visitClass(Path relativePath, ClassVisitor cv, boolean skipCode) throws IOException;
 
+  /**
+   * @return the bytes of the class file at the given path, or empty if the library is not made of
+   *     class files
+   */
+  Optional<byte[]> readClassFile(Path relativePath) throws IOException;
+
   @Override
   void close() throws IOException;
 
@@ -36,6 +36,7 @@ import javax.lang.model.util.Types;
 public class StubJar {
   private final Supplier<LibraryReader> libraryReaderSupplier;
   @Nullable private AbiGenerationMode compatibilityMode = null;
+  @Nullable private ClassStubCache stubCache = null;
 
   public StubJar(Path toMirror) {
     libraryReaderSupplier = () -> LibraryReader.of(toMirror);
@@ -76,6 +77,15 @@ public class StubJar {
     return this;
   }
 
+  /**
+   * Reuses the stubs of classes that were stubbed before, and adds the stubs of the others to the
+   * given cache.
+   */
+  public StubJar setStubCache(ClassStubCache stubCache) {
+    this.stubCache = stubCache;
+    return this;
+  }
+
   public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
     // The order of these declarations is important -- FilesystemStubJarWriter actually uses
     // the LibraryReader in its close method, and try-with-resources closes the items in the
@@ -103,8 +113,12 @@ public class StubJar {
 
     boolean isKotlinModule = isKotlinModule(relativePaths);
     for (Path path : paths) {
-      StubJarEntry entry =
-          StubJarEntry.of(input, path, compatibilityMode, isKotlinModule, inlineFunctions);
+      StubJarEntry entry;
+      if (stubCache != null && !isKotlinModule && input.isClass(path)) {
+        entry = stubCache.get(input, path, compatibilityMode);
+      } else {
+        entry = StubJarEntry.of(input, path, compatibilityMode, isKotlinModule, inlineFunctions);
+      }
       if (entry == null) {
         continue;
       }
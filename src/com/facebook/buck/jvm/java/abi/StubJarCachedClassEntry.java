@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/** A class stub taken from a {@link ClassStubCache}. */
+class StubJarCachedClassEntry extends StubJarEntry {
+  private final Path path;
+  private final byte[] stub;
+
+  StubJarCachedClassEntry(Path path, byte[] stub) {
+    this.path = path;
+    this.stub = stub;
+  }
+
+  @Override
+  public void write(StubJarWriter writer) {
+    writer.writeEntry(path, () -> new ByteArrayInputStream(stub));
+  }
+
+  @Override
+  public List<String> getInlineMethods() {
+    return Collections.emptyList();
+  }
+}
@@ -144,7 +144,7 @@ class StubJarClassEntry extends StubJarEntry {
     return methodBodiesToRetain;
   }
 
-  private InputStream openInputStream() {
+  byte[] toByteArray() {
     ClassWriter writer = new ClassWriter(0);
     ClassVisitor visitor = writer;
     if (!retainEverything) {
@@ -154,7 +154,11 @@ class StubJarClassEntry extends StubJarEntry {
 
     stub.accept(visitor);
 
-    return new ByteArrayInputStream(writer.toByteArray());
+    return writer.toByteArray();
+  }
+
+  private InputStream openInputStream() {
+    return new ByteArrayInputStream(toByteArray());
   }
 
   private static boolean isSyntheticClass(ClassNode node) {
@@ -25,6 +25,7 @@ import com.facebook.buck.core.rulekey.AddToRuleKey;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
 import com.facebook.buck.util.ClassLoaderCache;
@@ -33,19 +34,16 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
-import java.io.File;
 import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public class JarBackedReflectedKotlinc implements Kotlinc {
 
@@ -53,6 +51,30 @@ public class JarBackedReflectedKotlinc implements Kotlinc {
   private static final String EXIT_CODE_CLASS = "org.jetbrains.kotlin.cli.common.ExitCode";
   private static final KotlincVersion VERSION = ImmutableKotlincVersion.of("in memory");
 
+  private static final Logger LOG = Logger.get(JarBackedReflectedKotlinc.class);
+
+  /**
+   * Makes the compiler keep its application environment, which all compilations that run on the
+   * same compiler class loader share, alive after the compilations that use it finish.
+   */
+  private static final String KEEP_ENVIRONMENT_PROPERTY = "kotlin.environment.keepalive";
+
+  /** Where the compiler reads its system properties from, through a getter that can be replaced. */
+  private static final String COMPILER_SYSTEM_PROPERTIES_CLASS =
+      "org.jetbrains.kotlin.config.CompilerSystemProperties";
+
+  private static final String FUNCTION_CLASS = "kotlin.jvm.functions.Function1";
+
+  private static final String COMPILER_VERSION_CLASS =
+      "org.jetbrains.kotlin.config.KotlinCompilerVersion";
+
+  /** The first compiler version whose system property getter can be replaced. */
+  private static final ImmutableList<Integer> MIN_VERSION_WITH_PROPERTY_GETTER =
+      ImmutableList.of(1, 4, 20);
+
+  /** Number of compiler class paths whose compilers are kept warm. */
+  private static final int MAX_WARM_COMPILERS = 4;
+
   private static final Function<Path, URL> PATH_TO_URL =
       p -> {
         try {
@@ -62,20 +84,24 @@ public class JarBackedReflectedKotlinc implements Kotlinc {
         }
       };
 
-  // Used to hang onto the KotlinDaemonShim for the life of the buckd process
-  private static final Map<Set<String>, Object> kotlinShims = new ConcurrentHashMap<>();
+  // Used to hang onto the compilers for the life of the buckd process
+  private static final KotlincCompilerPool COMPILER_POOL =
+      new KotlincCompilerPool(MAX_WARM_COMPILERS);
 
   @AddToRuleKey private final ImmutableSet<SourcePath> compilerClassPath;
   private final Path annotationProcessingClassPath;
   private final Path standardLibraryClasspath;
+  private final boolean keepCompilerEnvironment;
 
   JarBackedReflectedKotlinc(
       ImmutableSet<SourcePath> compilerClassPath,
       Path annotationProcessingClassPath,
-      Path standardLibraryClasspath) {
+      Path standardLibraryClasspath,
+      boolean keepCompilerEnvironment) {
     this.compilerClassPath = compilerClassPath;
     this.annotationProcessingClassPath = annotationProcessingClassPath;
     this.standardLibraryClasspath = standardLibraryClasspath;
+    this.keepCompilerEnvironment = keepCompilerEnvironment;
   }
 
   @Override
@@ -155,17 +181,16 @@ public class JarBackedReflectedKotlinc implements Kotlinc {
                     path -> projectFilesystem.resolve(path).toAbsolutePath().toString()))
             .build();
 
-    Set<File> compilerIdPaths =
+    ImmutableSet<String> compilerIdPaths =
         compilerClassPath.stream()
             .map(p -> ((PathSourcePath) p).getRelativePath())
-            .map(Path::toFile)
-            .collect(Collectors.toSet());
+            .map(p -> p.toFile().getAbsolutePath())
+            .collect(ImmutableSet.toImmutableSet());
 
+    KotlincCompilerPool.WarmCompiler warmCompiler =
+        COMPILER_POOL.borrow(compilerIdPaths, () -> loadCompilerShim(context));
     try {
-      Object compilerShim =
-          kotlinShims.computeIfAbsent(
-              compilerIdPaths.stream().map(File::getAbsolutePath).collect(Collectors.toSet()),
-              k -> loadCompilerShim(context));
+      Object compilerShim = warmCompiler.getCompiler();
 
       Method compile = compilerShim.getClass().getMethod("exec", PrintStream.class, String[].class);
 
@@ -184,14 +209,14 @@ public class JarBackedReflectedKotlinc implements Kotlinc {
         | NoSuchMethodException
         | ClassNotFoundException ex) {
       throw new RuntimeException(ex);
+    } finally {
+      COMPILER_POOL.release(warmCompiler);
     }
   }
 
-  private Object loadCompilerShim(ExecutionContext context) {
+  private KotlincCompilerPool.WarmCompiler loadCompilerShim(ExecutionContext context) {
     try {
       ClassLoaderCache classLoaderCache = context.getClassLoaderCache();
-      classLoaderCache.addRef();
-
       ClassLoader classLoader =
           classLoaderCache.getClassLoaderForClassPath(
               SynchronizedToolProvider.getSystemToolClassLoader(),
@@ -200,18 +225,83 @@ public class JarBackedReflectedKotlinc implements Kotlinc {
                       .map(p -> ((PathSourcePath) p).getRelativePath())
                       .map(PATH_TO_URL)
                       .iterator()));
+      if (keepCompilerEnvironment) {
+        keepEnvironmentOfCompilersLoadedBy(classLoader);
+      }
+      Object compilerShim = classLoader.loadClass(COMPILER_CLASS).newInstance();
 
-      return classLoader.loadClass(COMPILER_CLASS).newInstance();
+      // The class loader stays open for as long as the pool keeps the compiler.
+      return new KotlincCompilerPool.WarmCompiler(compilerShim, classLoaderCache.addRef());
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
   }
 
+  /**
+   * Makes the compilers loaded by a class loader read {@link #KEEP_ENVIRONMENT_PROPERTY} as set,
+   * without setting it for the whole JVM, by replacing the getter that the compiler reads its
+   * system properties through. Compilers older than {@link #MIN_VERSION_WITH_PROPERTY_GETTER} do
+   * not have that getter and are left alone.
+   */
+  private static void keepEnvironmentOfCompilersLoadedBy(ClassLoader classLoader) {
+    try {
+      String version =
+          (String) classLoader.loadClass(COMPILER_VERSION_CLASS).getField("VERSION").get(null);
+      if (!isAtLeast(version, MIN_VERSION_WITH_PROPERTY_GETTER)) {
+        LOG.warn(
+            "Kotlin compiler %s cannot keep its environment alive, it needs version %s or later.",
+            version, Joiner.on('.').join(MIN_VERSION_WITH_PROPERTY_GETTER));
+        return;
+      }
+      Class<?> functionClass = classLoader.loadClass(FUNCTION_CLASS);
+      Object getter =
+          Proxy.newProxyInstance(
+              classLoader, new Class<?>[] {functionClass}, new KeepEnvironmentPropertyGetter());
+      Object properties =
+          classLoader.loadClass(COMPILER_SYSTEM_PROPERTIES_CLASS).getField("Companion").get(null);
+      properties
+          .getClass()
+          .getMethod("setSystemPropertyGetter", functionClass)
+          .invoke(properties, getter);
+    } catch (ReflectiveOperationException e) {
+      LOG.warn(e, "This Kotlin compiler cannot be told to keep its environment alive.");
+    }
+  }
+
+  /** @return whether a version like {@code 1.4.21} or {@code 1.5.0-RC} is at least the given one */
+  private static boolean isAtLeast(String version, ImmutableList<Integer> minVersion) {
+    String[] parts = version.split("[.-]");
+    for (int i = 0; i < minVersion.size(); i++) {
+      int part;
+      try {
+        part = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      if (part != minVersion.get(i)) {
+        return part > minVersion.get(i);
+      }
+    }
+    return true;
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironment(SourcePathResolverAdapter resolver) {
     throw new UnsupportedOperationException("In memory kotlinc may not be used externally");
   }
 
+  /** Reads the system properties of the compiler, with its environment kept alive. */
+  private static class KeepEnvironmentPropertyGetter implements InvocationHandler {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        return method.invoke(this, args);
+      }
+      String name = (String) args[0];
+      return KEEP_ENVIRONMENT_PROPERTY.equals(name) ? "true" : System.getProperty(name);
+    }
+  }
+
   private static class UncloseablePrintStream extends PrintStream {
     UncloseablePrintStream(PrintStream delegate) {
       super(delegate);
@@ -62,7 +62,10 @@ public class KotlinBuckConfig implements ConfigView<BuckConfig> {
               delegate.getPathSourcePath(getPathToCompilerJar()));
 
       return new JarBackedReflectedKotlinc(
-          classpathEntries, getPathToAnnotationProcessingJar(), getPathToStdlibJar());
+          classpathEntries,
+          getPathToAnnotationProcessingJar(),
+          getPathToStdlibJar(),
+          shouldKeepCompilerEnvironment());
     }
   }
 
@@ -81,6 +84,14 @@ public class KotlinBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getBooleanValue(SECTION, PROPERTY_COMPILE_AGAINST_ABIS, false);
   }
 
+  /**
+   * @return whether the in-memory compiler should keep its environment alive between compilations
+   *     rather than set it up again for each of them
+   */
+  public boolean shouldKeepCompilerEnvironment() {
+    return delegate.getBooleanValue(SECTION, "keep_compiler_environment", false);
+  }
+
   public AbiGenerationMode getAbiGenerationMode() {
     return delegate
         .getEnum(SECTION, PROPERTY_ABI_GENERATION_MODE, AbiGenerationMode.class)
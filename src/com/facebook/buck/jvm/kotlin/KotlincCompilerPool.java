@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Warm instances of the in-memory Kotlin compiler, one per class path they were loaded from, kept
+ * for the life of the buckd process so that later compilations run on classes that are already
+ * loaded and that the JIT has already compiled.
+ *
+ * <p>Only the most recently used class paths are kept. When a class path is dropped, the class
+ * loader of its compiler is released once no compilation uses that compiler anymore.
+ */
+class KotlincCompilerPool {
+  private static final Logger LOG = Logger.get(KotlincCompilerPool.class);
+
+  private final int maxClassPaths;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<ImmutableSet<String>, WarmCompiler> compilers =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+
+  /** @param maxClassPaths number of class paths whose compilers are kept */
+  KotlincCompilerPool(int maxClassPaths) {
+    Preconditions.checkArgument(maxClassPaths > 0, "The pool must keep at least one compiler");
+    this.maxClassPaths = maxClassPaths;
+  }
+
+  /**
+   * @return the compiler loaded from the given class path, loading it if the pool does not have it.
+   *     It must be given back to {@link #release} once the compilation is done.
+   */
+  synchronized WarmCompiler borrow(
+      ImmutableSet<String> classPath, Supplier<WarmCompiler> newCompiler) {
+    WarmCompiler compiler = compilers.get(classPath);
+    if (compiler == null) {
+      compiler = newCompiler.get();
+      compilers.put(classPath, compiler);
+      evictLeastRecentlyUsed();
+    }
+    compiler.borrowers++;
+    return compiler;
+  }
+
+  /** Ends a compilation that uses a compiler returned by {@link #borrow}. */
+  synchronized void release(WarmCompiler compiler) {
+    compiler.borrowers--;
+    if (compiler.evicted && compiler.borrowers == 0) {
+      compiler.close();
+    }
+  }
+
+  @GuardedBy("this")
+  private void evictLeastRecentlyUsed() {
+    Iterator<Map.Entry<ImmutableSet<String>, WarmCompiler>> iterator =
+        compilers.entrySet().iterator();
+    while (compilers.size() > maxClassPaths) {
+      Map.Entry<ImmutableSet<String>, WarmCompiler> eldest = iterator.next();
+      iterator.remove();
+      LOG.debug("Dropping the in-memory Kotlin compiler loaded from %s", eldest.getKey());
+      WarmCompiler compiler = eldest.getValue();
+      compiler.evicted = true;
+      if (compiler.borrowers == 0) {
+        compiler.close();
+      }
+    }
+  }
+
+  /** A compiler instance and what keeps its class loader open. */
+  static class WarmCompiler {
+    private final Object compiler;
+    private final AutoCloseable classLoaderReference;
+
+    /** Guarded by the pool. */
+    private int borrowers = 0;
+
+    /** Guarded by the pool. */
+    private boolean evicted = false;
+
+    /**
+     * @param classLoaderReference closed once the compiler has been dropped from the pool and no
+     *     compilation uses it anymore
+     */
+    WarmCompiler(Object compiler, AutoCloseable classLoaderReference) {
+      this.compiler = compiler;
+      this.classLoaderReference = classLoaderReference;
+    }
+
+    Object getCompiler() {
+      return compiler;
+    }
+
+    private void close() {
+      try {
+        classLoaderReference.close();
+      } catch (Exception e) {
+        LOG.warn(e, "Failed to release the class loader of an in-memory Kotlin compiler");
+      }
+    }
+  }
+}
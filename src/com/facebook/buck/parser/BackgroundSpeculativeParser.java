@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.cell.Cells;
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.exceptions.BuildFileParseException;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Warms up {@link DaemonicParserState} while the daemon is idle.
+ *
+ * <p>Once a command finishes, this periodically refreshes the file system state (e.g. by consuming
+ * pending Watchman events) and re-parses, at low priority, every build file whose cached manifest
+ * has been invalidated since the last round. Those are exactly the packages that previous commands
+ * needed and that were affected by file changes (directly or through included .bzl files), so the
+ * first command after e.g. a {@code git pull} finds most of them already parsed.
+ *
+ * <p>All speculative work is cancelled as soon as a new command starts, see {@link
+ * #startCommand()}.
+ */
+@ThreadSafe
+public class BackgroundSpeculativeParser implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(BackgroundSpeculativeParser.class);
+
+  /** Brings the daemon caches up to date with the file system. */
+  @FunctionalInterface
+  public interface FileSystemStateRefresher {
+    void refresh(BuckEventBus eventBus) throws IOException, InterruptedException;
+  }
+
+  private final DaemonicParserState daemonicParserState;
+  private final BuckEventBus eventBus;
+  private final ScheduledExecutorService scheduler;
+  private final ListeningExecutorService parsingExecutor;
+
+  @GuardedBy("this")
+  private long generation = 0;
+
+  @GuardedBy("this")
+  private int activeCommands = 0;
+
+  @GuardedBy("this")
+  @Nullable
+  private Future<?> scheduledTask;
+
+  @GuardedBy("this")
+  @Nullable
+  private Future<?> inFlightParsing;
+
+  public BackgroundSpeculativeParser(
+      DaemonicParserState daemonicParserState, BuckEventBus eventBus, int parsingThreads) {
+    this(
+        daemonicParserState,
+        eventBus,
+        Executors.newSingleThreadScheduledExecutor(
+            createLowPriorityThreadFactory("speculative-parser-scheduler-%d")),
+        MoreExecutors.listeningDecorator(
+            MostExecutors.newMultiThreadExecutor(
+                createLowPriorityThreadFactory("speculative-parser-%d"), parsingThreads)));
+  }
+
+  @VisibleForTesting
+  BackgroundSpeculativeParser(
+      DaemonicParserState daemonicParserState,
+      BuckEventBus eventBus,
+      ScheduledExecutorService scheduler,
+      ListeningExecutorService parsingExecutor) {
+    this.daemonicParserState = daemonicParserState;
+    this.eventBus = eventBus;
+    this.scheduler = scheduler;
+    this.parsingExecutor = parsingExecutor;
+  }
+
+  private static ThreadFactory createLowPriorityThreadFactory(String nameFormat) {
+    return new ThreadFactoryBuilder()
+        .setNameFormat(nameFormat)
+        .setDaemon(true)
+        .setPriority(Thread.MIN_PRIORITY)
+        .build();
+  }
+
+  /**
+   * Marks the beginning of a command and cancels any pending or running speculative parsing so that
+   * it does not compete with the command for resources.
+   *
+   * @return scope that needs to be closed once the command finishes.
+   */
+  public CommandScope startCommand() {
+    Future<?> parsingToCancel;
+    synchronized (this) {
+      activeCommands++;
+      parsingToCancel = cancelScheduledWork();
+    }
+    cancelInFlightParsing(parsingToCancel);
+    return new CommandScope();
+  }
+
+  /** Lifetime of a command that prevents speculative parsing from running concurrently with it. */
+  public class CommandScope implements AutoCloseable {
+
+    @Nullable private Runnable idleTask;
+
+    private CommandScope() {}
+
+    /**
+     * Requests speculative parsing rounds that run every {@code idleDelayMs} once this command and
+     * all other running commands finish, until the next command starts.
+     *
+     * @param cells cells of the command, used to resolve build files to cells.
+     * @param perBuildStateFactory creates the factory used to parse build files given an event bus
+     *     that outlives the command.
+     * @param fileSystemStateRefresher invoked at the beginning of every round to pick up file
+     *     changes that happened since the previous round.
+     */
+    public void scheduleWhenIdle(
+        Cells cells,
+        Function<BuckEventBus, PerBuildStateFactory> perBuildStateFactory,
+        FileSystemStateRefresher fileSystemStateRefresher,
+        long idleDelayMs) {
+      idleTask =
+          () ->
+              schedule(
+                  cells,
+                  perBuildStateFactory.apply(eventBus),
+                  fileSystemStateRefresher,
+                  idleDelayMs);
+    }
+
+    @Override
+    public void close() {
+      boolean idle;
+      synchronized (BackgroundSpeculativeParser.this) {
+        activeCommands--;
+        idle = activeCommands == 0;
+      }
+      if (idle && idleTask != null) {
+        idleTask.run();
+      }
+    }
+  }
+
+  private synchronized void schedule(
+      Cells cells,
+      PerBuildStateFactory perBuildStateFactory,
+      FileSystemStateRefresher fileSystemStateRefresher,
+      long idleDelayMs) {
+    if (activeCommands > 0 || scheduler.isShutdown()) {
+      return;
+    }
+    cancelScheduledTask();
+    long scheduledGeneration = generation;
+    scheduledTask =
+        scheduler.scheduleWithFixedDelay(
+            () ->
+                runRound(scheduledGeneration, cells, perBuildStateFactory, fileSystemStateRefresher),
+            idleDelayMs,
+            idleDelayMs,
+            TimeUnit.MILLISECONDS);
+  }
+
+  /** @return parsing that is currently in flight and needs to be cancelled by the caller. */
+  @GuardedBy("this")
+  @Nullable
+  private Future<?> cancelScheduledWork() {
+    generation++;
+    cancelScheduledTask();
+    Future<?> parsingToCancel = inFlightParsing;
+    inFlightParsing = null;
+    return parsingToCancel;
+  }
+
+  private void cancelInFlightParsing(@Nullable Future<?> parsingToCancel) {
+    if (parsingToCancel != null) {
+      // Same as for client disconnects, do not interrupt threads in the middle of a parser cache
+      // update.
+      synchronized (daemonicParserState) {
+        parsingToCancel.cancel(true);
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void cancelScheduledTask() {
+    if (scheduledTask != null) {
+      scheduledTask.cancel(false);
+      scheduledTask = null;
+    }
+  }
+
+  private synchronized boolean isCurrent(long scheduledGeneration) {
+    return generation == scheduledGeneration;
+  }
+
+  private synchronized boolean setInFlightParsing(long scheduledGeneration, Future<?> parsing) {
+    if (generation != scheduledGeneration) {
+      return false;
+    }
+    inFlightParsing = parsing;
+    return true;
+  }
+
+  private synchronized void clearInFlightParsing(Future<?> parsing) {
+    if (inFlightParsing == parsing) {
+      inFlightParsing = null;
+    }
+  }
+
+  private void runRound(
+      long scheduledGeneration,
+      Cells cells,
+      PerBuildStateFactory perBuildStateFactory,
+      FileSystemStateRefresher fileSystemStateRefresher) {
+    if (!isCurrent(scheduledGeneration)) {
+      return;
+    }
+    try {
+      fileSystemStateRefresher.refresh(eventBus);
+      if (!isCurrent(scheduledGeneration)) {
+        return;
+      }
+      ImmutableSetMultimap<AbsPath, AbsPath> buildFiles =
+          daemonicParserState.drainInvalidatedBuildFiles();
+      if (buildFiles.isEmpty()) {
+        return;
+      }
+      LOG.debug("Speculatively parsing %d build files", buildFiles.size());
+      parse(scheduledGeneration, cells, perBuildStateFactory, buildFiles);
+    } catch (InterruptedException e) {
+      LOG.debug("Speculative parsing was interrupted");
+      Thread.currentThread().interrupt();
+    } catch (CancellationException e) {
+      LOG.debug("Speculative parsing was cancelled");
+    } catch (Exception e) {
+      // The next command is going to parse these files anyway and report any errors properly.
+      LOG.debug(e, "Speculative parsing failed");
+    }
+  }
+
+  private void parse(
+      long scheduledGeneration,
+      Cells cells,
+      PerBuildStateFactory perBuildStateFactory,
+      ImmutableSetMultimap<AbsPath, AbsPath> buildFiles)
+      throws InterruptedException, ExecutionException {
+    ParsingContext parsingContext =
+        ParsingContext.builder(cells.getRootCell(), parsingExecutor).build();
+    try (PerBuildState state = perBuildStateFactory.create(parsingContext, daemonicParserState)) {
+      List<ListenableFuture<BuildFileManifest>> jobs = new ArrayList<>(buildFiles.size());
+      for (Map.Entry<AbsPath, Collection<AbsPath>> entry : buildFiles.asMap().entrySet()) {
+        Cell cell = cells.getCellProvider().getCellByPath(entry.getKey());
+        for (AbsPath buildFile : entry.getValue()) {
+          try {
+            jobs.add(state.getBuildFileManifestJob(cell, buildFile));
+          } catch (BuildFileParseException e) {
+            LOG.debug(e, "Failed to speculatively parse %s", buildFile);
+          }
+        }
+      }
+      // Failures of individual build files are ignored, e.g. the file could have been deleted.
+      ListenableFuture<List<BuildFileManifest>> parsing = Futures.successfulAsList(jobs);
+      if (!setInFlightParsing(scheduledGeneration, parsing)) {
+        parsing.cancel(true);
+        return;
+      }
+      try {
+        parsing.get();
+      } finally {
+        clearInFlightParsing(parsing);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    Future<?> parsingToCancel;
+    synchronized (this) {
+      parsingToCancel = cancelScheduledWork();
+      scheduler.shutdownNow();
+    }
+    cancelInFlightParsing(parsingToCancel);
+    parsingExecutor.shutdownNow();
+    try {
+      eventBus.close();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to close speculative parsing event bus");
+    }
+  }
+}
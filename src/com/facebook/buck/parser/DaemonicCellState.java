@@ -41,11 +41,13 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -156,6 +158,19 @@ class DaemonicCellState {
   @GuardedBy("cachesLock")
   private final Set<UnflavoredBuildTarget> allRawNodeTargets;
 
+  /**
+   * Build files which had a cached manifest that was invalidated since the last call to {@link
+   * #drainInvalidatedBuildFiles()}, in invalidation order.
+   *
+   * <p>These are packages that were parsed by earlier commands and got invalidated by file
+   * changes, which makes them good candidates for speculative parsing. Only populated when {@link
+   * #recordInvalidatedBuildFiles} is set, otherwise nobody drains it.
+   */
+  @GuardedBy("cachesLock")
+  private final Set<AbsPath> invalidatedBuildFiles;
+
+  private final boolean recordInvalidatedBuildFiles;
+
   /** Type-safe accessor to one of state caches */
   static class CellCacheType<K, T> {
     private final Function<DaemonicCellState, Cache<K, T>> getCache;
@@ -200,7 +215,20 @@ class DaemonicCellState {
   private final AutoCloseableReadWriteUpdateLock cachesLock;
   private final int parsingThreads;
 
+  /** Notified, under the caches lock, about build files whose cached manifests are invalidated. */
+  private final Consumer<AbsPath> buildFileInvalidationListener;
+
   DaemonicCellState(Cell cell, int parsingThreads) {
+    this(cell, parsingThreads, false, buildFile -> {});
+  }
+
+  DaemonicCellState(
+      Cell cell,
+      int parsingThreads,
+      boolean recordInvalidatedBuildFiles,
+      Consumer<AbsPath> buildFileInvalidationListener) {
+    this.recordInvalidatedBuildFiles = recordInvalidatedBuildFiles;
+    this.buildFileInvalidationListener = buildFileInvalidationListener;
     this.cell = new AtomicReference<>(cell);
     this.parsingThreads = parsingThreads;
     this.cellRoot = cell.getRoot();
@@ -211,6 +239,7 @@ class DaemonicCellState {
     this.allBuildFileManifests = new ConcurrentMapCache<>(parsingThreads);
     this.allPackageFileManifests = new ConcurrentMapCache<>(parsingThreads);
     this.allRawNodeTargets = new HashSet<>();
+    this.invalidatedBuildFiles = new LinkedHashSet<>();
     this.cachesLock = new AutoCloseableReadWriteUpdateLock();
     this.targetNodeCache = new Cache<>(TARGET_NODE_CACHE_TYPE);
     this.rawTargetNodeCache = new Cache<>(RAW_TARGET_NODE_CACHE_TYPE);
@@ -341,6 +370,12 @@ class DaemonicCellState {
       // invalidate the build targets in the manifest.
       int invalidatedRawNodes = invalidateNodesInPath(path, true);
 
+      if (allBuildFileManifests.getIfPresent(path) != null) {
+        if (recordInvalidatedBuildFiles) {
+          invalidatedBuildFiles.add(path);
+        }
+        buildFileInvalidationListener.accept(path);
+      }
       allBuildFileManifests.invalidate(path);
       allPackageFileManifests.invalidate(path);
 
@@ -384,6 +419,17 @@ class DaemonicCellState {
     }
   }
 
+  /**
+   * @return build files whose cached manifests were invalidated since the last call to this method.
+   */
+  ImmutableSet<AbsPath> drainInvalidatedBuildFiles() {
+    try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      ImmutableSet<AbsPath> result = ImmutableSet.copyOf(invalidatedBuildFiles);
+      invalidatedBuildFiles.clear();
+      return result;
+    }
+  }
+
   Optional<MapDifference<String, String>> invalidateIfEnvHasChanged(Cell cell, AbsPath buildFile) {
     // Invalidate if env vars have changed.
     ImmutableMap<String, Optional<String>> usedEnv;
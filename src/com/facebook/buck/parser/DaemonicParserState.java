@@ -52,6 +52,7 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapDifference;
@@ -357,6 +358,9 @@ public class DaemonicParserState {
 
   private final int parsingThreads;
 
+  /** Whether {@link #drainInvalidatedBuildFiles()} is going to be used. */
+  private final boolean recordInvalidatedBuildFiles;
+
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
   /**
@@ -369,8 +373,21 @@ public class DaemonicParserState {
   private final AutoCloseableReadWriteLock cachedStateLock;
   private final AutoCloseableReadWriteLock cellStateLock;
 
+  private final QueryResultCache queryResultCache;
+
+  private final PythonDslInterpreterPools pythonDslInterpreterPools;
+
   public DaemonicParserState(int parsingThreads) {
+    this(parsingThreads, false);
+  }
+
+  /**
+   * @param recordInvalidatedBuildFiles whether to keep track of invalidated build files for {@link
+   *     #drainInvalidatedBuildFiles()}.
+   */
+  public DaemonicParserState(int parsingThreads, boolean recordInvalidatedBuildFiles) {
     this.parsingThreads = parsingThreads;
+    this.recordInvalidatedBuildFiles = recordInvalidatedBuildFiles;
     this.cacheInvalidatedByEnvironmentVariableChangeCounter =
         new TagSetCounter(
             COUNTER_CATEGORY, INVALIDATED_BY_ENV_VARS_COUNTER_NAME, ImmutableMap.of());
@@ -413,6 +430,8 @@ public class DaemonicParserState {
 
     this.cachedStateLock = new AutoCloseableReadWriteLock();
     this.cellStateLock = new AutoCloseableReadWriteLock();
+    this.queryResultCache = new QueryResultCache();
+    this.pythonDslInterpreterPools = new PythonDslInterpreterPools();
   }
 
   LoadingCache<Cell, BuildFileTree> getBuildFileTrees() {
@@ -467,7 +486,12 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       DaemonicCellState state = cellPathToDaemonicState.get(cell.getRoot());
       if (state == null) {
-        state = new DaemonicCellState(cell, parsingThreads);
+        state =
+            new DaemonicCellState(
+                cell,
+                parsingThreads,
+                recordInvalidatedBuildFiles,
+                queryResultCache::invalidateBuildFile);
         cellPathToDaemonicState.put(cell.getRoot(), state);
       }
       return state;
@@ -509,6 +533,7 @@ public class DaemonicParserState {
                   fullPath, cell);
               // If a build file has been added or removed, reconstruct the build file tree.
               buildFileTrees.invalidate(cell);
+              queryResultCache.invalidateBuildFile(fullPath);
             }
 
             // Added or removed files can affect globs, so invalidate the package build file
@@ -709,6 +734,7 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      queryResultCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -726,6 +752,7 @@ public class DaemonicParserState {
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
       configurationBuildFiles.clear();
+      queryResultCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -735,6 +762,33 @@ public class DaemonicParserState {
     }
   }
 
+  /**
+   * Returns build files, grouped by cell root, whose cached manifests were invalidated by file
+   * changes since the last call to this method. These are packages that were parsed by earlier
+   * commands and are likely to be requested again.
+   *
+   * <p>Always empty unless this state was created with {@code recordInvalidatedBuildFiles}.
+   */
+  public ImmutableSetMultimap<AbsPath, AbsPath> drainInvalidatedBuildFiles() {
+    ImmutableSetMultimap.Builder<AbsPath, AbsPath> result = ImmutableSetMultimap.builder();
+    try (AutoCloseableLock readLock = cellStateLock.readLock()) {
+      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+        result.putAll(state.getCellRoot(), state.drainInvalidatedBuildFiles());
+      }
+    }
+    return result.build();
+  }
+
+  /** @return results of query expressions that are valid for the current parser state. */
+  public QueryResultCache getQueryResultCache() {
+    return queryResultCache;
+  }
+
+  /** @return buck.py interpreter pools that are kept running between commands. */
+  public PythonDslInterpreterPools getPythonDslInterpreterPools() {
+    return pythonDslInterpreterPools;
+  }
+
   public ImmutableList<Counter> getCounters() {
     return ImmutableList.of(
         cacheInvalidatedByEnvironmentVariableChangeCounter,
@@ -50,6 +50,7 @@ import com.facebook.buck.skylark.parser.RuleFunctionFactory;
 import com.facebook.buck.skylark.parser.SkylarkProjectBuildFileParser;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.build.lib.events.EventKind;
@@ -68,20 +69,27 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
   private final KnownRuleTypesProvider knownRuleTypesProvider;
   private final boolean enableProfiling;
   private final Optional<AtomicLong> processedBytes;
+  private final Optional<PythonDslInterpreterPools> interpreterPools;
 
+  /**
+   * @param interpreterPools daemon owned pools of buck.py interpreters. If absent, every Python DSL
+   *     parser starts its own buck.py process.
+   */
   public DefaultProjectBuildFileParserFactory(
       TypeCoercerFactory typeCoercerFactory,
       Console console,
       ParserPythonInterpreterProvider pythonInterpreterProvider,
       KnownRuleTypesProvider knownRuleTypesProvider,
       boolean enableProfiling,
-      Optional<AtomicLong> processedBytes) {
+      Optional<AtomicLong> processedBytes,
+      Optional<PythonDslInterpreterPools> interpreterPools) {
     this.typeCoercerFactory = typeCoercerFactory;
     this.console = console;
     this.pythonInterpreterProvider = pythonInterpreterProvider;
     this.knownRuleTypesProvider = knownRuleTypesProvider;
     this.enableProfiling = enableProfiling;
     this.processedBytes = processedBytes;
+    this.interpreterPools = interpreterPools;
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -89,28 +97,32 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       ParserPythonInterpreterProvider pythonInterpreterProvider,
       boolean enableProfiling,
       Optional<AtomicLong> processedBytes,
-      KnownRuleTypesProvider knownRuleTypesProvider) {
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      Optional<PythonDslInterpreterPools> interpreterPools) {
     this(
         typeCoercerFactory,
         Console.createNullConsole(),
         pythonInterpreterProvider,
         knownRuleTypesProvider,
         enableProfiling,
-        processedBytes);
+        processedBytes,
+        interpreterPools);
   }
 
   public DefaultProjectBuildFileParserFactory(
       TypeCoercerFactory typeCoercerFactory,
       Console console,
       ParserPythonInterpreterProvider pythonInterpreterProvider,
-      KnownRuleTypesProvider knownRuleTypesProvider) {
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      Optional<PythonDslInterpreterPools> interpreterPools) {
     this(
         typeCoercerFactory,
         console,
         pythonInterpreterProvider,
         knownRuleTypesProvider,
         false,
-        Optional.empty());
+        Optional.empty(),
+        interpreterPools);
   }
 
   /**
@@ -144,6 +156,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
             .setIgnorePaths(cell.getFilesystem().getIgnorePaths())
             .setBuildFileName(cell.getBuckConfigView(ParserConfig.class).getBuildFileName())
             .setDefaultIncludes(parserConfig.getDefaultIncludes())
+            .setPreloadIncludes(parserConfig.getPythonDslPreloadIncludes())
             .setDescriptions(knownRuleTypesProvider.getNativeRuleTypes(cell).getDescriptions())
             .setPerFeatureProviders(
                 knownRuleTypesProvider.getNativeRuleTypes(cell).getPerFeatureProviders())
@@ -158,6 +171,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
             .setImplicitNativeRulesState(parserConfig.getImplicitNativeRulesState())
             .setUserDefinedRulesState(parserConfig.getUserDefinedRulesState())
             .setWarnAboutDeprecatedSyntax(parserConfig.isWarnAboutDeprecatedSyntax())
+            .setUseBinaryOutput(parserConfig.getPythonDslBinaryOutput())
             .setPackageImplicitIncludes(parserConfig.getPackageImplicitIncludes())
             .build();
     return EventReportingProjectBuildFileParser.of(
@@ -215,6 +229,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                       typeCoercerFactory,
                       console,
                       eventBus,
+                      parserConfig,
                       buildFileParserOptions,
                       threadSafe,
                       udrLoader),
@@ -240,6 +255,7 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                   typeCoercerFactory,
                   console,
                   eventBus,
+                  parserConfig,
                   buildFileParserOptions,
                   threadSafe,
                   Optional.empty());
@@ -263,9 +279,12 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       TypeCoercerFactory typeCoercerFactory,
       Console console,
       BuckEventBus eventBus,
+      ParserConfig parserConfig,
       ProjectBuildFileParserOptions buildFileParserOptions,
       boolean threadSafe,
       Optional<UserDefinedRuleLoader> udrLoader) {
+    Optional<PythonDslInterpreterPool> interpreterPool =
+        getInterpreterPool(cell, eventBus, parserConfig);
     Supplier<ProjectBuildFileParser> parserSupplier =
         () ->
             new PythonDslProjectBuildFileParser(
@@ -275,13 +294,31 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                 eventBus,
                 new DefaultProcessExecutor(console),
                 processedBytes,
-                udrLoader);
+                udrLoader,
+                interpreterPool);
     if (!threadSafe) {
       return parserSupplier.get();
     }
     return new ConcurrentProjectBuildFileParser(parserSupplier);
   }
 
+  /**
+   * Returns the daemon's pool of interpreters shared by all Python DSL parsers of a cell, if
+   * pooling is enabled. Pooling requires {@code fork()} and is not used with profiling, since
+   * profiles are collected per interpreter.
+   */
+  private Optional<PythonDslInterpreterPool> getInterpreterPool(
+      Cell cell, BuckEventBus eventBus, ParserConfig parserConfig) {
+    int poolSize = parserConfig.getPythonDslInterpreterPoolSize();
+    if (!interpreterPools.isPresent()
+        || poolSize <= 0
+        || enableProfiling
+        || Platform.detect() == Platform.WINDOWS) {
+      return Optional.empty();
+    }
+    return Optional.of(interpreterPools.get().get(cell, poolSize, eventBus));
+  }
+
   private static SkylarkProjectBuildFileParser newSkylarkParser(
       Cell cell,
       TypeCoercerFactory typeCoercerFactory,
@@ -25,6 +25,7 @@ import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.Flavor;
 import com.facebook.buck.core.model.HasDefaultFlavors;
+import com.facebook.buck.core.model.RuleType;
 import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.platform.Platform;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
@@ -345,7 +346,9 @@ class ParserWithConfigurableAttributes extends AbstractParser {
     if (excludeConfigurationTargets) {
       targetNodeFilter =
           new TargetNodeFilterForSpecResolverWithNodeFiltering(
-              targetNodeFilter, ParserWithConfigurableAttributes::filterOutNonBuildTargets);
+              targetNodeFilter,
+              ParserWithConfigurableAttributes::filterOutNonBuildTargets,
+              node -> isBuildTargetRuleType(node.getRuleType()));
     }
 
     ImmutableList<ImmutableSet<BuildTarget>> buildTargets =
@@ -389,7 +392,16 @@ class ParserWithConfigurableAttributes extends AbstractParser {
       TargetNodeMaybeIncompatible targetNodeMaybeIncompatible) {
     Optional<TargetNode<?>> targetNodeOptional =
         targetNodeMaybeIncompatible.getTargetNodeOptional();
-    return !targetNodeOptional.isPresent() || targetNodeOptional.get().getRuleType().isBuildRule();
+    return !targetNodeOptional.isPresent()
+        || isBuildTargetRuleType(targetNodeOptional.get().getRuleType());
+  }
+
+  /**
+   * Used for both configured and unconfigured nodes, so that unconfigured nodes are only skipped
+   * when their configured nodes would be filtered out.
+   */
+  private static boolean isBuildTargetRuleType(RuleType ruleType) {
+    return ruleType.isBuildRule();
   }
 
   @Override
@@ -24,6 +24,7 @@ import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTarget;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.rules.config.registry.ConfigurationRuleRegistry;
 import com.facebook.buck.core.select.SelectorListResolver;
 import com.facebook.buck.core.select.impl.SelectorListFactory;
@@ -35,6 +36,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public class PerBuildState implements AutoCloseable {
 
@@ -113,6 +115,22 @@ public class PerBuildState implements AutoCloseable {
         cell, buildFile, targetConfiguration);
   }
 
+  /**
+   * Like {@link #getRequestedTargetNodesJob(Cell, AbsPath, Optional)}, but only configures the
+   * nodes of the build file accepted by the given filter.
+   */
+  ListenableFuture<ImmutableList<TargetNodeMaybeIncompatible>> getRequestedTargetNodesJob(
+      Cell cell,
+      AbsPath buildFile,
+      Optional<TargetConfiguration> targetConfiguration,
+      Predicate<UnconfiguredTargetNode> filter)
+      throws BuildTargetException {
+    Preconditions.checkState(buildFile.startsWith(cell.getRoot()));
+
+    return targetNodeParsePipeline.getRequestedTargetNodesJob(
+        cell, buildFile, targetConfiguration, filter);
+  }
+
   public BuildFileManifest getBuildFileManifest(Cell cell, AbsPath buildFile)
       throws BuildFileParseException {
     Preconditions.checkState(buildFile.startsWith(cell.getRoot()));
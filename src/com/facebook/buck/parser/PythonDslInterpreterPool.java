@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.util.InputStreamConsumer;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.Threads;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Shares a single buck.py process among all {@link PythonDslProjectBuildFileParser}s of a cell.
+ *
+ * <p>The process loads implicit includes and preloaded extension files once and then forks a fixed
+ * number of interpreters, which start with those modules already loaded. Every parser talks to the
+ * process through its own {@link Channel}; the process dispatches each build file to the least
+ * loaded interpreter and routes its result back to the channel the request came from. An
+ * interpreter that stops after a parse error is replaced by a new fork instead of a cold start.
+ *
+ * <p>Requests are written as {@code <channel> <json request>} lines, results are read as frames of
+ * {@code <channel:u32> <length:u32> <result>}, where the result is what a standalone buck.py
+ * process would write for the request.
+ *
+ * <p>The pool is owned by the daemon and keeps its process running between commands. The process
+ * is started when the first channel is opened, restarted when it has died or when an idle pool is
+ * asked for a process with different parameters, and stopped when the pool is closed.
+ */
+class PythonDslInterpreterPool implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(PythonDslInterpreterPool.class);
+
+  private static final byte[] END_OF_RESULTS = new byte[0];
+
+  private final int size;
+
+  @GuardedBy("this")
+  private int nextChannelId;
+
+  @GuardedBy("this")
+  @Nullable
+  private BuckPythonProgram buckPythonProgram;
+
+  @GuardedBy("this")
+  @Nullable
+  private PooledProcess process;
+
+  /** Event bus of the command that opened the latest channel, gets the output of the process. */
+  private volatile BuckEventBus buckEventBus;
+
+  /**
+   * @param size number of interpreters forked by the shared process
+   * @param buckEventBus used to report the output of build files to the console until a channel is
+   *     opened by a later command
+   */
+  PythonDslInterpreterPool(int size, BuckEventBus buckEventBus) {
+    Preconditions.checkArgument(size > 0, "Interpreter pool must have at least one interpreter");
+    this.size = size;
+    this.buckEventBus = buckEventBus;
+  }
+
+  /** @return number of interpreters forked by the shared process. */
+  int getSize() {
+    return size;
+  }
+
+  /**
+   * @return path to buck.py used by the shared process. The program is created by the first caller
+   *     and deleted when the pool is closed, so all parsers of the pool use the same one.
+   */
+  synchronized Path getPathToBuckPy(ThrowingSupplier<BuckPythonProgram, IOException> programFactory)
+      throws IOException {
+    if (buckPythonProgram == null) {
+      buckPythonProgram = programFactory.get();
+    }
+    return buckPythonProgram.getExecutablePath();
+  }
+
+  /**
+   * Opens a channel to the shared process, starting it with {@code params} unless a live process is
+   * already running.
+   *
+   * @param processExecutor used to launch the process if it needs to be (re)started
+   * @param buckEventBus used to report the output of build files to the console from now on
+   */
+  Channel openChannel(
+      ProcessExecutorParams params, ProcessExecutor processExecutor, BuckEventBus buckEventBus)
+      throws IOException {
+    this.buckEventBus = buckEventBus;
+    PooledProcess processToStop = null;
+    Channel channel;
+    synchronized (this) {
+      if (process != null) {
+        if (process.exited.get()) {
+          LOG.warn("buck.py interpreter pool has exited unexpectedly, restarting it");
+          processToStop = detachProcess();
+        } else if (process.channels.isEmpty() && !process.params.equals(params)) {
+          LOG.debug("Parameters of buck.py interpreter pool have changed, restarting it");
+          processToStop = detachProcess();
+        }
+      }
+      if (process == null) {
+        process = startProcess(params, processExecutor);
+      }
+      channel = new Channel(nextChannelId++, process);
+      process.channels.put(channel.id, channel);
+    }
+    if (processToStop != null) {
+      try {
+        stopProcess(processToStop);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while stopping buck.py interpreter pool");
+      }
+    }
+    return channel;
+  }
+
+  /** Stops the shared process. Channels that are still open see the end of their results. */
+  @Override
+  public void close() throws IOException, InterruptedException {
+    PooledProcess processToStop;
+    BuckPythonProgram programToClose;
+    synchronized (this) {
+      processToStop = detachProcess();
+      programToClose = buckPythonProgram;
+      buckPythonProgram = null;
+    }
+    if (processToStop != null) {
+      stopProcess(processToStop);
+    }
+    if (programToClose != null) {
+      programToClose.close();
+    }
+  }
+
+  @GuardedBy("this")
+  private PooledProcess startProcess(ProcessExecutorParams params, ProcessExecutor processExecutor)
+      throws IOException {
+    LOG.debug("Starting buck.py interpreter pool: %s", params.getCommand());
+    PooledProcess pooledProcess =
+        new PooledProcess(params, processExecutor, processExecutor.launchProcess(params));
+
+    Thread resultReader =
+        Threads.namedThread(
+            PythonDslInterpreterPool.class.getSimpleName() + "-results",
+            () -> readResults(pooledProcess));
+    InputStreamConsumer stderrConsumer =
+        new InputStreamConsumer(
+            pooledProcess.launchedProcess.getStderr(),
+            (InputStreamConsumer.Handler)
+                line -> buckEventBus.post(ConsoleEvent.warning("| %s", line)));
+    Thread stderrReader =
+        Threads.namedThread(
+            PythonDslInterpreterPool.class.getSimpleName() + "-stderr",
+            () -> {
+              try {
+                stderrConsumer.call();
+              } catch (IOException e) {
+                LOG.debug(e, "Failed to read output of buck.py interpreter pool");
+              }
+            });
+    pooledProcess.threads.add(resultReader);
+    pooledProcess.threads.add(stderrReader);
+    resultReader.start();
+    stderrReader.start();
+    return pooledProcess;
+  }
+
+  /**
+   * Forgets the current process, so that the next channel starts a new one. Channels of the process
+   * see the end of their results.
+   */
+  @GuardedBy("this")
+  @Nullable
+  private PooledProcess detachProcess() {
+    PooledProcess detached = process;
+    if (detached == null) {
+      return null;
+    }
+    process = null;
+    for (Channel channel : detached.channels.values()) {
+      channel.results.add(END_OF_RESULTS);
+    }
+    detached.channels.clear();
+    return detached;
+  }
+
+  private static void stopProcess(PooledProcess processToStop) throws InterruptedException {
+    // Closing stdin lets interpreters finish their current build files and exit.
+    try {
+      processToStop.launchedProcess.getStdin().close();
+    } catch (IOException e) {
+      LOG.debug(e, "Failed to close stdin of buck.py interpreter pool");
+    }
+    for (Thread thread : processToStop.threads) {
+      thread.join();
+    }
+    ProcessExecutor.Result result =
+        processToStop.processExecutor.waitForLaunchedProcess(processToStop.launchedProcess);
+    LOG.debug("buck.py interpreter pool exited with status code %d", result.getExitCode());
+  }
+
+  private void readResults(PooledProcess pooledProcess) {
+    DataInputStream input = new DataInputStream(pooledProcess.launchedProcess.getStdout());
+    try {
+      while (true) {
+        int channelId;
+        try {
+          channelId = input.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        byte[] result = new byte[input.readInt()];
+        input.readFully(result);
+        Channel channel;
+        synchronized (this) {
+          channel = pooledProcess.channels.get(channelId);
+        }
+        if (channel != null) {
+          channel.results.add(result);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to read results of buck.py interpreter pool");
+    } finally {
+      synchronized (this) {
+        pooledProcess.exited.set(true);
+        for (Channel channel : pooledProcess.channels.values()) {
+          channel.results.add(END_OF_RESULTS);
+        }
+      }
+    }
+  }
+
+  private synchronized void closeChannel(Channel channel) {
+    channel.owner.channels.remove(channel.id);
+  }
+
+  /** A running buck.py process together with the channels that talk to it. */
+  private static class PooledProcess {
+    private final ProcessExecutorParams params;
+    private final ProcessExecutor processExecutor;
+    private final ProcessExecutor.LaunchedProcess launchedProcess;
+    private final List<Thread> threads = new ArrayList<>();
+
+    /** Guarded by the pool. */
+    private final Map<Integer, Channel> channels = new HashMap<>();
+
+    /** Whether the results stream of the process has ended. */
+    private final AtomicBoolean exited = new AtomicBoolean();
+
+    private PooledProcess(
+        ProcessExecutorParams params,
+        ProcessExecutor processExecutor,
+        ProcessExecutor.LaunchedProcess launchedProcess) {
+      this.params = params;
+      this.processExecutor = processExecutor;
+      this.launchedProcess = launchedProcess;
+    }
+  }
+
+  /**
+   * Connection of a single parser to the shared process. At most one request can be in flight at a
+   * time, results are returned in the order requests were made.
+   */
+  class Channel implements AutoCloseable {
+    private final int id;
+    private final PooledProcess owner;
+    private final BlockingQueue<byte[]> results = new LinkedBlockingQueue<>();
+    private final OutputStream requestStream = new RequestStream();
+    private final InputStream resultStream = new ResultStream();
+    private boolean closed;
+
+    private Channel(int id, PooledProcess owner) {
+      this.id = id;
+      this.owner = owner;
+    }
+
+    /**
+     * @return stream for newline delimited JSON requests, complete lines are sent to the process
+     *     when the stream is flushed. Closing the stream has no effect.
+     */
+    OutputStream getRequestStream() {
+      return requestStream;
+    }
+
+    /** @return stream of results of requests, which ends when the process exits. */
+    InputStream getResultStream() {
+      return resultStream;
+    }
+
+    /**
+     * @return whether the process of this channel has exited. Such a channel can serve no further
+     *     requests and should be replaced by a new one, which restarts the process.
+     */
+    boolean isProcessExited() {
+      return owner.exited.get();
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      closeChannel(this);
+    }
+
+    private void writeRequest(byte[] request, int length) throws IOException {
+      OutputStream stdin = owner.launchedProcess.getStdin();
+      synchronized (stdin) {
+        stdin.write((id + " ").getBytes(StandardCharsets.US_ASCII));
+        stdin.write(request, 0, length);
+        stdin.flush();
+      }
+    }
+
+    private class RequestStream extends OutputStream {
+      private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+      @Override
+      public void write(int b) {
+        buffer.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        buffer.write(b, off, len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        byte[] bytes = buffer.toByteArray();
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+          end--;
+        }
+        if (end == 0) {
+          return;
+        }
+        writeRequest(bytes, end);
+        buffer.reset();
+        buffer.write(bytes, end, bytes.length - end);
+      }
+    }
+
+    private class ResultStream extends InputStream {
+      private byte[] current = new byte[0];
+      private int position;
+
+      /** @return whether there are bytes to read, blocks until the next result arrives. */
+      private boolean ensureAvailable() throws IOException {
+        while (position >= current.length) {
+          if (current == END_OF_RESULTS) {
+            return false;
+          }
+          try {
+            current = results.take();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for buck.py result");
+          }
+          position = 0;
+        }
+        return true;
+      }
+
+      @Override
+      public int read() throws IOException {
+        if (!ensureAvailable()) {
+          return -1;
+        }
+        return current[position++] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        if (!ensureAvailable()) {
+          return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+      }
+
+      @Override
+      public int available() {
+        return current == END_OF_RESULTS ? 0 : current.length - position;
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.parser.config.ParserConfig;
+import com.facebook.buck.util.types.Pair;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interpreter pools of the daemon, so that their buck.py processes stay warm between commands. A
+ * pool is shared by all parsers of a cell that use the same parser configuration.
+ */
+public class PythonDslInterpreterPools implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(PythonDslInterpreterPools.class);
+
+  private final ConcurrentMap<Pair<AbsPath, ParserConfig>, PythonDslInterpreterPool> pools =
+      new ConcurrentHashMap<>();
+
+  /** @return pool of {@code size} interpreters for parsers of {@code cell}. */
+  PythonDslInterpreterPool get(Cell cell, int size, BuckEventBus eventBus) {
+    return pools.computeIfAbsent(
+        new Pair<>(cell.getRoot(), cell.getBuckConfigView(ParserConfig.class)),
+        key -> new PythonDslInterpreterPool(size, eventBus));
+  }
+
+  /** Stops the processes of all pools. */
+  @Override
+  public void close() {
+    for (PythonDslInterpreterPool pool : pools.values()) {
+      try {
+        pool.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        LOG.warn(e, "Failed to stop buck.py interpreter pool");
+      }
+    }
+    pools.clear();
+  }
+}
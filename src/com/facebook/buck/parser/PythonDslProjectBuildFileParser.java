@@ -30,6 +30,7 @@ import com.facebook.buck.io.watchman.WatchmanDiagnosticEvent;
 import com.facebook.buck.json.BuildFileParseExceptionData;
 import com.facebook.buck.json.BuildFileParseExceptionStackTraceEntry;
 import com.facebook.buck.json.BuildFilePythonResult;
+import com.facebook.buck.json.BuildFilePythonResultBinaryDeserializer;
 import com.facebook.buck.json.BuildFileSyntaxError;
 import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.api.ProjectBuildFileParser;
@@ -109,6 +110,8 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
   private Supplier<Path> ignorePathsJson;
 
   @Nullable private ProcessExecutor.LaunchedProcess buckPyProcess;
+  @Nullable private PythonDslInterpreterPool.Channel interpreterPoolChannel;
+  @Nullable private OutputStream buckPyProcessStdin;
   @Nullable private ParserInputStream buckPyProcessInput;
   @Nullable private JsonGenerator buckPyProcessJsonGenerator;
   @Nullable private JsonParser buckPyProcessJsonParser;
@@ -120,6 +123,7 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
   private final AssertScopeExclusiveAccess assertSingleThreadedParsing;
   private final Optional<AtomicLong> processedBytes;
   private final Optional<UserDefinedRuleLoader> userDefinedRulesParser;
+  private final Optional<PythonDslInterpreterPool> interpreterPool;
 
   private boolean isInitialized;
   private boolean isClosed;
@@ -137,8 +141,33 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       ProcessExecutor processExecutor,
       Optional<AtomicLong> processedBytes,
       Optional<UserDefinedRuleLoader> userDefinedRulesParser) {
+    this(
+        options,
+        typeCoercerFactory,
+        environment,
+        buckEventBus,
+        processExecutor,
+        processedBytes,
+        userDefinedRulesParser,
+        Optional.empty());
+  }
+
+  /**
+   * @param interpreterPool shared buck.py process to send requests to. If absent, the parser starts
+   *     a buck.py process of its own.
+   */
+  public PythonDslProjectBuildFileParser(
+      ProjectBuildFileParserOptions options,
+      TypeCoercerFactory typeCoercerFactory,
+      ImmutableMap<String, String> environment,
+      BuckEventBus buckEventBus,
+      ProcessExecutor processExecutor,
+      Optional<AtomicLong> processedBytes,
+      Optional<UserDefinedRuleLoader> userDefinedRulesParser,
+      Optional<PythonDslInterpreterPool> interpreterPool) {
     this.processedBytes = processedBytes;
     this.userDefinedRulesParser = userDefinedRulesParser;
+    this.interpreterPool = interpreterPool;
     this.buckPythonProgram = null;
     this.options = options;
     this.typeCoercerFactory = typeCoercerFactory;
@@ -242,23 +271,21 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
               .setEnvironment(pythonEnvironment)
               .build();
 
+      if (interpreterPool.isPresent()) {
+        // the pool owns the process and consumes its stderr
+        interpreterPoolChannel =
+            interpreterPool.get().openChannel(params, processExecutor, buckEventBus);
+        initStreams(
+            interpreterPoolChannel.getRequestStream(), interpreterPoolChannel.getResultStream());
+        return;
+      }
+
       LOG.debug(
           "Starting buck.py command: %s environment: %s",
           params.getCommand(), params.getEnvironment());
       buckPyProcess = processExecutor.launchProcess(params);
       LOG.debug("Started process %s successfully", buckPyProcess);
-      buckPyProcessInput =
-          createParserInputStream(
-              Objects.requireNonNull(buckPyProcess).getStdout(), processedBytes.isPresent());
-      buckPyProcessJsonGenerator = ObjectMappers.createGenerator(buckPyProcess.getStdin());
-
-      // Explicitly use Reader instead of InputStream because in case if InputStream is provided
-      // Jackson tries to detect encoding be reading first bytes; because the process may not
-      // output anything at this moment yet this can hang indefinitely.
-      buckPyProcessJsonParser =
-          ObjectMappers.createParser(
-              new InputStreamReader(
-                  Objects.requireNonNull(buckPyProcessInput).getInputStream(), Charsets.UTF_8));
+      initStreams(buckPyProcess.getStdin(), buckPyProcess.getStdout());
 
       InputStream stderr = buckPyProcess.getStderr();
 
@@ -290,6 +317,19 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
     }
   }
 
+  private void initStreams(OutputStream stdin, InputStream stdout) throws IOException {
+    buckPyProcessStdin = stdin;
+    buckPyProcessInput = createParserInputStream(stdout, processedBytes.isPresent());
+    buckPyProcessJsonGenerator = ObjectMappers.createGenerator(stdin);
+
+    // Explicitly use Reader instead of InputStream because in case if InputStream is provided
+    // Jackson tries to detect encoding be reading first bytes; because the process may not
+    // output anything at this moment yet this can hang indefinitely.
+    buckPyProcessJsonParser =
+        ObjectMappers.createParser(
+            new InputStreamReader(buckPyProcessInput.getInputStream(), Charsets.UTF_8));
+  }
+
   private ImmutableList<String> buildArgs() throws IOException {
     // Invoking buck.py and read JSON-formatted build rules from its stdout.
     ImmutableList.Builder<String> argBuilder = ImmutableList.builder();
@@ -377,6 +417,18 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       argBuilder.add("--enable_user_defined_rules");
     }
 
+    if (options.getUseBinaryOutput()) {
+      argBuilder.add("--binary_output");
+    }
+
+    if (interpreterPool.isPresent()) {
+      argBuilder.add("--worker_count", String.valueOf(interpreterPool.get().getSize()));
+      for (String include : options.getPreloadIncludes()) {
+        argBuilder.add("--preload");
+        argBuilder.add(include);
+      }
+    }
+
     return argBuilder.build();
   }
 
@@ -414,10 +466,15 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       // well and does not crash the process, but at this moment it is unclear of all the
       // consequences if we made it such.
 
-      try {
-        shutdown();
-      } catch (Throwable tex) {
-        ex.addSuppressed(tex);
+      // Interpreters of a pool are replaced by the pool itself, so the channel stays usable unless
+      // the whole process has died. Then the channel is replaced, which restarts the process.
+
+      if (interpreterPoolChannel == null || interpreterPoolChannel.isProcessExited()) {
+        try {
+          shutdown();
+        } catch (Throwable tex) {
+          ex.addSuppressed(tex);
+        }
       }
       throw ex;
     } finally {
@@ -432,7 +489,6 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
     initIfNeeded();
 
     // Check isInitialized implications (to avoid Eradicate warnings).
-    Objects.requireNonNull(buckPyProcess);
     Objects.requireNonNull(buckPyProcessInput);
     long alreadyReadBytes = buckPyProcessInput.getCount();
 
@@ -629,11 +685,11 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       // I tried using MinimalPrettyPrinter.setRootValueSeparator("\n") and
       // setting it on the JsonGenerator, but it doesn't seem to
       // actually write a newline after each element.
-      Objects.requireNonNull(buckPyProcess);
-      buckPyProcess.getStdin().write('\n');
+      Objects.requireNonNull(buckPyProcessStdin);
+      buckPyProcessStdin.write('\n');
       // I tried enabling JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM,
       // but it doesn't actually flush.
-      buckPyProcess.getStdin().flush();
+      buckPyProcessStdin.flush();
     } catch (IOException e) {
       // https://issues.apache.org/jira/browse/EXEC-101 -- Java 8 throws
       // IOException if the child process exited before writing/flushing
@@ -644,6 +700,10 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       LOG.verbose(
           "Parsing output of buck.py for %s...", request.getOrDefault("buildFile", "[unknown]"));
     }
+    if (options.getUseBinaryOutput()) {
+      return BuildFilePythonResultBinaryDeserializer.deserialize(
+          Objects.requireNonNull(buckPyProcessInput).getInputStream());
+    }
     return buckPyProcessJsonParser.readValueAs(BuildFilePythonResult.class);
   }
 
@@ -888,9 +948,6 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
       return;
     }
 
-    // Check isInitialized implications (to avoid Eradicate warnings).
-    Objects.requireNonNull(buckPyProcess);
-
     // Allow buck.py to terminate gracefully.
     if (buckPyProcessJsonGenerator != null) {
       try {
@@ -914,6 +971,19 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
         buckPyProcessJsonParser = null;
       }
     }
+    buckPyProcessStdin = null;
+
+    if (interpreterPoolChannel != null) {
+      // Other parsers may still use the process, it is stopped by the pool when the daemon state is
+      // invalidated.
+      interpreterPoolChannel.close();
+      interpreterPoolChannel = null;
+      isInitialized = false;
+      return;
+    }
+
+    // Check isInitialized implications (to avoid Eradicate warnings).
+    Objects.requireNonNull(buckPyProcess);
 
     if (stderrConsumerThread != null) {
       stderrConsumerThread.join();
@@ -951,6 +1021,14 @@ public class PythonDslProjectBuildFileParser implements ProjectBuildFileParser {
 
   private synchronized Path getPathToBuckPy(ImmutableSet<BaseDescription<?>> descriptions)
       throws IOException {
+    if (interpreterPool.isPresent()) {
+      return interpreterPool
+          .get()
+          .getPathToBuckPy(
+              () ->
+                  BuckPythonProgram.newInstance(
+                      typeCoercerFactory, descriptions, !options.getEnableProfiling()));
+    }
     if (buckPythonProgram == null) {
       buckPythonProgram =
           BuckPythonProgram.newInstance(
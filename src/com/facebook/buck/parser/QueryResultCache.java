@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.core.model.TargetConfiguration;
+import com.facebook.buck.core.util.immutables.BuckStyleValue;
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.SetMultimap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Results of {@code buck query} expressions kept by the daemon between commands.
+ *
+ * <p>Every result is stored together with the packages it was computed from: folders whose build
+ * files were read, and roots of recursive target patterns, whose whole subtree was read. A result
+ * is dropped as soon as {@link DaemonicParserState} invalidates a build file in one of those
+ * packages or creates or removes a build file below one of those roots.
+ *
+ * <p>The total number of targets in cached results is bounded, least recently used results are
+ * dropped first.
+ */
+public class QueryResultCache {
+
+  private static final Logger LOG = Logger.get(QueryResultCache.class);
+
+  private static final int DEFAULT_MAX_CACHED_TARGETS = 1_000_000;
+
+  private final int maxCachedTargets;
+
+  /** In least recently used first order. */
+  @GuardedBy("this")
+  private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Sum of the sizes of all cached results. */
+  @GuardedBy("this")
+  private long cachedTargets;
+
+  @GuardedBy("this")
+  private final SetMultimap<AbsPath, Key> keysByPackage = HashMultimap.create();
+
+  @GuardedBy("this")
+  private final SetMultimap<AbsPath, Key> keysByRecursiveRoot = HashMultimap.create();
+
+  /** Incremented on every invalidation, so that results computed concurrently are not stored. */
+  @GuardedBy("this")
+  private long generation;
+
+  public QueryResultCache() {
+    this(DEFAULT_MAX_CACHED_TARGETS);
+  }
+
+  @VisibleForTesting
+  QueryResultCache(int maxCachedTargets) {
+    Preconditions.checkArgument(maxCachedTargets > 0);
+    this.maxCachedTargets = maxCachedTargets;
+  }
+
+  /** @return the value to pass to {@link #put} for a result that is about to be computed. */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  public synchronized Optional<ImmutableSet<QueryTarget>> get(Key key) {
+    Entry entry = entries.get(key);
+    return entry == null ? Optional.empty() : Optional.of(entry.result);
+  }
+
+  /**
+   * Stores a query result unless any invalidation happened since {@code generation} was obtained.
+   *
+   * @param packages folders containing build files the result was computed from.
+   * @param recursiveRoots folders under which all build files were read to compute the result.
+   */
+  public synchronized void put(
+      Key key,
+      long generation,
+      ImmutableSet<QueryTarget> result,
+      ImmutableSet<AbsPath> packages,
+      ImmutableSet<AbsPath> recursiveRoots) {
+    if (generation != this.generation) {
+      LOG.debug("Not caching result of %s, parser state changed during evaluation", key);
+      return;
+    }
+    remove(key);
+    if (result.size() > maxCachedTargets) {
+      LOG.debug("Not caching result of %s, it has %d targets", key, result.size());
+      return;
+    }
+    while (cachedTargets + result.size() > maxCachedTargets) {
+      remove(Iterables.getFirst(entries.keySet(), null));
+    }
+    entries.put(key, new Entry(result, packages, recursiveRoots));
+    cachedTargets += result.size();
+    for (AbsPath packagePath : packages) {
+      keysByPackage.put(packagePath, key);
+    }
+    for (AbsPath recursiveRoot : recursiveRoots) {
+      keysByRecursiveRoot.put(recursiveRoot, key);
+    }
+  }
+
+  /** Drops results that depend on the package defined by {@code buildFile}. */
+  synchronized void invalidateBuildFile(AbsPath buildFile) {
+    generation++;
+    AbsPath packagePath = buildFile.getParent();
+    if (packagePath == null || entries.isEmpty()) {
+      return;
+    }
+    for (Key key : ImmutableSet.copyOf(keysByPackage.get(packagePath))) {
+      remove(key);
+    }
+    for (AbsPath folder = packagePath; folder != null; folder = folder.getParent()) {
+      for (Key key : ImmutableSet.copyOf(keysByRecursiveRoot.get(folder))) {
+        remove(key);
+      }
+    }
+  }
+
+  /** Drops all results. */
+  synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+    cachedTargets = 0;
+    keysByPackage.clear();
+    keysByRecursiveRoot.clear();
+  }
+
+  @GuardedBy("this")
+  private void remove(Key key) {
+    Entry entry = entries.remove(key);
+    if (entry == null) {
+      return;
+    }
+    LOG.verbose("Invalidating cached result of %s", key);
+    cachedTargets -= entry.result.size();
+    for (AbsPath packagePath : entry.packages) {
+      keysByPackage.remove(packagePath, key);
+    }
+    for (AbsPath recursiveRoot : entry.recursiveRoots) {
+      keysByRecursiveRoot.remove(recursiveRoot, key);
+    }
+  }
+
+  /** Identifies a query evaluated in a given context. */
+  @BuckStyleValue
+  public abstract static class Key {
+
+    /** @return normalized query expression. */
+    public abstract String getQuery();
+
+    /** @return the folder relative target patterns in the query are resolved against. */
+    public abstract AbsPath getClientWorkingDir();
+
+    public abstract Optional<TargetConfiguration> getTargetConfiguration();
+
+    public abstract boolean getExcludeUnsupportedTargets();
+
+    public static Key of(
+        String query,
+        AbsPath clientWorkingDir,
+        Optional<? extends TargetConfiguration> targetConfiguration,
+        boolean excludeUnsupportedTargets) {
+      return ImmutableKey.of(
+          query, clientWorkingDir, targetConfiguration, excludeUnsupportedTargets);
+    }
+  }
+
+  private static class Entry {
+    private final ImmutableSet<QueryTarget> result;
+    private final ImmutableSet<AbsPath> packages;
+    private final ImmutableSet<AbsPath> recursiveRoots;
+
+    private Entry(
+        ImmutableSet<QueryTarget> result,
+        ImmutableSet<AbsPath> packages,
+        ImmutableSet<AbsPath> recursiveRoots) {
+      this.result = result;
+      this.packages = packages;
+      this.recursiveRoots = recursiveRoots;
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.facebook.buck.parser;
 
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.parser.TargetSpecResolver.TargetNodeFilterForSpecResolver;
 import com.facebook.buck.parser.spec.TargetNodeSpec;
 import com.google.common.collect.ImmutableMap;
@@ -32,11 +33,24 @@ class TargetNodeFilterForSpecResolverWithNodeFiltering implements TargetNodeFilt
 
   private final TargetNodeFilterForSpecResolver filter;
   private final Predicate<TargetNodeMaybeIncompatible> nodeFilter;
+  private final Predicate<UnconfiguredTargetNode> unconfiguredNodeFilter;
 
+  /**
+   * @param unconfiguredNodeFilter must reject only nodes that {@code nodeFilter} rejects in every
+   *     configuration.
+   */
   protected TargetNodeFilterForSpecResolverWithNodeFiltering(
-      TargetNodeFilterForSpecResolver filter, Predicate<TargetNodeMaybeIncompatible> nodeFilter) {
+      TargetNodeFilterForSpecResolver filter,
+      Predicate<TargetNodeMaybeIncompatible> nodeFilter,
+      Predicate<UnconfiguredTargetNode> unconfiguredNodeFilter) {
     this.filter = filter;
     this.nodeFilter = nodeFilter;
+    this.unconfiguredNodeFilter = unconfiguredNodeFilter;
+  }
+
+  protected TargetNodeFilterForSpecResolverWithNodeFiltering(
+      TargetNodeFilterForSpecResolver filter, Predicate<TargetNodeMaybeIncompatible> nodeFilter) {
+    this(filter, nodeFilter, node -> true);
   }
 
   @Override
@@ -46,4 +60,9 @@ class TargetNodeFilterForSpecResolverWithNodeFiltering implements TargetNodeFilt
         .filter(entry -> nodeFilter.test(entry.getValue()))
         .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
   }
+
+  @Override
+  public boolean mayMatch(TargetNodeSpec spec, UnconfiguredTargetNode node) {
+    return filter.mayMatch(spec, node) && unconfiguredNodeFilter.test(node);
+  }
 }
@@ -34,7 +34,9 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.HasBuildTarget;
 import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.parser.BuildPackagePaths;
+import com.facebook.buck.core.parser.BuildPackagePathsCache;
 import com.facebook.buck.core.parser.BuildTargetPatternToBuildPackagePathComputation;
 import com.facebook.buck.core.parser.BuildTargetPatternToBuildPackagePathKey;
 import com.facebook.buck.core.parser.WatchmanBuildPackageComputation;
@@ -129,13 +131,16 @@ public class TargetSpecResolver implements AutoCloseable {
    *     all directory structures under that cell
    * @param fileTreeCachePerRoot Global cache that stores a mapping of cell root path to a cache of
    *     all file tree structures under that cell
+   * @param buildPackagePathsCachePerRoot Global cache that stores a mapping of cell root path to a
+   *     cache of locations of all build packages under that cell
    */
   public static TargetSpecResolver createWithFileSystemCrawler(
       BuckEventBus eventBus,
       DepsAwareExecutor<? super ComputeResult, ?> executor,
       CellProvider cellProvider,
       LoadingCache<Path, DirectoryListCache> dirListCachePerRoot,
-      LoadingCache<Path, FileTreeCache> fileTreeCachePerRoot) {
+      LoadingCache<Path, FileTreeCache> fileTreeCachePerRoot,
+      LoadingCache<Path, BuildPackagePathsCache> buildPackagePathsCachePerRoot) {
     // For each cell we create a separate graph engine. The purpose of graph engine is to
     // recursively build a file tree with all files in appropriate cell for appropriate path.
     // This file tree will later be used to resolve target pattern to a list of build files
@@ -165,7 +170,8 @@ public class TargetSpecResolver implements AutoCloseable {
               ImmutableList.of(
                   new GraphComputationStage<>(
                       BuildTargetPatternToBuildPackagePathComputation.of(
-                          buildFileName, fileSystemView)),
+                          buildFileName, fileSystemView),
+                      getBuildPackagePathsCache(buildPackagePathsCachePerRoot, cellPath)),
                   new GraphComputationStage<>(
                       DirectoryListComputation.of(fileSystemView), dirListCache),
                   new GraphComputationStage<>(FileTreeComputation.of(), fileTreeCache)),
@@ -182,12 +188,15 @@ public class TargetSpecResolver implements AutoCloseable {
    * @param cellProvider Provider to get a cell by path; this is a workaround for the state that
    *     cell itself is not really hashable so we use cell path instead as a key for appropriate
    *     caches
+   * @param buildPackagePathsCachePerRoot Global cache that stores a mapping of cell root path to a
+   *     cache of locations of all build packages under that cell
    */
   public static TargetSpecResolver createWithWatchmanCrawler(
       BuckEventBus eventBus,
       Watchman watchman,
       DepsAwareExecutor<? super ComputeResult, ?> executor,
-      CellProvider cellProvider) {
+      CellProvider cellProvider,
+      LoadingCache<Path, BuildPackagePathsCache> buildPackagePathsCachePerRoot) {
     return new TargetSpecResolver(
         eventBus,
         cellProvider,
@@ -195,12 +204,21 @@ public class TargetSpecResolver implements AutoCloseable {
             new DefaultGraphTransformationEngine(
                 ImmutableList.of(
                     new GraphComputationStage<>(
-                        new WatchmanBuildPackageComputation(
-                            buildFileName, fileSystemView, watchman))),
+                        new WatchmanBuildPackageComputation(buildFileName, fileSystemView, watchman),
+                        getBuildPackagePathsCache(buildPackagePathsCachePerRoot, cellPath))),
                 1,
                 executor));
   }
 
+  private static BuildPackagePathsCache getBuildPackagePathsCache(
+      LoadingCache<Path, BuildPackagePathsCache> buildPackagePathsCachePerRoot, Path cellPath) {
+    BuildPackagePathsCache buildPackagePathsCache =
+        buildPackagePathsCachePerRoot.getUnchecked(cellPath);
+    Verify.verifyNotNull(
+        buildPackagePathsCache, "Injected build package cache map does not have cell %s", cellPath);
+    return buildPackagePathsCache;
+  }
+
   /**
    * @return a list of sets of build targets where each set contains all build targets that match a
    *     corresponding {@link TargetNodeSpec}.
@@ -329,6 +347,20 @@ public class TargetSpecResolver implements AutoCloseable {
                 return new AbstractMap.SimpleEntry<>(index, buildTargets);
               },
               MoreExecutors.directExecutor()));
+    } else if (cell.getBuckConfigView(ParserConfig.class).getConfigureTargetsOnDemand()) {
+      // Only configure the nodes of the build file that the spec may select, the others are
+      // configured later if they are reached from the requested targets.
+      targetFutures.add(
+          Futures.transform(
+              perBuildState.getRequestedTargetNodesJob(
+                  cell,
+                  buildFile,
+                  targetConfiguration,
+                  node -> targetNodeFilter.mayMatch(spec, node)),
+              nodes ->
+                  new AbstractMap.SimpleEntry<>(
+                      index, applySpecFilter(spec, nodes, flavorEnhancer, targetNodeFilter)),
+              MoreExecutors.directExecutor()));
     } else {
       // Build up a list of all target nodes from the build file.
       targetFutures.add(
@@ -403,5 +435,13 @@ public class TargetSpecResolver implements AutoCloseable {
   public interface TargetNodeFilterForSpecResolver {
     ImmutableMap<BuildTarget, TargetNodeMaybeIncompatible> filter(
         TargetNodeSpec spec, Iterable<TargetNodeMaybeIncompatible> nodes);
+
+    /**
+     * @return {@code false} if {@link #filter} discards the given node regardless of its
+     *     configuration.
+     */
+    default boolean mayMatch(TargetNodeSpec spec, UnconfiguredTargetNode node) {
+      return spec.mayMatch(node);
+    }
   }
 }
@@ -55,6 +55,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /** Asynchronous loader/converter of raw target nodes to configured target nodes */
 public class UnconfiguredTargetNodeToTargetNodeParsePipeline implements AutoCloseable {
@@ -264,6 +265,40 @@ public class UnconfiguredTargetNodeToTargetNodeParsePipeline implements AutoClos
     return future;
   }
 
+  /**
+   * Get or load the target nodes from a build file that are accepted by the given filter,
+   * configuring them like {@link #getAllRequestedTargetNodesJob}. The build file is parsed as a
+   * whole, but the nodes rejected by the filter are not configured.
+   */
+  ListenableFuture<ImmutableList<TargetNodeMaybeIncompatible>> getRequestedTargetNodesJob(
+      Cell cell,
+      AbsPath buildFile,
+      Optional<TargetConfiguration> globalTargetConfiguration,
+      Predicate<UnconfiguredTargetNode> filter) {
+    ListenableFuture<List<TargetNodeMaybeIncompatible>> nodesListJob =
+        Futures.transformAsync(
+            unconfiguredTargetNodePipeline.getAllNodesJob(cell, buildFile),
+            allToConvert -> {
+              if (shuttingDown()) {
+                return Futures.immediateCancelledFuture();
+              }
+
+              ImmutableList.Builder<ListenableFuture<TargetNodeMaybeIncompatible>> nodeJobs =
+                  ImmutableList.builder();
+              for (UnconfiguredTargetNode from : allToConvert) {
+                if (filter.test(from)) {
+                  nodeJobs.add(
+                      configureRequestedTarget(
+                          cell, from.getBuildTarget(), globalTargetConfiguration, from));
+                }
+              }
+
+              return Futures.allAsList(nodeJobs.build());
+            },
+            executorService);
+    return Futures.transform(nodesListJob, ImmutableList::copyOf, executorService);
+  }
+
   /**
    * Obtain all {@link TargetNode}s from a build file. This may block if the file is not cached.
    *
@@ -53,6 +53,7 @@ public abstract class ParserConfig implements ConfigView<BuckConfig> {
 
   private static final long NUM_PARSING_THREADS_DEFAULT = 1L;
   private static final int TARGET_PARSER_THRESHOLD = 100000;
+  private static final long BACKGROUND_SPECULATIVE_PARSING_IDLE_DELAY_MS_DEFAULT = 2000L;
 
   public enum GlobHandler {
     PYTHON,
@@ -217,6 +218,35 @@ public abstract class ParserConfig implements ConfigView<BuckConfig> {
     return Math.min(value, getDelegate().getView(BuildBuckConfig.class).getNumThreads());
   }
 
+  /**
+   * @return whether the daemon should speculatively re-parse, while idle, build files that were
+   *     invalidated by file changes after being parsed by previous commands.
+   */
+  @Value.Lazy
+  public boolean getEnableBackgroundSpeculativeParsing() {
+    return getDelegate().getBooleanValue("parser", "background_speculative_parsing", false);
+  }
+
+  /**
+   * @return whether the daemon should keep results of {@code buck query} expressions between
+   *     commands until packages they were computed from change.
+   */
+  @Value.Lazy
+  public boolean getEnableDaemonQueryCache() {
+    return getDelegate().getBooleanValue("parser", "daemon_query_cache", false);
+  }
+
+  /**
+   * @return how long the daemon needs to be idle before a round of background speculative parsing
+   *     starts, which is also the interval between subsequent rounds.
+   */
+  @Value.Lazy
+  public long getBackgroundSpeculativeParsingIdleDelayMs() {
+    return getDelegate()
+        .getLong("parser", "background_speculative_parsing_idle_delay_ms")
+        .orElse(BACKGROUND_SPECULATIVE_PARSING_IDLE_DELAY_MS_DEFAULT);
+  }
+
   @Value.Lazy
   public ApplyDefaultFlavorsMode getDefaultFlavorsMode() {
     return getDelegate()
@@ -282,6 +312,33 @@ public abstract class ParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("parser", "warn_about_deprecated_syntax", true);
   }
 
+  /**
+   * @return whether the Python DSL parser should send parse results to Buck in the compact binary
+   *     format instead of JSON.
+   */
+  @Value.Lazy
+  public boolean getPythonDslBinaryOutput() {
+    return getDelegate().getBooleanValue("parser", "python_dsl_binary_output", false);
+  }
+
+  /**
+   * @return number of Python DSL interpreters forked from a shared process per cell, or {@code 0}
+   *     if every parsing thread should start an interpreter of its own.
+   */
+  @Value.Lazy
+  public int getPythonDslInterpreterPoolSize() {
+    return getDelegate().getInteger("parser", "python_dsl_interpreter_pool_size").orElse(0);
+  }
+
+  /**
+   * @return extension files that a pool of Python DSL interpreters loads before forking
+   *     interpreters, in addition to implicit includes.
+   */
+  @Value.Lazy
+  public ImmutableList<String> getPythonDslPreloadIncludes() {
+    return getDelegate().getListWithoutComments("parser", "python_dsl_preload_includes");
+  }
+
   /** @return the type of the glob handler used by the Skylark parser. */
   @Value.Lazy
   public SkylarkGlobHandler getSkylarkGlobHandler() {
@@ -318,6 +375,16 @@ public abstract class ParserConfig implements ConfigView<BuckConfig> {
     return getDelegate().getBooleanValue("parser", "require_target_platform", false);
   }
 
+  /**
+   * When set, target patterns matching multiple targets only configure the targets that the
+   * pattern may select, leaving the other targets of the matched build files to be configured when
+   * they are reached as dependencies.
+   */
+  @Value.Lazy
+  public boolean getConfigureTargetsOnDemand() {
+    return getDelegate().getBooleanValue("parser", "configure_targets_on_demand", false);
+  }
+
   @Value.Lazy
   public String getTargetPlatformDetectorSpec() {
     return getDelegate().getValue("parser", "target_platform_detector_spec").orElse("");
@@ -21,10 +21,17 @@ import com.facebook.buck.event.EventKey;
 
 public class ParseBuckProfilerReportEvent extends AbstractBuckEvent {
   private final String report;
+  private final String reportFileExtension;
 
   protected ParseBuckProfilerReportEvent(EventKey eventKey, String report) {
+    this(eventKey, report, "log");
+  }
+
+  protected ParseBuckProfilerReportEvent(
+      EventKey eventKey, String report, String reportFileExtension) {
     super(eventKey);
     this.report = report;
+    this.reportFileExtension = reportFileExtension;
   }
 
   @Override
@@ -41,7 +48,17 @@ public class ParseBuckProfilerReportEvent extends AbstractBuckEvent {
     return report;
   }
 
+  /** @return extension of the file the report should be written to, e.g. {@code json}. */
+  public String getReportFileExtension() {
+    return reportFileExtension;
+  }
+
   public static ParseBuckProfilerReportEvent profilerReport(String report) {
     return new ParseBuckProfilerReportEvent(EventKey.unique(), report);
   }
+
+  /** Creates an event for a machine-readable report serialized to JSON. */
+  public static ParseBuckProfilerReportEvent jsonProfilerReport(String report) {
+    return new ParseBuckProfilerReportEvent(EventKey.unique(), report, "json");
+  }
 }
@@ -48,6 +48,9 @@ public abstract class ProjectBuildFileParserOptions {
 
   public abstract List<String> getDefaultIncludes();
 
+  /** Extension files loaded by a pool of Python DSL interpreters before it forks interpreters. */
+  public abstract List<String> getPreloadIncludes();
+
   public abstract ImmutableMap<String, ImplicitInclude> getPackageImplicitIncludes();
 
   public abstract ImmutableSet<BaseDescription<?>> getDescriptions();
@@ -84,6 +87,12 @@ public abstract class ProjectBuildFileParserOptions {
     return false;
   }
 
+  /** Whether {@code buck.py} should write results in the binary format instead of JSON. */
+  @Value.Default
+  public boolean getUseBinaryOutput() {
+    return false;
+  }
+
   public abstract Optional<Long> getWatchmanQueryTimeoutMs();
 
   public abstract List<String> getBuildFileImportWhitelist();
@@ -24,6 +24,7 @@ import com.facebook.buck.core.model.UnconfiguredBuildTarget;
 import com.facebook.buck.core.model.UnconfiguredBuildTargetWithOutputs;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPattern;
 import com.facebook.buck.core.path.ForwardRelativePath;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
@@ -104,6 +105,13 @@ public abstract class BuildTargetSpec implements TargetNodeSpec {
     return ImmutableMap.of(firstMatchingNode.getBuildTarget(), firstMatchingNode);
   }
 
+  @Override
+  public boolean mayMatch(UnconfiguredTargetNode node) {
+    return node.getBuildTarget()
+        .getUnflavoredBuildTarget()
+        .equals(getUnconfiguredBuildTarget().getUnflavoredBuildTarget());
+  }
+
   @Override
   public BuildTargetPattern getBuildTargetPattern(Cell cell) {
     BuildFileSpec buildFileSpec = getBuildFileSpec();
@@ -22,6 +22,7 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.CellRelativePath;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetLanguageConstants;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPattern;
 import com.facebook.buck.core.path.ForwardRelativePath;
@@ -59,6 +60,11 @@ public abstract class TargetNodePredicateSpec implements TargetNodeSpec {
     return resultBuilder.build();
   }
 
+  @Override
+  public boolean mayMatch(UnconfiguredTargetNode node) {
+    return !onlyTests() || node.getRuleType().isTestRule();
+  }
+
   @Override
   public BuildTargetPattern getBuildTargetPattern(Cell cell) {
     BuildFileSpec buildFileSpec = getBuildFileSpec();
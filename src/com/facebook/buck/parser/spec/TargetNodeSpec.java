@@ -21,6 +21,7 @@ import com.facebook.buck.core.cell.nameresolver.CellNameResolver;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.TargetNodeMaybeIncompatible;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPattern;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPatternParser;
 import com.google.common.collect.ImmutableMap;
@@ -43,6 +44,12 @@ public interface TargetNodeSpec {
   ImmutableMap<BuildTarget, TargetNodeMaybeIncompatible> filter(
       Iterable<TargetNodeMaybeIncompatible> nodes);
 
+  /**
+   * @return {@code false} if the given node cannot be among the targets returned by {@link
+   *     #filter(Iterable)} regardless of its configuration, so it does not need to be configured.
+   */
+  boolean mayMatch(UnconfiguredTargetNode node);
+
   /**
    * @return a {@link BuildFileSpec} representing the build files to parse to search for specific
    *     build target.
@@ -37,8 +37,10 @@ import com.facebook.buck.query.QueryEnvironment.QueryFunction;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -88,6 +90,24 @@ public class AllPathsFunction<T extends QueryTarget> implements QueryFunction<T,
 
     env.buildTransitiveClosure(fromSet, Integer.MAX_VALUE);
 
+    Optional<QueryGraphIndex<T>> index = env.getGraphIndex();
+    if (index.isPresent()) {
+      Optional<BitSet> fromIds = index.get().getIds(fromSet);
+      if (fromIds.isPresent()) {
+        BitSet reachableFromX = index.get().getTransitiveDeps(fromIds.get(), Integer.MAX_VALUE);
+        BitSet toIds = index.get().getIndexedIds(toSet);
+        toIds.and(reachableFromX);
+        BitSet paths =
+            index.get().getTransitiveReverseDeps(toIds, Integer.MAX_VALUE, reachableFromX);
+        // Start from the intersection in the order the target based traversal iterates it in.
+        Set<T> roots =
+            reachableFromX.cardinality() > toSet.size()
+                ? toSet
+                : index.get().getTargetsInDepsOrder(fromSet, reachableFromX);
+        return index.get().getTargetsInReverseDepsOrder(roots, paths);
+      }
+    }
+
     Set<T> reachableFromX = env.getTransitiveClosure(fromSet);
     Set<T> result = intersection(reachableFromX, toSet);
     Collection<T> worklist = result;
@@ -38,6 +38,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -115,6 +116,17 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
         args.size() > 2 ? Optional.of(args.get(2).getExpression()) : Optional.empty();
     env.buildTransitiveClosure(argumentSet, depthBound);
 
+    if (!deps.isPresent()) {
+      Optional<QueryGraphIndex<T>> index = env.getGraphIndex();
+      if (index.isPresent()) {
+        Optional<BitSet> roots = index.get().getIds(argumentSet);
+        if (roots.isPresent()) {
+          BitSet transitiveDeps = index.get().getTransitiveDeps(roots.get(), depthBound);
+          return index.get().getTargetsInDepsOrder(argumentSet, transitiveDeps);
+        }
+      }
+    }
+
     // LinkedHashSet preserves the order of insertion when iterating over the values.
     // The order by which we traverse the result is meaningful because the dependencies are
     // traversed level-by-level.
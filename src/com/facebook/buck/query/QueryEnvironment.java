@@ -34,6 +34,7 @@ import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -259,6 +260,14 @@ public interface QueryEnvironment<NODE_TYPE> {
   void buildTransitiveClosure(Set<? extends QueryTarget> targetNodes, int maxDepth)
       throws QueryException;
 
+  /**
+   * Returns an integer-indexed snapshot of the graph built so far, if this environment supports
+   * one. Graph functions use it to traverse the graph with bit sets instead of sets of targets.
+   */
+  default Optional<QueryGraphIndex<NODE_TYPE>> getGraphIndex() throws QueryException {
+    return Optional.empty();
+  }
+
   String getTargetKind(NODE_TYPE target) throws QueryException;
 
   /** Returns the tests associated with the given target. */
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Integer-indexed view of the graph a {@link QueryEnvironment} has built with {@link
+ * QueryEnvironment#buildTransitiveClosure}. Sets of targets are represented as {@link BitSet}s of
+ * target ids, which lets graph functions like {@code deps}, {@code rdeps} and {@code allpaths}
+ * traverse large graphs without creating a set entry per visited target.
+ *
+ * <p>An index is a snapshot: it is only valid until the next call to {@link
+ * QueryEnvironment#buildTransitiveClosure}.
+ */
+public interface QueryGraphIndex<NODE_TYPE> {
+
+  /**
+   * @return ids of {@code targets} or {@link Optional#empty()} if any of them is not in the graph,
+   *     in which case callers should fall back to the target based {@link QueryEnvironment} API.
+   */
+  Optional<BitSet> getIds(Iterable<NODE_TYPE> targets) throws QueryException;
+
+  /** @return ids of those of {@code targets} that are in the graph, ignoring all others. */
+  BitSet getIndexedIds(Iterable<NODE_TYPE> targets) throws QueryException;
+
+  /**
+   * @return targets whose ids are set in {@code ids}, in the order in which a breadth first search
+   *     from {@code roots} along dependencies visits them. This is the level by level order of the
+   *     target based traversal. Targets that cannot be reached through {@code ids} are left out.
+   */
+  Set<NODE_TYPE> getTargetsInDepsOrder(Iterable<NODE_TYPE> roots, BitSet ids)
+      throws QueryException;
+
+  /**
+   * @return targets whose ids are set in {@code ids}, in the order in which a breadth first search
+   *     from {@code roots} along reverse dependencies visits them. Targets that cannot be reached
+   *     through {@code ids} are left out.
+   */
+  Set<NODE_TYPE> getTargetsInReverseDepsOrder(Iterable<NODE_TYPE> roots, BitSet ids)
+      throws QueryException;
+
+  /**
+   * @return ids of {@code roots} and of their dependencies, at most {@code maxDepth} edges away.
+   */
+  BitSet getTransitiveDeps(BitSet roots, int maxDepth);
+
+  /**
+   * @return ids of those {@code roots} and of their reverse dependencies, at most {@code maxDepth}
+   *     edges away, that are in {@code universe}. Targets outside of {@code universe} are not
+   *     traversed through.
+   */
+  BitSet getTransitiveReverseDeps(BitSet roots, int maxDepth, BitSet universe);
+}
@@ -37,7 +37,9 @@ import com.facebook.buck.query.QueryEnvironment.QueryFunction;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import java.util.BitSet;
 import java.util.LinkedHashSet;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -82,6 +84,21 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
       throws QueryException {
     Set<T> universeSet = evaluator.eval(args.get(0).getExpression(), env);
     env.buildTransitiveClosure(universeSet, Integer.MAX_VALUE);
+    int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
+
+    Optional<QueryGraphIndex<T>> index = env.getGraphIndex();
+    if (index.isPresent()) {
+      Optional<BitSet> universeRoots = index.get().getIds(universeSet);
+      if (universeRoots.isPresent()) {
+        BitSet universe = index.get().getTransitiveDeps(universeRoots.get(), Integer.MAX_VALUE);
+        // Targets outside of the graph cannot be in the universe, so they are skipped.
+        Set<T> rootSet = evaluator.eval(args.get(1).getExpression(), env);
+        BitSet roots = index.get().getIndexedIds(rootSet);
+        BitSet rdeps = index.get().getTransitiveReverseDeps(roots, depthBound, universe);
+        return index.get().getTargetsInReverseDepsOrder(rootSet, rdeps);
+      }
+    }
+
     Set<T> transitiveClosureUniverse = env.getTransitiveClosure(universeSet);
 
     // LinkedHashSet preserves the order of insertion when iterating over the values.
@@ -97,7 +114,6 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
     Predicate<T> filter =
         target -> (transitiveClosureUniverse.contains(target) && visited.add(target));
 
-    int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
     // Iterating depthBound+1 times because the first one processes the given argument set.
     for (int i = 0; i <= depthBound; i++) {
       Set<T> next = env.getReverseDeps(Iterables.filter(current, filter));
@@ -28,7 +28,6 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,6 +38,8 @@ import java.util.OptionalDouble;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /** Caches the set of possible {@link ParamInfo}s for each param on a coercable type. */
 class CoercedTypeCache {
@@ -80,48 +81,11 @@ class CoercedTypeCache {
   @SuppressWarnings("unchecked")
   private <T extends DataTransferObject>
       DataTransferObjectDescriptor<T> newConstructorArgDescriptor(Class<T> dtoType) {
+    Method builderMethod;
+    Method buildMethod;
     try {
-      Method builderMethod = dtoType.getMethod("builder");
-      Method buildMethod = builderMethod.getReturnType().getMethod("build");
-      return ImmutableDataTransferObjectDescriptor.of(
-          dtoType,
-          () -> {
-            try {
-              return builderMethod.invoke(null);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-              throw new IllegalStateException(
-                  String.format(
-                      "Could not instantiate immutable constructor arg type %s: %s",
-                      dtoType, e.getMessage()),
-                  e);
-            }
-          },
-          paramTypes(dtoType),
-          x -> {
-            try {
-              return (T) buildMethod.invoke(x);
-            } catch (IllegalAccessException e) {
-              throw new IllegalStateException(
-                  String.format("Error building immutable constructor arg: %s", e.getMessage()), e);
-            } catch (InvocationTargetException e) {
-              if (e.getCause() instanceof IllegalStateException) {
-                IllegalStateException cause = (IllegalStateException) e.getCause();
-                if (cause.getMessage().contains("Cannot build")
-                    && cause.getMessage().contains("required")) {
-                  List<String> matches =
-                      Splitter.on(CharMatcher.anyOf("[]")).splitToList(cause.getMessage());
-                  if (matches.size() >= 2) {
-                    throw new DataTransferObjectDescriptor.BuilderBuildFailedException(
-                        String.format("missing required argument(s): %s", matches.get(1)));
-                  }
-                }
-              }
-              throw new RuntimeException(
-                  String.format(
-                      "Error building immutable constructor: %s", e.getCause().getMessage()),
-                  e.getCause());
-            }
-          });
+      builderMethod = dtoType.getMethod("builder");
+      buildMethod = builderMethod.getReturnType().getMethod("build");
     } catch (NoSuchMethodException e) {
       throw new IllegalStateException(
           String.format(
@@ -129,6 +93,42 @@ class CoercedTypeCache {
               dtoType, e.getMessage()),
           e);
     }
+    Supplier<Object> builderFactory = DataTransferObjectAccessors.staticFactory(builderMethod);
+    Function<Object, Object> buildFunction =
+        DataTransferObjectAccessors.instanceGetter(buildMethod);
+    return ImmutableDataTransferObjectDescriptor.of(
+        dtoType,
+        () -> {
+          try {
+            return builderFactory.get();
+          } catch (RuntimeException e) {
+            throw new IllegalStateException(
+                String.format(
+                    "Could not instantiate immutable constructor arg type %s: %s",
+                    dtoType, e.getMessage()),
+                e);
+          }
+        },
+        paramTypes(dtoType),
+        x -> {
+          try {
+            return (T) buildFunction.apply(x);
+          } catch (RuntimeException e) {
+            String message = e.getMessage();
+            if (e instanceof IllegalStateException
+                && message != null
+                && message.contains("Cannot build")
+                && message.contains("required")) {
+              List<String> matches = Splitter.on(CharMatcher.anyOf("[]")).splitToList(message);
+              if (matches.size() >= 2) {
+                throw new DataTransferObjectDescriptor.BuilderBuildFailedException(
+                    String.format("missing required argument(s): %s", matches.get(1)));
+              }
+            }
+            throw new RuntimeException(
+                String.format("Error building immutable constructor: %s", message), e);
+          }
+        });
   }
 
   private ImmutableMap<String, ParamInfo<?>> paramTypes(Class<?> coercableType) {
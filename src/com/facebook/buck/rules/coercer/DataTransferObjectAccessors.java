@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.coercer;
+
+import com.google.common.base.Throwables;
+import com.google.common.primitives.Primitives;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Turns builder and getter methods of constructor args into functional interfaces, so populating a
+ * constructor arg for every target node does not go through {@link Method#invoke(Object,
+ * Object...)}, which checks access and allocates an argument array on each call.
+ *
+ * <p>Methods of public classes are bound with {@link LambdaMetafactory}, which spins a class
+ * invoking the method directly. Immutables generates package private classes for package private
+ * abstract args, which such a class cannot access, so those are invoked through a {@link
+ * MethodHandle} adapted to the generic signature instead. So are methods of classes loaded by a
+ * class loader that the class loader of this class does not delegate to, like that of a plugin, as
+ * the spun class resolves the types it names through the latter.
+ *
+ * <p>Exceptions thrown by the methods are propagated unwrapped.
+ */
+final class DataTransferObjectAccessors {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private DataTransferObjectAccessors() {}
+
+  /** @return a supplier invoking the given static no-argument method. */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  static Supplier<Object> staticFactory(Method method) {
+    MethodHandle handle = unreflect(method);
+    if (isPubliclyAccessible(method)) {
+      try {
+        return (Supplier<Object>)
+            metafactory(
+                    "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(method.getReturnType()))
+                .invokeExact();
+      } catch (Throwable e) {
+        // fall back to the method handle
+      }
+    }
+    MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+    return () -> {
+      try {
+        return generic.invokeExact();
+      } catch (Throwable e) {
+        Throwables.throwIfUnchecked(e);
+        throw new IllegalStateException(e);
+      }
+    };
+  }
+
+  /** @return a function invoking the given instance method without arguments on its argument. */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  static Function<Object, Object> instanceGetter(Method method) {
+    MethodHandle handle = unreflect(method);
+    if (isPubliclyAccessible(method)) {
+      try {
+        return (Function<Object, Object>)
+            metafactory(
+                    "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(
+                        Primitives.wrap(method.getReturnType()), method.getDeclaringClass()))
+                .invokeExact();
+      } catch (Throwable e) {
+        // fall back to the method handle
+      }
+    }
+    MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+    return object -> {
+      try {
+        return generic.invokeExact(object);
+      } catch (Throwable e) {
+        Throwables.throwIfUnchecked(e);
+        throw new IllegalStateException(e);
+      }
+    };
+  }
+
+  /**
+   * @return a consumer invoking the given single-argument instance method on its first argument
+   *     with its second argument, ignoring the returned value.
+   */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  static BiConsumer<Object, Object> instanceSetter(Method method) {
+    MethodHandle handle = unreflect(method);
+    if (isPubliclyAccessible(method)) {
+      try {
+        return (BiConsumer<Object, Object>)
+            metafactory(
+                    "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(
+                        void.class,
+                        method.getDeclaringClass(),
+                        Primitives.wrap(method.getParameterTypes()[0])))
+                .invokeExact();
+      } catch (Throwable e) {
+        // fall back to the method handle
+      }
+    }
+    MethodHandle generic =
+        handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+    return (object, value) -> {
+      try {
+        generic.invokeExact(object, value);
+      } catch (Throwable e) {
+        Throwables.throwIfUnchecked(e);
+        throw new IllegalStateException(e);
+      }
+    };
+  }
+
+  private static MethodHandle metafactory(
+      String samName,
+      MethodType factoryType,
+      MethodType samType,
+      MethodHandle implementation,
+      MethodType instantiatedType)
+      throws LambdaConversionException {
+    CallSite callSite =
+        LambdaMetafactory.metafactory(
+            LOOKUP, samName, factoryType, samType, implementation, instantiatedType);
+    return callSite.getTarget();
+  }
+
+  private static MethodHandle unreflect(Method method) {
+    method.setAccessible(true);
+    try {
+      return LOOKUP.unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(
+          String.format("Could not access %s: %s", method, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Whether a class spun in this package can invoke the method and name all types it uses, and
+   * resolves those names to the same types.
+   */
+  private static boolean isPubliclyAccessible(Method method) {
+    if (!Modifier.isPublic(method.getModifiers())) {
+      return false;
+    }
+    for (Class<?> type : method.getParameterTypes()) {
+      if (!isPublic(type)) {
+        return false;
+      }
+    }
+    return isPublic(method.getDeclaringClass()) && isPublic(method.getReturnType());
+  }
+
+  private static boolean isPublic(Class<?> type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return isVisibleToLookup(type);
+  }
+
+  private static boolean isVisibleToLookup(Class<?> type) {
+    ClassLoader typeLoader = type.getClassLoader();
+    if (typeLoader == null) {
+      return true;
+    }
+    for (ClassLoader loader = LOOKUP.lookupClass().getClassLoader();
+        loader != null;
+        loader = loader.getParent()) {
+      if (loader == typeLoader) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
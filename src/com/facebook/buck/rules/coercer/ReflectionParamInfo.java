@@ -24,13 +24,14 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapMaker;
 import com.google.common.reflect.TypeToken;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
 /**
@@ -50,6 +51,9 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
   /** Holds the getter for the concrete Immutable class. */
   private final Method concreteGetter;
 
+  private final BiConsumer<Object, Object> setterFunction;
+  private final Function<Object, Object> getterFunction;
+
   private final boolean isOptional;
 
   @SuppressWarnings("PMD.EmptyCatchBlock")
@@ -59,11 +63,15 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
       Method setter,
       Method closestGetterOnAbstractClassOrInterface,
       Method concreteGetter,
+      BiConsumer<Object, Object> setterFunction,
+      Function<Object, Object> getterFunction,
       boolean isOptional) {
     super(name, typeCoercer);
     this.setter = setter;
     this.closestGetterOnAbstractClassOrInterface = closestGetterOnAbstractClassOrInterface;
     this.concreteGetter = concreteGetter;
+    this.setterFunction = setterFunction;
+    this.getterFunction = getterFunction;
     this.isOptional = isOptional;
   }
 
@@ -73,18 +81,24 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
     private final Type setterParameterType;
     private final boolean isOptional;
     private final Method concreteGetter;
+    private final BiConsumer<Object, Object> setterFunction;
+    private final Function<Object, Object> getterFunction;
 
     public StaticInfo(
         String name,
         Method closestGetterOnAbstractClassOrInterface,
         Type setterParameterType,
         boolean isOptional,
-        Method concreteGetter) {
+        Method concreteGetter,
+        BiConsumer<Object, Object> setterFunction,
+        Function<Object, Object> getterFunction) {
       this.name = name;
       this.closestGetterOnAbstractClassOrInterface = closestGetterOnAbstractClassOrInterface;
       this.setterParameterType = setterParameterType;
       this.isOptional = isOptional;
       this.concreteGetter = concreteGetter;
+      this.setterFunction = setterFunction;
+      this.getterFunction = getterFunction;
     }
   }
 
@@ -106,6 +120,8 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
           setter,
           staticInfo.closestGetterOnAbstractClassOrInterface,
           staticInfo.concreteGetter,
+          staticInfo.setterFunction,
+          staticInfo.getterFunction,
           staticInfo.isOptional);
     } catch (Exception e) {
       throw new BuckUncheckedExecutionException(
@@ -177,12 +193,15 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
     }
     String name = builder.toString();
 
+    Method concreteGetter = computeConcreteGetter(setter);
     return new StaticInfo(
         name,
         closestGetterOnAbstractClassOrInterface,
         setter.getGenericParameterTypes()[0],
         isOptional,
-        computeConcreteGetter(setter));
+        concreteGetter,
+        DataTransferObjectAccessors.instanceSetter(setter),
+        DataTransferObjectAccessors.instanceGetter(concreteGetter));
   }
 
   @Override
@@ -209,13 +228,13 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
   @Override
   @SuppressWarnings("unchecked")
   public T get(Object dto) {
-    Method getter = this.concreteGetter;
     try {
-      return (T) getter.invoke(dto);
-    } catch (InvocationTargetException | IllegalAccessException e) {
+      return (T) getterFunction.apply(dto);
+    } catch (RuntimeException e) {
       throw new IllegalStateException(
           String.format(
-              "Error invoking getter %s on class %s", getter.getName(), getter.getDeclaringClass()),
+              "Error invoking getter %s on class %s",
+              concreteGetter.getName(), concreteGetter.getDeclaringClass()),
           e);
     }
   }
@@ -223,7 +242,7 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
   @Override
   public void setCoercedValue(Object dto, Object value) {
     try {
-      setter.invoke(dto, value);
+      setterFunction.accept(dto, value);
     } catch (Exception e) {
       throw new RuntimeException(
           "failed to invoke setter " + setter + " with value of type " + value.getClass().getName(),
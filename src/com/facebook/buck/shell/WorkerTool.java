@@ -36,4 +36,7 @@ public interface WorkerTool extends AddsToRuleKey {
   HashCode getInstanceKey();
 
   boolean isAsync();
+
+  /** Returns the maximum number of processes that an async worker tool runs at the same time. */
+  int getMaxAsyncProcesses();
 }
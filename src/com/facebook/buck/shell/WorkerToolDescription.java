@@ -149,6 +149,12 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
               .orElse(1);
     }
 
+    int maxAsyncProcesses = args.getMaxAsyncProcesses().orElse(1);
+    if (maxAsyncProcesses < 1) {
+      // negative or zero: as many worker processes as workers
+      maxAsyncProcesses = maxWorkers;
+    }
+
     CommandTool tool = builder.build();
     return new DefaultWorkerToolRule(
         buildTarget,
@@ -157,6 +163,7 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
         tool,
         maxWorkers,
         async,
+        maxAsyncProcesses,
         args.getPersistent()
             .orElse(buckConfig.getBooleanValue(CONFIG_SECTION, CONFIG_PERSISTENT_KEY, false)));
   }
@@ -202,5 +209,7 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
     Optional<Boolean> getPersistent();
 
     Optional<Boolean> getSoloAsync();
+
+    Optional<Integer> getMaxAsyncProcesses();
   }
 }
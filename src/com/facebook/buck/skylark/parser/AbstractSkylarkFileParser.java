@@ -230,7 +230,7 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
     ImmutableList<ExtensionData> dependencies =
         loadExtensions(containingLabel, buildFileAst.getImports());
     ImmutableMap<String, Environment.Extension> importMap =
-        toImportMap(dependencies, implicitLoadExtensionData);
+        decorateBuildFileImports(toImportMap(dependencies, implicitLoadExtensionData));
     Environment env =
         Environment.builder(mutability)
             .setImportedExtensions(importMap)
@@ -246,6 +246,18 @@ abstract class AbstractSkylarkFileParser<T extends FileManifest> implements File
         env, toLoadedPaths(buildFilePath, dependencies, implicitLoadExtensionData));
   }
 
+  /**
+   * Gives subclasses a chance to replace symbols loaded into build file environments, for example
+   * to instrument macros.
+   *
+   * @param importMap the map from skylark import string to an extension loaded by a build file.
+   * @return the import map to use for evaluating the build file.
+   */
+  protected ImmutableMap<String, Environment.Extension> decorateBuildFileImports(
+      ImmutableMap<String, Environment.Extension> importMap) {
+    return importMap;
+  }
+
   @Nonnull
   private PackageContext createPackageContext(
       String basePath, Globber globber, ImmutableMap<String, Object> implicitlyLoadedSymbols) {
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.skylark.parser;
+
+import com.facebook.buck.core.util.immutables.BuckStyleValue;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Machine-readable summary of the cost of evaluating Skylark build files, as collected by {@link
+ * SkylarkParseProfiler}.
+ *
+ * <p>All lists are sorted by descending wall time, so the most expensive build files, macros and
+ * extension files come first.
+ */
+@BuckStyleValue
+public abstract class SkylarkParseProfile {
+
+  /** @return name of the cell the profiled build files belong to. */
+  @JsonProperty("cell")
+  public abstract String getCellName();
+
+  /** @return cost of evaluating each build file. */
+  @JsonProperty("build_files")
+  public abstract ImmutableList<BuildFileProfile> getBuildFiles();
+
+  /** @return cumulative cost of macros invoked from build files. */
+  @JsonProperty("macros")
+  public abstract ImmutableList<CallProfile> getMacros();
+
+  /** @return cumulative cost of macros invoked from build files grouped by their .bzl file. */
+  @JsonProperty("extensions")
+  public abstract ImmutableList<CallProfile> getExtensions();
+
+  public static SkylarkParseProfile of(
+      String cellName,
+      ImmutableList<BuildFileProfile> buildFiles,
+      ImmutableList<CallProfile> macros,
+      ImmutableList<CallProfile> extensions) {
+    return ImmutableSkylarkParseProfile.of(cellName, buildFiles, macros, extensions);
+  }
+
+  /** Cost of evaluating a single build file, including macros and globs it invokes. */
+  @BuckStyleValue
+  public abstract static class BuildFileProfile {
+
+    @JsonProperty("path")
+    public abstract String getPath();
+
+    /** @return number of times the build file was evaluated. */
+    @JsonProperty("evaluations")
+    public abstract long getEvaluations();
+
+    @JsonProperty("wall_nanos")
+    public abstract long getWallNanos();
+
+    /** @return CPU time of the evaluating thread or {@code -1} if it cannot be measured. */
+    @JsonProperty("cpu_nanos")
+    public abstract long getCpuNanos();
+
+    /** @return bytes allocated by the evaluating thread or {@code -1} if it cannot be measured. */
+    @JsonProperty("allocated_bytes")
+    public abstract long getAllocatedBytes();
+
+    @JsonProperty("globs")
+    public abstract long getGlobs();
+
+    @JsonProperty("glob_wall_nanos")
+    public abstract long getGlobWallNanos();
+
+    public static BuildFileProfile of(
+        String path,
+        long evaluations,
+        long wallNanos,
+        long cpuNanos,
+        long allocatedBytes,
+        long globs,
+        long globWallNanos) {
+      return ImmutableBuildFileProfile.of(
+          path, evaluations, wallNanos, cpuNanos, allocatedBytes, globs, globWallNanos);
+    }
+  }
+
+  /** Cumulative cost of invocations of a macro or of all macros defined in an extension file. */
+  @BuckStyleValue
+  public abstract static class CallProfile {
+
+    /**
+     * @return {@code //package:file.bzl%macro} for macros and {@code //package:file.bzl} for
+     *     extension files.
+     */
+    @JsonProperty("name")
+    public abstract String getName();
+
+    @JsonProperty("calls")
+    public abstract long getCalls();
+
+    @JsonProperty("wall_nanos")
+    public abstract long getWallNanos();
+
+    /** @return CPU time of the calling thread or {@code -1} if it cannot be measured. */
+    @JsonProperty("cpu_nanos")
+    public abstract long getCpuNanos();
+
+    /** @return bytes allocated by the calling thread or {@code -1} if it cannot be measured. */
+    @JsonProperty("allocated_bytes")
+    public abstract long getAllocatedBytes();
+
+    public static CallProfile of(
+        String name, long calls, long wallNanos, long cpuNanos, long allocatedBytes) {
+      return ImmutableCallProfile.of(name, calls, wallNanos, cpuNanos, allocatedBytes);
+    }
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.skylark.parser;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.skylark.io.Globber;
+import com.facebook.buck.skylark.parser.SkylarkParseProfile.BuildFileProfile;
+import com.facebook.buck.skylark.parser.SkylarkParseProfile.CallProfile;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.cmdline.Label;
+import com.google.devtools.build.lib.skylarkinterface.SkylarkPrinter;
+import com.google.devtools.build.lib.syntax.Environment;
+import com.google.devtools.build.lib.syntax.EvalException;
+import com.google.devtools.build.lib.syntax.FuncallExpression;
+import com.google.devtools.build.lib.syntax.StarlarkFunction;
+import com.google.devtools.build.lib.syntax.UserDefinedFunction;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Attributes the cost of evaluating Skylark build files to build files, globs and the macros they
+ * invoke.
+ *
+ * <p>Every build file evaluation and every macro invocation is reported to the event bus as a
+ * {@link SimplePerfEvent}, so it shows up in the Chrome trace, and is accumulated into a {@link
+ * SkylarkParseProfile} that summarizes the whole parse.
+ *
+ * <p>Only macros that are called from build files are profiled, and their cost includes the cost of
+ * everything they call, which is what is needed to find the macros that make parsing slow.
+ */
+class SkylarkParseProfiler {
+
+  private static final SimplePerfEvent.PerfEventId EVALUATE_BUILD_FILE =
+      SimplePerfEvent.PerfEventId.of("skylark_evaluate_build_file");
+  private static final SimplePerfEvent.PerfEventId CALL_MACRO =
+      SimplePerfEvent.PerfEventId.of("skylark_call_macro");
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final String cellName;
+  private final BuckEventBus eventBus;
+  private final ConcurrentMap<String, BuildFileStats> buildFiles = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, CallStats> macros = new ConcurrentHashMap<>();
+
+  SkylarkParseProfiler(String cellName, BuckEventBus eventBus) {
+    this.cellName = cellName;
+    this.eventBus = eventBus;
+  }
+
+  /**
+   * Measures evaluation of {@code buildFile} on the current thread until the returned scope is
+   * closed.
+   */
+  BuildFileScope startBuildFile(Path buildFile) {
+    return new BuildFileScope(buildFile.toString());
+  }
+
+  /** @return globber that accounts time spent in {@code delegate} to {@code buildFile}. */
+  Globber profileGlobs(Path buildFile, Globber delegate) {
+    BuildFileStats stats = getBuildFileStats(buildFile.toString());
+    return (include, exclude, excludeDirectories) -> {
+      long start = System.nanoTime();
+      try {
+        return delegate.run(include, exclude, excludeDirectories);
+      } finally {
+        stats.globs.increment();
+        stats.globWallNanos.add(System.nanoTime() - start);
+      }
+    };
+  }
+
+  /**
+   * @return import map that is identical to {@code importMap} except that all user-defined
+   *     functions are replaced with functions recording the cost of their invocations.
+   */
+  ImmutableMap<String, Environment.Extension> profileMacros(
+      ImmutableMap<String, Environment.Extension> importMap) {
+    ImmutableMap.Builder<String, Environment.Extension> result =
+        ImmutableMap.builderWithExpectedSize(importMap.size());
+    for (Map.Entry<String, Environment.Extension> entry : importMap.entrySet()) {
+      Environment.Extension extension = entry.getValue();
+      ImmutableMap<String, Object> bindings = extension.getBindings();
+      ImmutableMap.Builder<String, Object> profiledBindings =
+          ImmutableMap.builderWithExpectedSize(bindings.size());
+      for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+        Object value = binding.getValue();
+        if (value instanceof UserDefinedFunction) {
+          value = new ProfilingFunction((UserDefinedFunction) value);
+        }
+        profiledBindings.put(binding.getKey(), value);
+      }
+      result.put(
+          entry.getKey(),
+          new Environment.Extension(
+              profiledBindings.build(), extension.getTransitiveContentHashCode()));
+    }
+    return result.build();
+  }
+
+  /** @return summary of everything that has been measured so far. */
+  SkylarkParseProfile getProfile() {
+    ImmutableList<BuildFileProfile> buildFileProfiles =
+        buildFiles.entrySet().stream()
+            .map(
+                entry ->
+                    BuildFileProfile.of(
+                        entry.getKey(),
+                        entry.getValue().cost.count.sum(),
+                        entry.getValue().cost.wallNanos.sum(),
+                        entry.getValue().cost.getCpuNanos(),
+                        entry.getValue().cost.getAllocatedBytes(),
+                        entry.getValue().globs.sum(),
+                        entry.getValue().globWallNanos.sum()))
+            .sorted(Comparator.comparingLong(BuildFileProfile::getWallNanos).reversed())
+            .collect(ImmutableList.toImmutableList());
+
+    Map<String, CallStats> extensions = new HashMap<>();
+    for (CallStats macro : macros.values()) {
+      extensions.computeIfAbsent(macro.extension, CallStats::new).add(macro);
+    }
+
+    return SkylarkParseProfile.of(
+        cellName, buildFileProfiles, toCallProfiles(macros), toCallProfiles(extensions));
+  }
+
+  private static ImmutableList<CallProfile> toCallProfiles(Map<String, CallStats> stats) {
+    return stats.entrySet().stream()
+        .map(
+            entry ->
+                CallProfile.of(
+                    entry.getKey(),
+                    entry.getValue().count.sum(),
+                    entry.getValue().wallNanos.sum(),
+                    entry.getValue().getCpuNanos(),
+                    entry.getValue().getAllocatedBytes()))
+        .sorted(Comparator.comparingLong(CallProfile::getWallNanos).reversed())
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private BuildFileStats getBuildFileStats(String buildFile) {
+    return buildFiles.computeIfAbsent(buildFile, ignored -> new BuildFileStats());
+  }
+
+  private static long currentThreadCpuNanos() {
+    // returns -1 if CPU time measurement is disabled
+    return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+        ? THREAD_MX_BEAN.getCurrentThreadCpuTime()
+        : -1;
+  }
+
+  private static long currentThreadAllocatedBytes() {
+    if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threadMXBean =
+          (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+      if (threadMXBean.isThreadAllocatedMemorySupported()
+          && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /** Resource usage of the current thread between its creation and {@link #stop()}. */
+  private static class Measurement {
+    private final long startWallNanos = System.nanoTime();
+    private final long startCpuNanos = currentThreadCpuNanos();
+    private final long startAllocatedBytes = currentThreadAllocatedBytes();
+
+    private long wallNanos;
+    private long cpuNanos;
+    private long allocatedBytes;
+
+    void stop() {
+      wallNanos = System.nanoTime() - startWallNanos;
+      cpuNanos = delta(startCpuNanos, currentThreadCpuNanos());
+      allocatedBytes = delta(startAllocatedBytes, currentThreadAllocatedBytes());
+    }
+
+    private static long delta(long start, long end) {
+      return start < 0 || end < 0 ? -1 : end - start;
+    }
+  }
+
+  /** Cumulative resource usage of a number of invocations. */
+  private static class CallStats {
+    private final String extension;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile boolean cpuNanosUnavailable = false;
+    private volatile boolean allocatedBytesUnavailable = false;
+
+    CallStats(String extension) {
+      this.extension = extension;
+    }
+
+    void record(Measurement measurement) {
+      count.increment();
+      wallNanos.add(measurement.wallNanos);
+      if (measurement.cpuNanos < 0) {
+        cpuNanosUnavailable = true;
+      } else {
+        cpuNanos.add(measurement.cpuNanos);
+      }
+      if (measurement.allocatedBytes < 0) {
+        allocatedBytesUnavailable = true;
+      } else {
+        allocatedBytes.add(measurement.allocatedBytes);
+      }
+    }
+
+    void add(CallStats other) {
+      count.add(other.count.sum());
+      wallNanos.add(other.wallNanos.sum());
+      cpuNanos.add(other.cpuNanos.sum());
+      allocatedBytes.add(other.allocatedBytes.sum());
+      cpuNanosUnavailable |= other.cpuNanosUnavailable;
+      allocatedBytesUnavailable |= other.allocatedBytesUnavailable;
+    }
+
+    long getCpuNanos() {
+      return cpuNanosUnavailable ? -1 : cpuNanos.sum();
+    }
+
+    long getAllocatedBytes() {
+      return allocatedBytesUnavailable ? -1 : allocatedBytes.sum();
+    }
+  }
+
+  private static class BuildFileStats {
+    private final CallStats cost = new CallStats("");
+    private final LongAdder globs = new LongAdder();
+    private final LongAdder globWallNanos = new LongAdder();
+  }
+
+  /** Measures a single evaluation of a build file. */
+  class BuildFileScope implements AutoCloseable {
+    private final BuildFileStats stats;
+    private final SimplePerfEvent.Scope perfEventScope;
+    private final long startGlobs;
+    private final long startGlobWallNanos;
+    private final Measurement measurement;
+
+    private BuildFileScope(String buildFile) {
+      this.stats = getBuildFileStats(buildFile);
+      this.perfEventScope = SimplePerfEvent.scope(eventBus, EVALUATE_BUILD_FILE, "path", buildFile);
+      this.startGlobs = stats.globs.sum();
+      this.startGlobWallNanos = stats.globWallNanos.sum();
+      this.measurement = new Measurement();
+    }
+
+    @Override
+    public void close() {
+      measurement.stop();
+      stats.cost.record(measurement);
+      perfEventScope.appendFinishedInfo("cpu_nanos", measurement.cpuNanos);
+      perfEventScope.appendFinishedInfo("allocated_bytes", measurement.allocatedBytes);
+      perfEventScope.appendFinishedInfo("globs", stats.globs.sum() - startGlobs);
+      perfEventScope.appendFinishedInfo(
+          "glob_wall_nanos", stats.globWallNanos.sum() - startGlobWallNanos);
+      perfEventScope.close();
+    }
+  }
+
+  /** Records the cost of invocations of the user-defined function it delegates to. */
+  private class ProfilingFunction implements StarlarkFunction {
+    private final UserDefinedFunction delegate;
+    private final String name;
+    private final CallStats stats;
+
+    ProfilingFunction(UserDefinedFunction delegate) {
+      this.delegate = delegate;
+      Label label = delegate.getDefinitionGlobals().getLabel();
+      String extension =
+          label == null ? String.valueOf(delegate.getLocation().getPath()) : label.toString();
+      this.name = extension + "%" + delegate.getName();
+      this.stats = macros.computeIfAbsent(name, ignored -> new CallStats(extension));
+    }
+
+    @Override
+    public Object call(
+        List<Object> args,
+        @Nullable Map<String, Object> kwargs,
+        @Nullable FuncallExpression ast,
+        Environment env)
+        throws EvalException, InterruptedException {
+      Measurement measurement = new Measurement();
+      try (SimplePerfEvent.Scope ignored =
+          SimplePerfEvent.scope(eventBus, CALL_MACRO, "macro", name)) {
+        return delegate.call(args, kwargs, ast, env);
+      } finally {
+        measurement.stop();
+        stats.record(measurement);
+      }
+    }
+
+    @Override
+    public boolean isImmutable() {
+      return delegate.isImmutable();
+    }
+
+    @Override
+    public void repr(SkylarkPrinter printer) {
+      delegate.repr(printer);
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+}
@@ -25,6 +25,7 @@ import com.facebook.buck.parser.api.PackageMetadata;
 import com.facebook.buck.parser.api.ProjectBuildFileParser;
 import com.facebook.buck.parser.api.UserDefinedRuleLoader;
 import com.facebook.buck.parser.events.ParseBuckFileEvent;
+import com.facebook.buck.parser.events.ParseBuckProfilerReportEvent;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.options.ProjectBuildFileParserOptions;
 import com.facebook.buck.parser.syntax.ListWithSelects;
@@ -35,6 +36,7 @@ import com.facebook.buck.skylark.io.Globber;
 import com.facebook.buck.skylark.io.GlobberFactory;
 import com.facebook.buck.skylark.io.impl.CachingGlobber;
 import com.facebook.buck.skylark.parser.context.ParseContext;
+import com.facebook.buck.util.json.ObjectMappers;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -42,6 +44,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.syntax.Environment;
 import com.google.devtools.build.lib.syntax.SkylarkImport;
 import com.google.devtools.build.lib.vfs.FileSystem;
 import java.io.IOException;
@@ -64,6 +67,7 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
 
   private final BuckEventBus buckEventBus;
   private final GlobberFactory globberFactory;
+  private final Optional<SkylarkParseProfiler> profiler;
 
   SkylarkProjectBuildFileParser(
       ProjectBuildFileParserOptions options,
@@ -75,6 +79,10 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
     super(options, fileSystem, buckGlobals, eventHandler);
     this.buckEventBus = buckEventBus;
     this.globberFactory = globberFactory;
+    this.profiler =
+        options.getEnableProfiling()
+            ? Optional.of(new SkylarkParseProfiler(options.getCellName(), buckEventBus))
+            : Optional.empty();
   }
 
   /** Create an instance of Skylark project build file parser using provided options. */
@@ -107,9 +115,22 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
 
   @Override
   CachingGlobber getGlobber(Path parseFile) {
+    if (profiler.isPresent()) {
+      return CachingGlobber.of(
+          profiler.get().profileGlobs(parseFile, newPackageGlobber(parseFile)));
+    }
     return newGlobber(parseFile);
   }
 
+  @Override
+  protected ImmutableMap<String, Environment.Extension> decorateBuildFileImports(
+      ImmutableMap<String, Environment.Extension> importMap) {
+    if (profiler.isPresent()) {
+      return profiler.get().profileMacros(importMap);
+    }
+    return importMap;
+  }
+
   @Override
   ParseResult getParseResult(
       Path parseFile, ParseContext context, Globber globber, ImmutableList<String> loadedPaths) {
@@ -138,7 +159,15 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
     buckEventBus.post(startEvent);
     int rulesParsed = 0;
     try {
-      ParseResult parseResult = parse(buildFile);
+      ParseResult parseResult;
+      if (profiler.isPresent()) {
+        try (SkylarkParseProfiler.BuildFileScope ignored =
+            profiler.get().startBuildFile(buildFile)) {
+          parseResult = parse(buildFile);
+        }
+      } else {
+        parseResult = parse(buildFile);
+      }
 
       ImmutableMap<String, Map<String, Object>> rawRules = parseResult.getRawRules();
       rulesParsed = rawRules.size();
@@ -209,14 +238,24 @@ public class SkylarkProjectBuildFileParser extends AbstractSkylarkFileParser<Bui
 
   /** Creates a globber for the package defined by the provided build file path. */
   private CachingGlobber newGlobber(Path buildFile) {
-    return CachingGlobber.of(
-        globberFactory.create(fileSystem.getPath(buildFile.getParent().toString())));
+    return CachingGlobber.of(newPackageGlobber(buildFile));
+  }
+
+  private Globber newPackageGlobber(Path buildFile) {
+    return globberFactory.create(fileSystem.getPath(buildFile.getParent().toString()));
   }
 
   @Override
-  public void reportProfile() {
-    // this method is a noop since Skylark profiling is completely orthogonal to parsing and is
-    // controlled by com.google.devtools.build.lib.profiler.Profiler
+  public void reportProfile() throws IOException {
+    // com.google.devtools.build.lib.profiler.Profiler is controlled separately, this only reports
+    // the cost attribution collected when parser profiling is enabled
+    if (!profiler.isPresent()) {
+      return;
+    }
+    LOG.debug("Skylark parser profile available");
+    buckEventBus.post(
+        ParseBuckProfilerReportEvent.jsonProfilerReport(
+            ObjectMappers.WRITER.writeValueAsString(profiler.get().getProfile())));
   }
 
   @Override
@@ -21,6 +21,8 @@ import com.facebook.buck.core.files.DirectoryListCache;
 import com.facebook.buck.core.files.FileTreeCache;
 import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.model.actiongraph.computation.ActionGraphCache;
+import com.facebook.buck.core.model.targetgraph.impl.TargetNodeHashCache;
+import com.facebook.buck.core.parser.BuildPackagePathsCache;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.knowntypes.provider.KnownRuleTypesProvider;
 import com.facebook.buck.core.util.log.Logger;
@@ -30,6 +32,9 @@ import com.facebook.buck.httpserver.WebServer;
 import com.facebook.buck.io.watchman.Watchman;
 import com.facebook.buck.io.watchman.WatchmanCursor;
 import com.facebook.buck.io.watchman.WatchmanWatcher;
+import com.facebook.buck.jvm.java.WarmTestJvmPool;
+import com.facebook.buck.jvm.java.abi.ClassStubCache;
+import com.facebook.buck.parser.BackgroundSpeculativeParser;
 import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.manifest.BuildFileManifestCache;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
@@ -67,15 +72,20 @@ public final class BuckGlobalState implements Closeable {
   private final Cell rootCell;
   private final TypeCoercerFactory typeCoercerFactory;
   private final DaemonicParserState daemonicParserState;
+  private final Optional<BackgroundSpeculativeParser> backgroundSpeculativeParser;
   private final ImmutableList<ProjectFileHashCache> hashCaches;
   private final LoadingCache<Path, DirectoryListCache> directoryListCachePerRoot;
   private final LoadingCache<Path, BuildFileManifestCache> buildFileManifestCachePerRoot;
   private final LoadingCache<Path, FileTreeCache> fileTreeCachePerRoot;
+  private final LoadingCache<Path, BuildPackagePathsCache> buildPackagePathsCachePerRoot;
   private final EventBus fileEventBus;
   private final Optional<WebServer> webServer;
   private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
+  private final Optional<ClassStubCache> classStubCache;
+  private final WarmTestJvmPool warmTestJvmPool;
   private final VersionedTargetGraphCache versionedTargetGraphCache;
   private final ActionGraphCache actionGraphCache;
+  private final TargetNodeHashCache targetNodeHashCache;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<AbsPath, WatchmanCursor> cursor;
   private final KnownRuleTypesProvider knownRuleTypesProvider;
@@ -87,15 +97,20 @@ public final class BuckGlobalState implements Closeable {
       Cell rootCell,
       TypeCoercerFactory typeCoercerFactory,
       DaemonicParserState daemonicParserState,
+      Optional<BackgroundSpeculativeParser> backgroundSpeculativeParser,
       ImmutableList<ProjectFileHashCache> hashCaches,
       LoadingCache<Path, DirectoryListCache> directoryListCachePerRoot,
       LoadingCache<Path, FileTreeCache> fileTreeCachePerRoot,
+      LoadingCache<Path, BuildPackagePathsCache> buildPackagePathsCachePerRoot,
       LoadingCache<Path, BuildFileManifestCache> buildFileManifestCachePerRoot,
       EventBus fileEventBus,
       Optional<WebServer> webServer,
       ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools,
+      Optional<ClassStubCache> classStubCache,
+      WarmTestJvmPool warmTestJvmPool,
       VersionedTargetGraphCache versionedTargetGraphCache,
       ActionGraphCache actionGraphCache,
+      TargetNodeHashCache targetNodeHashCache,
       RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler,
       ImmutableMap<AbsPath, WatchmanCursor> cursor,
       KnownRuleTypesProvider knownRuleTypesProvider,
@@ -104,15 +119,20 @@ public final class BuckGlobalState implements Closeable {
     this.rootCell = rootCell;
     this.typeCoercerFactory = typeCoercerFactory;
     this.daemonicParserState = daemonicParserState;
+    this.backgroundSpeculativeParser = backgroundSpeculativeParser;
     this.hashCaches = hashCaches;
     this.directoryListCachePerRoot = directoryListCachePerRoot;
     this.fileTreeCachePerRoot = fileTreeCachePerRoot;
+    this.buildPackagePathsCachePerRoot = buildPackagePathsCachePerRoot;
     this.buildFileManifestCachePerRoot = buildFileManifestCachePerRoot;
     this.fileEventBus = fileEventBus;
     this.webServer = webServer;
     this.persistentWorkerPools = persistentWorkerPools;
+    this.classStubCache = classStubCache;
+    this.warmTestJvmPool = warmTestJvmPool;
     this.versionedTargetGraphCache = versionedTargetGraphCache;
     this.actionGraphCache = actionGraphCache;
+    this.targetNodeHashCache = targetNodeHashCache;
     this.defaultRuleKeyFactoryCacheRecycler = defaultRuleKeyFactoryCacheRecycler;
     this.cursor = cursor;
     this.knownRuleTypesProvider = knownRuleTypesProvider;
@@ -142,6 +162,11 @@ public final class BuckGlobalState implements Closeable {
     return actionGraphCache;
   }
 
+  /** @return target hashes computed by previous commands. */
+  public TargetNodeHashCache getTargetNodeHashCache() {
+    return targetNodeHashCache;
+  }
+
   public ImmutableList<ProjectFileHashCache> getFileHashCaches() {
     return hashCaches;
   }
@@ -168,6 +193,15 @@ public final class BuckGlobalState implements Closeable {
     return fileTreeCachePerRoot;
   }
 
+  /**
+   * Return a map of build package caches for each cell which is a key. For every cell, we keep the
+   * locations of all build files below folders for which recursive build target patterns were
+   * resolved
+   */
+  public LoadingCache<Path, BuildPackagePathsCache> getBuildPackagePathsCaches() {
+    return buildPackagePathsCachePerRoot;
+  }
+
   public KnownRuleTypesProvider getKnownRuleTypesProvider() {
     return knownRuleTypesProvider;
   }
@@ -176,6 +210,16 @@ public final class BuckGlobalState implements Closeable {
     return persistentWorkerPools;
   }
 
+  /** @return stubs of the classes of rebuilt libraries, unless the cache is disabled. */
+  public Optional<ClassStubCache> getClassStubCache() {
+    return classStubCache;
+  }
+
+  /** @return JVMs that are kept running to run the Java tests of later commands. */
+  public WarmTestJvmPool getWarmTestJvmPool() {
+    return warmTestJvmPool;
+  }
+
   public RuleKeyCacheRecycler<RuleKey> getDefaultRuleKeyFactoryCacheRecycler() {
     return defaultRuleKeyFactoryCacheRecycler;
   }
@@ -184,6 +228,14 @@ public final class BuckGlobalState implements Closeable {
     return daemonicParserState;
   }
 
+  /**
+   * Parser that warms up {@link #getDaemonicParserState()} while the daemon is idle, present only
+   * when background speculative parsing is enabled.
+   */
+  public Optional<BackgroundSpeculativeParser> getBackgroundSpeculativeParser() {
+    return backgroundSpeculativeParser;
+  }
+
   public void interruptOnClientExit(Thread threadToInterrupt) {
     // Synchronize on parser object so that the main command processing thread is not
     // interrupted mid way through a Parser cache update by the Thread.interrupt() call
@@ -246,7 +298,10 @@ public final class BuckGlobalState implements Closeable {
 
   @Override
   public void close() {
+    backgroundSpeculativeParser.ifPresent(BackgroundSpeculativeParser::close);
+    daemonicParserState.getPythonDslInterpreterPools().close();
     shutdownPersistentWorkerPools();
+    warmTestJvmPool.close();
     shutdownWebServer();
   }
 
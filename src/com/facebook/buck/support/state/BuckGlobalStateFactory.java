@@ -27,18 +27,26 @@ import com.facebook.buck.core.config.BuckConfig;
 import com.facebook.buck.core.files.DirectoryListCache;
 import com.facebook.buck.core.files.FileTreeCache;
 import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.TargetConfigurationSerializer;
 import com.facebook.buck.core.model.actiongraph.computation.ActionGraphCache;
+import com.facebook.buck.core.model.targetgraph.impl.TargetNodeHashCache;
+import com.facebook.buck.core.parser.BuildPackagePathsCache;
 import com.facebook.buck.core.parser.buildtargetparser.UnconfiguredBuildTargetViewFactory;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.knowntypes.provider.KnownRuleTypesProvider;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.httpserver.WebServer;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.watchman.Watchman;
 import com.facebook.buck.io.watchman.WatchmanCursor;
 import com.facebook.buck.io.watchman.WatchmanFactory;
 import com.facebook.buck.io.watchman.WatchmanWatcher;
+import com.facebook.buck.jvm.java.JavaBuckConfig;
+import com.facebook.buck.jvm.java.WarmTestJvmPool;
+import com.facebook.buck.jvm.java.abi.ClassStubCache;
+import com.facebook.buck.parser.BackgroundSpeculativeParser;
 import com.facebook.buck.parser.DaemonicParserState;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.manifest.BuildFileManifestCache;
@@ -104,18 +112,33 @@ public class BuckGlobalStateFactory {
         createDirectoryListCachePerCellMap(fileEventBus);
     LoadingCache<Path, FileTreeCache> fileTreeCachePerRoot =
         createFileTreeCachePerCellMap(fileEventBus);
+    LoadingCache<Path, BuildPackagePathsCache> buildPackagePathsCachePerRoot =
+        createBuildPackagePathsCachePerCellMap(fileEventBus, rootCell.getCellProvider());
     LoadingCache<Path, BuildFileManifestCache> buildFileManifestCachePerRoot =
         createBuildFileManifestCachePerCellMap(
             fileEventBus, rootCell.getCellProvider(), rootCell.getSuperRootPath());
     ActionGraphCache actionGraphCache =
-        new ActionGraphCache(buildBuckConfig.getMaxActionGraphCacheEntries());
+        new ActionGraphCache(
+            buildBuckConfig.getMaxActionGraphCacheEntries(),
+            buildBuckConfig.getMaxIncrementalActionGraphs());
     VersionedTargetGraphCache versionedTargetGraphCache = new VersionedTargetGraphCache();
+    TargetNodeHashCache targetNodeHashCache = new TargetNodeHashCache();
+    fileEventBus.register(targetNodeHashCache);
 
     TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory();
     ParserConfig parserConfig = rootCell.getRootCell().getBuckConfig().getView(ParserConfig.class);
+    boolean speculativeParsingEnabled = parserConfig.getEnableBackgroundSpeculativeParsing();
     DaemonicParserState daemonicParserState =
-        new DaemonicParserState(parserConfig.getNumParsingThreads());
+        new DaemonicParserState(parserConfig.getNumParsingThreads(), speculativeParsingEnabled);
     fileEventBus.register(daemonicParserState);
+    Optional<BackgroundSpeculativeParser> backgroundSpeculativeParser =
+        speculativeParsingEnabled
+            ? Optional.of(
+                new BackgroundSpeculativeParser(
+                    daemonicParserState,
+                    new DefaultBuckEventBus(clock, new BuildId("speculative-parsing")),
+                    parserConfig.getNumParsingThreads()))
+            : Optional.empty();
 
     // Build the the rule key cache recycler.
     RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler =
@@ -158,20 +181,32 @@ public class BuckGlobalStateFactory {
     }
     LOG.debug("Using Watchman Cursor: %s", cursor);
     ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools = new ConcurrentHashMap<>();
+    JavaBuckConfig javaBuckConfig =
+        rootCell.getRootCell().getBuckConfig().getView(JavaBuckConfig.class);
+    long classStubCacheSize = javaBuckConfig.getClassStubCacheSize();
+    Optional<ClassStubCache> classStubCache =
+        classStubCacheSize > 0
+            ? Optional.of(new ClassStubCache(classStubCacheSize))
+            : Optional.empty();
 
     return new BuckGlobalState(
         rootCell.getRootCell(),
         typeCoercerFactory,
         daemonicParserState,
+        backgroundSpeculativeParser,
         hashCaches,
         directoryListCachePerRoot,
         fileTreeCachePerRoot,
+        buildPackagePathsCachePerRoot,
         buildFileManifestCachePerRoot,
         fileEventBus,
         webServer,
         persistentWorkerPools,
+        classStubCache,
+        new WarmTestJvmPool(),
         versionedTargetGraphCache,
         actionGraphCache,
+        targetNodeHashCache,
         defaultRuleKeyFactoryCacheRecycler,
         cursor,
         knownRuleTypesProvider,
@@ -209,6 +244,26 @@ public class BuckGlobalStateFactory {
             });
   }
 
+  /** Create a number of instances of {@link BuildPackagePathsCache}, one per each cell */
+  private static LoadingCache<Path, BuildPackagePathsCache> createBuildPackagePathsCachePerCellMap(
+      EventBus fileEventBus, CellProvider cellProvider) {
+    return CacheBuilder.newBuilder()
+        .build(
+            new CacheLoader<Path, BuildPackagePathsCache>() {
+              @Override
+              public BuildPackagePathsCache load(Path path) {
+                String buildFileName =
+                    cellProvider
+                        .getCellByPath(path)
+                        .getBuckConfigView(ParserConfig.class)
+                        .getBuildFileName();
+                BuildPackagePathsCache cache = BuildPackagePathsCache.of(path, buildFileName);
+                fileEventBus.register(cache.getInvalidator());
+                return cache;
+              }
+            });
+  }
+
   /** Create a number of instances of {@link BuildFileManifestCache}, one per each cell */
   private static LoadingCache<Path, BuildFileManifestCache> createBuildFileManifestCachePerCellMap(
       EventBus fileEventBus, CellProvider cellProvider, AbsPath superRootPath) {
@@ -18,10 +18,12 @@ package com.facebook.buck.test;
 
 import com.facebook.buck.core.util.immutables.BuckStyleValueWithBuilder;
 import com.facebook.buck.test.selectors.TestSelectorList;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.util.EnumSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.regex.Pattern;
 import org.immutables.value.Value;
 
 @BuckStyleValueWithBuilder
@@ -52,6 +54,33 @@ public abstract class TestRunningOptions {
     return false;
   }
 
+  /** @return the number of JVMs that the test classes of each java test are split between. */
+  @Value.Default
+  public int getJavaTestShards() {
+    return 1;
+  }
+
+  /**
+   * @return the number of idle JVMs to keep for running java tests in, or zero to run each java
+   *     test in a new JVM.
+   */
+  @Value.Default
+  public int getJavaTestWarmJvms() {
+    return 0;
+  }
+
+  /**
+   * @return whether to skip the java test classes that passed the last time they ran and none of
+   *     whose classes have changed since.
+   */
+  @Value.Default
+  public boolean isSkippingUnchangedJavaTests() {
+    return false;
+  }
+
+  /** @return patterns of the classpath entries that warm java test JVMs load only once. */
+  public abstract ImmutableList<Pattern> getJavaTestWarmJvmSharedClasspath();
+
   public abstract Optional<String> getPathToXmlTestOutput();
 
   public abstract Optional<String> getPathToJavaAgent();
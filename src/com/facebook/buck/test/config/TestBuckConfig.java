@@ -25,6 +25,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.regex.Pattern;
 import org.immutables.value.Value.Lazy;
 
 @BuckStyleValue
@@ -83,6 +84,56 @@ public abstract class TestBuckConfig implements ConfigView<BuckConfig> {
     return (int) Math.ceil(ratio * getDelegate().getView(BuildBuckConfig.class).getNumThreads());
   }
 
+  /**
+   * @return the number of JVMs that each java test splits its test classes between, using the
+   *     test.java_test_shards setting.
+   */
+  @Lazy
+  public int getJavaTestShards() {
+    int shards = getDelegate().getInteger(TEST_SECTION_HEADER, "java_test_shards").orElse(1);
+    if (shards <= 0) {
+      throw new HumanReadableException(
+          "test.java_test_shards must be greater than zero (was " + shards + ")");
+    }
+    return shards;
+  }
+
+  /**
+   * @return whether to skip the java test classes that passed the last time they ran and none of
+   *     whose classes have changed since, using the test.skip_unchanged_java_tests setting.
+   */
+  @Lazy
+  public boolean isSkippingUnchangedJavaTests() {
+    return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "skip_unchanged_java_tests", false);
+  }
+
+  /**
+   * @return the number of idle JVMs to keep for running java tests in, using the
+   *     test.java_test_warm_jvms setting. Zero runs each java test in a new JVM.
+   */
+  @Lazy
+  public int getJavaTestWarmJvms() {
+    int jvms = getDelegate().getInteger(TEST_SECTION_HEADER, "java_test_warm_jvms").orElse(0);
+    if (jvms < 0) {
+      throw new HumanReadableException(
+          "test.java_test_warm_jvms must not be negative (was " + jvms + ")");
+    }
+    return jvms;
+  }
+
+  /**
+   * @return patterns of the classpath entries that warm java test JVMs load once for all the tests
+   *     they run, using the test.java_test_warm_jvm_shared_classpath setting.
+   */
+  @Lazy
+  public ImmutableList<Pattern> getJavaTestWarmJvmSharedClasspath() {
+    return getDelegate()
+        .getListWithoutComments(TEST_SECTION_HEADER, "java_test_warm_jvm_shared_classpath")
+        .stream()
+        .map(Pattern::compile)
+        .collect(ImmutableList.toImmutableList());
+  }
+
   public TestResultSummaryVerbosity getResultSummaryVerbosity() {
     boolean includeStdErr =
         getDelegate().getBooleanValue(TEST_SUMMARY_SECTION_NAME, "include_std_err", true);
@@ -50,6 +50,9 @@ public abstract class BaseRunner {
   // new features.
   protected static final String[] RUNNER_CAPABILITIES = {"simple_test_selector"};
 
+  /** Suffix of the files that list the classes a test class used, next to its results. */
+  private static final String CLASS_USAGE_SUFFIX = ".used-classes";
+
   /**
    * Flag indicating whether strings coming from external sources should be processed to remove
    * carriage return characters (\r).
@@ -196,6 +199,17 @@ public abstract class BaseRunner {
     }
   }
 
+  /**
+   * Records the classes that the tests of the given test class, and of the test classes that ran
+   * before it, loaded. Does nothing unless the {@link ClassUsageAgent} is running.
+   */
+  protected void writeClassUsage(String testClassName) throws IOException {
+    if (outputDirectory != null && !isDryRun) {
+      ClassUsageAgent.writeLoadedClasses(
+          new File(outputDirectory, testClassName + CLASS_USAGE_SUFFIX));
+    }
+  }
+
   private static String getRunnerCapabilities() {
     StringBuilder result = new StringBuilder();
     int capsLen = RUNNER_CAPABILITIES.length;
@@ -295,6 +309,18 @@ public abstract class BaseRunner {
   }
 
   protected void runAndExit() {
+    // Explicitly exit to force the test runner to complete even if tests have sloppily left
+    // behind non-daemon threads that would have otherwise forced the process to wait and
+    // eventually timeout.
+    System.exit(runAndGetExitCode());
+  }
+
+  /**
+   * Runs the tests without exiting the JVM, for runners that share the JVM with other runs.
+   *
+   * @return the exit code the runner would have exited with.
+   */
+  protected int runAndGetExitCode() {
     int exitCode;
 
     // Run the tests.
@@ -311,10 +337,6 @@ public abstract class BaseRunner {
       // tell whether there were still tests left to be run, so it's safest if we fail.
       exitCode = 1;
     }
-
-    // Explicitly exit to force the test runner to complete even if tests have sloppily left
-    // behind non-daemon threads that would have otherwise forced the process to wait and
-    // eventually timeout.
-    System.exit(exitCode);
+    return exitCode;
   }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.instrument.Instrumentation;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+
+/**
+ * A Java agent that lets the test runners record which classes the tests of a test class loaded,
+ * so that Buck can tell whether the test class needs to run again after a change.
+ *
+ * <p>The agent is loaded with {@code -javaagent:} from a jar whose manifest names this class as its
+ * {@code Premain-Class}, and which finds this class on the classpath of the test runner.
+ *
+ * <p>IMPORTANT! This class limits itself to types that are available in the JDK, for the same
+ * reasons as {@link TestRunnerServer}.
+ */
+public class ClassUsageAgent {
+  /* @Nullable */ private static volatile Instrumentation instrumentation;
+
+  private ClassUsageAgent() {
+    // Agent class.
+  }
+
+  public static void premain(@SuppressWarnings("unused") String args, Instrumentation inst) {
+    instrumentation = inst;
+  }
+
+  /**
+   * Writes every class the JVM has loaded from the classpath so far to a file, one per line: the
+   * classpath entry it was loaded from and the name of its class file, separated by a tab. Classes
+   * that are loaded by one test class stay loaded for the ones that run after it, so this
+   * includes the classes of the test classes that ran before.
+   *
+   * @return false, without writing anything, if the agent is not running.
+   */
+  public static boolean writeLoadedClasses(File file) throws IOException {
+    Instrumentation inst = instrumentation;
+    if (inst == null) {
+      return false;
+    }
+
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      for (Class<?> loadedClass : inst.getAllLoadedClasses()) {
+        if (loadedClass.isArray() || loadedClass.isPrimitive()) {
+          continue;
+        }
+        ProtectionDomain domain = loadedClass.getProtectionDomain();
+        CodeSource source = domain == null ? null : domain.getCodeSource();
+        URL location = source == null ? null : source.getLocation();
+        if (location == null || !"file".equals(location.getProtocol())) {
+          continue;
+        }
+        String path;
+        try {
+          path = new File(location.toURI()).getPath();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+          continue;
+        }
+        writer
+            .append(path)
+            .append('\t')
+            .append(loadedClass.getName().replace('.', '/'))
+            .append(".class\n");
+      }
+    }
+    return true;
+  }
+}
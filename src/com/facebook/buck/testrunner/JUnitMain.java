@@ -47,4 +47,17 @@ public class JUnitMain {
     runner.parseArgs(args);
     runner.runAndExit();
   }
+
+  /**
+   * Runs the tests like {@link #main(String[])}, but returns the exit code instead of exiting. This
+   * is what {@link TestRunnerServer} calls to run a batch of tests in a JVM that is kept warm.
+   */
+  public static int run(String[] args) {
+    CheckDependency.isPresent("junit", "org.junit.Test");
+    CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
+
+    JUnitRunner runner = new JUnitRunner();
+    runner.parseArgs(args);
+    return runner.runAndGetExitCode();
+  }
 }
@@ -100,6 +100,7 @@ public final class JUnitRunner extends BaseRunner {
       // Combine the results with the tests we filtered out
       List<TestResult> actualResults = combineResults(results, filter.filteredOut);
       writeResult(className, actualResults);
+      writeClassUsage(className);
     }
   }
 
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Keeps a JVM warm for running batches of tests, so that they don't each pay for starting a JVM
+ * and loading the classes they share.
+ *
+ * <p>The server is started with two arguments: the port of a socket on the loopback address to
+ * connect to, and a token that it writes to the socket first. Batches are then read from the
+ * socket, and their results are written to it. A batch is:
+ *
+ * <ul>
+ *   <li>(int) number of system properties, followed by a key and a value for each
+ *   <li>(int) number of classpath entries, followed by the entries
+ *   <li>(string) name of the runner class, which must have a {@code static int run(String[])}
+ *   <li>(int) number of runner arguments, followed by the arguments
+ * </ul>
+ *
+ * and its result is:
+ *
+ * <ul>
+ *   <li>(int) exit code of the runner
+ *   <li>(int) length of the output of the batch, at most {@link #MAX_OUTPUT_LENGTH}, followed by
+ *       the output
+ * </ul>
+ *
+ * Ints are written like {@link DataOutputStream#writeInt(int)}, and strings as an int length of
+ * at most {@link #MAX_STRING_LENGTH} followed by that many bytes of UTF-8, since classpaths and
+ * arguments can be longer than {@link DataOutputStream#writeUTF(String)} allows. The server exits
+ * when the socket is closed.
+ *
+ * <p>The tests never see the socket: {@link System#out} goes to stderr for good, and {@link
+ * System#in} is empty, so that what they write to stdout outside of a batch, or read from stdin,
+ * cannot break the protocol.
+ *
+ * <p>Each batch gets its own ClassLoader, so the classes of one batch do not see the static state
+ * of another. Only the entries of {@link #SHARED_CLASSPATH_PROPERTY} are loaded once, by the
+ * parent of those ClassLoaders.
+ *
+ * <p>IMPORTANT! This class limits itself to types that are available in the JDK, so that it adds
+ * nothing to the classpath of the tests it runs.
+ */
+public class TestRunnerServer {
+  /** The classpath, separated by {@link File#pathSeparator}, that all batches share. */
+  public static final String SHARED_CLASSPATH_PROPERTY = "buck.testrunner_shared_classpath";
+
+  /** The output of a batch is cut to this many bytes. */
+  public static final int MAX_OUTPUT_LENGTH = 64 * 1024 * 1024;
+
+  /** Strings of a batch may have at most this many bytes. */
+  public static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private static final String TESTRUNNER_CLASSES_PROPERTY = "buck.testrunner_classes";
+
+  private static final int MAX_COUNT = 1024 * 1024;
+
+  private TestRunnerServer() {
+    // Launcher class.
+  }
+
+  public static void main(String[] args) throws IOException {
+    System.setOut(System.err);
+    System.setIn(new ByteArrayInputStream(new byte[0]));
+
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    writeString(out, args[1]);
+    out.flush();
+
+    URL testRunnerClasses = toUrl(System.getProperty(TESTRUNNER_CLASSES_PROPERTY));
+    ClassLoader sharedClassLoader =
+        new URLClassLoader(
+            toUrls(splitPath(System.getProperty(SHARED_CLASSPATH_PROPERTY, ""))),
+            findPlatformClassLoader());
+
+    while (true) {
+      int propertyCount;
+      try {
+        propertyCount = readCount(in);
+      } catch (EOFException e) {
+        break;
+      }
+      Properties properties = new Properties();
+      for (int i = 0; i < propertyCount; i++) {
+        properties.setProperty(readString(in), readString(in));
+      }
+      List<String> classpath = readStrings(in);
+      String runnerClass = readString(in);
+      String[] runnerArgs = readStrings(in).toArray(new String[0]);
+
+      List<URL> urls = new ArrayList<>();
+      urls.add(testRunnerClasses);
+      urls.addAll(Arrays.asList(toUrls(classpath)));
+      properties.setProperty("java.class.path", String.join(File.pathSeparator, classpath));
+
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      int exitCode;
+      try (URLClassLoader classLoader =
+          new URLClassLoader(urls.toArray(new URL[0]), sharedClassLoader)) {
+        exitCode = runBatch(classLoader, properties, runnerClass, runnerArgs, output);
+      }
+
+      byte[] bytes = output.toByteArray();
+      if (bytes.length > MAX_OUTPUT_LENGTH) {
+        byte[] cut = "\n[Output cut]\n".getBytes(StandardCharsets.UTF_8);
+        bytes = Arrays.copyOf(bytes, MAX_OUTPUT_LENGTH);
+        System.arraycopy(cut, 0, bytes, bytes.length - cut.length, cut.length);
+      }
+      out.writeInt(exitCode);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.flush();
+    }
+
+    // Tests may have left non-daemon threads behind.
+    System.exit(0);
+  }
+
+  /** Runs a batch with its own system properties, context ClassLoader and stdout and stderr. */
+  private static int runBatch(
+      ClassLoader classLoader,
+      Properties properties,
+      String runnerClass,
+      String[] runnerArgs,
+      ByteArrayOutputStream output) {
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    Thread thread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+
+    PrintStream batchOutput = new PrintStream(output, /* autoFlush */ true);
+    System.setOut(batchOutput);
+    System.setErr(batchOutput);
+    System.getProperties().putAll(properties);
+    thread.setContextClassLoader(classLoader);
+    try {
+      Method run = classLoader.loadClass(runnerClass).getMethod("run", String[].class);
+      return (Integer) run.invoke(null, new Object[] {runnerArgs});
+    } catch (InvocationTargetException e) {
+      e.getCause().printStackTrace();
+      return 1;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      e.printStackTrace();
+      return 1;
+    } finally {
+      thread.setContextClassLoader(originalContextClassLoader);
+      System.setProperties(originalProperties);
+      System.setOut(originalOut);
+      System.setErr(originalErr);
+      batchOutput.flush();
+    }
+  }
+
+  private static int readCount(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > MAX_COUNT) {
+      throw new IOException("Invalid count: " + count);
+    }
+    return count;
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    int count = readCount(in);
+    List<String> strings = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(in));
+    }
+    return strings;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static List<String> splitPath(String path) {
+    List<String> entries = new ArrayList<>();
+    for (String entry : path.split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  private static URL[] toUrls(List<String> paths) throws MalformedURLException {
+    URL[] urls = new URL[paths.size()];
+    for (int i = 0; i < urls.length; i++) {
+      urls[i] = toUrl(paths.get(i));
+    }
+    return urls;
+  }
+
+  private static URL toUrl(String path) throws MalformedURLException {
+    return new File(path).toURI().toURL();
+  }
+
+  /** Returns the ClassLoader of the JDK's own classes, without the classpath. */
+  private static ClassLoader findPlatformClassLoader() {
+    try {
+      // Java 9+
+      Method method = ClassLoader.class.getMethod("getPlatformClassLoader");
+      return (ClassLoader) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      // Java 8: the parent of the system ClassLoader is the extension ClassLoader.
+      return ClassLoader.getSystemClassLoader().getParent();
+    }
+  }
+}
@@ -20,5 +20,7 @@ public enum ExecutorPool {
   CPU,
   GRAPH_CPU,
   NETWORK,
-  PROJECT
+  PROJECT,
+  /** Runs the tests of {@code buck test}, only available to the steps of tests. */
+  TEST
 }
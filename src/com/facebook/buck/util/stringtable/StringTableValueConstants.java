@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.stringtable;
+
+/**
+ * Constants of the string table value format.
+ *
+ * <p>A message is laid out as follows, all integers being big-endian:
+ *
+ * <pre>
+ *   message := MAGIC VERSION payload-length:u32 payload
+ *   payload := string-count:varint (byte-length:varint utf8-bytes)* value
+ *   value   := TAG_NULL | TAG_TRUE | TAG_FALSE
+ *            | TAG_INT zigzag:varint | TAG_INT32 zigzag:varint | TAG_REAL ieee754:u64
+ *            | TAG_STRING string-index:varint
+ *            | (TAG_LIST | TAG_SET | TAG_SORTED_SET) count:varint value*
+ *            | TAG_MAP count:varint (key-string-index:varint value)*
+ *            | (TAG_GENERIC_MAP | TAG_SORTED_MAP) count:varint (value value)*
+ *            | TAG_OPTIONAL_EMPTY | TAG_OPTIONAL_PRESENT value
+ *            | TAG_EXTENSION name-string-index:varint value
+ * </pre>
+ *
+ * <p>Every distinct string is written to the string table once, in order of first appearance, and
+ * referenced by its index afterwards, which keeps messages with many repeated attribute names and
+ * labels small and makes decoding them cheap.
+ */
+public class StringTableValueConstants {
+  // Utility class, do not instantiate.
+  private StringTableValueConstants() {}
+
+  public static final byte MAGIC_0 = 0x00;
+  public static final byte MAGIC_1 = 0x53;
+  public static final byte VERSION = 0x01;
+
+  /** Length of the message header, i.e. magic, version and payload length. */
+  public static final int HEADER_LENGTH = 7;
+
+  public static final byte TAG_NULL = 0x00;
+  public static final byte TAG_TRUE = 0x01;
+  public static final byte TAG_FALSE = 0x02;
+  public static final byte TAG_INT = 0x03;
+  public static final byte TAG_INT32 = 0x04;
+  public static final byte TAG_REAL = 0x05;
+  public static final byte TAG_STRING = 0x06;
+  public static final byte TAG_LIST = 0x07;
+  public static final byte TAG_SET = 0x08;
+  public static final byte TAG_SORTED_SET = 0x09;
+  public static final byte TAG_MAP = 0x0a;
+  public static final byte TAG_GENERIC_MAP = 0x0b;
+  public static final byte TAG_SORTED_MAP = 0x0c;
+  public static final byte TAG_OPTIONAL_EMPTY = 0x0d;
+  public static final byte TAG_OPTIONAL_PRESENT = 0x0e;
+  public static final byte TAG_EXTENSION = 0x0f;
+}
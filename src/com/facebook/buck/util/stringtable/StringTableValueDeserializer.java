@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.stringtable;
+
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.HEADER_LENGTH;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.MAGIC_0;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.MAGIC_1;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_EXTENSION;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_FALSE;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_GENERIC_MAP;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_INT;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_INT32;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_LIST;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_MAP;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_NULL;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_OPTIONAL_EMPTY;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_OPTIONAL_PRESENT;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_REAL;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_SET;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_SORTED_MAP;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_SORTED_SET;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_STRING;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_TRUE;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.VERSION;
+
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Decoder for the string table value format, see {@link StringTableValueConstants} for the layout.
+ *
+ * <p>Produces Guava immutable collections; maps that contain {@code null} values are returned as
+ * {@link ImmutableMapWithNullValues}. Lists are not allowed to contain {@code null}s. Integers are
+ * returned as {@link Long}s or {@link Integer}s depending on how they were encoded, reals are
+ * returned as {@link Double}s.
+ */
+public class StringTableValueDeserializer {
+
+  private final ImmutableMap<String, StringTableValueExtension<?>> extensions;
+  private final Function<String, String> stringInterner;
+
+  public StringTableValueDeserializer() {
+    this(ImmutableList.of(), Function.identity());
+  }
+
+  /**
+   * @param extensions extensions used to decode values of types not supported by the format
+   * @param stringInterner applied to every distinct string of a message once, e.g. to share
+   *     instances between messages
+   */
+  public StringTableValueDeserializer(
+      ImmutableList<StringTableValueExtension<?>> extensions,
+      Function<String, String> stringInterner) {
+    this.extensions =
+        extensions.stream()
+            .collect(
+                ImmutableMap.toImmutableMap(StringTableValueExtension::getName, e -> e));
+    this.stringInterner = stringInterner;
+  }
+
+  /** Deserializes a value from a message produced by {@link StringTableValueSerializer}. */
+  @Nullable
+  public Object deserialize(byte[] message) throws IOException {
+    if (message.length < HEADER_LENGTH) {
+      throw new EOFException("Message is shorter than its header");
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(message);
+    int payloadLength = readHeader(buffer);
+    if (buffer.remaining() != payloadLength) {
+      throw new IOException(
+          String.format(
+              "Invalid payload length %d, expected %d", buffer.remaining(), payloadLength));
+    }
+    return deserializePayload(buffer);
+  }
+
+  /**
+   * Reads exactly one message from {@code inputStream} and deserializes its value.
+   *
+   * @throws EOFException if the stream ends before the message does
+   */
+  @Nullable
+  public Object deserialize(InputStream inputStream) throws IOException {
+    DataInputStream dataInputStream = new DataInputStream(inputStream);
+    byte[] header = new byte[HEADER_LENGTH];
+    dataInputStream.readFully(header);
+    int payloadLength = readHeader(ByteBuffer.wrap(header));
+    byte[] payload = new byte[payloadLength];
+    dataInputStream.readFully(payload);
+    return deserializePayload(ByteBuffer.wrap(payload));
+  }
+
+  private static int readHeader(ByteBuffer buffer) throws IOException {
+    if (buffer.get() != MAGIC_0 || buffer.get() != MAGIC_1) {
+      throw new IOException("Invalid string table value header");
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported string table value version " + version);
+    }
+    int payloadLength = buffer.getInt();
+    if (payloadLength < 0) {
+      throw new IOException("Invalid payload length " + payloadLength);
+    }
+    return payloadLength;
+  }
+
+  @Nullable
+  private Object deserializePayload(ByteBuffer buffer) throws IOException {
+    try {
+      Decoder decoder = new Decoder(buffer);
+      Object value = decoder.readValue();
+      if (buffer.hasRemaining()) {
+        throw new IOException(
+            String.format("%d unexpected bytes after the value", buffer.remaining()));
+      }
+      return value;
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new EOFException("Prematurely reached end of the message");
+    }
+  }
+
+  /** State of deserialization of a single message. */
+  private class Decoder {
+    private final ByteBuffer buffer;
+    private final String[] strings;
+
+    private Decoder(ByteBuffer buffer) throws IOException {
+      this.buffer = buffer;
+      int count = readLength();
+      strings = new String[count];
+      for (int i = 0; i < count; i++) {
+        int length = readLength();
+        String string =
+            new String(
+                buffer.array(),
+                buffer.arrayOffset() + buffer.position(),
+                length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        strings[i] = stringInterner.apply(string);
+      }
+    }
+
+    @Nullable
+    private Object readValue() throws IOException {
+      byte tag = buffer.get();
+      switch (tag) {
+        case TAG_NULL:
+          return null;
+        case TAG_TRUE:
+          return true;
+        case TAG_FALSE:
+          return false;
+        case TAG_INT:
+          return readZigZagVarint();
+        case TAG_INT32:
+          return Math.toIntExact(readZigZagVarint());
+        case TAG_REAL:
+          return Double.longBitsToDouble(buffer.getLong());
+        case TAG_STRING:
+          return readString();
+        case TAG_LIST:
+          return readList();
+        case TAG_SET:
+          return readSet(ImmutableSet.builder());
+        case TAG_SORTED_SET:
+          return readSet(ImmutableSortedSet.naturalOrder());
+        case TAG_MAP:
+          return readMap();
+        case TAG_GENERIC_MAP:
+          return readGenericMap(ImmutableMap.builder());
+        case TAG_SORTED_MAP:
+          return readGenericMap(ImmutableSortedMap.naturalOrder());
+        case TAG_OPTIONAL_EMPTY:
+          return Optional.empty();
+        case TAG_OPTIONAL_PRESENT:
+          return Optional.of(readNonNullValue());
+        case TAG_EXTENSION:
+          return readExtension();
+        default:
+          throw new IOException(String.format("Unexpected tag 0x%02x", tag));
+      }
+    }
+
+    private Object readNonNullValue() throws IOException {
+      Object value = readValue();
+      if (value == null) {
+        throw new IOException("Unexpected null value");
+      }
+      return value;
+    }
+
+    private ImmutableList<Object> readList() throws IOException {
+      int count = readLength();
+      ImmutableList.Builder<Object> builder = ImmutableList.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        Object element = readValue();
+        if (element == null) {
+          // null elements can't be added to ImmutableList, an NPE will be thrown.
+          // Throw a meaningful exception here instead.
+          throw new IllegalArgumentException(
+              "null value can't be added to " + builder.build() + " at index " + i);
+        }
+        builder.add(element);
+      }
+      return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ImmutableSet<Object> readSet(ImmutableSet.Builder<?> builder) throws IOException {
+      int count = readLength();
+      ImmutableSet.Builder<Object> objectBuilder = (ImmutableSet.Builder<Object>) builder;
+      for (int i = 0; i < count; i++) {
+        objectBuilder.add(readNonNullValue());
+      }
+      return objectBuilder.build();
+    }
+
+    private Object readMap() throws IOException {
+      int count = readLength();
+      String[] keys = new String[count];
+      Object[] values = new Object[count];
+      boolean hasNullValues = false;
+      for (int i = 0; i < count; i++) {
+        keys[i] = readString();
+        values[i] = readValue();
+        hasNullValues |= values[i] == null;
+      }
+      if (hasNullValues) {
+        ImmutableMapWithNullValues.Builder<String, Object> builder =
+            ImmutableMapWithNullValues.Builder.insertionOrder();
+        for (int i = 0; i < count; i++) {
+          builder.put(keys[i], values[i]);
+        }
+        return builder.build();
+      }
+      ImmutableMap.Builder<String, Object> builder = ImmutableMap.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        builder.put(keys[i], values[i]);
+      }
+      return builder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ImmutableMap<Object, Object> readGenericMap(ImmutableMap.Builder<?, ?> builder)
+        throws IOException {
+      int count = readLength();
+      ImmutableMap.Builder<Object, Object> objectBuilder =
+          (ImmutableMap.Builder<Object, Object>) builder;
+      for (int i = 0; i < count; i++) {
+        Object key = readNonNullValue();
+        objectBuilder.put(key, readNonNullValue());
+      }
+      return objectBuilder.build();
+    }
+
+    private Object readExtension() throws IOException {
+      String name = readString();
+      StringTableValueExtension<?> extension = extensions.get(name);
+      if (extension == null) {
+        throw new IOException("Unknown extension " + name);
+      }
+      return extension.decode(readNonNullValue());
+    }
+
+    private String readString() throws IOException {
+      return strings[readLength()];
+    }
+
+    private int readLength() throws IOException {
+      return Math.toIntExact(readVarint());
+    }
+
+    private long readVarint() throws IOException {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = buffer.get();
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    private long readZigZagVarint() throws IOException {
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+  }
+}
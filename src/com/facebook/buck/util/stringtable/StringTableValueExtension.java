@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.stringtable;
+
+/**
+ * Teaches {@link StringTableValueSerializer} and {@link StringTableValueDeserializer} about values
+ * of a type that the string table value format does not support natively.
+ *
+ * @param <T> type of values handled by this extension
+ */
+public interface StringTableValueExtension<T> {
+
+  /** @return name that identifies values of this extension in serialized messages */
+  String getName();
+
+  /** @return type of the values handled by this extension, subtypes are handled too */
+  Class<T> getType();
+
+  /**
+   * Converts a value to a representation natively supported by the format. The representation may
+   * contain values handled by other extensions.
+   */
+  Object encode(T value);
+
+  /** Converts the representation returned by {@link #encode} back to a value. */
+  T decode(Object encoded);
+}
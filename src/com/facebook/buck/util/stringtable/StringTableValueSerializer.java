@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.stringtable;
+
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.HEADER_LENGTH;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.MAGIC_0;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.MAGIC_1;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_EXTENSION;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_FALSE;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_GENERIC_MAP;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_INT;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_INT32;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_LIST;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_MAP;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_NULL;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_OPTIONAL_EMPTY;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_OPTIONAL_PRESENT;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_REAL;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_SET;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_SORTED_MAP;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_SORTED_SET;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_STRING;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.TAG_TRUE;
+import static com.facebook.buck.util.stringtable.StringTableValueConstants.VERSION;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import javax.annotation.Nullable;
+
+/**
+ * Encoder for the string table value format, see {@link StringTableValueConstants} for the layout.
+ *
+ * <p>Supports {@code null}, {@link Boolean}, {@link Integer}, {@link Long}, {@link Double}, {@link
+ * String}, {@link Optional}, {@link List}s, {@link Set}s and {@link Map}s of supported values
+ * (sorted collections only with natural ordering), plus any types handled by the provided {@link
+ * StringTableValueExtension}s.
+ */
+public class StringTableValueSerializer {
+
+  private final ImmutableList<StringTableValueExtension<?>> extensions;
+
+  public StringTableValueSerializer() {
+    this(ImmutableList.of());
+  }
+
+  public StringTableValueSerializer(ImmutableList<StringTableValueExtension<?>> extensions) {
+    this.extensions = extensions;
+  }
+
+  /** Serializes {@code value} into a new message. */
+  public byte[] serialize(@Nullable Object value) {
+    Encoder encoder = new Encoder();
+    encoder.writeValue(value);
+    return encoder.toMessage();
+  }
+
+  /** Serializes {@code value} into a new message and writes it to {@code outputStream}. */
+  public void serializeToStream(@Nullable Object value, OutputStream outputStream)
+      throws IOException {
+    outputStream.write(serialize(value));
+  }
+
+  /** State of serialization of a single message. */
+  private class Encoder {
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<byte[]> strings = new ArrayList<>();
+    private int stringsLength = 0;
+    private final Output body = new Output(256);
+
+    private void writeValue(@Nullable Object value) {
+      if (value == null) {
+        body.writeByte(TAG_NULL);
+      } else if (value instanceof String) {
+        body.writeByte(TAG_STRING);
+        writeStringIndex((String) value);
+      } else if (value instanceof Boolean) {
+        body.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+      } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+        body.writeByte(TAG_INT32);
+        body.writeZigZagVarint(((Number) value).intValue());
+      } else if (value instanceof Long) {
+        body.writeByte(TAG_INT);
+        body.writeZigZagVarint((Long) value);
+      } else if (value instanceof Double || value instanceof Float) {
+        body.writeByte(TAG_REAL);
+        body.writeLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+      } else if (value instanceof Optional) {
+        Optional<?> optional = (Optional<?>) value;
+        if (optional.isPresent()) {
+          body.writeByte(TAG_OPTIONAL_PRESENT);
+          writeValue(optional.get());
+        } else {
+          body.writeByte(TAG_OPTIONAL_EMPTY);
+        }
+      } else if (!writeExtension(value)) {
+        writeCollection(value);
+      }
+    }
+
+    private boolean writeExtension(Object value) {
+      for (StringTableValueExtension<?> extension : extensions) {
+        if (extension.getType().isInstance(value)) {
+          body.writeByte(TAG_EXTENSION);
+          writeStringIndex(extension.getName());
+          writeValue(encode(extension, value));
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private <T> Object encode(StringTableValueExtension<T> extension, Object value) {
+      return extension.encode(extension.getType().cast(value));
+    }
+
+    private void writeCollection(Object value) {
+      if (value instanceof Map) {
+        writeMap((Map<?, ?>) value);
+      } else if (value instanceof SortedSet) {
+        checkNaturalOrdering(((SortedSet<?>) value).comparator(), value);
+        writeElements(TAG_SORTED_SET, (Collection<?>) value);
+      } else if (value instanceof Set) {
+        writeElements(TAG_SET, (Collection<?>) value);
+      } else if (value instanceof Collection) {
+        writeElements(TAG_LIST, (Collection<?>) value);
+      } else {
+        throw new IllegalArgumentException(
+            "Cannot serialize value of type " + value.getClass().getName());
+      }
+    }
+
+    private void writeElements(byte tag, Collection<?> elements) {
+      body.writeByte(tag);
+      body.writeVarint(elements.size());
+      for (Object element : elements) {
+        writeValue(element);
+      }
+    }
+
+    private void writeMap(Map<?, ?> map) {
+      if (map instanceof SortedMap) {
+        checkNaturalOrdering(((SortedMap<?, ?>) map).comparator(), map);
+        writeGenericMap(TAG_SORTED_MAP, map);
+        return;
+      }
+      for (Object key : map.keySet()) {
+        if (!(key instanceof String)) {
+          writeGenericMap(TAG_GENERIC_MAP, map);
+          return;
+        }
+      }
+      body.writeByte(TAG_MAP);
+      body.writeVarint(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeStringIndex((String) entry.getKey());
+        writeValue(entry.getValue());
+      }
+    }
+
+    private void writeGenericMap(byte tag, Map<?, ?> map) {
+      body.writeByte(tag);
+      body.writeVarint(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(entry.getKey());
+        writeValue(entry.getValue());
+      }
+    }
+
+    private void checkNaturalOrdering(@Nullable Comparator<?> comparator, Object value) {
+      if (comparator != null
+          && !comparator.equals(Ordering.natural())
+          && !comparator.equals(Comparator.naturalOrder())) {
+        throw new IllegalArgumentException(
+            "Cannot serialize sorted collection with custom ordering "
+                + value.getClass().getName());
+      }
+    }
+
+    private void writeStringIndex(String string) {
+      Integer index = stringIndexes.get(string);
+      if (index == null) {
+        index = strings.size();
+        stringIndexes.put(string, index);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        strings.add(bytes);
+        stringsLength += Output.MAX_VARINT_LENGTH + bytes.length;
+      }
+      body.writeVarint(index);
+    }
+
+    private byte[] toMessage() {
+      Output message =
+          new Output(HEADER_LENGTH + Output.MAX_VARINT_LENGTH + stringsLength + body.size);
+      message.writeByte(MAGIC_0);
+      message.writeByte(MAGIC_1);
+      message.writeByte(VERSION);
+      // payload length is filled in once the string table is written
+      message.writeInt(0);
+      message.writeVarint(strings.size());
+      for (byte[] string : strings) {
+        message.writeVarint(string.length);
+        message.writeBytes(string, string.length);
+      }
+      message.writeBytes(body.bytes, body.size);
+      int payloadLength = message.size - HEADER_LENGTH;
+      message.size = HEADER_LENGTH - Integer.BYTES;
+      message.writeInt(payloadLength);
+      return Arrays.copyOf(message.bytes, payloadLength + HEADER_LENGTH);
+    }
+  }
+
+  /** Growable byte buffer with helpers to write integers in the encoding used by the format. */
+  private static class Output {
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private byte[] bytes;
+    private int size = 0;
+
+    private Output(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+
+    private void writeByte(byte value) {
+      ensureCapacity(1);
+      bytes[size++] = value;
+    }
+
+    private void writeBytes(byte[] value, int length) {
+      ensureCapacity(length);
+      System.arraycopy(value, 0, bytes, size, length);
+      size += length;
+    }
+
+    private void writeInt(int value) {
+      ensureCapacity(Integer.BYTES);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        bytes[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void writeLong(long value) {
+      ensureCapacity(Long.BYTES);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        bytes[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void writeVarint(long value) {
+      ensureCapacity(MAX_VARINT_LENGTH);
+      while ((value & ~0x7FL) != 0) {
+        bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    private void writeZigZagVarint(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+  }
+}
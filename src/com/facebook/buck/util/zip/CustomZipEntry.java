@@ -32,6 +32,10 @@ public class CustomZipEntry extends ZipEntry {
 
   public CustomZipEntry(ZipEntry other) {
     super(other);
+    if (other instanceof CustomZipEntry) {
+      this.compressionLevel = ((CustomZipEntry) other).compressionLevel;
+      this.externalAttributes = ((CustomZipEntry) other).externalAttributes;
+    }
     setDefaultMethodAndTimeIfUnset();
   }
 
@@ -52,6 +52,7 @@ class EntryAccounting {
 
   private final ZipEntry entry;
   private final Method method;
+  private final boolean precompressed;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -74,6 +75,7 @@ class EntryAccounting {
   public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset) {
     this.entry = entry;
     this.method = Method.detect(entry.getMethod());
+    this.precompressed = entry instanceof PrecompressedZipEntry;
     this.offset = currentOffset;
 
     if (entry.getTime() == -1) {
@@ -269,6 +271,14 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+
+    if (precompressed) {
+      // The data is already deflated, and the CRC in the entry is that of the inflated data.
+      out.write(b, off, len);
+      length += len;
+      return;
+    }
+
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -290,7 +300,11 @@ class EntryAccounting {
    */
   public long finish(OutputStream out) throws IOException {
     Preconditions.checkState(deflater != null);
-    if (method == Method.STORE) {
+    if (precompressed) {
+      Preconditions.checkState(
+          entry.getCompressedSize() == length,
+          "Number of compressed bytes written differs from what is specified in the entry.");
+    } else if (method == Method.STORE) {
       Preconditions.checkState(
           entry.getSize() == length && entry.getCompressedSize() == length,
           "Number of bytes written differs from what is specified in the entry.");
@@ -17,19 +17,26 @@
 package com.facebook.buck.util.zip;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.stream.RichStream;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Futures;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -37,11 +44,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
 
 public class JarBuilder {
@@ -67,11 +82,21 @@ public class JarBuilder {
   private boolean shouldMergeManifests;
   private boolean shouldDisallowAllDuplicates;
   private boolean shouldHashEntries;
+  private boolean shouldReusePrecompressedEntries;
+  private int compressionThreads = 1;
   private Predicate<? super CustomZipEntry> removeEntryPredicate = entry -> false;
   private List<JarEntryContainer> sourceContainers = new ArrayList<>();
   private Set<String> alreadyAddedEntries = new HashSet<>();
   private Map<String, Set<String>> services = new HashMap<>();
 
+  /**
+   * Entries that have been added but not yet written. They are written in the order they were
+   * added, so the jar is the same however long each of them takes to compress.
+   */
+  private Deque<Future<JarEntrySupplier>> pendingEntries = new ArrayDeque<>();
+
+  @Nullable private ExecutorService compressionExecutor;
+
   public JarBuilder setObserver(Observer observer) {
     this.observer = observer;
     return this;
@@ -126,6 +151,27 @@ public class JarBuilder {
     return this;
   }
 
+  /**
+   * Copies entries that are already deflated in input jars without inflating and compressing them
+   * again. Such entries keep the compression of the jar they come from. Ignored if entries are
+   * hashed, as the hashes are of the uncompressed data.
+   */
+  public JarBuilder setShouldReusePrecompressedEntries(boolean shouldReusePrecompressedEntries) {
+    this.shouldReusePrecompressedEntries = shouldReusePrecompressedEntries;
+    return this;
+  }
+
+  /**
+   * Sets the number of threads that compress entries. With more than one, entries are compressed
+   * in parallel but still written in order, so the jar is identical to one built with a single
+   * thread. Ignored if entries are hashed.
+   */
+  public JarBuilder setCompressionThreads(int compressionThreads) {
+    Preconditions.checkArgument(compressionThreads > 0);
+    this.compressionThreads = compressionThreads;
+    return this;
+  }
+
   public JarBuilder setRemoveEntryPredicate(
       Predicate<? super CustomZipEntry> removeEntryPredicate) {
     this.removeEntryPredicate = removeEntryPredicate;
@@ -139,6 +185,10 @@ public class JarBuilder {
             outputFile, ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP)) {
       jar.setEntryHashingEnabled(shouldHashEntries);
       this.outputFile = outputFile;
+      if (compressionThreads > 1 && !shouldHashEntries) {
+        compressionExecutor =
+            MostExecutors.newMultiThreadExecutor("JarBuilder", compressionThreads);
+      }
 
       // Write the manifest first.
       writeManifest(jar);
@@ -151,6 +201,7 @@ public class JarBuilder {
       sortedEntries.sort(Comparator.comparing(supplier -> supplier.getEntry().getName()));
 
       addEntriesToJar(sortedEntries, jar);
+      writePendingEntries(jar, 0);
 
       addServices(jar);
 
@@ -164,6 +215,12 @@ public class JarBuilder {
       }
 
       return 0;
+    } finally {
+      if (compressionExecutor != null) {
+        compressionExecutor.shutdownNow();
+        compressionExecutor = null;
+      }
+      pendingEntries.clear();
     }
   }
 
@@ -205,6 +262,7 @@ public class JarBuilder {
       manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
     }
 
+    writePendingEntries(jar, 0);
     jar.writeManifest();
   }
 
@@ -275,14 +333,82 @@ public class JarBuilder {
       return;
     }
 
-    jar.putNextEntry(entry);
-    try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
-      if (entryInputStream != null) {
-        // Null stream means a directory
-        ByteStreams.copy(entryInputStream, jar);
+    addPendingEntry(entrySupplier, jar);
+  }
+
+  private void addPendingEntry(JarEntrySupplier entrySupplier, CustomJarOutputStream jar)
+      throws IOException {
+    JarEntrySupplier supplier = entrySupplier;
+    if (shouldReusePrecompressedEntries && !shouldHashEntries) {
+      supplier = entrySupplier.getPrecompressedSupplier().orElse(entrySupplier);
+    }
+
+    CustomZipEntry entry = supplier.getEntry();
+    if (compressionExecutor != null
+        && entry.getMethod() == ZipEntry.DEFLATED
+        && !entry.isDirectory()
+        && !(entry instanceof PrecompressedZipEntry)) {
+      JarEntrySupplier toCompress = supplier;
+      pendingEntries.add(compressionExecutor.submit(() -> compress(toCompress)));
+    } else {
+      pendingEntries.add(Futures.immediateFuture(supplier));
+    }
+
+    // Bound the number of compressed entries held in memory.
+    writePendingEntries(jar, compressionExecutor == null ? 0 : compressionThreads * 4);
+  }
+
+  private void writePendingEntries(CustomJarOutputStream jar, int entriesToKeep)
+      throws IOException {
+    while (pendingEntries.size() > entriesToKeep) {
+      JarEntrySupplier entrySupplier;
+      try {
+        entrySupplier = pendingEntries.remove().get();
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while compressing entries", e);
       }
+
+      jar.putNextEntry(entrySupplier.getEntry());
+      try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
+        if (entryInputStream != null) {
+          // Null stream means a directory
+          ByteStreams.copy(entryInputStream, jar);
+        }
+      }
+      jar.closeEntry();
     }
-    jar.closeEntry();
+  }
+
+  /** Deflates the data of an entry so that it can be written as a precompressed entry. */
+  private static JarEntrySupplier compress(JarEntrySupplier entrySupplier) throws IOException {
+    CustomZipEntry entry = new CustomZipEntry(entrySupplier.getEntry());
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    CRC32 crc = new CRC32();
+    Deflater deflater = new Deflater(entry.getCompressionLevel(), true);
+    try (InputStream entryInputStream =
+        new CheckedInputStream(
+            Objects.requireNonNull(entrySupplier.getInputStreamSupplier().get()), crc)) {
+      DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater);
+      ByteStreams.copy(entryInputStream, deflaterStream);
+      deflaterStream.finish();
+
+      entry.setCrc(crc.getValue());
+      entry.setSize(deflater.getBytesRead());
+      entry.setCompressedSize(deflater.getBytesWritten());
+    } finally {
+      deflater.end();
+    }
+
+    byte[] data = compressed.toByteArray();
+    return new JarEntrySupplier(
+        new PrecompressedZipEntry(entry),
+        entrySupplier.getEntryOwner(),
+        () -> new ByteArrayInputStream(data));
   }
 
   private boolean isService(String entryName) {
@@ -302,8 +428,9 @@ public class JarBuilder {
     String parent = getParentDir(name);
     mkdirs(parent, jar);
 
-    jar.putNextEntry(new CustomZipEntry(name));
-    jar.closeEntry();
+    addPendingEntry(
+        new JarEntrySupplier(new CustomZipEntry(name), String.valueOf(outputFile), () -> null),
+        jar);
     alreadyAddedEntries.add(name);
   }
 
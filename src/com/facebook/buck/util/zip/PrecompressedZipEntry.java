@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import com.google.common.base.Preconditions;
+import java.util.zip.ZipEntry;
+
+/**
+ * A deflated entry whose data is written already compressed, so that it can be copied out of
+ * another zip or compressed ahead of time without being inflated and deflated again. The CRC and
+ * both sizes of the entry must be known up front, and the bytes written for the entry are copied
+ * into the zip verbatim.
+ */
+class PrecompressedZipEntry extends CustomZipEntry {
+
+  public PrecompressedZipEntry(ZipEntry other) {
+    super(other);
+    Preconditions.checkArgument(
+        getMethod() == DEFLATED, "Only deflated entries can be precompressed: %s", getName());
+    Preconditions.checkArgument(
+        getCrc() != -1 && getSize() != -1 && getCompressedSize() != -1,
+        "Precompressed entries must have a known CRC and sizes: %s",
+        getName());
+  }
+}
@@ -18,18 +18,32 @@ package com.facebook.buck.util.zip;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Objects;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
 /** Provides all entries of a given zip or jar file, so they can be added to another jar. */
 class ZipFileJarEntryContainer implements JarEntryContainer {
   private final String owner;
   private final Path jarFilePath;
-  @Nullable private JarFile jar;
+
+  /** Entries are read from executor threads when they are compressed in parallel. */
+  @GuardedBy("this")
+  @Nullable
+  private JarFile jar;
+
+  /** Opened only if deflated entries are copied without being inflated first. */
+  @GuardedBy("this")
+  @Nullable
+  private ZipFile rawZip;
 
   public ZipFileJarEntryContainer(Path jarFilePath) {
     this.jarFilePath = jarFilePath;
@@ -48,18 +62,48 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
         .map(
             entry ->
                 new JarEntrySupplier(
-                    makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry)));
+                    makeCustomEntry(entry),
+                    owner,
+                    () -> getJarFile().getInputStream(entry),
+                    makePrecompressedSupplier(entry)));
   }
 
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
     if (jar != null) {
       jar.close();
       jar = null;
     }
+    if (rawZip != null) {
+      rawZip.close();
+      rawZip = null;
+    }
+  }
+
+  @Nullable
+  private JarEntrySupplier makePrecompressedSupplier(ZipEntry entry) {
+    if (entry.getMethod() != ZipEntry.DEFLATED
+        || entry.getCrc() == -1
+        || entry.getSize() == -1
+        || entry.getCompressedSize() == -1) {
+      return null;
+    }
+    return new JarEntrySupplier(
+        new PrecompressedZipEntry(entry), owner, () -> getRawInputStream(entry.getName()));
+  }
+
+  private synchronized InputStream getRawInputStream(String name) throws IOException {
+    if (rawZip == null) {
+      rawZip = new ZipFile(jarFilePath.toFile());
+    }
+    ZipArchiveEntry rawEntry = rawZip.getEntry(name);
+    if (rawEntry == null || rawEntry.getGeneralPurposeBit().usesEncryption()) {
+      throw new IOException(String.format("Cannot copy %s out of %s", name, owner));
+    }
+    return Objects.requireNonNull(rawZip.getRawInputStream(rawEntry));
   }
 
-  private JarFile getJarFile() throws IOException {
+  private synchronized JarFile getJarFile() throws IOException {
     if (jar == null) {
       try {
         File jarFile = jarFilePath.toFile();
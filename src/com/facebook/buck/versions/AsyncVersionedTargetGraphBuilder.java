@@ -68,12 +68,19 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
 
   private static final Logger LOG = Logger.get(AsyncVersionedTargetGraphBuilder.class);
 
+  /** Version info threads used when the caller does not pass the configured thread count. */
+  static final int DEFAULT_VERSION_INFO_THREADS = 2;
+
   private final VersionedTargetGraphComputation versionedTargetGraphTransformer;
 
   private final GraphTransformationEngine asyncTransformationEngine;
 
   private final GraphTransformationEngine versionInfoAsyncTransformationEngine;
 
+  private final DepsAwareExecutor<? super ComputeResult, ?> versionInfoExecutor;
+
+  private final TargetNodeTranslationCache.Session translations;
+
   AsyncVersionedTargetGraphBuilder(
       DepsAwareExecutor<? super ComputeResult, ?> executor,
       VersionSelector versionSelector,
@@ -82,6 +89,28 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
       Cells cells) {
+    this(
+        executor,
+        versionSelector,
+        unversionedTargetGraphCreationResult,
+        typeCoercerFactory,
+        unconfiguredBuildTargetFactory,
+        timeoutSeconds,
+        cells,
+        new TargetNodeTranslationCache(),
+        DEFAULT_VERSION_INFO_THREADS);
+  }
+
+  AsyncVersionedTargetGraphBuilder(
+      DepsAwareExecutor<? super ComputeResult, ?> executor,
+      VersionSelector versionSelector,
+      TargetGraphCreationResult unversionedTargetGraphCreationResult,
+      TypeCoercerFactory typeCoercerFactory,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      long timeoutSeconds,
+      Cells cells,
+      TargetNodeTranslationCache translationCache,
+      int versionInfoThreads) {
     super(
         typeCoercerFactory,
         unconfiguredBuildTargetFactory,
@@ -99,6 +128,9 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
             ImmutableList.of(new GraphComputationStage<>(versionedTargetGraphTransformer)),
             unversionedTargetGraphCreationResult.getTargetGraph().getSize() * 4,
             executor);
+    // Version info is requested synchronously from computations running on `executor`, so it
+    // needs its own executor to not starve them.
+    this.versionInfoExecutor = DefaultDepsAwareExecutor.of(versionInfoThreads);
     this.versionInfoAsyncTransformationEngine =
         new DefaultGraphTransformationEngine(
             ImmutableList.of(
@@ -106,7 +138,8 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
                     new TargetNodeToVersionInfoComputation(
                         unversionedTargetGraphCreationResult.getTargetGraph()))),
             2 * unversionedTargetGraphCreationResult.getTargetGraph().getSize(),
-            DefaultDepsAwareExecutor.of(2));
+            versionInfoExecutor);
+    this.translations = translationCache.newSession();
   }
 
   @Override
@@ -134,29 +167,38 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     ImmutableMap<VersionTargetGraphKey, Future<TargetNode<?>>> results =
         asyncTransformationEngine.computeAll(rootKeys);
 
-    // Wait for actions to complete.
-    for (Future<TargetNode<?>> futures : results.values()) {
-      try {
-        futures.get(timeout, timeUnit);
-      } catch (ExecutionException e) {
-        Throwable rootCause = Throwables.getRootCause(e);
-        Throwables.throwIfInstanceOf(rootCause, VersionException.class);
-        Throwables.throwIfInstanceOf(rootCause, TimeoutException.class);
-        Throwables.throwIfInstanceOf(rootCause, RuntimeException.class);
-        throw new IllegalStateException(
-            String.format("Unexpected exception: %s: %s", e.getClass(), e.getMessage()), e);
+    try {
+      // Wait for actions to complete.
+      for (Future<TargetNode<?>> futures : results.values()) {
+        try {
+          futures.get(timeout, timeUnit);
+        } catch (ExecutionException e) {
+          Throwable rootCause = Throwables.getRootCause(e);
+          Throwables.throwIfInstanceOf(rootCause, VersionException.class);
+          Throwables.throwIfInstanceOf(rootCause, TimeoutException.class);
+          Throwables.throwIfInstanceOf(rootCause, RuntimeException.class);
+          throw new IllegalStateException(
+              String.format("Unexpected exception: %s: %s", e.getClass(), e.getMessage()), e);
+        }
       }
+    } finally {
+      asyncTransformationEngine.close();
+      versionInfoAsyncTransformationEngine.close();
+      versionInfoExecutor.close();
     }
-
-    asyncTransformationEngine.close();
-    versionInfoAsyncTransformationEngine.close();
+    translations.commit();
 
     long end = System.currentTimeMillis();
 
     VersionedTargetGraph graph = versionedTargetGraphTransformer.targetGraphBuilder.build();
     LOG.debug(
-        "Finished version target graph transformation in %.2f (nodes %d, roots: %d)",
-        (end - start) / 1000.0, graph.getSize(), versionedTargetGraphTransformer.roots.get());
+        "Finished version target graph transformation in %.2f (nodes %d, roots: %d, "
+            + "reused translations: %d/%d)",
+        (end - start) / 1000.0,
+        graph.getSize(),
+        versionedTargetGraphTransformer.roots.get(),
+        translations.getReusedCount(),
+        translations.getTranslationCount());
 
     return graph;
   }
@@ -171,6 +213,35 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       long timeoutSeconds,
       Cells cells)
       throws VersionException, TimeoutException, InterruptedException {
+    return transform(
+        versionSelector,
+        unversionedTargetGraphCreationResult,
+        executor,
+        typeCoercerFactory,
+        unconfiguredBuildTargetFactory,
+        timeoutSeconds,
+        cells,
+        new TargetNodeTranslationCache(),
+        DEFAULT_VERSION_INFO_THREADS);
+  }
+
+  /**
+   * Transforms the given {@link TargetGraphCreationResult} such that all versions are resolved,
+   * reusing node translations recorded in {@code translationCache} by previous transformations.
+   *
+   * @param versionInfoThreads number of threads used to compute version info of nodes.
+   */
+  static TargetGraphCreationResult transform(
+      VersionSelector versionSelector,
+      TargetGraphCreationResult unversionedTargetGraphCreationResult,
+      DepsAwareExecutor<? super ComputeResult, ?> executor,
+      TypeCoercerFactory typeCoercerFactory,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      long timeoutSeconds,
+      Cells cells,
+      TargetNodeTranslationCache translationCache,
+      int versionInfoThreads)
+      throws VersionException, TimeoutException, InterruptedException {
     return unversionedTargetGraphCreationResult.withTargetGraph(
         new AsyncVersionedTargetGraphBuilder(
                 executor,
@@ -179,7 +250,9 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
                 typeCoercerFactory,
                 unconfiguredBuildTargetFactory,
                 timeoutSeconds,
-                cells)
+                cells,
+                translationCache,
+                versionInfoThreads)
             .build());
   }
 
@@ -449,7 +522,12 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
 
       // Create the new target node, with the new target and deps.
       TargetNode<?> newNode =
-          ((Optional<TargetNode<?>>) (Optional<?>) targetTranslator.translateNode(node))
+          translations
+              .translate(
+                  getTranslationKey(node, targetTranslator),
+                  () ->
+                      (Optional<TargetNode<?>>)
+                          (Optional<?>) targetTranslator.translateNode(node))
               .orElse(node);
 
       LOG.verbose(
@@ -477,6 +555,25 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       return newNode;
     }
 
+    private TargetNodeTranslationCache.TranslationKey getTranslationKey(
+        TargetNode<?> node, TargetNodeTranslator targetTranslator) {
+      Set<BuildTarget> referencedTargets =
+          Sets.union(node.getParseDeps(), node.getConfigurationDeps());
+      ImmutableMap.Builder<BuildTarget, Optional<BuildTarget>> translatedTargets =
+          ImmutableMap.builderWithExpectedSize(referencedTargets.size() + 1);
+      translatedTargets.put(
+          node.getBuildTarget(), targetTranslator.translateBuildTarget(node.getBuildTarget()));
+      for (BuildTarget target : referencedTargets) {
+        if (!target.equals(node.getBuildTarget())) {
+          translatedTargets.put(target, targetTranslator.translateBuildTarget(target));
+        }
+      }
+      return ImmutableTranslationKey.of(
+          node,
+          targetTranslator.getSelectedVersions(node.getBuildTarget()),
+          translatedTargets.build());
+    }
+
     private TargetNode<?> resolveVersions(
         TargetNode<?> node, ImmutableMap<BuildTarget, Version> selectedVersions) {
       Optional<TargetNode<VersionedAliasDescriptionArg>> versionedNode =
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.versions;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.util.immutables.BuckStylePrehashedValue;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Remembers how {@link TargetNode}s were translated by the last versioned target graph build, so
+ * that rebuilding the versioned graph after a change only re-translates nodes whose inputs changed.
+ *
+ * <p>The result of {@link TargetNodeTranslator#translateNode} is fully determined by the node
+ * itself, the versions selected for it and the translations of the targets it references, which
+ * are all part of {@link TranslationKey}. A node is therefore re-translated only if it changed, or
+ * if any of its transitive dependencies changed in a way that affects its version constraints.
+ *
+ * <p>Only translations used by the most recent successful build are retained.
+ */
+class TargetNodeTranslationCache {
+
+  private volatile Map<TranslationKey, Optional<TargetNode<?>>> translations =
+      new ConcurrentHashMap<>();
+
+  /** @return a new session to record translations performed by a single build. */
+  Session newSession() {
+    return new Session(translations);
+  }
+
+  /** Translations looked up and performed by a single versioned target graph build. */
+  class Session {
+
+    private final Map<TranslationKey, Optional<TargetNode<?>>> previous;
+    private final Map<TranslationKey, Optional<TargetNode<?>>> current = new ConcurrentHashMap<>();
+    private final AtomicInteger reused = new AtomicInteger();
+
+    private Session(Map<TranslationKey, Optional<TargetNode<?>>> previous) {
+      this.previous = previous;
+    }
+
+    /**
+     * @return the translation recorded for the given key, either by a previous build or by this
+     *     one, otherwise the result of {@code translation}.
+     */
+    Optional<TargetNode<?>> translate(
+        TranslationKey key, Supplier<Optional<TargetNode<?>>> translation) {
+      Optional<TargetNode<?>> translated = current.get(key);
+      if (translated != null) {
+        return translated;
+      }
+      translated = previous.get(key);
+      if (translated != null) {
+        reused.incrementAndGet();
+      } else {
+        translated = translation.get();
+      }
+      current.put(key, translated);
+      return translated;
+    }
+
+    /** @return number of translations reused from a previous build. */
+    int getReusedCount() {
+      return reused.get();
+    }
+
+    /** @return number of distinct translations used by this build. */
+    int getTranslationCount() {
+      return current.size();
+    }
+
+    /** Makes translations used by this session available to future builds. */
+    void commit() {
+      translations = current;
+    }
+  }
+
+  /** All inputs that affect how a {@link TargetNode} is translated. */
+  @BuckStylePrehashedValue
+  abstract static class TranslationKey {
+
+    /** @return the node to be translated, after resolving versioned aliases. */
+    abstract TargetNode<?> getTargetNode();
+
+    /** @return versions selected for the transitive version domain of the node. */
+    abstract Optional<ImmutableMap<BuildTarget, Version>> getSelectedVersions();
+
+    /**
+     * @return translations of the node target and all targets referenced by the node, i.e. its
+     *     parse and configuration deps.
+     */
+    abstract ImmutableMap<BuildTarget, Optional<BuildTarget>> getTranslatedTargets();
+  }
+}
@@ -17,6 +17,7 @@
 package com.facebook.buck.versions;
 
 import com.facebook.buck.core.cell.Cells;
+import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.config.BuckConfig;
 import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.model.ComputeResult;
@@ -46,6 +47,12 @@ public class VersionedTargetGraphCache {
 
   @Nullable private CachedVersionedTargetGraph cachedVersionedTargetGraph = null;
 
+  /**
+   * Node translations of the last built versioned target graph, so that a graph which does not
+   * match the cached one only needs to re-translate nodes whose inputs changed.
+   */
+  private final TargetNodeTranslationCache translationCache = new TargetNodeTranslationCache();
+
   /** @return a new versioned target graph. */
   private TargetGraphCreationResult createdVersionedTargetGraph(
       DepsAwareExecutor<? super ComputeResult, ?> depsAwareExecutor,
@@ -54,7 +61,8 @@ public class VersionedTargetGraphCache {
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
       TargetGraphCreationResult targetGraphCreationResult,
-      Cells cells)
+      Cells cells,
+      int numThreads)
       throws VersionException, TimeoutException, InterruptedException {
 
     TargetGraphCreationResult versionedTargetGraph =
@@ -66,7 +74,9 @@ public class VersionedTargetGraphCache {
             typeCoercerFactory,
             unconfiguredBuildTargetFactory,
             timeoutSeconds,
-            cells);
+            cells,
+            translationCache,
+            numThreads);
     return versionedTargetGraph;
   }
 
@@ -78,7 +88,8 @@ public class VersionedTargetGraphCache {
       long timeoutSeconds,
       CacheStatsTracker statsTracker,
       TargetGraphCreationResult targetGraphCreationResult,
-      Cells cells)
+      Cells cells,
+      int numThreads)
       throws VersionException, TimeoutException, InterruptedException {
 
     CacheStatsTracker.CacheRequest request = statsTracker.startRequest();
@@ -116,7 +127,8 @@ public class VersionedTargetGraphCache {
             unconfiguredBuildTargetFactory,
             timeoutSeconds,
             targetGraphCreationResult,
-            cells);
+            cells,
+            numThreads);
     cachedVersionedTargetGraph =
         ImmutableCachedVersionedTargetGraph.of(newInputs, newVersionedTargetGraph);
     VersionedTargetGraphCacheResult result =
@@ -166,7 +178,8 @@ public class VersionedTargetGraphCache {
                   versionBuckConfig.getVersionTargetGraphTimeoutSeconds(),
                   statsTracker,
                   targetGraphCreationResult,
-                  cells);
+                  cells,
+                  buckConfig.getView(BuildBuckConfig.class).getNumThreads());
           LOG.info("versioned target graph " + result.getType().getDescription());
           eventBus.post(result.getType().getEvent());
           return result;
@@ -209,7 +222,8 @@ public class VersionedTargetGraphCache {
         20,
         statsTracker,
         targetGraphCreationResult,
-        cells);
+        cells,
+        AsyncVersionedTargetGraphBuilder.DEFAULT_VERSION_INFO_THREADS);
   }
 
   /**
@@ -50,6 +50,12 @@ public interface WorkerProcessParams {
    */
   boolean isAsync();
 
+  /**
+   * Maximum number of processes that an async pool spreads its tasks over. The pool starts more
+   * processes while the ones it has are busy, as long as there is memory for them.
+   */
+  int getMaxAsyncProcesses();
+
   /**
    * Identifies the instance of the persisted worker process pool. Defines when worker process pool
    * should be invalidated.
@@ -65,8 +71,15 @@ public interface WorkerProcessParams {
       ImmutableMap<String, String> startupEnvironment,
       int maxWorkers,
       boolean isAsync,
+      int maxAsyncProcesses,
       Optional<WorkerProcessIdentity> workerProcessIdentity) {
     return ImmutableWorkerProcessParams.of(
-        tempDir, startupCommand, startupEnvironment, maxWorkers, isAsync, workerProcessIdentity);
+        tempDir,
+        startupCommand,
+        startupEnvironment,
+        maxWorkers,
+        isAsync,
+        maxAsyncProcesses,
+        workerProcessIdentity);
   }
 }
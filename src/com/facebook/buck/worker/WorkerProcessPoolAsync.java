@@ -16,29 +16,77 @@
 
 package com.facebook.buck.worker;
 
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.util.function.ThrowingSupplier;
 import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Semaphore;
-import javax.annotation.Nullable;
+import java.util.function.BooleanSupplier;
+import javax.annotation.concurrent.ThreadSafe;
 
+/**
+ * A pool that sends concurrent jobs to the same {@link WorkerProcess}, which answers them in any
+ * order.
+ *
+ * <p>The pool starts with one process, and starts another one when each of its processes has its
+ * share of the maximum number of jobs running, up to a maximum number of processes, as long as
+ * there is memory for another one. When memory runs low, processes beyond the first that have no
+ * jobs running are stopped.
+ */
+@ThreadSafe
 public class WorkerProcessPoolAsync implements WorkerProcessPool {
+  private static final Logger LOG = Logger.get(WorkerProcessPoolAsync.class);
 
   private final HashCode poolHash;
   private final int maxRequests;
+  private final int maxProcesses;
+  private final int requestsPerProcess;
   private final ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess;
+  private final BooleanSupplier hasMemoryForAnotherProcess;
   private final Semaphore concurrencyLimiter;
-  @Nullable private WorkerProcess workerProcess;
+
+  /** The processes of the pool, and the number of jobs running on each. */
+  private final List<RunningProcess> processes = new ArrayList<>();
+
+  /** The number of processes that are starting, which are not in {@link #processes} yet. */
+  private int startingProcesses = 0;
+
+  private boolean closed = false;
 
   public WorkerProcessPoolAsync(
       int maxRequests,
       HashCode poolHash,
       ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    this(maxRequests, 1, poolHash, startWorkerProcess, () -> false);
+  }
+
+  /**
+   * @param maxRequests the maximum number of jobs running at the same time, or unlimited if not
+   *     positive
+   * @param maxProcesses the maximum number of processes the jobs are spread over
+   * @param hasMemoryForAnotherProcess whether the machine has enough free memory to run another
+   *     process
+   */
+  public WorkerProcessPoolAsync(
+      int maxRequests,
+      int maxProcesses,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
+      BooleanSupplier hasMemoryForAnotherProcess) {
     this.poolHash = poolHash;
     this.maxRequests = maxRequests;
+    this.maxProcesses = Math.max(1, maxProcesses);
+    this.requestsPerProcess =
+        maxRequests <= 0
+            ? Integer.MAX_VALUE
+            : Math.max(1, (maxRequests + this.maxProcesses - 1) / this.maxProcesses);
     this.startWorkerProcess = startWorkerProcess;
+    this.hasMemoryForAnotherProcess = hasMemoryForAnotherProcess;
     this.concurrencyLimiter = new Semaphore(maxRequests <= 0 ? Integer.MAX_VALUE : maxRequests);
   }
 
@@ -52,32 +100,166 @@ public class WorkerProcessPoolAsync implements WorkerProcessPool {
     return maxRequests;
   }
 
+  /** @return the number of processes the pool is running. */
+  public synchronized int getProcessCount() {
+    return processes.size();
+  }
+
   @Override
   public ListenableFuture<WorkerJobResult> submitJob(String expandedJobArgs)
       throws IOException, InterruptedException {
-    synchronized (this) {
-      if (workerProcess == null || !workerProcess.isAlive()) {
-        workerProcess = startWorkerProcess.get();
+    concurrencyLimiter.acquire();
+    shrinkIfLowOnMemory();
+    RunningProcess process = null;
+    try {
+      process = acquireProcess();
+      ListenableFuture<WorkerJobResult> result = process.workerProcess.submitJob(expandedJobArgs);
+      RunningProcess finishedProcess = process;
+      result.addListener(() -> releaseProcess(finishedProcess), MoreExecutors.directExecutor());
+      return result;
+    } catch (Throwable t) {
+      if (process != null) {
+        releaseProcess(process);
+      } else {
+        concurrencyLimiter.release();
       }
+      throw t;
     }
+  }
 
-    concurrencyLimiter.acquire();
+  /**
+   * Picks the process with the fewest running jobs, starting a new one if they are all busy.
+   * Processes are started outside of the lock of the pool, so that jobs keep going to the
+   * processes that are running while one starts.
+   */
+  private RunningProcess acquireProcess() throws IOException, InterruptedException {
+    List<WorkerProcess> toClose = new ArrayList<>();
     try {
-      ListenableFuture<WorkerJobResult> result = workerProcess.submitJob(expandedJobArgs);
-      result.addListener(concurrencyLimiter::release, MoreExecutors.directExecutor());
-      return result;
+      synchronized (this) {
+        while (true) {
+          RunningProcess leastBusy = null;
+          Iterator<RunningProcess> iterator = processes.iterator();
+          while (iterator.hasNext()) {
+            RunningProcess process = iterator.next();
+            if (!process.workerProcess.isAlive()) {
+              iterator.remove();
+              toClose.add(process.workerProcess);
+            } else if (leastBusy == null || process.runningJobs < leastBusy.runningJobs) {
+              leastBusy = process;
+            }
+          }
+
+          int processCount = processes.size() + startingProcesses;
+          boolean mayStartAnother =
+              processCount < maxProcesses && hasMemoryForAnotherProcess.getAsBoolean();
+          if (processCount == 0
+              || ((leastBusy == null || leastBusy.runningJobs >= requestsPerProcess)
+                  && mayStartAnother)) {
+            startingProcesses++;
+            break;
+          }
+          if (leastBusy != null) {
+            leastBusy.runningJobs++;
+            return leastBusy;
+          }
+          // The only processes of the pool are starting.
+          wait();
+        }
+      }
+    } finally {
+      toClose.forEach(WorkerProcessPoolAsync::closeProcess);
+    }
+    return startProcess();
+  }
+
+  /** Starts a process with one running job and adds it to the pool. */
+  private RunningProcess startProcess() throws IOException {
+    WorkerProcess workerProcess;
+    try {
+      workerProcess = startWorkerProcess.get();
     } catch (Throwable t) {
-      concurrencyLimiter.release();
+      synchronized (this) {
+        startingProcesses--;
+        notifyAll();
+      }
       throw t;
     }
+
+    synchronized (this) {
+      startingProcesses--;
+      notifyAll();
+      if (!closed) {
+        RunningProcess process = new RunningProcess(workerProcess);
+        process.runningJobs++;
+        processes.add(process);
+        LOG.debug("Started worker process %d of %d.", processes.size(), maxProcesses);
+        return process;
+      }
+    }
+    closeProcess(workerProcess);
+    throw new IOException("The worker process pool was closed while a process started.");
+  }
+
+  /**
+   * Marks a job of a process as done. This runs on the thread that reads the results of the
+   * process, which cannot close it, so idle processes are only stopped by the next job.
+   */
+  private void releaseProcess(RunningProcess process) {
+    synchronized (this) {
+      process.runningJobs--;
+    }
+    concurrencyLimiter.release();
+  }
+
+  /** Stops idle processes beyond the first when memory runs low. */
+  private void shrinkIfLowOnMemory() {
+    List<WorkerProcess> toClose = new ArrayList<>();
+    synchronized (this) {
+      if (processes.size() <= 1 || hasMemoryForAnotherProcess.getAsBoolean()) {
+        return;
+      }
+      Iterator<RunningProcess> iterator = processes.iterator();
+      while (iterator.hasNext() && processes.size() > 1) {
+        RunningProcess process = iterator.next();
+        if (process.runningJobs == 0) {
+          iterator.remove();
+          toClose.add(process.workerProcess);
+        }
+      }
+    }
+    if (!toClose.isEmpty()) {
+      LOG.debug("Stopping %d idle worker processes, as memory is low.", toClose.size());
+    }
+    toClose.forEach(WorkerProcessPoolAsync::closeProcess);
+  }
+
+  private static void closeProcess(WorkerProcess process) {
+    try {
+      process.close();
+    } catch (Exception e) {
+      LOG.error(e, "Failed to close worker process; ignoring.");
+    }
   }
 
   @Override
   public void close() {
     synchronized (this) {
-      if (workerProcess != null) {
-        workerProcess.close();
+      closed = true;
+      notifyAll();
+      for (RunningProcess process : processes) {
+        process.workerProcess.close();
       }
+      processes.clear();
+    }
+  }
+
+  /** A process of the pool. Guarded by the pool. */
+  private static class RunningProcess {
+    private final WorkerProcess workerProcess;
+    private int runningJobs = 0;
+
+    private RunningProcess(WorkerProcess workerProcess) {
+      this.workerProcess = workerProcess;
     }
   }
 }
@@ -17,6 +17,7 @@
 package com.facebook.buck.worker;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.Escaper;
@@ -25,18 +26,28 @@ import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.function.ThrowingSupplier;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
+import com.sun.management.OperatingSystemMXBean;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -47,6 +58,18 @@ import java.util.stream.Collectors;
  */
 public class WorkerProcessPoolFactory {
 
+  private static final Logger LOG = Logger.get(WorkerProcessPoolFactory.class);
+
+  /** Percentage of physical memory that must be available for an async pool to start a process. */
+  private static final long MIN_AVAILABLE_MEMORY_PERCENT = 5;
+
+  private static final Pattern MEM_AVAILABLE_PATTERN =
+      Pattern.compile("MemAvailable:\\s+(\\d+) kB");
+
+  private static final Supplier<Boolean> HAS_MEMORY_FOR_ANOTHER_PROCESS =
+      Suppliers.memoizeWithExpiration(
+          WorkerProcessPoolFactory::readHasMemoryForAnotherProcess, 1, TimeUnit.SECONDS);
+
   private final ProjectFilesystem filesystem;
 
   public WorkerProcessPoolFactory(ProjectFilesystem filesystem) {
@@ -134,7 +157,12 @@ public class WorkerProcessPoolFactory {
     WorkerProcessPool newPool;
     if (paramsToUse.isAsync()) {
       newPool =
-          new WorkerProcessPoolAsync(paramsToUse.getMaxWorkers(), workerHash, startWorkerProcess);
+          new WorkerProcessPoolAsync(
+              paramsToUse.getMaxWorkers(),
+              paramsToUse.getMaxAsyncProcesses(),
+              workerHash,
+              startWorkerProcess,
+              WorkerProcessPoolFactory::hasMemoryForAnotherProcess);
     } else {
       newPool =
           new WorkerProcessPoolSync(paramsToUse.getMaxWorkers(), workerHash, startWorkerProcess);
@@ -146,6 +174,52 @@ public class WorkerProcessPoolFactory {
     return previousPool == null ? newPool : previousPool;
   }
 
+  /**
+   * @return whether enough of the physical memory of the machine is available for an async pool to
+   *     start another process. The reading is reused for a while, as pools ask on every job.
+   */
+  private static boolean hasMemoryForAnotherProcess() {
+    return HAS_MEMORY_FOR_ANOTHER_PROCESS.get();
+  }
+
+  private static boolean readHasMemoryForAnotherProcess() {
+    OperatingSystemMXBean osBean =
+        (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    long availableMemory =
+        readAvailableMemory().orElseGet(osBean::getFreePhysicalMemorySize);
+    return availableMemory
+        >= osBean.getTotalPhysicalMemorySize() * MIN_AVAILABLE_MEMORY_PERCENT / 100;
+  }
+
+  /**
+   * @return the memory that is available for new processes without swapping on Linux, which
+   *     unlike the free memory includes the page cache that the kernel can reclaim.
+   */
+  private static OptionalLong readAvailableMemory() {
+    Path meminfo = Paths.get("/proc/meminfo");
+    if (!Files.isReadable(meminfo)) {
+      return OptionalLong.empty();
+    }
+    try {
+      return parseAvailableMemory(Files.readAllLines(meminfo, StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      LOG.debug(e, "Cannot read %s.", meminfo);
+      return OptionalLong.empty();
+    }
+  }
+
+  /** @return the {@code MemAvailable} of the lines of {@code /proc/meminfo}, in bytes. */
+  @VisibleForTesting
+  static OptionalLong parseAvailableMemory(List<String> meminfo) {
+    for (String line : meminfo) {
+      Matcher matcher = MEM_AVAILABLE_PATTERN.matcher(line);
+      if (matcher.matches()) {
+        return OptionalLong.of(Long.parseLong(matcher.group(1)) * 1024);
+      }
+    }
+    return OptionalLong.empty();
+  }
+
   public ImmutableList<String> getCommand(Platform platform, WorkerProcessParams paramsToUse) {
     ImmutableList<String> executionArgs =
         platform == Platform.WINDOWS
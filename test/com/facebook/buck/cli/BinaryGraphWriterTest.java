@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMap;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.junit.Test;
+
+public class BinaryGraphWriterTest {
+
+  @Test
+  public void nodesAreWrittenWithInternedStrings() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (BinaryGraphWriter writer = new BinaryGraphWriter(out)) {
+      writer.writeNode(
+          "//foo:lib", "java_library", ImmutableList.of(), Optional.empty(), ImmutableMap.of());
+      writer.writeNode(
+          "//foo:bin",
+          "java_binary",
+          ImmutableList.of("//foo:lib"),
+          Optional.of(ImmutableList.of("//foo:lib")),
+          ImmutableMap.of("outputPath", "buck-out/gen/foo/bin.jar"));
+    }
+
+    List<String> strings = new ArrayList<>();
+    List<DecodedNode> nodes = new ArrayList<>();
+    decode(out.toByteArray(), strings, nodes);
+
+    assertEquals(
+        ImmutableList.of(
+            "//foo:lib", "java_library", "//foo:bin", "java_binary", "outputPath",
+            "buck-out/gen/foo/bin.jar"),
+        strings);
+    assertEquals(2, nodes.size());
+
+    DecodedNode lib = nodes.get(0);
+    assertEquals("//foo:lib", strings.get(lib.name));
+    assertEquals("java_library", strings.get(lib.type));
+    assertTrue(lib.deps.isEmpty());
+    assertFalse(lib.runtimeDeps.isPresent());
+    assertTrue(lib.attributes.isEmpty());
+
+    DecodedNode bin = nodes.get(1);
+    assertEquals("//foo:bin", strings.get(bin.name));
+    assertEquals("java_binary", strings.get(bin.type));
+    assertEquals(ImmutableList.of(lib.name), bin.deps);
+    assertEquals(Optional.of(ImmutableList.of(lib.name)), bin.runtimeDeps);
+    assertEquals(
+        ImmutableMap.of(strings.indexOf("outputPath"), strings.indexOf("buck-out/gen/foo/bin.jar")),
+        bin.attributes);
+  }
+
+  private static class DecodedNode {
+    int name;
+    int type;
+    List<Integer> deps = new ArrayList<>();
+    Optional<List<Integer>> runtimeDeps = Optional.empty();
+    Map<Integer, Integer> attributes = new HashMap<>();
+  }
+
+  private static void decode(byte[] bytes, List<String> strings, List<DecodedNode> nodes)
+      throws TException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      int length = buffer.getInt();
+      TProtocol protocol =
+          new TCompactProtocol(new TMemoryInputTransport(bytes, buffer.position(), length));
+      buffer.position(buffer.position() + length);
+
+      protocol.readStructBegin();
+      TField field = protocol.readFieldBegin();
+      if (field.id == 1) {
+        strings.add(protocol.readString());
+      } else {
+        assertEquals(2, field.id);
+        nodes.add(readNode(protocol));
+      }
+      protocol.readFieldEnd();
+      assertEquals(TType.STOP, protocol.readFieldBegin().type);
+      protocol.readStructEnd();
+    }
+  }
+
+  private static DecodedNode readNode(TProtocol protocol) throws TException {
+    DecodedNode node = new DecodedNode();
+    protocol.readStructBegin();
+    for (TField field = protocol.readFieldBegin();
+        field.type != TType.STOP;
+        field = protocol.readFieldBegin()) {
+      switch (field.id) {
+        case 1:
+          node.name = protocol.readI32();
+          break;
+        case 2:
+          node.type = protocol.readI32();
+          break;
+        case 3:
+          node.deps = readIdList(protocol);
+          break;
+        case 4:
+          node.runtimeDeps = Optional.of(readIdList(protocol));
+          break;
+        case 5:
+          TMap map = protocol.readMapBegin();
+          for (int i = 0; i < map.size; i++) {
+            node.attributes.put(protocol.readI32(), protocol.readI32());
+          }
+          protocol.readMapEnd();
+          break;
+        default:
+          throw new AssertionError("Unexpected field " + field.id);
+      }
+      protocol.readFieldEnd();
+    }
+    protocol.readStructEnd();
+    return node;
+  }
+
+  private static List<Integer> readIdList(TProtocol protocol) throws TException {
+    TList list = protocol.readListBegin();
+    List<Integer> ids = new ArrayList<>();
+    for (int i = 0; i < list.size; i++) {
+      ids.add(protocol.readI32());
+    }
+    protocol.readListEnd();
+    return ids;
+  }
+}
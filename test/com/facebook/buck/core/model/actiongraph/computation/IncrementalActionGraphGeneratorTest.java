@@ -46,6 +46,7 @@ import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.util.timing.IncrementingFakeClock;
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.util.concurrent.BlockingQueue;
@@ -613,6 +614,78 @@ public class IncrementalActionGraphGeneratorTest {
     assertEquals(1, ((ActionGraphEvent.IncrementalLoad) event).getReusedNodeCount());
   }
 
+  @Test
+  public void rulesOfOlderRetainedGraphReusedAfterBuildingDifferentTargets() {
+    generator = new IncrementalActionGraphGenerator(2);
+    TargetNode<?> libNode = createTargetNode("lib");
+    TargetNode<?> appNode = createTargetNode("app", libNode);
+    setUpTargetGraphAndResolver(appNode, libNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    BuildRule libRule = graphBuilder.requireRule(libNode.getBuildTarget());
+    BuildRule appRule = graphBuilder.requireRule(appNode.getBuildTarget());
+
+    TargetNode<?> testNode = createTargetNode("test", libNode);
+    setUpTargetGraphAndResolver(testNode, libNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    assertSame(libRule, graphBuilder.requireRule(libNode.getBuildTarget()));
+    graphBuilder.requireRule(testNode.getBuildTarget());
+
+    setUpTargetGraphAndResolver(appNode, libNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    assertSame(libRule, graphBuilder.requireRule(libNode.getBuildTarget()));
+    assertSame(appRule, graphBuilder.requireRule(appNode.getBuildTarget()));
+    assertSame(graphBuilder, ((FakeBuildRule) appRule).getRuleResolver());
+  }
+
+  @Test
+  public void rulesOfOlderRetainedGraphNotReusedAfterTheirDepsChanged() {
+    generator = new IncrementalActionGraphGenerator(2);
+    TargetNode<?> libNode = createTargetNode("lib");
+    TargetNode<?> appNode = createTargetNode("app", libNode);
+    setUpTargetGraphAndResolver(appNode, libNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    graphBuilder.requireRule(libNode.getBuildTarget());
+    BuildRule appRule = graphBuilder.requireRule(appNode.getBuildTarget());
+
+    TargetNode<?> newLibNode = createTargetNode("lib", "new_label");
+    setUpTargetGraphAndResolver(newLibNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    BuildRule newLibRule = graphBuilder.requireRule(newLibNode.getBuildTarget());
+
+    setUpTargetGraphAndResolver(appNode, newLibNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    assertSame(newLibRule, graphBuilder.requireRule(newLibNode.getBuildTarget()));
+    assertNotSame(appRule, graphBuilder.requireRule(appNode.getBuildTarget()));
+  }
+
+  @Test
+  public void rulesOfGraphsOlderThanRetainedGraphsNotReused() {
+    generator = new IncrementalActionGraphGenerator(2);
+    TargetNode<?> appNode = createTargetNode("app");
+    setUpTargetGraphAndResolver(appNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    BuildRule appRule = graphBuilder.requireRule(appNode.getBuildTarget());
+
+    for (String name : ImmutableList.of("test1", "test2")) {
+      TargetNode<?> testNode = createTargetNode(name);
+      setUpTargetGraphAndResolver(testNode);
+      generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+      graphBuilder.requireRule(testNode.getBuildTarget());
+    }
+
+    setUpTargetGraphAndResolver(appNode);
+
+    generator.populateActionGraphBuilderWithCachedRules(eventBus, targetGraph, graphBuilder);
+    assertNotSame(appRule, graphBuilder.requireRule(appNode.getBuildTarget()));
+  }
+
   private FakeTargetNodeBuilder createTargetNodeBuilder(String name) {
     BuildTarget buildTarget = BuildTargetFactory.newInstance("//test:" + name);
     return FakeTargetNodeBuilder.newBuilder(new FakeDescription(), buildTarget);
@@ -21,6 +21,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.cell.Cell;
@@ -44,6 +45,7 @@ import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.watchman.WatchmanFactory;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserPythonInterpreterProvider;
@@ -74,6 +76,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 import org.junit.Before;
 import org.junit.Rule;
@@ -327,6 +330,112 @@ public class TargetGraphHashingTest {
     assertThat(resultA.get(depTarget), not(equalTo(resultB.get(depTarget))));
   }
 
+  @Test
+  public void cachedHashesMatchFreshlyComputedHashesAfterChange() throws InterruptedException {
+    BuildTarget nodeTarget = BuildTargetFactory.newInstance("//foo:lib");
+    BuildTarget depTarget = BuildTargetFactory.newInstance("//dep:lib");
+    BuildTarget otherTarget = BuildTargetFactory.newInstance("//bar:lib");
+    TargetNode<?> dep =
+        createJavaLibraryTargetNodeWithSrcs(
+            depTarget, ImmutableSet.of(Paths.get("dep/DepLib1.java")));
+    TargetNode<?> node =
+        createJavaLibraryTargetNodeWithSrcs(
+            nodeTarget, ImmutableSet.of(Paths.get("foo/FooLib.java")), dep);
+    TargetNode<?> other =
+        createJavaLibraryTargetNodeWithSrcs(
+            otherTarget, ImmutableSet.of(Paths.get("bar/BarLib.java")));
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(node, dep, other);
+    ImmutableList<TargetNode<?>> roots = ImmutableList.of(node, other);
+
+    FileHashLoader baseCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef"),
+                projectFilesystem.resolve("dep/DepLib1.java"), HashCode.fromString("123456"),
+                projectFilesystem.resolve("bar/BarLib.java"), HashCode.fromString("654321")));
+    FileHashLoader modifiedCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef"),
+                projectFilesystem.resolve("dep/DepLib1.java"), HashCode.fromString("123457"),
+                projectFilesystem.resolve("bar/BarLib.java"), HashCode.fromString("654321")));
+
+    TargetNodeHashCache hashCache = new TargetNodeHashCache();
+    Map<BuildTarget, HashCode> baseResult =
+        hashWithCache(targetGraph, baseCache, roots, Optional.of(hashCache));
+    assertEquals(0, hashCache.getReusedCount());
+    Map<BuildTarget, HashCode> reusedResult =
+        hashWithCache(targetGraph, baseCache, roots, Optional.of(hashCache));
+    assertEquals(3, hashCache.getReusedCount());
+    Map<BuildTarget, HashCode> modifiedResult =
+        hashWithCache(targetGraph, modifiedCache, roots, Optional.of(hashCache));
+    assertEquals("only //bar:lib is unchanged", 4, hashCache.getReusedCount());
+
+    assertThat(baseResult, equalTo(hashWithCache(targetGraph, baseCache, roots, Optional.empty())));
+    assertThat(reusedResult, equalTo(baseResult));
+    assertThat(
+        modifiedResult,
+        equalTo(hashWithCache(targetGraph, modifiedCache, roots, Optional.empty())));
+    assertThat(modifiedResult.get(depTarget), not(equalTo(baseResult.get(depTarget))));
+    assertThat(modifiedResult.get(nodeTarget), not(equalTo(baseResult.get(nodeTarget))));
+    assertThat(modifiedResult.get(otherTarget), equalTo(baseResult.get(otherTarget)));
+  }
+
+  @Test
+  public void cachedHashesOfNodesNotInTheGraphAreDropped() throws InterruptedException {
+    BuildTarget nodeTarget = BuildTargetFactory.newInstance("//foo:lib");
+    BuildTarget otherTarget = BuildTargetFactory.newInstance("//bar:lib");
+    TargetNode<?> node =
+        createJavaLibraryTargetNodeWithSrcs(
+            nodeTarget, ImmutableSet.of(Paths.get("foo/FooLib.java")));
+    TargetNode<?> other =
+        createJavaLibraryTargetNodeWithSrcs(
+            otherTarget, ImmutableSet.of(Paths.get("bar/BarLib.java")));
+    FileHashLoader fileHashes =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef"),
+                projectFilesystem.resolve("bar/BarLib.java"), HashCode.fromString("654321")));
+
+    TargetNodeHashCache hashCache = new TargetNodeHashCache();
+    hashWithCache(
+        TargetGraphFactory.newInstance(node, other),
+        fileHashes,
+        ImmutableList.of(node, other),
+        Optional.of(hashCache));
+    assertEquals(2, hashCache.size());
+
+    hashWithCache(
+        TargetGraphFactory.newInstance(other),
+        fileHashes,
+        ImmutableList.of(other),
+        Optional.of(hashCache));
+    assertEquals(1, hashCache.size());
+    assertEquals(1, hashCache.getReusedCount());
+
+    hashCache.invalidateBasedOn(WatchmanOverflowEvent.of(projectFilesystem.getRootPath(), ""));
+    assertEquals(0, hashCache.size());
+  }
+
+  private Map<BuildTarget, HashCode> hashWithCache(
+      TargetGraph targetGraph,
+      FileHashLoader fileHashLoader,
+      ImmutableList<TargetNode<?>> roots,
+      Optional<TargetNodeHashCache> hashCache)
+      throws InterruptedException {
+    return new TargetGraphHashing(
+            eventBus,
+            targetGraph,
+            fileHashLoader,
+            roots,
+            MoreExecutors.newDirectExecutorService(),
+            ruleKeyConfiguration,
+            targetNodeRawAttributesProvider,
+            Hashing.murmur3_128(),
+            hashCache)
+        .hashTargetGraph();
+  }
+
   @Test
   public void hashingSourceThrowsError() throws Exception {
     TargetNode<?> node =
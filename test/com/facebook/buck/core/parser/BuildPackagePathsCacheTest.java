@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.cell.name.CanonicalCellName;
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.filesystems.RelPath;
+import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPattern.Kind;
+import com.facebook.buck.io.watchman.WatchmanEvent;
+import com.facebook.buck.io.watchman.WatchmanOverflowEvent;
+import com.facebook.buck.io.watchman.WatchmanPathEvent;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BuildPackagePathsCacheTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private BuildPackagePathsCache cache;
+
+  @Before
+  public void setUp() {
+    cache = BuildPackagePathsCache.of(tmp.getRoot(), "BUCK");
+    cache.put(
+        recursiveKey(""),
+        ImmutableBuildPackagePaths.of(
+            ImmutableSortedSet.of(
+                Paths.get(""), Paths.get("dir1"), Paths.get("dir1/dir2/dir3"), Paths.get("dir4"))));
+  }
+
+  @Test
+  public void resolvesRecursivePatternsBelowResolvedFolder() {
+    assertEquals(
+        Optional.of(
+            ImmutableSortedSet.of(
+                Paths.get(""), Paths.get("dir1"), Paths.get("dir1/dir2/dir3"), Paths.get("dir4"))),
+        getPackageRoots(""));
+    assertEquals(
+        Optional.of(ImmutableSortedSet.of(Paths.get("dir1"), Paths.get("dir1/dir2/dir3"))),
+        getPackageRoots("dir1"));
+    assertEquals(
+        Optional.of(ImmutableSortedSet.of(Paths.get("dir1/dir2/dir3"))),
+        getPackageRoots("dir1/dir2"));
+  }
+
+  @Test
+  public void doesNotResolveUnknownFolders() {
+    BuildPackagePathsCache emptyCache = BuildPackagePathsCache.of(tmp.getRoot(), "BUCK");
+    assertFalse(emptyCache.get(recursiveKey("dir1")).isPresent());
+
+    // folders without packages may not exist at all, so they are not resolved from the cache
+    assertFalse(cache.get(recursiveKey("nonexisting")).isPresent());
+  }
+
+  @Test
+  public void doesNotResolveNonRecursivePatterns() {
+    assertFalse(cache.get(key(Kind.PACKAGE, "dir1")).isPresent());
+    assertFalse(cache.get(key(Kind.SINGLE, "dir1")).isPresent());
+  }
+
+  @Test
+  public void whenBuildFileCreatedThenPackageIsAdded() {
+    cache
+        .getInvalidator()
+        .onFileSystemChange(pathEvent(WatchmanEvent.Kind.CREATE, "dir1/dir2/dir5/BUCK"));
+
+    assertEquals(
+        Optional.of(
+            ImmutableSortedSet.of(Paths.get("dir1/dir2/dir3"), Paths.get("dir1/dir2/dir5"))),
+        getPackageRoots("dir1/dir2"));
+  }
+
+  @Test
+  public void whenBuildFileDeletedThenPackageIsRemoved() {
+    cache
+        .getInvalidator()
+        .onFileSystemChange(pathEvent(WatchmanEvent.Kind.DELETE, "dir1/dir2/dir3/BUCK"));
+    cache.getInvalidator().onFileSystemChange(pathEvent(WatchmanEvent.Kind.DELETE, "BUCK"));
+
+    assertEquals(
+        Optional.of(ImmutableSortedSet.of(Paths.get("dir1"), Paths.get("dir4"))),
+        getPackageRoots(""));
+  }
+
+  @Test
+  public void whenOtherFileChangesThenNothingChanges() {
+    cache.getInvalidator().onFileSystemChange(pathEvent(WatchmanEvent.Kind.CREATE, "dir5/foo"));
+    cache.getInvalidator().onFileSystemChange(pathEvent(WatchmanEvent.Kind.DELETE, "dir4/foo"));
+    cache.getInvalidator().onFileSystemChange(pathEvent(WatchmanEvent.Kind.MODIFY, "dir4/BUCK"));
+
+    assertEquals(Optional.of(ImmutableSortedSet.of(Paths.get("dir4"))), getPackageRoots("dir4"));
+    assertFalse(cache.get(recursiveKey("dir5")).isPresent());
+  }
+
+  @Test
+  public void whenBuildFileCreatedOutsideOfResolvedFolderThenNothingIsCached() {
+    BuildPackagePathsCache dir1Cache = BuildPackagePathsCache.of(tmp.getRoot(), "BUCK");
+    dir1Cache.put(recursiveKey("dir1"), ImmutableBuildPackagePaths.of(ImmutableSortedSet.of()));
+    dir1Cache
+        .getInvalidator()
+        .onFileSystemChange(pathEvent(WatchmanEvent.Kind.CREATE, "dir4/BUCK"));
+
+    assertFalse(dir1Cache.get(recursiveKey("dir4")).isPresent());
+    assertEquals(
+        Optional.of(ImmutableSortedSet.of()),
+        dir1Cache.get(recursiveKey("dir1")).map(BuildPackagePaths::getPackageRoots));
+  }
+
+  @Test
+  public void whenOverflowThenInvalidateAll() {
+    cache
+        .getInvalidator()
+        .onFileSystemChange(WatchmanOverflowEvent.of(AbsPath.of(tmp.getRoot()), "Test"));
+
+    assertFalse(cache.get(recursiveKey("")).isPresent());
+    assertFalse(cache.get(recursiveKey("dir1")).isPresent());
+  }
+
+  private Optional<ImmutableSortedSet<Path>> getPackageRoots(String basePath) {
+    return cache.get(recursiveKey(basePath)).map(BuildPackagePaths::getPackageRoots);
+  }
+
+  private WatchmanPathEvent pathEvent(WatchmanEvent.Kind kind, String path) {
+    return WatchmanPathEvent.of(AbsPath.of(tmp.getRoot()), kind, RelPath.of(Paths.get(path)));
+  }
+
+  private static BuildTargetPatternToBuildPackagePathKey recursiveKey(String basePath) {
+    return key(Kind.RECURSIVE, basePath);
+  }
+
+  private static BuildTargetPatternToBuildPackagePathKey key(Kind kind, String basePath) {
+    return AbstractBuildPackageComputationTest.key(
+        CanonicalCellName.rootCell(), kind, basePath, kind == Kind.SINGLE ? "target" : "");
+  }
+}
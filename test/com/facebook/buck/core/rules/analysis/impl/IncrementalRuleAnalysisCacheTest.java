@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.rules.analysis.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.targetgraph.FakeTargetNodeBuilder;
+import com.facebook.buck.core.model.targetgraph.TargetGraph;
+import com.facebook.buck.core.model.targetgraph.TargetGraphFactory;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.rules.analysis.RuleAnalysisKey;
+import com.facebook.buck.core.rules.analysis.RuleAnalysisResult;
+import com.facebook.buck.core.rules.providers.collect.impl.TestProviderInfoCollectionImpl;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncrementalRuleAnalysisCacheTest {
+
+  private final BuildTarget libTarget = BuildTargetFactory.newInstance("//my:lib");
+  private final BuildTarget binTarget = BuildTargetFactory.newInstance("//my:bin");
+  private final BuildTarget otherTarget = BuildTargetFactory.newInstance("//my:other");
+
+  private IncrementalRuleAnalysisCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new IncrementalRuleAnalysisCache();
+  }
+
+  @Test
+  public void unchangedGraphReusesResults() {
+    TargetGraph graph = createGraph("lib");
+    RuleAnalysisResult libResult = result(libTarget);
+    RuleAnalysisResult binResult = result(binTarget);
+    IncrementalRuleAnalysisCache.Session first = cache.forTargetGraph(graph);
+    first.put(RuleAnalysisKey.of(libTarget), libResult);
+    first.put(RuleAnalysisKey.of(binTarget), binResult);
+
+    IncrementalRuleAnalysisCache.Session second = cache.forTargetGraph(createGraph("lib"));
+
+    assertSame(binResult, second.get(RuleAnalysisKey.of(binTarget)).get());
+    assertSame(libResult, second.get(RuleAnalysisKey.of(libTarget)).get());
+    assertEquals(2, second.getReusedCount());
+  }
+
+  @Test
+  public void changedNodeInvalidatesItselfAndDependentsOnly() {
+    IncrementalRuleAnalysisCache.Session first = cache.forTargetGraph(createGraph("lib"));
+    first.put(RuleAnalysisKey.of(libTarget), result(libTarget));
+    first.put(RuleAnalysisKey.of(binTarget), result(binTarget));
+    RuleAnalysisResult otherResult = result(otherTarget);
+    first.put(RuleAnalysisKey.of(otherTarget), otherResult);
+
+    IncrementalRuleAnalysisCache.Session second = cache.forTargetGraph(createGraph("changed"));
+
+    assertFalse(second.get(RuleAnalysisKey.of(binTarget)).isPresent());
+    assertFalse(second.get(RuleAnalysisKey.of(libTarget)).isPresent());
+    assertSame(otherResult, second.get(RuleAnalysisKey.of(otherTarget)).get());
+  }
+
+  @Test
+  public void reanalyzedDependencyInvalidatesDependents() {
+    IncrementalRuleAnalysisCache.Session first = cache.forTargetGraph(createGraph("lib"));
+    first.put(RuleAnalysisKey.of(libTarget), result(libTarget));
+    first.put(RuleAnalysisKey.of(binTarget), result(binTarget));
+
+    // A session that recomputes the dependency without touching the dependent.
+    cache.forTargetGraph(createGraph("lib")).put(RuleAnalysisKey.of(libTarget), result(libTarget));
+
+    IncrementalRuleAnalysisCache.Session third = cache.forTargetGraph(createGraph("lib"));
+    assertFalse(third.get(RuleAnalysisKey.of(binTarget)).isPresent());
+    assertEquals(1, third.getReusedCount());
+  }
+
+  @Test
+  public void dropsResultsOfTargetsThatAreNoLongerInTheGraph() {
+    IncrementalRuleAnalysisCache.Session first = cache.forTargetGraph(createGraph("lib"));
+    first.put(RuleAnalysisKey.of(libTarget), result(libTarget));
+    first.put(RuleAnalysisKey.of(otherTarget), result(otherTarget));
+    assertEquals(2, cache.size());
+
+    cache.forTargetGraph(
+        TargetGraphFactory.newInstance(FakeTargetNodeBuilder.newBuilder(otherTarget).build()));
+    assertEquals(1, cache.size());
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  private TargetGraph createGraph(String libLabel) {
+    TargetNode<?> lib = FakeTargetNodeBuilder.newBuilder(libTarget).setLabel(libLabel).build();
+    TargetNode<?> bin = FakeTargetNodeBuilder.newBuilder(binTarget).setDeps(lib).build();
+    TargetNode<?> other = FakeTargetNodeBuilder.newBuilder(otherTarget).build();
+    return TargetGraphFactory.newInstance(lib, bin, other);
+  }
+
+  private static RuleAnalysisResult result(BuildTarget target) {
+    return ImmutableRuleAnalysisResultImpl.of(
+        target, TestProviderInfoCollectionImpl.builder().build(), ImmutableMap.of());
+  }
+}
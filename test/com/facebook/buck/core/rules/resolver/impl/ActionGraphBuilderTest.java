@@ -56,6 +56,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Assert;
@@ -287,4 +288,66 @@ public class ActionGraphBuilderTest {
 
     assertEquals("transform() should be called exactly twice", 2, transformCalls.size());
   }
+
+  @Test
+  public void waitingForTargetBeingBuiltInDifferentThreadIsRecordedAsContention()
+      throws Exception {
+    BuildTarget target1 = BuildTargetFactory.newInstance("//foo:bar1");
+    TargetNode<?> library1 = JavaLibraryBuilder.createBuilder(target1).build();
+
+    BuildTarget target2 = BuildTargetFactory.newInstance("//foo:bar2");
+    TargetNode<?> library2 = JavaLibraryBuilder.createBuilder(target2).build();
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(library1, library2);
+
+    CountDownLatch target1Started = new CountDownLatch(1);
+    CountDownLatch target1Finish = new CountDownLatch(1);
+    AtomicReference<Thread> target2Thread = new AtomicReference<>();
+
+    RuleResolutionStats stats = new RuleResolutionStats();
+    ActionGraphBuilder graphBuilder =
+        new MultiThreadedActionGraphBuilder(
+            MoreExecutors.listeningDecorator(executorService),
+            targetGraph,
+            ConfigurationRuleRegistryFactory.createRegistry(TargetGraph.EMPTY),
+            new TargetNodeToBuildRuleTransformer() {
+              @Override
+              public <T extends BuildRuleArg> BuildRule transform(
+                  ToolchainProvider toolchainProvider,
+                  TargetGraph targetGraph,
+                  ConfigurationRuleRegistry configurationRuleRegistry,
+                  ActionGraphBuilder graphBuilder,
+                  TargetNode<T> targetNode,
+                  ProviderInfoCollection providerInfoCollection,
+                  CellPathResolver cellPathResolver) {
+                try {
+                  if (targetNode.getBuildTarget().equals(target1)) {
+                    target1Started.countDown();
+                    target1Finish.await();
+                  } else {
+                    target2Thread.set(Thread.currentThread());
+                    graphBuilder.requireRule(target1);
+                  }
+                } catch (InterruptedException e) {
+                  throw new RuntimeException(e);
+                }
+                return new FakeBuildRule(targetNode.getBuildTarget());
+              }
+            },
+            new TestCellBuilder().build().getRootCell().getCellProvider(),
+            stats);
+
+    Future<BuildRule> first = executorService.submit(() -> graphBuilder.requireRule(target1));
+    target1Started.await();
+    Future<BuildRule> second = executorService.submit(() -> graphBuilder.requireRule(target2));
+    // Only release target1 once the second thread is blocked waiting for it.
+    while (target2Thread.get() == null || target2Thread.get().getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    target1Finish.countDown();
+    first.get();
+    second.get();
+
+    assertEquals(2, stats.getComputedTasks());
+    assertEquals(1, stats.getContendedWaits());
+  }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.util.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.util.graph.CompactDirectedGraph.Direction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.BitSet;
+import java.util.Comparator;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactDirectedGraphTest {
+
+  //           A
+  //         /  \
+  //       B     C
+  //      /     / \
+  //    D    __/   E
+  //  /  \  /
+  // F    G
+  private CompactDirectedGraph<String> graph;
+
+  @Before
+  public void setUp() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    for (String node : new String[] {"C", "B", "E", "A", "F", "G", "D", "H"}) {
+      mutableGraph.addNode(node);
+    }
+    mutableGraph.addEdge("D", "G");
+    mutableGraph.addEdge("A", "C");
+    mutableGraph.addEdge("D", "F");
+    mutableGraph.addEdge("B", "D");
+    mutableGraph.addEdge("A", "B");
+    mutableGraph.addEdge("C", "E");
+    mutableGraph.addEdge("C", "G");
+    graph = CompactDirectedGraph.of(mutableGraph);
+  }
+
+  @Test
+  public void assignsDenseIds() {
+    assertEquals(8, graph.getNodeCount());
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertEquals(id, graph.getId(graph.getNode(id)));
+    }
+    assertEquals(-1, graph.getId("Z"));
+  }
+
+  @Test
+  public void traversesOutgoingEdges() {
+    assertEquals(
+        ImmutableSet.of("A", "B", "C", "D", "E", "F", "G"),
+        traverse(Direction.OUTGOING, Integer.MAX_VALUE, null, "A"));
+    assertEquals(ImmutableSet.of("A", "B", "C"), traverse(Direction.OUTGOING, 1, null, "A"));
+    assertEquals(ImmutableSet.of("B", "C"), traverse(Direction.OUTGOING, 0, null, "B", "C"));
+  }
+
+  @Test
+  public void listsNodesInBreadthFirstOrder() {
+    assertEquals(
+        ImmutableList.of("A", "C", "B", "E", "G", "D", "F"),
+        graph.getNodesInBreadthFirstOrder(
+            new int[] {graph.getId("A")},
+            Direction.OUTGOING,
+            graph.traverse(ids("A"), Integer.MAX_VALUE, Direction.OUTGOING, null)));
+    assertEquals(
+        ImmutableList.of("G", "D", "C", "B", "A"),
+        graph.getNodesInBreadthFirstOrder(
+            new int[] {graph.getId("G"), graph.getId("D")},
+            Direction.INCOMING,
+            graph.traverse(ids("G"), Integer.MAX_VALUE, Direction.INCOMING, null)));
+  }
+
+  @Test
+  public void sortsOutgoingEdges() {
+    MutableDirectedGraph<String> mutableGraph = new MutableDirectedGraph<>();
+    mutableGraph.addEdge("A", "C");
+    mutableGraph.addEdge("A", "B");
+    CompactDirectedGraph<String> sortedGraph =
+        CompactDirectedGraph.of(mutableGraph, Comparator.naturalOrder());
+    BitSet all = new BitSet();
+    all.set(0, sortedGraph.getNodeCount());
+    assertEquals(
+        ImmutableList.of("A", "B", "C"),
+        sortedGraph.getNodesInBreadthFirstOrder(
+            new int[] {sortedGraph.getId("A")}, Direction.OUTGOING, all));
+  }
+
+  @Test
+  public void traversesIncomingEdges() {
+    assertEquals(
+        ImmutableSet.of("A", "B", "C", "D", "G"),
+        traverse(Direction.INCOMING, Integer.MAX_VALUE, null, "G"));
+    assertEquals(ImmutableSet.of("C", "D", "G"), traverse(Direction.INCOMING, 1, null, "G"));
+  }
+
+  @Test
+  public void doesNotLeaveUniverse() {
+    BitSet universe = ids("B", "D", "F", "G");
+    assertEquals(
+        ImmutableSet.of("B", "D", "G"),
+        traverse(Direction.INCOMING, Integer.MAX_VALUE, universe, "G", "E"));
+  }
+
+  @Test
+  public void traversesLargeLevelsInParallel() {
+    MutableDirectedGraph<Integer> mutableGraph = new MutableDirectedGraph<>();
+    int width = 5000;
+    for (int i = 0; i < width; i++) {
+      mutableGraph.addEdge(-1, i);
+      mutableGraph.addEdge(i, width + i % 7);
+    }
+    CompactDirectedGraph<Integer> wideGraph = CompactDirectedGraph.of(mutableGraph);
+    BitSet roots = new BitSet();
+    roots.set(wideGraph.getId(-1));
+
+    BitSet visited = wideGraph.traverse(roots, Integer.MAX_VALUE, Direction.OUTGOING, null);
+
+    assertEquals(width + 8, visited.cardinality());
+  }
+
+  private BitSet ids(String... nodes) {
+    BitSet ids = new BitSet();
+    for (String node : nodes) {
+      ids.set(graph.getId(node));
+    }
+    return ids;
+  }
+
+  private ImmutableSet<String> traverse(
+      Direction direction, int maxDepth, @Nullable BitSet universe, String... roots) {
+    return ImmutableSet.copyOf(
+        graph.getNodes(graph.traverse(ids(roots), maxDepth, direction, universe)));
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ClasspathJarIndexCacheTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void reusesIndexesOfUnchangedJars() throws IOException {
+    ClasspathJarIndexCache cache = new ClasspathJarIndexCache();
+    Path jar = writeJar("a.jar", "A.class");
+    MappedJarIndex index = cache.acquire(jar).get();
+    index.release();
+
+    assertSame(index, cache.acquire(jar).get());
+    index.release();
+    assertTrue(index.isMapped());
+  }
+
+  @Test
+  public void unmapsIndexesOfRewrittenJars() throws IOException {
+    ClasspathJarIndexCache cache = new ClasspathJarIndexCache();
+    Path jar = writeJar("a.jar", "A.class");
+    MappedJarIndex index = cache.acquire(jar).get();
+    index.release();
+
+    writeJar("a.jar", "A.class", "B.class");
+    MappedJarIndex rewritten = cache.acquire(jar).get();
+    assertNotSame(index, rewritten);
+    assertFalse(index.isMapped());
+    assertTrue(rewritten.getEntry("B.class").isPresent());
+  }
+
+  @Test
+  public void unmapsIndexesOfDeletedJars() throws IOException {
+    ClasspathJarIndexCache cache = new ClasspathJarIndexCache();
+    Path jar = writeJar("a.jar", "A.class");
+    MappedJarIndex index = cache.acquire(jar).get();
+    index.release();
+
+    Files.delete(jar);
+    try {
+      cache.acquire(jar);
+      fail("The jar should be gone.");
+    } catch (NoSuchFileException e) {
+      // Expected.
+    }
+    assertFalse(index.isMapped());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedIndexesOnceTheyAreReleased() throws IOException {
+    ClasspathJarIndexCache cache = new ClasspathJarIndexCache(1);
+    MappedJarIndex first = cache.acquire(writeJar("a.jar", "A.class")).get();
+    MappedJarIndex second = cache.acquire(writeJar("b.jar", "B.class")).get();
+    assertEquals(1, cache.size());
+
+    // A compilation still reads the first jar.
+    assertTrue(first.isMapped());
+    assertEquals(
+        "A.class",
+        new String(first.read(first.getEntry("A.class").get()), StandardCharsets.UTF_8));
+
+    first.release();
+    assertFalse(first.isMapped());
+    second.release();
+    assertTrue(second.isMapped());
+  }
+
+  private Path writeJar(String name, String... entries) throws IOException {
+    Path jar = tmp.getRoot().resolve(name);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(entry.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
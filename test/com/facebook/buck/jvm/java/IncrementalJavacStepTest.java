@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
+import com.facebook.buck.jvm.java.abi.source.api.SourceOnlyAbiRuleInfoFactory;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.annotation.Nullable;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalJavacStepTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+  private ProjectFilesystem filesystem;
+  private RecordingJavac javac;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    javac = new RecordingJavac();
+  }
+
+  @Test
+  public void onlyRecompilesChangedSourcesWhenAbisDoNotChange() throws Exception {
+    writeSource("A", "package p; public class A { public int a() { return 1; } }");
+    writeSource("B", "package p; class B { long b() { return new A().a(); } }");
+    writeSource("C", "package p; class C {}");
+    assertCompiles(ImmutableList.of("A", "B", "C"));
+
+    writeSource("A", "package p; public class A { public int a() { return 2; } }");
+    assertCompiles(ImmutableList.of("A"));
+
+    assertCompiles(ImmutableList.of());
+    assertTrue(Files.exists(getClassFile("p/B")));
+    assertTrue(Files.exists(getClassFile("p/C")));
+  }
+
+  @Test
+  public void recompilesSourcesThatReferToChangedAbis() throws Exception {
+    writeSource("A", "package p; public class A { public int a() { return 1; } }");
+    writeSource("B", "package p; class B { long b() { return new A().a(); } }");
+    writeSource("C", "package p; class C {}");
+    assertCompiles(ImmutableList.of("A", "B", "C"));
+
+    writeSource("A", "package p; public class A { public long a() { return 1; } }");
+    assertCompiles(ImmutableList.of("B"));
+  }
+
+  @Test
+  public void recompilesSourcesThatReferToSubtypesOfChangedAbis() throws Exception {
+    writeSource("A", "package p; public class A { public int a() { return 1; } }");
+    writeSource("Sub", "package p; public class Sub extends A {}");
+    writeSource("B", "package p; class B { long b() { return new Sub().a(); } }");
+    assertCompiles(ImmutableList.of("A", "B", "Sub"));
+
+    writeSource("A", "package p; public class A { public long a() { return 1; } }");
+    assertCompiles(ImmutableList.of("B", "Sub"));
+  }
+
+  @Test
+  public void recompilesEverySourceWhenAConstantChanges() throws Exception {
+    writeSource("A", "package p; public class A { public static final int A = 1; }");
+    writeSource("B", "package p; class B { int b() { return A.A; } }");
+    writeSource("C", "package p; class C {}");
+    assertCompiles(ImmutableList.of("A", "B", "C"));
+
+    writeSource("A", "package p; public class A { public static final int A = 2; }");
+    assertCompiles(ImmutableList.of("A", "B", "C"));
+  }
+
+  @Test
+  public void removesClassesOfDeletedSources() throws Exception {
+    writeSource("A", "package p; public class A {}");
+    writeSource("B", "package p; class B {}");
+    assertCompiles(ImmutableList.of("A", "B"));
+
+    Files.delete(tmp.getRoot().resolve(getSourcePath("B")));
+    assertCompiles(ImmutableList.of());
+    assertTrue(Files.exists(getClassFile("p/A")));
+    assertFalse(Files.exists(getClassFile("p/B")));
+  }
+
+  @Test
+  public void recompilesSourcesThatReferToClassesOfDeletedSources() throws Exception {
+    writeSource("A", "package p; public class A {}");
+    writeSource("B", "package p; class B { Object b() { return new A(); } }");
+    writeSource("C", "package p; class C {}");
+    assertCompiles(ImmutableList.of("A", "B", "C"));
+
+    Files.delete(tmp.getRoot().resolve(getSourcePath("A")));
+    assertFalse(compile(null).isSuccess());
+    assertEquals(
+        ImmutableList.of(getSourcePath("B").toString()),
+        javac.lastSources.orElse(ImmutableList.of()));
+  }
+
+  @Test
+  public void recompilesSourcesThatNewClassesMayShadow() throws Exception {
+    writeSource(
+        "B",
+        "package p; import java.util.*; class B { Object b() { return new ArrayList<B>(); } }");
+    assertCompiles(ImmutableList.of("B"));
+
+    writeSource("ArrayList", "package p; public class ArrayList<T> {}");
+    assertCompiles(ImmutableList.of("B"));
+    assertTrue(
+        ClassFileSummary.read(Files.readAllBytes(getClassFile("p/B")))
+            .getReferences()
+            .contains("p/ArrayList"));
+  }
+
+  @Test
+  public void onlyRecompilesSourcesThatUseChangedClassesOfDependencies() throws Exception {
+    Path dependency = writeJar("public class Dep { public int a() { return 1; } }");
+    writeSource("A", "package p; class A { long a() { return new dep.Dep().a(); } }");
+    writeSource("B", "package p; class B { Runnable b() { return null; } }");
+    assertCompiles(ImmutableList.of("A", "B"), dependency);
+
+    writeJar("public class Dep { public int a() { return 2; } }");
+    assertCompiles(ImmutableList.of(), dependency);
+
+    writeJar("public class Dep { public long a() { return 2; } }");
+    assertCompiles(ImmutableList.of("A"), dependency);
+  }
+
+  private void assertCompiles(ImmutableList<String> expectedSources) throws Exception {
+    assertCompiles(expectedSources, null);
+  }
+
+  /**
+   * Compiles the sources that exist like {@link #compile} does, and checks which sources javac was
+   * last invoked with.
+   */
+  private void assertCompiles(ImmutableList<String> expectedSources, @Nullable Path dependency)
+      throws Exception {
+    StepExecutionResult result = compile(dependency);
+
+    assertTrue(result.getStderr().orElse(""), result.isSuccess());
+    assertEquals(
+        expectedSources.stream()
+            .map(source -> getSourcePath(source).toString())
+            .collect(ImmutableList.toImmutableList()),
+        javac.lastSources.orElse(ImmutableList.of()));
+    for (Path source : filesystem.getFilesUnderPath(Paths.get("src"))) {
+      String name = source.getFileName().toString().replace(".java", "");
+      assertTrue(name, Files.exists(getClassFile("p/" + name)));
+    }
+  }
+
+  /** Compiles the sources that exist after cleaning the output directories like a build does. */
+  private StepExecutionResult compile(@Nullable Path dependency) throws Exception {
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .setScratchPaths(target, filesystem)
+            .setSourceFilePaths(
+                ImmutableSortedSet.copyOf(filesystem.getFilesUnderPath(Paths.get("src"))))
+            .setClasspathEntries(
+                dependency == null ? ImmutableSortedSet.of() : ImmutableSortedSet.of(dependency))
+            .setShouldTrackClassUsage(dependency != null)
+            .build();
+    CompilerOutputPaths outputPaths = parameters.getOutputPaths();
+    MostFiles.deleteRecursivelyIfExists(filesystem.resolve(outputPaths.getClassesDir()));
+    MostFiles.deleteRecursivelyIfExists(filesystem.resolve(outputPaths.getOutputJarDirPath()));
+    filesystem.mkdirs(outputPaths.getClassesDir());
+    filesystem.mkdirs(outputPaths.getOutputJarDirPath());
+    filesystem.mkdirs(outputPaths.getPathToSourcesList().getParent());
+    filesystem.mkdirs(outputPaths.getWorkingDirectory());
+
+    SourcePathResolverAdapter resolver = new TestActionGraphBuilder().getSourcePathResolver();
+    IncrementalJavacStep step =
+        new IncrementalJavacStep(
+            javac,
+            JavacOptions.builder()
+                .setLanguageLevelOptions(
+                    JavacLanguageLevelOptions.builder()
+                        .setSourceLevel("8")
+                        .setTargetLevel("8")
+                        .build())
+                .build(),
+            target,
+            resolver,
+            filesystem,
+            parameters);
+    javac.lastSources = Optional.empty();
+    ExecutionContext context = TestExecutionContext.newInstance();
+    return step.execute(context);
+  }
+
+  private void writeSource(String name, String source) throws IOException {
+    Path path = tmp.getRoot().resolve(getSourcePath(name));
+    Files.createDirectories(path.getParent());
+    Files.write(path, source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Path writeJar(String depSource) throws IOException {
+    Path sourceDir = tmp.getRoot().resolve("dep-src");
+    Path classes = tmp.getRoot().resolve("dep-classes");
+    MostFiles.deleteRecursivelyIfExists(sourceDir);
+    MostFiles.deleteRecursivelyIfExists(classes);
+    Files.createDirectories(sourceDir.resolve("dep"));
+    Files.createDirectories(classes);
+    Path source = sourceDir.resolve("dep/Dep.java");
+    Files.write(source, ("package dep; " + depSource).getBytes(StandardCharsets.UTF_8));
+    assertEquals(
+        0,
+        ToolProvider.getSystemJavaCompiler()
+            .run(null, null, null, "-d", classes.toString(), source.toString()));
+
+    Path jar = tmp.getRoot().resolve("dep.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("dep/Dep.class"));
+      out.write(Files.readAllBytes(classes.resolve("dep/Dep.class")));
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private Path getClassFile(String className) {
+    return filesystem
+        .resolve(CompilerOutputPaths.getClassesDir(target, filesystem))
+        .resolve(className + ".class");
+  }
+
+  private static Path getSourcePath(String name) {
+    return Paths.get("src/p/" + name + ".java");
+  }
+
+  /** Records the sources javac was last invoked with. */
+  private static class RecordingJavac extends JdkProvidedInMemoryJavac {
+    private Optional<List<String>> lastSources = Optional.empty();
+
+    @Override
+    public Invocation newBuildInvocation(
+        JavacExecutionContext context,
+        SourcePathResolverAdapter resolver,
+        BuildTarget invokingRule,
+        ImmutableList<String> options,
+        ImmutableList<JavacPluginJsr199Fields> annotationProcessors,
+        ImmutableList<JavacPluginJsr199Fields> javacPlugins,
+        ImmutableSortedSet<Path> javaSourceFilePaths,
+        Path pathToSrcsList,
+        Path workingDirectory,
+        boolean trackClassUsage,
+        boolean trackJavacPhaseEvents,
+        @Nullable JarParameters abiJarParameters,
+        @Nullable JarParameters libraryJarParameters,
+        AbiGenerationMode abiGenerationMode,
+        AbiGenerationMode abiCompatibilityMode,
+        @Nullable SourceOnlyAbiRuleInfoFactory ruleInfoFactory) {
+      List<String> sources = new ArrayList<>();
+      javaSourceFilePaths.forEach(path -> sources.add(path.toString()));
+      lastSources = Optional.of(sources);
+      return super.newBuildInvocation(
+          context,
+          resolver,
+          invokingRule,
+          options,
+          annotationProcessors,
+          javacPlugins,
+          javaSourceFilePaths,
+          pathToSrcsList,
+          workingDirectory,
+          trackClassUsage,
+          trackJavacPhaseEvents,
+          abiJarParameters,
+          libraryJarParameters,
+          abiGenerationMode,
+          abiCompatibilityMode,
+          ruleInfoFactory);
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IndexedClasspathFileManagerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private JavaCompiler compiler;
+  private ClasspathJarIndexCache indexCache;
+
+  @Before
+  public void setUp() {
+    compiler = SynchronizedToolProvider.getSystemJavaCompiler();
+    indexCache = new ClasspathJarIndexCache();
+  }
+
+  @Test
+  public void compilesAgainstIndexedJars() throws IOException {
+    Path depJar = compileToJar("dep.jar", "dep/Dep.java", "package dep; public class Dep {}");
+    Path source = writeSource("use/Use.java", "package use; class Use { dep.Dep dep; }");
+
+    try (IndexedClasspathFileManager fileManager = newFileManager()) {
+      assertTrue(compile(fileManager, source, depJar.toString()));
+
+      Iterable<JavaFileObject> listed =
+          fileManager.list(
+              StandardLocation.CLASS_PATH,
+              "dep",
+              ImmutableSet.of(JavaFileObject.Kind.CLASS),
+              false);
+      JavaFileObject dep = listed.iterator().next();
+      assertTrue(dep instanceof IndexedJarFileObject);
+      assertEquals("dep.Dep", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, dep));
+      assertEquals("jar:" + depJar.toUri() + "!/dep/Dep.class", dep.toUri().toString());
+    }
+  }
+
+  @Test
+  public void entriesWithCharactersThatMustBeQuotedHaveValidUris() throws IOException {
+    String name = "res/a b%\u00fc#.txt";
+    Path jar = tmp.getRoot().resolve("res.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry(name));
+      out.closeEntry();
+    }
+
+    try (IndexedClasspathFileManager fileManager = newFileManager()) {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(jar.toFile()));
+      JavaFileObject resource =
+          fileManager
+              .list(
+                  StandardLocation.CLASS_PATH,
+                  "res",
+                  ImmutableSet.of(JavaFileObject.Kind.OTHER),
+                  false)
+              .iterator()
+              .next();
+      assertTrue(resource instanceof IndexedJarFileObject);
+      assertEquals(
+          "jar:" + jar.toUri() + "!/res/a%20b%25\u00fc%23.txt", resource.toUri().toString());
+      assertEquals(jar.toUri() + "!/" + name, resource.toUri().getSchemeSpecificPart());
+    }
+  }
+
+  @Test
+  public void firstJarOnTheClasspathWins() throws IOException {
+    Path first =
+        compileToJar(
+            "first.jar", "dep/Dep.java", "package dep; public class Dep { public int a; }");
+    Path second =
+        compileToJar(
+            "second.jar", "dep/Dep.java", "package dep; public class Dep { public int b; }");
+    Path source =
+        writeSource("use/Use.java", "package use; class Use { int a = new dep.Dep().a; }");
+
+    try (IndexedClasspathFileManager fileManager = newFileManager()) {
+      assertTrue(compile(fileManager, source, first + File.pathSeparator + second));
+    }
+  }
+
+  @Test
+  public void classpathsWithDirectoriesAreLeftToJavac() throws IOException {
+    Path classes = tmp.newFolder("classes");
+    Path dep = writeSource("dep/Dep.java", "package dep; public class Dep {}");
+    assertTrue(compile(newFileManager(), dep, "", "-d", classes.toString()));
+    Path source = writeSource("use/Use.java", "package use; class Use { dep.Dep dep; }");
+
+    try (IndexedClasspathFileManager fileManager = newFileManager()) {
+      assertTrue(compile(fileManager, source, classes.toString()));
+
+      JavaFileObject listed =
+          fileManager
+              .list(
+                  StandardLocation.CLASS_PATH,
+                  "dep",
+                  ImmutableSet.of(JavaFileObject.Kind.CLASS),
+                  false)
+              .iterator()
+              .next();
+      assertFalse(listed instanceof IndexedJarFileObject);
+    }
+  }
+
+  private IndexedClasspathFileManager newFileManager() {
+    return new IndexedClasspathFileManager(
+        compiler.getStandardFileManager(null, null, null),
+        indexCache,
+        ImmutableSet.of(StandardLocation.CLASS_PATH));
+  }
+
+  private boolean compile(
+      StandardJavaFileManager fileManager, Path source, String classpath, String... extraOptions)
+      throws IOException {
+    Path output = Files.createTempDirectory(tmp.getRoot(), "out");
+    ImmutableList<String> options =
+        ImmutableList.<String>builder()
+            .add("-classpath", classpath, "-d", output.toString())
+            .add(extraOptions)
+            .build();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    boolean success =
+        compiler
+            .getTask(
+                null,
+                fileManager,
+                diagnostics,
+                options,
+                null,
+                fileManager.getJavaFileObjects(source.toFile()))
+            .call();
+    assertEquals(ImmutableList.of(), diagnostics.getDiagnostics());
+    return success;
+  }
+
+  private Path compileToJar(String jarName, String sourceName, String source) throws IOException {
+    Path classes = Files.createTempDirectory(tmp.getRoot(), "classes");
+    Path sourceFile = Files.createTempDirectory(tmp.getRoot(), "src").resolve(sourceName);
+    Files.createDirectories(sourceFile.getParent());
+    Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+    assertTrue(
+        compile(
+            compiler.getStandardFileManager(null, null, null),
+            sourceFile,
+            "",
+            "-d",
+            classes.toString()));
+
+    Path jar = tmp.getRoot().resolve(jarName);
+    String className = sourceName.replace(".java", ".class");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry(className));
+      out.write(Files.readAllBytes(classes.resolve(className)));
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private Path writeSource(String name, String source) throws IOException {
+    Path path = Files.createTempDirectory(tmp.getRoot(), "src").resolve(name);
+    Files.createDirectories(path.getParent());
+    Files.write(path, source.getBytes(StandardCharsets.UTF_8));
+    return path;
+  }
+}
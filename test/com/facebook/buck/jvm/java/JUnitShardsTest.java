@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JUnitShardsTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void balancesShardsByDuration() {
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("Slow"), ImmutableSet.of("Medium", "Fast", "Fastest")),
+        JUnitShards.partition(
+            ImmutableList.of("Fast", "Fastest", "Medium", "Slow"),
+            2,
+            ImmutableMap.of("Slow", 100L, "Medium", 60L, "Fast", 30L, "Fastest", 10L)));
+  }
+
+  @Test
+  public void expectsClassesThatHaveNotRunToTakeTheAverageDuration() {
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("New", "C", "B")),
+        JUnitShards.partition(
+            ImmutableList.of("A", "B", "C", "New"),
+            2,
+            ImmutableMap.of("A", 90L, "B", 10L, "C", 20L)));
+  }
+
+  @Test
+  public void doesNotCreateEmptyShards() {
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B")),
+        JUnitShards.partition(ImmutableList.of("A", "B"), 8, ImmutableMap.of()));
+  }
+
+  @Test
+  public void readsDurationsOfPreviousResults() throws IOException {
+    Files.write(
+        tmp.getRoot().resolve("com.example.ATest.xml"),
+        ("<testcase name=\"com.example.ATest\">"
+                + "<test name=\"a\" time=\"12\" type=\"SUCCESS\"/>"
+                + "<test name=\"b\" time=\"30\" type=\"SUCCESS\"/>"
+                + "</testcase>")
+            .getBytes(StandardCharsets.UTF_8));
+    Files.write(
+        tmp.getRoot().resolve("com.example.BrokenTest.xml"),
+        "<testcase".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(
+        ImmutableMap.of("com.example.ATest", 42L),
+        JUnitShards.readDurations(
+            tmp.getRoot(),
+            ImmutableList.of(
+                "com.example.ATest", "com.example.BrokenTest", "com.example.NewTest")));
+  }
+}
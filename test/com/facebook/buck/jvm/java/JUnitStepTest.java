@@ -19,6 +19,7 @@ package com.facebook.buck.jvm.java;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.model.BuildId;
@@ -29,13 +30,19 @@ import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.util.FakeProcess;
+import com.facebook.buck.util.FakeProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.env.BuckClasspath;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -235,6 +242,65 @@ public class JUnitStepTest {
     assertThat(observedEnvironment, hasEntry("FOO", "BAR"));
   }
 
+  @Test
+  public void warmJvmGetsTheEnvironmentOfANewJvm() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path classpathFile = filesystem.resolve("classpath-file");
+    filesystem.writeContentsToPath("", classpathFile);
+
+    JUnitJvmArgs args =
+        ImmutableJUnitJvmArgs.builder()
+            .setBuildId(new BuildId("pretend-build-id"))
+            .setBuckModuleBaseSourceCodePath(Paths.get("module/submodule"))
+            .setTargetJavaVersion(8)
+            .setClasspathFile(classpathFile)
+            .setTestRunnerClasspath(Paths.get("ant-out/classes/junit"))
+            .setExtraJvmArgs(ImmutableList.of())
+            .setTestType(TestType.JUNIT)
+            .setDirectoryForTestResults(Paths.get("buck-out/gen/theresults/"))
+            .addAllTestClasses(ImmutableList.of())
+            .build();
+
+    JUnitStep junit =
+        new JUnitStep(
+            filesystem,
+            /* nativeLibsEnvironment */ ImmutableMap.of("LD_LIBRARY_PATH", "/native"),
+            /* testRuleTimeoutMs */ Optional.empty(),
+            /* testCaseTimeoutMs */ Optional.empty(),
+            ImmutableMap.of("FOO", "BAR"),
+            ImmutableList.of("/foo/bar/custom/java"),
+            args,
+            Optional.of(new WarmTestJvmPool()),
+            /* maxIdleWarmJvms */ 1,
+            /* warmJvmSharedClasspath */ ImmutableList.of());
+
+    // The JVM exits right away, so that it never connects.
+    FakeProcess jvm = new FakeProcess(1);
+    jvm.waitFor();
+    List<ProcessExecutorParams> launched = new ArrayList<>();
+    FakeProcessExecutor executor =
+        new FakeProcessExecutor(
+            params -> {
+              launched.add(params);
+              return jvm;
+            },
+            new TestConsole());
+    ExecutionContext context =
+        TestExecutionContext.newBuilder().setProcessExecutor(executor).build();
+    try {
+      junit.execute(context);
+      fail("The warm JVM should not have connected.");
+    } catch (IOException e) {
+      assertEquals("Warm test JVM did not connect.", e.getMessage());
+    }
+
+    ImmutableMap<String, String> environment =
+        Iterables.getOnlyElement(launched).getEnvironment().get();
+    assertThat(environment, hasEntry(BuckClasspath.TEST_ENV_VAR_NAME, classpathFile.toString()));
+    assertThat(environment, hasEntry("FOO", "BAR"));
+    assertThat(environment, hasEntry("LD_LIBRARY_PATH", "/native"));
+  }
+
   @Test
   public void ensureThatDebugFlagCausesJavaDebugCommandFlagToBeAdded() {
     String testClass1 = "com.facebook.buck.shell.JUnitCommandTest";
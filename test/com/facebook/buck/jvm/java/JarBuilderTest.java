@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -27,6 +28,7 @@ import com.facebook.buck.util.zip.JarEntrySupplier;
 import com.facebook.buck.util.zip.ZipConstants;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -45,6 +47,9 @@ import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.annotation.Nullable;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -244,6 +249,53 @@ public class JarBuilderTest {
     }
   }
 
+  @Test
+  public void testCompressingInParallelProducesTheSameJar() throws IOException {
+    File sequential = temporaryFolder.newFile();
+    File parallel = temporaryFolder.newFile();
+    for (int threads : new int[] {1, 4}) {
+      JarBuilder jarBuilder = new JarBuilder().setCompressionThreads(threads);
+      for (int i = 0; i < 100; i++) {
+        addEntry(jarBuilder, "dir" + (i % 7) + "/File" + i + ".txt", repeat("contents" + i, i));
+      }
+      jarBuilder.createJarFile((threads == 1 ? sequential : parallel).toPath());
+    }
+
+    assertArrayEquals(
+        Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+  }
+
+  @Test
+  public void testReusesPrecompressedEntriesOfInputJars() throws IOException {
+    // Entries deflated without compression are larger than their contents, so recompressing them
+    // would shrink them.
+    File input = temporaryFolder.newFile();
+    String contents = repeat("contents", 1000);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(input.toPath()))) {
+      out.setLevel(Deflater.NO_COMPRESSION);
+      out.putNextEntry(new ZipEntry("foo/Foo.txt"));
+      out.write(contents.getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+
+    for (boolean reuse : new boolean[] {false, true}) {
+      File output = temporaryFolder.newFile();
+      new JarBuilder()
+          .setEntriesToJar(ImmutableList.of(input.toPath()))
+          .setShouldReusePrecompressedEntries(reuse)
+          .createJarFile(output.toPath());
+
+      try (JarFile jarFile = new JarFile(output)) {
+        JarEntry entry = jarFile.getJarEntry("foo/Foo.txt");
+        assertEquals(
+            contents,
+            new String(
+                ByteStreams.toByteArray(jarFile.getInputStream(entry)), StandardCharsets.UTF_8));
+        assertEquals(reuse, entry.getCompressedSize() > entry.getSize());
+      }
+    }
+  }
+
   @Test
   public void testDoesNotLeakJarFileHandles() throws Exception {
     File toTest = temporaryFolder.newFile();
@@ -286,6 +338,14 @@ public class JarBuilderTest {
     assertThat(entries.keySet(), Matchers.contains("After"));
   }
 
+  private static String repeat(String string, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(string);
+    }
+    return builder.toString();
+  }
+
   private static class TestJarEntryContainer implements JarEntryContainer {
     @Nullable private Manifest manifest;
     private final List<JarEntrySupplier> suppliers = new ArrayList<>();
@@ -98,7 +98,8 @@ public class JavaBinaryTest {
                 ImmutableSet.of(),
                 ImmutableSet.of(),
                 /* cache */ true,
-                Level.INFO));
+                Level.INFO,
+                /* jarCompressionThreads */ 1));
 
     // Strip the trailing "." from the absolute path to the current directory.
     final String basePath = new File(".").getAbsolutePath().replaceFirst("\\.$", "");
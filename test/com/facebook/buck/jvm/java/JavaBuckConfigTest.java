@@ -441,6 +441,27 @@ public class JavaBuckConfigTest {
     assertThat(config.getAbiGenerationMode(), Matchers.equalTo(AbiGenerationMode.CLASS));
   }
 
+  @Test
+  public void classStubCacheSizeIsReadFromConfig() {
+    assertEquals(
+        64 * 1024 * 1024,
+        FakeBuckConfig.builder().build().getView(JavaBuckConfig.class).getClassStubCacheSize());
+    assertEquals(
+        128 * 1024 * 1024,
+        FakeBuckConfig.builder()
+            .setSections("[java]", "class_stub_cache_size = 128MB")
+            .build()
+            .getView(JavaBuckConfig.class)
+            .getClassStubCacheSize());
+    assertEquals(
+        0,
+        FakeBuckConfig.builder()
+            .setSections("[java]", "class_stub_cache_size = 0")
+            .build()
+            .getView(JavaBuckConfig.class)
+            .getClassStubCacheSize());
+  }
+
   private void assertOptionKeyAbsent(JavacOptions options, String key) {
     OptionAccumulator optionsConsumer = visitOptions(options);
     assertThat(optionsConsumer.keyVals, not(hasKey(key)));
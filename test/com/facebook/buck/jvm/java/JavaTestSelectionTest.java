@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JavaTestSelectionTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private Path classes;
+  private Path results;
+  private Path state;
+  private String runKey;
+
+  @Before
+  public void setUp() throws IOException {
+    classes = tmp.newFolder("classes");
+    results = tmp.newFolder("results");
+    state = tmp.getRoot().resolve("state");
+    write(classes.resolve("com/example/Lib.class"), "lib");
+    runKey = getRunKey(ImmutableList.of("-Xmx1g"));
+  }
+
+  @Test
+  public void skipsPassingTestClassesUntilAClassTheyUsedChanges() throws IOException {
+    writeResults("com.example.ATest", "SUCCESS");
+    writeUsedClasses("com.example.ATest", "com/example/Lib.class");
+    JavaTestSelection.recordResults(state, results, runKey, ImmutableList.of("com.example.ATest"));
+    assertEquals(
+        ImmutableSet.of("com.example.ATest"),
+        JavaTestSelection.findUnchangedTestClasses(
+            state, runKey, ImmutableList.of("com.example.ATest", "com.example.NewTest")));
+
+    write(classes.resolve("com/example/Lib.class"), "changed lib");
+    assertEquals(
+        ImmutableSet.of(),
+        JavaTestSelection.findUnchangedTestClasses(
+            state, runKey, ImmutableList.of("com.example.ATest")));
+  }
+
+  @Test
+  public void runsTestClassesAgainWhenTheirVmArgsChange() throws IOException {
+    writeResults("com.example.ATest", "SUCCESS");
+    writeUsedClasses("com.example.ATest", "com/example/Lib.class");
+    JavaTestSelection.recordResults(state, results, runKey, ImmutableList.of("com.example.ATest"));
+
+    assertEquals(
+        ImmutableSet.of(),
+        JavaTestSelection.findUnchangedTestClasses(
+            state, getRunKey(ImmutableList.of("-Xmx2g")), ImmutableList.of("com.example.ATest")));
+    assertEquals(
+        ImmutableSet.of("com.example.ATest"),
+        JavaTestSelection.findUnchangedTestClasses(
+            state, getRunKey(ImmutableList.of("-Xmx1g")), ImmutableList.of("com.example.ATest")));
+  }
+
+  @Test
+  public void runKeyDependsOnTheEnvironmentAndTheJavaBinary() throws IOException {
+    Path java = tmp.newFile("java");
+    write(java, "java");
+    String key =
+        JavaTestSelection.getRunKey(
+            ImmutableList.of("java"),
+            ImmutableMap.of("A", "1"),
+            Optional.of(java),
+            ImmutableList.of());
+    assertEquals(
+        key,
+        JavaTestSelection.getRunKey(
+            ImmutableList.of("java"),
+            ImmutableMap.of("A", "1"),
+            Optional.of(java),
+            ImmutableList.of()));
+    assertNotEquals(
+        key,
+        JavaTestSelection.getRunKey(
+            ImmutableList.of("java"),
+            ImmutableMap.of("A", "2"),
+            Optional.of(java),
+            ImmutableList.of()));
+
+    write(java, "another java");
+    assertNotEquals(
+        key,
+        JavaTestSelection.getRunKey(
+            ImmutableList.of("java"),
+            ImmutableMap.of("A", "1"),
+            Optional.of(java),
+            ImmutableList.of()));
+  }
+
+  @Test
+  public void runKeyDependsOnTheResourcesOfTheTest() throws IOException {
+    Path resources = tmp.newFolder("resources");
+    write(resources.resolve("config.properties"), "a=1");
+    Path jar = tmp.getRoot().resolve("test.jar");
+    writeJar(jar, "data.txt", "data");
+    ImmutableList<Path> ownClasspath = ImmutableList.of(resources, jar);
+    String key = getRunKeyWithResources(ownClasspath);
+    assertEquals(key, getRunKeyWithResources(ownClasspath));
+
+    write(classes.resolve("com/example/Lib.class"), "changed lib");
+    Files.copy(classes.resolve("com/example/Lib.class"), resources.resolve("Lib.class"));
+    assertEquals(key, getRunKeyWithResources(ownClasspath));
+
+    write(resources.resolve("config.properties"), "a=2");
+    String changedKey = getRunKeyWithResources(ownClasspath);
+    assertNotEquals(key, changedKey);
+
+    writeJar(jar, "data.txt", "other data");
+    assertNotEquals(changedKey, getRunKeyWithResources(ownClasspath));
+  }
+
+  @Test
+  public void forgetsTestClassesThatFailed() throws IOException {
+    writeResults("com.example.ATest", "SUCCESS");
+    writeUsedClasses("com.example.ATest", "com/example/Lib.class");
+    JavaTestSelection.recordResults(state, results, runKey, ImmutableList.of("com.example.ATest"));
+
+    writeResults("com.example.ATest", "FAILURE");
+    writeUsedClasses("com.example.ATest", "com/example/Lib.class");
+    JavaTestSelection.recordResults(state, results, runKey, ImmutableList.of("com.example.ATest"));
+    assertEquals(
+        ImmutableSet.of(),
+        JavaTestSelection.findUnchangedTestClasses(
+            state, runKey, ImmutableList.of("com.example.ATest")));
+  }
+
+  @Test
+  public void restoresResultsOfSkippedTestClasses() throws IOException {
+    writeResults("com.example.ATest", "SUCCESS");
+    writeUsedClasses("com.example.ATest", "com/example/Lib.class");
+    JavaTestSelection.recordResults(state, results, runKey, ImmutableList.of("com.example.ATest"));
+    Files.delete(results.resolve("com.example.ATest.xml"));
+
+    JavaTestSelection.restoreResults(state, results, ImmutableList.of("com.example.ATest"));
+    assertTrue(Files.isRegularFile(results.resolve("com.example.ATest.xml")));
+  }
+
+  private static String getRunKey(ImmutableList<String> vmArgs) {
+    return JavaTestSelection.getRunKey(
+        ImmutableList.<String>builder().add("java").addAll(vmArgs).add("Runner").build(),
+        ImmutableMap.of(),
+        Optional.empty(),
+        ImmutableList.of());
+  }
+
+  private static String getRunKeyWithResources(ImmutableList<Path> ownClasspathEntries) {
+    return JavaTestSelection.getRunKey(
+        ImmutableList.of("java"), ImmutableMap.of(), Optional.empty(), ownClasspathEntries);
+  }
+
+  private void writeResults(String testClass, String type) throws IOException {
+    write(
+        results.resolve(testClass + ".xml"),
+        "<testcase name=\""
+            + testClass
+            + "\"><test name=\"a\" time=\"1\" type=\""
+            + type
+            + "\"/></testcase>");
+  }
+
+  private void writeUsedClasses(String testClass, String classFile) throws IOException {
+    write(results.resolve(testClass + ".used-classes"), classes + "\t" + classFile + "\n");
+  }
+
+  private static void writeJar(Path jar, String name, String contents) throws IOException {
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("com/example/ATest.class"));
+      out.write("test".getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new ZipEntry(name));
+      out.write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static void write(Path path, String contents) throws IOException {
+    Files.createDirectories(path.getParent());
+    Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+  }
+}
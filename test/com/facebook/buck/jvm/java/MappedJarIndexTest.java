@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class MappedJarIndexTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void indexesEntriesByDirectory() throws IOException {
+    MappedJarIndex index = openJar();
+
+    assertEquals(
+        ImmutableList.of("com/example/Foo.class", "com/example/Foo$Bar.class"),
+        names(index.getEntries("com/example", false)));
+    assertEquals(
+        ImmutableList.of(
+            "com/example/Foo.class", "com/example/Foo$Bar.class", "com/example/sub/Baz.class"),
+        names(index.getEntries("com/example", true)));
+    assertEquals(ImmutableList.of("Top.class"), names(index.getEntries("", false)));
+    assertEquals(ImmutableList.of(), names(index.getEntries("com", false)));
+  }
+
+  @Test
+  public void readsStoredAndDeflatedEntries() throws IOException {
+    MappedJarIndex index = openJar();
+
+    assertArrayEquals(
+        contents("com/example/Foo.class"),
+        index.read(index.getEntry("com/example/Foo.class").get()));
+    assertArrayEquals(
+        contents("com/example/Foo$Bar.class"),
+        index.read(index.getEntry("com/example/Foo$Bar.class").get()));
+    assertFalse(index.getEntry("com/example/Missing.class").isPresent());
+  }
+
+  @Test(expected = IOException.class)
+  public void filesThatAreNotJarsCannotBeIndexed() throws IOException {
+    Path notAJar = tmp.newFile("not-a.jar");
+    Files.write(notAJar, new byte[100]);
+    MappedJarIndex.open(notAJar, ArchiveStamp.read(notAJar));
+  }
+
+  private MappedJarIndex openJar() throws IOException {
+    Path jar = tmp.getRoot().resolve("lib.jar");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("com/"));
+      out.putNextEntry(new ZipEntry("com/example/"));
+      writeDeflated(out, "com/example/Foo.class");
+      writeStored(out, "com/example/Foo$Bar.class");
+      writeDeflated(out, "com/example/sub/Baz.class");
+      writeStored(out, "Top.class");
+    }
+    return MappedJarIndex.open(jar, ArchiveStamp.read(jar));
+  }
+
+  private static void writeDeflated(ZipOutputStream out, String name) throws IOException {
+    out.putNextEntry(new ZipEntry(name));
+    out.write(contents(name));
+    out.closeEntry();
+  }
+
+  private static void writeStored(ZipOutputStream out, String name) throws IOException {
+    byte[] contents = contents(name);
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(contents.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(contents);
+    out.closeEntry();
+  }
+
+  private static byte[] contents(String name) {
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      contents.append(name).append(i);
+    }
+    return contents.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static ImmutableList<String> names(ImmutableList<MappedJarIndex.Entry> entries) {
+    return entries.stream()
+        .map(MappedJarIndex.Entry::getName)
+        .collect(ImmutableList.toImmutableList());
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.concurrent.ExecutorPool;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedJUnitStepTest {
+
+  private ListeningExecutorService testPool;
+  private ExecutionContext context;
+
+  @Before
+  public void setUp() {
+    testPool = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    context =
+        TestExecutionContext.newBuilder()
+            .setExecutors(ImmutableMap.of(ExecutorPool.TEST, testPool))
+            .build();
+  }
+
+  @After
+  public void tearDown() {
+    testPool.shutdownNow();
+  }
+
+  @Test
+  public void runsShardsThatNoTestThreadStartedOnItsOwnThread() throws Exception {
+    CountDownLatch busy = new CountDownLatch(1);
+    testPool.submit(
+        () -> {
+          busy.await();
+          return null;
+        });
+    try {
+      JUnitStep first = shard(StepExecutionResults.SUCCESS);
+      JUnitStep second = shard(StepExecutionResults.SUCCESS);
+
+      StepExecutionResult result =
+          new ShardedJUnitStep(ImmutableList.of(first, second)).execute(context);
+
+      assertEquals(StepExecutionResults.SUCCESS, result);
+      verify(first, second);
+    } finally {
+      busy.countDown();
+    }
+  }
+
+  @Test
+  public void reportsTheFirstFailedShard() throws Exception {
+    JUnitStep first = shard(StepExecutionResults.SUCCESS);
+    JUnitStep second = shard(StepExecutionResults.ERROR);
+    JUnitStep third = shard(StepExecutionResults.SUCCESS);
+
+    StepExecutionResult result =
+        new ShardedJUnitStep(ImmutableList.of(first, second, third)).execute(context);
+
+    assertEquals(StepExecutionResults.ERROR, result);
+    verify(first, second, third);
+  }
+
+  @Test
+  public void runsShardsOneAfterTheOtherWithoutATestPool() throws Exception {
+    JUnitStep first = shard(StepExecutionResults.SUCCESS);
+    JUnitStep second = shard(StepExecutionResults.SUCCESS);
+
+    StepExecutionResult result =
+        new ShardedJUnitStep(ImmutableList.of(first, second))
+            .execute(TestExecutionContext.newInstance());
+
+    assertEquals(StepExecutionResults.SUCCESS, result);
+    verify(first, second);
+  }
+
+  private static JUnitStep shard(StepExecutionResult result) throws Exception {
+    JUnitStep shard = createMock(JUnitStep.class);
+    expect(shard.execute(anyObject())).andReturn(result).once();
+    replay(shard);
+    return shard;
+  }
+}
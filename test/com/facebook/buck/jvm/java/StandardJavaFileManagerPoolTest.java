@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class StandardJavaFileManagerPoolTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private JavaCompiler compiler;
+  private StandardJavaFileManagerPool pool;
+
+  @Before
+  public void setUp() {
+    compiler = SynchronizedToolProvider.getSystemJavaCompiler();
+    pool = new StandardJavaFileManagerPool(2);
+  }
+
+  @Test
+  public void closedFileManagersReturnToThePool() throws IOException {
+    Path jar = tmp.newFile("dep.jar");
+    StandardJavaFileManager first = pool.acquire(compiler, classpathOptions(jar));
+    StandardJavaFileManager second = pool.acquire(compiler, classpathOptions(jar));
+    first.close();
+    first.close();
+    second.close();
+    assertEquals(2, pool.getIdleCount());
+
+    pool.acquire(compiler, classpathOptions(jar));
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void locationsAreResetWhenReturned() throws IOException {
+    File output = tmp.newFolder("classes").toFile();
+    StandardJavaFileManager fileManager = pool.acquire(compiler, ImmutableList.of());
+    fileManager.setLocation(StandardLocation.CLASS_OUTPUT, ImmutableList.of(output));
+    fileManager.close();
+
+    StandardJavaFileManager reused = pool.acquire(compiler, ImmutableList.of());
+    assertEquals(0, pool.getIdleCount());
+    assertNotEquals(
+        ImmutableList.of(output), reused.getLocation(StandardLocation.CLASS_OUTPUT));
+  }
+
+  @Test
+  public void fileManagersThatOpenedAModifiedArchiveAreDiscarded() throws IOException {
+    Path jar = tmp.newFile("dep.jar");
+    Path otherJar = tmp.newFile("other.jar");
+    StandardJavaFileManager first = pool.acquire(compiler, classpathOptions(jar));
+    StandardJavaFileManager second = pool.acquire(compiler, classpathOptions(jar));
+    first.close();
+    second.close();
+
+    Files.write(jar, new byte[] {1, 2, 3});
+
+    pool.acquire(compiler, classpathOptions(otherJar)).close();
+    assertEquals(2, pool.getIdleCount());
+    pool.acquire(compiler, classpathOptions(jar));
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void fileManagersArePooledPerBootclasspath() throws IOException {
+    Path bootJar = tmp.newFile("android.jar");
+    pool.acquire(compiler, ImmutableList.of("-bootclasspath", bootJar.toString())).close();
+
+    pool.acquire(compiler, ImmutableList.of());
+    assertEquals(1, pool.getIdleCount());
+    pool.acquire(compiler, ImmutableList.of("-bootclasspath", bootJar.toString()));
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void fileManagersArePooledPerPlatformOptions() throws IOException {
+    Path extDir = tmp.newFolder("ext");
+    pool.acquire(compiler, ImmutableList.of("--release", "8")).close();
+    pool.acquire(compiler, ImmutableList.of("-extdirs", extDir.toString())).close();
+
+    pool.acquire(compiler, ImmutableList.of());
+    assertEquals(2, pool.getIdleCount());
+    pool.acquire(compiler, ImmutableList.of("--release", "9"));
+    assertEquals(2, pool.getIdleCount());
+    pool.acquire(compiler, ImmutableList.of("-extdirs", extDir.toString(), "--release", "8"));
+    assertEquals(2, pool.getIdleCount());
+    pool.acquire(compiler, ImmutableList.of("-d", tmp.getRoot().toString(), "--release", "8"));
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void defaultCompilationAfterReleaseCompilationUsesTheCurrentPlatform()
+      throws IOException {
+    assumeTrue(compiler.isSupportedOption("--release") >= 0);
+    Path sources = tmp.newFolder("src");
+    Path output = tmp.newFolder("classes");
+
+    assertTrue(compile(sources, "A", "-d", output.toString(), "--release", "8"));
+    // List.of is not part of the Java 8 platform.
+    assertTrue(
+        compileSource(
+            sources, "B", "class B { Object o = java.util.List.of(); }", "-d", output.toString()));
+  }
+
+  @Test
+  public void reusedFileManagersUseTheOutputDirectoryOfEachCompilation() throws IOException {
+    Path sources = tmp.newFolder("src");
+    Path firstOutput = tmp.newFolder("o1");
+    Path secondOutput = tmp.newFolder("o2");
+
+    assertTrue(compile(sources, "A", "-d", firstOutput.toString()));
+    assertTrue(compile(sources, "B", "-d", secondOutput.toString()));
+    assertEquals(1, pool.getIdleCount());
+
+    assertTrue(Files.isRegularFile(firstOutput.resolve("A.class")));
+    assertTrue(Files.isRegularFile(secondOutput.resolve("B.class")));
+    assertFalse(Files.exists(sources.resolve("B.class")));
+  }
+
+  @Test
+  public void reusedFileManagersUseTheEncodingOfEachCompilation() throws IOException {
+    Path sources = tmp.newFolder("src");
+    Path output = tmp.newFolder("classes");
+
+    assertTrue(compile(sources, "A", "-d", output.toString(), "-encoding", "UTF-16BE"));
+    // Read as UTF-16BE, the ASCII source of B does not compile.
+    assertTrue(compile(sources, "B", "-d", output.toString()));
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  /** Compiles an empty class with the given options, writing its source in their encoding. */
+  private boolean compile(Path sourceDir, String className, String... options)
+      throws IOException {
+    return compileSource(sourceDir, className, "class " + className + " {}", options);
+  }
+
+  private boolean compileSource(
+      Path sourceDir, String className, String sourceCode, String... options) throws IOException {
+    ImmutableList<String> optionList = ImmutableList.copyOf(options);
+    int encoding = optionList.indexOf("-encoding");
+    Charset charset =
+        encoding >= 0 ? Charset.forName(optionList.get(encoding + 1)) : StandardCharsets.US_ASCII;
+    Path source = sourceDir.resolve(className + ".java");
+    Files.write(source, sourceCode.getBytes(charset));
+
+    try (StandardJavaFileManager fileManager = pool.acquire(compiler, optionList)) {
+      return compiler
+          .getTask(
+              null,
+              fileManager,
+              null,
+              optionList,
+              null,
+              fileManager.getJavaFileObjects(source.toFile()))
+          .call();
+    }
+  }
+
+  private static ImmutableList<String> classpathOptions(Path jar) {
+    return ImmutableList.of("-classpath", jar.toString());
+  }
+}
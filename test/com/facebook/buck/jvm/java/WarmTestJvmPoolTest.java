@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.util.DefaultProcessExecutor;
+import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WarmTestJvmPoolTest {
+
+  private ProcessExecutor executor;
+  private WarmTestJvmPool pool;
+  private ProcessExecutorParams params;
+  private ImmutableList<String> classpath;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = new DefaultProcessExecutor(new TestConsole());
+    pool = new WarmTestJvmPool();
+    String testRunnerClasses =
+        System.getProperty(
+            "buck.testrunner_classes", new File("ant-out/testrunner/classes").getAbsolutePath());
+    params =
+        ProcessExecutorParams.ofCommand(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-Dbuck.testrunner_classes=" + testRunnerClasses,
+            "-classpath",
+            testRunnerClasses,
+            "com.facebook.buck.testrunner.TestRunnerServer");
+    URI testClasses =
+        CountingRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI();
+    classpath = ImmutableList.of(Paths.get(testClasses).toString());
+  }
+
+  @Test
+  public void runsEachBatchInItsOwnClassLoader() throws Exception {
+    WarmTestJvm jvm = pool.borrow(executor, params, "");
+    ProcessExecutor.Result result = run(jvm, ImmutableMap.of("batch", "a"), "x", "3");
+    assertEquals(3, result.getExitCode());
+    assertEquals(Optional.of("a:1:x"), result.getStderr());
+    pool.release(jvm, 1);
+
+    WarmTestJvm reused = pool.borrow(executor, params, "");
+    assertSame(jvm, reused);
+    result = run(reused, ImmutableMap.of(), "y", "0");
+    assertEquals(0, result.getExitCode());
+    assertEquals(Optional.of("null:1:y"), result.getStderr());
+    pool.release(reused, 0);
+    assertEquals(0, pool.getIdleCount());
+    assertFalse(reused.isAlive());
+  }
+
+  @Test
+  public void doesNotReuseJvmsThatLoadedAnotherSharedClasspath() throws Exception {
+    WarmTestJvm jvm = pool.borrow(executor, params, "before");
+    pool.release(jvm, 2);
+
+    WarmTestJvm other = pool.borrow(executor, params, "after");
+    assertNotSame(jvm, other);
+    pool.release(other, 1);
+    assertEquals(1, pool.getIdleCount());
+    assertFalse(jvm.isAlive());
+
+    WarmTestJvm reused = pool.borrow(executor, params, "after");
+    assertSame(other, reused);
+    pool.release(reused, 0);
+  }
+
+  @Test
+  public void stopsJvmsThatTimeOut() throws Exception {
+    WarmTestJvm jvm = pool.borrow(executor, params, "");
+    ProcessExecutor.Result result =
+        jvm.run(
+            ImmutableMap.of(),
+            classpath,
+            CountingRunner.class.getName(),
+            ImmutableList.of("sleep", "0"),
+            Optional.of(100L));
+    assertTrue(result.isTimedOut());
+    assertFalse(jvm.isAlive());
+
+    pool.release(jvm, 1);
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testsCannotWriteToTheProtocol() throws Exception {
+    WarmTestJvm jvm = pool.borrow(executor, params, "");
+    ProcessExecutor.Result result = run(jvm, ImmutableMap.of(), "stdout", "0");
+    assertEquals(0, result.getExitCode());
+    assertEquals(Optional.of("null:1:stdout"), result.getStderr());
+    pool.release(jvm, 1);
+
+    WarmTestJvm reused = pool.borrow(executor, params, "");
+    assertSame(jvm, reused);
+    result = run(reused, ImmutableMap.of(), "y", "2");
+    assertEquals(2, result.getExitCode());
+    assertEquals(Optional.of("null:1:y"), result.getStderr());
+    pool.release(reused, 0);
+  }
+
+  @Test
+  public void sendsStringsLongerThanWriteUtfAllows() throws Exception {
+    String name = Strings.repeat("x", 70 * 1024);
+    WarmTestJvm jvm = pool.borrow(executor, params, "");
+    ProcessExecutor.Result result = run(jvm, ImmutableMap.of("batch", name), name, "0");
+    assertEquals(0, result.getExitCode());
+    assertEquals(Optional.of(name + ":1:" + name), result.getStderr());
+    assertTrue(jvm.isAlive());
+    pool.release(jvm, 0);
+  }
+
+  @Test
+  public void closingThePoolStopsIdleJvmsAndJvmsReleasedLater() throws Exception {
+    WarmTestJvm idle = pool.borrow(executor, params, "idle");
+    WarmTestJvm busy = pool.borrow(executor, params, "busy");
+    pool.release(idle, 2);
+
+    pool.close();
+    assertEquals(0, pool.getIdleCount());
+    assertFalse(idle.isAlive());
+    assertTrue(busy.isAlive());
+
+    pool.release(busy, 2);
+    assertEquals(0, pool.getIdleCount());
+    assertFalse(busy.isAlive());
+  }
+
+  @Test
+  public void destroysJvmsThatBreakTheProtocol() throws Exception {
+    ProcessExecutorParams brokenParams =
+        ProcessExecutorParams.ofCommand(
+            params.getCommand().get(0),
+            "-classpath",
+            classpath.get(0),
+            BrokenServer.class.getName());
+    WarmTestJvm jvm = pool.borrow(executor, brokenParams, "");
+    ProcessExecutor.Result result = run(jvm, ImmutableMap.of(), "x", "0");
+    assertEquals(1, result.getExitCode());
+    assertFalse(jvm.isAlive());
+
+    pool.release(jvm, 1);
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  private ProcessExecutor.Result run(
+      WarmTestJvm jvm, ImmutableMap<String, String> properties, String name, String exitCode) {
+    return jvm.run(
+        properties,
+        classpath,
+        CountingRunner.class.getName(),
+        ImmutableList.of(name, exitCode),
+        Optional.empty());
+  }
+
+  /** Prints how often it has run in its ClassLoader, and exits with the given code. */
+  public static class CountingRunner {
+    private static int runs = 0;
+
+    public static int run(String[] args) throws InterruptedException, IOException {
+      runs++;
+      if (args[0].equals("sleep")) {
+        Thread.sleep(60000);
+      } else if (args[0].equals("stdout")) {
+        // Closing it would close the JVM's stdout.
+        @SuppressWarnings("resource")
+        FileOutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        stdout.write(new byte[] {0, 0, 0, 7, -1, -1, -1, -1});
+        stdout.flush();
+      }
+      System.out.print(System.getProperty("batch") + ":" + runs + ":" + args[0]);
+      return Integer.parseInt(args[1]);
+    }
+  }
+
+  /** Answers the first batch with a negative output length. */
+  public static class BrokenServer {
+    public static void main(String[] args) throws IOException, InterruptedException {
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+          DataInputStream in = new DataInputStream(socket.getInputStream());
+          DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+        byte[] token = args[1].getBytes(StandardCharsets.UTF_8);
+        out.writeInt(token.length);
+        out.write(token);
+        in.readInt();
+        out.writeInt(0);
+        out.writeInt(-1);
+        out.write("x".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        Thread.sleep(60000);
+      }
+    }
+  }
+}
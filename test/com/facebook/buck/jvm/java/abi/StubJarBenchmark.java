@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures building the class ABI jar of junit, with every class stubbed from scratch and with the
+ * stubs of a previous build cached. Run from the root of the repository.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StubJarBenchmark {
+  private final Path library =
+      Paths.get("test/com/facebook/buck/jvm/java/abi/testdata/sample/junit.jar").toAbsolutePath();
+  private final Path abiJar = Paths.get("junit-abi.jar");
+  private final ClassStubCache stubCache = new ClassStubCache(64 * 1024 * 1024);
+  private Path root;
+  private ProjectFilesystem filesystem;
+
+  @Setup
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("stub-jar-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    new StubJar(library).setStubCache(stubCache).writeTo(filesystem, abiJar);
+    filesystem.deleteFileAtPath(abiJar);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    MostFiles.deleteRecursively(root);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void stubEveryClass() throws IOException {
+    new StubJar(library).writeTo(filesystem, abiJar);
+    filesystem.deleteFileAtPath(abiJar);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void reuseCachedStubs() throws IOException {
+    new StubJar(library).setStubCache(stubCache).writeTo(filesystem, abiJar);
+    filesystem.deleteFileAtPath(abiJar);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {StubJarBenchmark.class.getName()});
+  }
+}
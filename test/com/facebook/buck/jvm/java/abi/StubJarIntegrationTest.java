@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -28,6 +29,7 @@ import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Enumeration;
@@ -98,6 +100,34 @@ public class StubJarIntegrationTest {
     assertTrue(filesystem.getFileSize(out) < filesystem.getFileSize(source));
   }
 
+  @Test
+  public void shouldBuildTheSameAbiJarFromCachedStubs() throws IOException {
+    Path regularJar = testDataDir.resolve("junit.jar");
+    Path uncached = Paths.get("junit-abi.jar");
+    new StubJar(regularJar).writeTo(filesystem, uncached);
+
+    ClassStubCache stubCache = new ClassStubCache(64 * 1024 * 1024);
+    Path firstCached = Paths.get("junit-abi-first.jar");
+    new StubJar(regularJar).setStubCache(stubCache).writeTo(filesystem, firstCached);
+    long classes = stubCache.getStats().missCount();
+    assertEquals(0, stubCache.getStats().hitCount());
+
+    Path secondCached = Paths.get("junit-abi-second.jar");
+    new StubJar(regularJar).setStubCache(stubCache).writeTo(filesystem, secondCached);
+    assertEquals(classes, stubCache.getStats().hitCount());
+    assertEquals(classes, stubCache.getStats().missCount());
+
+    byte[] expected = Files.readAllBytes(filesystem.resolve(uncached));
+    assertArrayEquals(expected, Files.readAllBytes(filesystem.resolve(firstCached)));
+    assertArrayEquals(expected, Files.readAllBytes(filesystem.resolve(secondCached)));
+
+    new StubJar(regularJar)
+        .setCompatibilityMode(AbiGenerationMode.SOURCE)
+        .setStubCache(stubCache)
+        .writeTo(filesystem, Paths.get("junit-source-abi.jar"));
+    assertEquals(classes, stubCache.getStats().hitCount());
+  }
+
   @Test
   public void abiJarManifestShouldContainHashesOfItsFiles() throws IOException {
     Path out = Paths.get("junit-abi.jar");
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.ClassLoaderCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JarBackedReflectedKotlincTest {
+
+  private static final String KEEP_ENVIRONMENT_PROPERTY = "kotlin.environment.keepalive";
+
+  // Read by the fake compiler, which is loaded by a class loader of its own.
+  public static final AtomicInteger compilerInstances = new AtomicInteger();
+  @Nullable public static volatile Object keepEnvironment;
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+  private Path compilerJar;
+
+  @Before
+  public void setUp() throws Exception {
+    compilerInstances.set(0);
+    keepEnvironment = null;
+    FakeKotlinCompilerVersion.VERSION = "1.4.31";
+
+    filesystem = new FakeProjectFilesystem();
+    ClassLoaderCache classLoaderCache = new ClassLoaderCache();
+    context = TestExecutionContext.newBuilder().setClassLoaderCache(classLoaderCache).build();
+
+    // Each test loads its compiler from a class path of its own, as compilers are kept for the
+    // life of the process.
+    compilerJar = tmp.newFile("kotlin-compiler.jar");
+    classLoaderCache.injectClassLoader(
+        SynchronizedToolProvider.getSystemToolClassLoader(),
+        ImmutableList.of(compilerJar.toUri().toURL()),
+        new FakeCompilerClassLoader());
+  }
+
+  @Test
+  public void reusesTheCompilerOfAClassPath() {
+    JarBackedReflectedKotlinc kotlinc = createKotlinc(false);
+    assertEquals(0, compile(kotlinc));
+    assertEquals(0, compile(kotlinc));
+    assertEquals(0, compile(createKotlinc(false)));
+
+    assertEquals(1, compilerInstances.get());
+  }
+
+  @Test
+  public void keepsTheEnvironmentOfItsCompilerWithoutSettingTheProperty() {
+    assertEquals(0, compile(createKotlinc(true)));
+
+    assertEquals("true", keepEnvironment);
+    assertNull(System.getProperty(KEEP_ENVIRONMENT_PROPERTY));
+  }
+
+  @Test
+  public void doesNotReplaceThePropertyGetterOfOldCompilers() {
+    FakeKotlinCompilerVersion.VERSION = "1.3.72";
+    assertEquals(0, compile(createKotlinc(true)));
+
+    assertNull(keepEnvironment);
+  }
+
+  @Test
+  public void doesNotKeepTheEnvironmentByDefault() {
+    assertEquals(0, compile(createKotlinc(false)));
+
+    assertNull(keepEnvironment);
+  }
+
+  private JarBackedReflectedKotlinc createKotlinc(boolean keepCompilerEnvironment) {
+    return new JarBackedReflectedKotlinc(
+        ImmutableSet.of(PathSourcePath.of(filesystem, compilerJar)),
+        tmp.getRoot().resolve("annotation-processing.jar"),
+        tmp.getRoot().resolve("stdlib.jar"),
+        keepCompilerEnvironment);
+  }
+
+  private int compile(JarBackedReflectedKotlinc kotlinc) {
+    return kotlinc.buildWithClasspath(
+        context,
+        BuildTargetFactory.newInstance("//:lib"),
+        ImmutableList.of(),
+        ImmutableSortedSet.of(),
+        tmp.getRoot().resolve("srcs"),
+        Optional.empty(),
+        filesystem);
+  }
+
+  /**
+   * Loads the fakes below in place of the classes of the Kotlin compiler. Like the classes of a
+   * real compiler, they are defined by the class loader of the compiler.
+   */
+  private static class FakeCompilerClassLoader extends ClassLoader {
+    private static final ImmutableMap<String, Class<?>> KOTLIN_CLASSES =
+        ImmutableMap.of(
+            "org.jetbrains.kotlin.cli.jvm.K2JVMCompiler", FakeCompiler.class,
+            "org.jetbrains.kotlin.cli.common.ExitCode", FakeExitCode.class,
+            "org.jetbrains.kotlin.config.CompilerSystemProperties",
+                FakeCompilerSystemProperties.class,
+            "kotlin.jvm.functions.Function1", FakeFunction.class,
+            "org.jetbrains.kotlin.config.KotlinCompilerVersion", FakeKotlinCompilerVersion.class);
+
+    private static final ImmutableSet<String> DEFINED_CLASSES =
+        ImmutableSet.of(
+            FakeCompiler.class.getName(),
+            FakeExitCode.class.getName(),
+            FakeCompilerSystemProperties.class.getName(),
+            FakeCompanion.class.getName());
+
+    FakeCompilerClassLoader() {
+      super(JarBackedReflectedKotlincTest.class.getClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      Class<?> fake = KOTLIN_CLASSES.get(name);
+      if (fake != null) {
+        return loadClass(fake.getName(), resolve);
+      }
+      if (!DEFINED_CLASSES.contains(name)) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded != null) {
+          return loaded;
+        }
+        try (InputStream in =
+            getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+          byte[] bytes = ByteStreams.toByteArray(in);
+          return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException e) {
+          throw new ClassNotFoundException(name, e);
+        }
+      }
+    }
+  }
+
+  public static class FakeCompiler {
+    public FakeCompiler() {
+      compilerInstances.incrementAndGet();
+    }
+
+    public FakeExitCode exec(PrintStream stdErr, String[] args) {
+      FakeFunction getter = FakeCompilerSystemProperties.Companion.getter;
+      keepEnvironment =
+          getter == null
+              ? System.getProperty(KEEP_ENVIRONMENT_PROPERTY)
+              : getter.invoke(KEEP_ENVIRONMENT_PROPERTY);
+      return new FakeExitCode();
+    }
+  }
+
+  public static class FakeExitCode {
+    public int getCode() {
+      return 0;
+    }
+  }
+
+  public interface FakeFunction {
+    Object invoke(Object arg);
+  }
+
+  public static class FakeKotlinCompilerVersion {
+    public static volatile String VERSION;
+  }
+
+  public static class FakeCompilerSystemProperties {
+    public static final FakeCompanion Companion = new FakeCompanion();
+  }
+
+  public static class FakeCompanion {
+    @Nullable volatile FakeFunction getter;
+
+    public void setSystemPropertyGetter(FakeFunction getter) {
+      this.getter = getter;
+    }
+  }
+}
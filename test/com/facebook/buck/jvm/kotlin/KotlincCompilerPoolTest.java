@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.kotlin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class KotlincCompilerPoolTest {
+
+  private static final ImmutableSet<String> FIRST = ImmutableSet.of("kotlin-compiler-1.jar");
+  private static final ImmutableSet<String> SECOND = ImmutableSet.of("kotlin-compiler-2.jar");
+  private static final ImmutableSet<String> THIRD = ImmutableSet.of("kotlin-compiler-3.jar");
+
+  private final Map<ImmutableSet<String>, Integer> loads = new HashMap<>();
+  private final Map<ImmutableSet<String>, Integer> closes = new HashMap<>();
+
+  @Test
+  public void reusesTheCompilerOfAClassPath() {
+    KotlincCompilerPool pool = new KotlincCompilerPool(2);
+    KotlincCompilerPool.WarmCompiler first = compile(pool, FIRST);
+    KotlincCompilerPool.WarmCompiler reused = compile(pool, FIRST);
+
+    assertSame(first, reused);
+    assertEquals(1, (int) loads.get(FIRST));
+    assertEquals(0, (int) closes.getOrDefault(FIRST, 0));
+  }
+
+  @Test
+  public void dropsTheLeastRecentlyUsedClassPath() {
+    KotlincCompilerPool pool = new KotlincCompilerPool(2);
+    compile(pool, FIRST);
+    compile(pool, SECOND);
+    compile(pool, FIRST);
+    compile(pool, THIRD);
+
+    assertEquals(1, (int) closes.getOrDefault(SECOND, 0));
+    assertEquals(0, (int) closes.getOrDefault(FIRST, 0));
+
+    compile(pool, FIRST);
+    compile(pool, SECOND);
+    assertEquals(1, (int) loads.get(FIRST));
+    assertEquals(2, (int) loads.get(SECOND));
+    assertEquals(1, (int) closes.getOrDefault(THIRD, 0));
+  }
+
+  @Test
+  public void compilersInUseAreReleasedWhenTheirCompilationsFinish() {
+    KotlincCompilerPool pool = new KotlincCompilerPool(1);
+    KotlincCompilerPool.WarmCompiler first = pool.borrow(FIRST, () -> load(FIRST));
+    compile(pool, SECOND);
+
+    assertEquals(0, (int) closes.getOrDefault(FIRST, 0));
+    pool.release(first);
+    assertEquals(1, (int) closes.getOrDefault(FIRST, 0));
+  }
+
+  private KotlincCompilerPool.WarmCompiler compile(
+      KotlincCompilerPool pool, ImmutableSet<String> classPath) {
+    KotlincCompilerPool.WarmCompiler compiler = pool.borrow(classPath, () -> load(classPath));
+    pool.release(compiler);
+    return compiler;
+  }
+
+  private KotlincCompilerPool.WarmCompiler load(ImmutableSet<String> classPath) {
+    loads.merge(classPath, 1, Integer::sum);
+    return new KotlincCompilerPool.WarmCompiler(
+        new Object(), () -> closes.merge(classPath, 1, Integer::sum));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.cell.Cells;
+import com.facebook.buck.core.cell.TestCellBuilder;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.testutil.FakeExecutor;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BackgroundSpeculativeParserTest {
+
+  private Cells cells;
+  private FakeExecutor scheduler;
+  private BackgroundSpeculativeParser parser;
+
+  @Before
+  public void setUp() {
+    cells = new TestCellBuilder().setFilesystem(new FakeProjectFilesystem()).build();
+    scheduler = new FakeExecutor();
+    parser =
+        new BackgroundSpeculativeParser(
+            new DaemonicParserState(1, true),
+            BuckEventBusForTests.newInstance(),
+            scheduler,
+            MoreExecutors.newDirectExecutorService());
+  }
+
+  @After
+  public void tearDown() {
+    parser.close();
+  }
+
+  @Test
+  public void roundsStartOnlyAfterAllCommandsFinish() {
+    AtomicInteger refreshes = new AtomicInteger();
+
+    BackgroundSpeculativeParser.CommandScope first = parser.startCommand();
+    BackgroundSpeculativeParser.CommandScope second = parser.startCommand();
+    first.scheduleWhenIdle(cells, eventBus -> null, eventBus -> refreshes.incrementAndGet(), 1);
+    first.close();
+    assertEquals(0, scheduler.getNumPendingTasks());
+
+    second.scheduleWhenIdle(cells, eventBus -> null, eventBus -> refreshes.incrementAndGet(), 1);
+    second.close();
+    assertEquals(1, scheduler.getNumPendingTasks());
+    scheduler.drain();
+    assertEquals(1, refreshes.get());
+  }
+
+  @Test
+  public void startingCommandStopsScheduledRounds() {
+    AtomicInteger refreshes = new AtomicInteger();
+
+    BackgroundSpeculativeParser.CommandScope first = parser.startCommand();
+    first.scheduleWhenIdle(cells, eventBus -> null, eventBus -> refreshes.incrementAndGet(), 1);
+    first.close();
+    scheduler.drain();
+    assertEquals(1, refreshes.get());
+
+    BackgroundSpeculativeParser.CommandScope second = parser.startCommand();
+    // The fake scheduler keeps running cancelled tasks, so this checks that rounds scheduled
+    // before the command started do nothing.
+    scheduler.drain();
+    assertEquals(1, refreshes.get());
+
+    second.close();
+    scheduler.drain();
+    assertEquals(1, refreshes.get());
+  }
+}
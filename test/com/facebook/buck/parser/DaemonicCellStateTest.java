@@ -262,4 +262,45 @@ public class DaemonicCellStateTest {
     lookupManifest = state.lookupPackageFileManifest(packageFile);
     assertFalse(lookupManifest.isPresent());
   }
+
+  @Test
+  public void drainInvalidatedBuildFilesReturnsBuildFilesInvalidatedThroughDependents() {
+    state = new DaemonicCellState(cells.getRootCell(), 1, true, buildFile -> {});
+    AbsPath buildFile = AbsPath.of(filesystem.resolve("path/to/BUCK"));
+    AbsPath otherBuildFile = AbsPath.of(filesystem.resolve("path/other/BUCK"));
+    AbsPath extensionFile = AbsPath.of(filesystem.resolve("path/to/macros.bzl"));
+
+    state.putBuildFileManifestIfNotPresent(
+        buildFile,
+        BuildFileManifestFactory.create(ImmutableMap.of()),
+        ImmutableSet.of(extensionFile),
+        ImmutableMap.of());
+    state.putBuildFileManifestIfNotPresent(
+        otherBuildFile,
+        BuildFileManifestFactory.create(ImmutableMap.of()),
+        ImmutableSet.of(),
+        ImmutableMap.of());
+    assertEquals(ImmutableSet.of(), state.drainInvalidatedBuildFiles());
+
+    state.invalidatePath(extensionFile);
+    // Build files without a cached manifest are not worth parsing speculatively.
+    state.invalidatePath(AbsPath.of(filesystem.resolve("path/unknown/BUCK")));
+
+    assertEquals(ImmutableSet.of(buildFile), state.drainInvalidatedBuildFiles());
+    assertEquals(ImmutableSet.of(), state.drainInvalidatedBuildFiles());
+  }
+
+  @Test
+  public void invalidatedBuildFilesAreNotRecordedByDefault() {
+    AbsPath buildFile = AbsPath.of(filesystem.resolve("path/to/BUCK"));
+    state.putBuildFileManifestIfNotPresent(
+        buildFile,
+        BuildFileManifestFactory.create(ImmutableMap.of()),
+        ImmutableSet.of(),
+        ImmutableMap.of());
+
+    state.invalidatePath(buildFile);
+
+    assertEquals(ImmutableSet.of(), state.drainInvalidatedBuildFiles());
+  }
 }
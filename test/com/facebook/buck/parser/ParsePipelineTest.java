@@ -539,7 +539,8 @@ public class ParsePipelineTest {
                                 new ParserPythonInterpreterProvider(
                                     input.getBuckConfig(), new ExecutableFinder()),
                                 TestKnownRuleTypesProvider.create(
-                                    BuckPluginManagerFactory.createPluginManager()))
+                                    BuckPluginManagerFactory.createPluginManager()),
+                                Optional.empty())
                             .createFileParser(eventBus, input, watchman, threadSafe));
                 synchronized (projectBuildFileParsers) {
                   projectBuildFileParsers.add(buildFileParser);
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.util.FakeProcess;
+import com.facebook.buck.util.FakeProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PythonDslInterpreterPoolTest {
+
+  private static final ProcessExecutorParams PARAMS =
+      ProcessExecutorParams.ofCommand("python", "buck.py", "--worker_count", "2");
+
+  private ByteArrayOutputStream requests;
+  private DataOutputStream results;
+  private FakeProcess process;
+  private ByteArrayOutputStream restartedRequests;
+  private DataOutputStream restartedResults;
+  private FakeProcess restartedProcess;
+  private FakeProcessExecutor processExecutor;
+  private BuckEventBus eventBus;
+  private PythonDslInterpreterPool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    requests = new ByteArrayOutputStream();
+    PipedInputStream stdout = new PipedInputStream();
+    results = new DataOutputStream(new PipedOutputStream(stdout));
+    process = new FakeProcess(0, requests, stdout, new ByteArrayInputStream(new byte[0]));
+    restartedRequests = new ByteArrayOutputStream();
+    PipedInputStream restartedStdout = new PipedInputStream();
+    restartedResults = new DataOutputStream(new PipedOutputStream(restartedStdout));
+    restartedProcess =
+        new FakeProcess(
+            0, restartedRequests, restartedStdout, new ByteArrayInputStream(new byte[0]));
+    processExecutor =
+        new FakeProcessExecutor(
+            ImmutableList.of(
+                Maps.immutableEntry(PARAMS, process),
+                Maps.immutableEntry(PARAMS, restartedProcess)));
+    eventBus = BuckEventBusForTests.newInstance();
+    pool = new PythonDslInterpreterPool(2, eventBus);
+  }
+
+  @Test
+  public void requestsAreSentWhenLinesAreComplete() throws Exception {
+    PythonDslInterpreterPool.Channel first = openChannel();
+    PythonDslInterpreterPool.Channel second = openChannel();
+
+    writeRequest(first, "{\"buildFile\":");
+    assertEquals("", requests());
+    writeRequest(first, "\"a/BUCK\"}\n");
+    writeRequest(second, "{\"buildFile\":\"b/BUCK\"}\n");
+
+    assertEquals("0 {\"buildFile\":\"a/BUCK\"}\n1 {\"buildFile\":\"b/BUCK\"}\n", requests());
+    closeProcess();
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void resultsAreRoutedToChannels() throws Exception {
+    PythonDslInterpreterPool.Channel first = openChannel();
+    PythonDslInterpreterPool.Channel second = openChannel();
+
+    writeResult(1, "second");
+    writeResult(0, "first");
+    writeResult(0, "");
+    writeResult(0, "third");
+
+    assertEquals("first", readResult(first.getResultStream(), 5));
+    assertEquals("third", readResult(first.getResultStream(), 5));
+    assertEquals("second", readResult(second.getResultStream(), 6));
+    closeProcess();
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void resultStreamsEndWhenProcessExits() throws Exception {
+    PythonDslInterpreterPool.Channel channel = openChannel();
+
+    writeResult(0, "result");
+    closeProcess();
+
+    assertEquals("result", readResult(channel.getResultStream(), 6));
+    assertEquals(-1, channel.getResultStream().read());
+    channel.close();
+  }
+
+  @Test
+  public void processIsKeptRunningUntilPoolIsClosed() throws Exception {
+    PythonDslInterpreterPool.Channel first = openChannel();
+    first.close();
+    PythonDslInterpreterPool.Channel second = openChannel();
+
+    writeRequest(second, "{\"buildFile\":\"a/BUCK\"}\n");
+    assertEquals("1 {\"buildFile\":\"a/BUCK\"}\n", requests());
+    second.close();
+    assertFalse(isWaitedFor(process));
+
+    closeProcess();
+    pool.close();
+    assertTrue(isWaitedFor(process));
+  }
+
+  @Test
+  public void deadProcessIsRestartedForNewChannels() throws Exception {
+    PythonDslInterpreterPool.Channel stale = openChannel();
+    closeProcess();
+    assertEquals(-1, stale.getResultStream().read());
+    assertTrue(stale.isProcessExited());
+
+    PythonDslInterpreterPool.Channel channel = openChannel();
+    assertTrue(isWaitedFor(process));
+    assertFalse(channel.isProcessExited());
+
+    writeRequest(channel, "{\"buildFile\":\"a/BUCK\"}\n");
+    assertEquals(
+        "1 {\"buildFile\":\"a/BUCK\"}\n",
+        new String(restartedRequests.toByteArray(), StandardCharsets.UTF_8));
+    restartedResults.writeInt(1);
+    restartedResults.writeInt(6);
+    restartedResults.write("result".getBytes(StandardCharsets.UTF_8));
+    restartedResults.flush();
+    assertEquals("result", readResult(channel.getResultStream(), 6));
+
+    stale.close();
+    channel.close();
+    restartedResults.close();
+    pool.close();
+    assertTrue(isWaitedFor(restartedProcess));
+  }
+
+  private PythonDslInterpreterPool.Channel openChannel() throws IOException {
+    return pool.openChannel(PARAMS, processExecutor, eventBus);
+  }
+
+  private static void writeRequest(PythonDslInterpreterPool.Channel channel, String request)
+      throws IOException {
+    OutputStream stream = channel.getRequestStream();
+    stream.write(request.getBytes(StandardCharsets.UTF_8));
+    stream.flush();
+  }
+
+  private void writeResult(int channel, String result) throws IOException {
+    byte[] bytes = result.getBytes(StandardCharsets.UTF_8);
+    results.writeInt(channel);
+    results.writeInt(bytes.length);
+    results.write(bytes);
+    results.flush();
+  }
+
+  private void closeProcess() throws IOException {
+    results.close();
+  }
+
+  private String requests() {
+    return new String(requests.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static boolean isWaitedFor(FakeProcess process) {
+    try {
+      process.exitValue();
+      return true;
+    } catch (IllegalThreadStateException e) {
+      return false;
+    }
+  }
+
+  private static String readResult(InputStream stream, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    ByteStreams.readFully(stream, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+  private static final AbsPath ROOT = AbsPath.of(Paths.get("/repo").toAbsolutePath());
+
+  private static final ImmutableSet<QueryTarget> RESULT =
+      ImmutableSet.of(QueryBuildTarget.of(BuildTargetFactory.newInstance("//foo:bar")));
+
+  private QueryResultCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new QueryResultCache();
+  }
+
+  @Test
+  public void returnsStoredResultForSameKeyOnly() {
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    assertEquals(Optional.of(RESULT), cache.get(key("deps(//foo:bar)")));
+    assertFalse(cache.get(key("deps(//foo:baz)")).isPresent());
+    assertFalse(
+        cache
+            .get(QueryResultCache.Key.of("deps(//foo:bar)", ROOT, Optional.empty(), true))
+            .isPresent());
+  }
+
+  @Test
+  public void invalidatingBuildFileDropsResultsReadingItsPackage() {
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+    put("deps(//baz:qux)", ImmutableSet.of(ROOT.resolve("baz")), ImmutableSet.of());
+
+    cache.invalidateBuildFile(ROOT.resolve("foo/BUCK"));
+
+    assertFalse(cache.get(key("deps(//foo:bar)")).isPresent());
+    assertTrue(cache.get(key("deps(//baz:qux)")).isPresent());
+  }
+
+  @Test
+  public void invalidatingBuildFileBelowRecursiveRootDropsResult() {
+    put("//foo/...", ImmutableSet.of(), ImmutableSet.of(ROOT.resolve("foo")));
+    put("//foo:", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    cache.invalidateBuildFile(ROOT.resolve("foo/new/package/BUCK"));
+
+    assertFalse(cache.get(key("//foo/...")).isPresent());
+    assertTrue(cache.get(key("//foo:")).isPresent());
+  }
+
+  @Test
+  public void invalidateAllDropsEverything() {
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    cache.invalidateAll();
+
+    assertFalse(cache.get(key("deps(//foo:bar)")).isPresent());
+  }
+
+  @Test
+  public void resultComputedDuringInvalidationIsNotStored() {
+    long generation = cache.getGeneration();
+    cache.invalidateBuildFile(ROOT.resolve("unrelated/BUCK"));
+
+    cache.put(
+        key("deps(//foo:bar)"),
+        generation,
+        RESULT,
+        ImmutableSet.of(ROOT.resolve("foo")),
+        ImmutableSet.of());
+
+    assertFalse(cache.get(key("deps(//foo:bar)")).isPresent());
+  }
+
+  @Test
+  public void leastRecentlyUsedResultsAreDroppedWhenTooManyTargetsAreCached() {
+    cache = new QueryResultCache(2);
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+    put("deps(//baz:qux)", ImmutableSet.of(ROOT.resolve("baz")), ImmutableSet.of());
+    assertTrue(cache.get(key("deps(//foo:bar)")).isPresent());
+
+    put("deps(//foo:baz)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    assertTrue(cache.get(key("deps(//foo:bar)")).isPresent());
+    assertFalse(cache.get(key("deps(//baz:qux)")).isPresent());
+    assertTrue(cache.get(key("deps(//foo:baz)")).isPresent());
+  }
+
+  @Test
+  public void resultWithTooManyTargetsIsNotStored() {
+    cache = new QueryResultCache(1);
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    cache.put(
+        key("//foo:"),
+        cache.getGeneration(),
+        ImmutableSet.of(
+            QueryBuildTarget.of(BuildTargetFactory.newInstance("//foo:bar")),
+            QueryBuildTarget.of(BuildTargetFactory.newInstance("//foo:baz"))),
+        ImmutableSet.of(ROOT.resolve("foo")),
+        ImmutableSet.of());
+
+    assertFalse(cache.get(key("//foo:")).isPresent());
+    assertTrue(cache.get(key("deps(//foo:bar)")).isPresent());
+  }
+
+  private void put(
+      String query, ImmutableSet<AbsPath> packages, ImmutableSet<AbsPath> recursiveRoots) {
+    cache.put(key(query), cache.getGeneration(), RESULT, packages, recursiveRoots);
+  }
+
+  private static QueryResultCache.Key key(String query) {
+    return QueryResultCache.Key.of(query, ROOT, Optional.empty(), false);
+  }
+}
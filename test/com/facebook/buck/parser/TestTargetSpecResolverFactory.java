@@ -21,7 +21,9 @@ import com.facebook.buck.core.files.DirectoryListCache;
 import com.facebook.buck.core.files.FileTreeCache;
 import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.parser.BuildPackagePathsCache;
 import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.parser.config.ParserConfig;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import java.nio.file.Path;
@@ -53,6 +55,19 @@ public class TestTargetSpecResolverFactory {
                   public FileTreeCache load(Path path) {
                     return FileTreeCache.of(path);
                   }
+                }),
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<Path, BuildPackagePathsCache>() {
+                  @Override
+                  public BuildPackagePathsCache load(Path path) {
+                    return BuildPackagePathsCache.of(
+                        path,
+                        cellProvider
+                            .getCellByPath(path)
+                            .getBuckConfigView(ParserConfig.class)
+                            .getBuildFileName());
+                  }
                 }));
   }
 }
@@ -20,16 +20,26 @@ import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.cell.Cells;
 import com.facebook.buck.core.cell.TestCellBuilder;
 import com.facebook.buck.core.config.BuckConfig;
+import com.facebook.buck.core.cell.name.CanonicalCellName;
 import com.facebook.buck.core.config.FakeBuckConfig;
+import com.facebook.buck.core.model.CellRelativePath;
+import com.facebook.buck.core.model.RuleType;
+import com.facebook.buck.core.model.UnconfiguredBuildTargetFactoryForTests;
+import com.facebook.buck.core.model.targetgraph.impl.ImmutableUnconfiguredTargetNode;
+import com.facebook.buck.core.model.targetgraph.raw.UnconfiguredTargetNode;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPattern;
 import com.facebook.buck.core.parser.buildtargetpattern.BuildTargetPatternParser;
+import com.facebook.buck.core.path.ForwardRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import org.hamcrest.Matchers;
@@ -138,6 +148,50 @@ public class TargetNodeSpecTest {
     spec.getBuildTargetPattern(cellB);
   }
 
+  @Test
+  public void predicateSpecForTestsMayOnlyMatchTestRules() {
+    TargetNodeSpec allTargets =
+        TargetNodePredicateSpec.of(
+            BuildFileSpec.fromPath(
+                CellRelativePath.of(CanonicalCellName.rootCell(), ForwardRelativePath.of("foo"))));
+    TargetNodeSpec onlyTests =
+        TargetNodePredicateSpec.of(
+            BuildFileSpec.fromPath(
+                CellRelativePath.of(CanonicalCellName.rootCell(), ForwardRelativePath.of("foo"))),
+            true);
+    UnconfiguredTargetNode library =
+        unconfiguredTargetNode("//foo:lib", RuleType.of("java_library", RuleType.Kind.BUILD));
+    UnconfiguredTargetNode test =
+        unconfiguredTargetNode("//foo:test", RuleType.of("java_test", RuleType.Kind.BUILD));
+
+    Assert.assertTrue(allTargets.mayMatch(library));
+    Assert.assertTrue(allTargets.mayMatch(test));
+    Assert.assertFalse(onlyTests.mayMatch(library));
+    Assert.assertTrue(onlyTests.mayMatch(test));
+  }
+
+  @Test
+  public void buildTargetSpecMayOnlyMatchItsTarget() {
+    TargetNodeSpec spec =
+        BuildTargetSpec.from(
+            UnconfiguredBuildTargetFactoryForTests.newInstance("//foo:lib#flavor"));
+    RuleType ruleType = RuleType.of("java_library", RuleType.Kind.BUILD);
+
+    Assert.assertTrue(spec.mayMatch(unconfiguredTargetNode("//foo:lib", ruleType)));
+    Assert.assertFalse(spec.mayMatch(unconfiguredTargetNode("//foo:other", ruleType)));
+  }
+
+  private static UnconfiguredTargetNode unconfiguredTargetNode(String target, RuleType ruleType) {
+    return ImmutableUnconfiguredTargetNode.of(
+        UnconfiguredBuildTargetFactoryForTests.newInstance(target),
+        ruleType,
+        ImmutableMap.of(),
+        ImmutableSet.of(),
+        ImmutableSet.of(),
+        Optional.empty(),
+        ImmutableList.of());
+  }
+
   private Cells getDefaultCell(
       ProjectFilesystem rootFileSystem, ImmutableMap<String, Path> otherCells) {
     ImmutableMap.Builder<String, String> repositories = ImmutableMap.builder();
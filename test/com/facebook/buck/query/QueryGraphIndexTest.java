@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.core.util.graph.CompactDirectedGraph;
+import com.facebook.buck.core.util.graph.CompactDirectedGraph.Direction;
+import com.facebook.buck.core.util.graph.MutableDirectedGraph;
+import com.facebook.buck.query.QueryEnvironment.Argument;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Streams;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checks that graph functions return the same results with and without a graph index. */
+public class QueryGraphIndexTest {
+
+  //      Z
+  //      |
+  //      A
+  //     / \
+  //    B   C     X
+  //     \ /     /
+  //      D ----
+  //      |
+  //      E       Y
+  private static final QueryBuildTarget A = target("a");
+  private static final QueryBuildTarget B = target("b");
+  private static final QueryBuildTarget C = target("c");
+  private static final QueryBuildTarget D = target("d");
+  private static final QueryBuildTarget E = target("e");
+  private static final QueryBuildTarget X = target("x");
+  private static final QueryBuildTarget Y = target("y");
+  private static final QueryBuildTarget Z = target("z");
+
+  private GraphQueryEnvironment env;
+  private IndexedGraphQueryEnvironment indexedEnv;
+
+  @Before
+  public void setUp() {
+    MutableDirectedGraph<QueryBuildTarget> graph = new MutableDirectedGraph<>();
+    graph.addNode(Y);
+    graph.addEdge(Z, A);
+    graph.addEdge(A, B);
+    graph.addEdge(A, C);
+    graph.addEdge(B, D);
+    graph.addEdge(C, D);
+    graph.addEdge(X, D);
+    graph.addEdge(D, E);
+    env = new GraphQueryEnvironment(graph);
+    indexedEnv = new IndexedGraphQueryEnvironment(graph);
+  }
+
+  @Test
+  public void depsMatchUnindexedTraversal() throws Exception {
+    assertSameResult(
+        ImmutableSet.of(A, B, C, D, E), new DepsFunction<>(), ImmutableList.of(targets(A)));
+    assertSameResult(
+        ImmutableSet.of(A, B, C),
+        new DepsFunction<>(),
+        ImmutableList.of(targets(A), depth(1)));
+    assertSameResult(
+        ImmutableSet.of(A, B, C, D, E, X),
+        new DepsFunction<>(),
+        ImmutableList.of(targets(A, X), depth(2)));
+    assertSameResult(ImmutableSet.of(Y), new DepsFunction<>(), ImmutableList.of(targets(Y)));
+  }
+
+  @Test
+  public void rdepsMatchUnindexedTraversal() throws Exception {
+    assertSameResult(
+        ImmutableSet.of(A, B, C, D, E),
+        new RdepsFunction<>(),
+        ImmutableList.of(targets(A), targets(E)));
+    assertSameResult(
+        ImmutableSet.of(A, B, C, D, X),
+        new RdepsFunction<>(),
+        ImmutableList.of(targets(A, X), targets(D), depth(2)));
+    assertSameResult(
+        ImmutableSet.of(B, D, E),
+        new RdepsFunction<>(),
+        ImmutableList.of(targets(B), targets(E, Y)));
+    assertSameResult(
+        ImmutableSet.of(), new RdepsFunction<>(), ImmutableList.of(targets(C), targets(Y)));
+  }
+
+  @Test
+  public void allpathsMatchUnindexedTraversal() throws Exception {
+    assertSameResult(
+        ImmutableSet.of(A, B, C, D, E, Z),
+        new AllPathsFunction<>(),
+        ImmutableList.of(targets(Z), targets(E)));
+    assertSameResult(
+        ImmutableSet.of(B, D),
+        new AllPathsFunction<>(),
+        ImmutableList.of(targets(B), targets(D, X)));
+    assertSameResult(
+        ImmutableSet.of(C, D, X),
+        new AllPathsFunction<>(),
+        ImmutableList.of(targets(C, X), targets(A, D)));
+    assertSameResult(
+        ImmutableSet.of(), new AllPathsFunction<>(), ImmutableList.of(targets(E), targets(A)));
+  }
+
+  @Test
+  public void indexedResultsAreInBreadthFirstOrder() throws Exception {
+    NoopQueryEvaluator<QueryBuildTarget> evaluator = new NoopQueryEvaluator<>();
+    assertEquals(
+        ImmutableList.of(A, X, B, C, D, E),
+        ImmutableList.copyOf(
+            new DepsFunction<QueryBuildTarget>()
+                .eval(evaluator, indexedEnv, ImmutableList.of(targets(A, X), depth(2)))));
+    assertEquals(
+        ImmutableList.of(E, D, B, C, X, A, Z),
+        ImmutableList.copyOf(
+            new RdepsFunction<QueryBuildTarget>()
+                .eval(evaluator, indexedEnv, ImmutableList.of(targets(Z, X), targets(E)))));
+  }
+
+  private void assertSameResult(
+      Set<QueryBuildTarget> expected,
+      QueryEnvironment.QueryFunction<QueryBuildTarget, QueryBuildTarget> function,
+      ImmutableList<Argument<QueryBuildTarget>> args)
+      throws QueryException {
+    NoopQueryEvaluator<QueryBuildTarget> evaluator = new NoopQueryEvaluator<>();
+    Set<QueryBuildTarget> result = function.eval(evaluator, env, args);
+    assertEquals(expected, ImmutableSet.copyOf(result));
+    // The order matters as well: results list targets level by level.
+    assertEquals(
+        ImmutableList.copyOf(result),
+        ImmutableList.copyOf(function.eval(evaluator, indexedEnv, args)));
+  }
+
+  private static QueryBuildTarget target(String name) {
+    return QueryBuildTarget.of(BuildTargetFactory.newInstance("//:" + name));
+  }
+
+  private static Argument<QueryBuildTarget> targets(QueryBuildTarget... targets) {
+    return Argument.of(TargetSetExpression.of(ImmutableSet.copyOf(targets)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Argument<QueryBuildTarget> depth(int depth) {
+    return (Argument<QueryBuildTarget>) Argument.of(depth);
+  }
+
+  /** Environment that only supports the target based traversal. */
+  private static class GraphQueryEnvironment extends BaseTestQueryEnvironment<QueryBuildTarget> {
+    protected final MutableDirectedGraph<QueryBuildTarget> graph;
+
+    GraphQueryEnvironment(MutableDirectedGraph<QueryBuildTarget> graph) {
+      this.graph = graph;
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getFwdDeps(Iterable<QueryBuildTarget> targets) {
+      ImmutableSet.Builder<QueryBuildTarget> result = ImmutableSet.builder();
+      for (QueryBuildTarget target : targets) {
+        result.addAll(graph.getOutgoingNodesFor(target));
+      }
+      return result.build();
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getReverseDeps(Iterable<QueryBuildTarget> targets) {
+      ImmutableSet.Builder<QueryBuildTarget> result = ImmutableSet.builder();
+      for (QueryBuildTarget target : targets) {
+        result.addAll(graph.getIncomingNodesFor(target));
+      }
+      return result.build();
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getTransitiveClosure(Set<QueryBuildTarget> targets) {
+      Set<QueryBuildTarget> result = new LinkedHashSet<>(targets);
+      Deque<QueryBuildTarget> worklist = new ArrayDeque<>(targets);
+      while (!worklist.isEmpty()) {
+        for (QueryBuildTarget dep : graph.getOutgoingNodesFor(worklist.pop())) {
+          if (result.add(dep)) {
+            worklist.add(dep);
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public void buildTransitiveClosure(Set<? extends QueryTarget> targetNodes, int maxDepth) {}
+  }
+
+  /** Environment that fails if graph functions do not use its index. */
+  private static class IndexedGraphQueryEnvironment extends GraphQueryEnvironment {
+    private final CompactDirectedGraph<QueryBuildTarget> compactGraph;
+
+    IndexedGraphQueryEnvironment(MutableDirectedGraph<QueryBuildTarget> graph) {
+      super(graph);
+      this.compactGraph = CompactDirectedGraph.of(graph);
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getFwdDeps(Iterable<QueryBuildTarget> targets) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getReverseDeps(Iterable<QueryBuildTarget> targets) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getTransitiveClosure(Set<QueryBuildTarget> targets) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<QueryGraphIndex<QueryBuildTarget>> getGraphIndex() {
+      return Optional.of(
+          new QueryGraphIndex<QueryBuildTarget>() {
+            @Override
+            public Optional<BitSet> getIds(Iterable<QueryBuildTarget> targets) {
+              BitSet ids = new BitSet();
+              for (QueryBuildTarget target : targets) {
+                int id = compactGraph.getId(target);
+                if (id < 0) {
+                  return Optional.empty();
+                }
+                ids.set(id);
+              }
+              return Optional.of(ids);
+            }
+
+            @Override
+            public BitSet getIndexedIds(Iterable<QueryBuildTarget> targets) {
+              BitSet ids = new BitSet();
+              for (QueryBuildTarget target : targets) {
+                int id = compactGraph.getId(target);
+                if (id >= 0) {
+                  ids.set(id);
+                }
+              }
+              return ids;
+            }
+
+            @Override
+            public Set<QueryBuildTarget> getTargetsInDepsOrder(
+                Iterable<QueryBuildTarget> roots, BitSet ids) {
+              return ImmutableSet.copyOf(
+                  compactGraph.getNodesInBreadthFirstOrder(
+                      rootIds(roots), Direction.OUTGOING, ids));
+            }
+
+            @Override
+            public Set<QueryBuildTarget> getTargetsInReverseDepsOrder(
+                Iterable<QueryBuildTarget> roots, BitSet ids) {
+              return ImmutableSet.copyOf(
+                  compactGraph.getNodesInBreadthFirstOrder(
+                      rootIds(roots), Direction.INCOMING, ids));
+            }
+
+            @Override
+            public BitSet getTransitiveDeps(BitSet roots, int maxDepth) {
+              return compactGraph.traverse(roots, maxDepth, Direction.OUTGOING, null);
+            }
+
+            @Override
+            public BitSet getTransitiveReverseDeps(BitSet roots, int maxDepth, BitSet universe) {
+              return compactGraph.traverse(roots, maxDepth, Direction.INCOMING, universe);
+            }
+          });
+    }
+
+    private int[] rootIds(Iterable<QueryBuildTarget> roots) {
+      return Streams.stream(roots).mapToInt(compactGraph::getId).filter(id -> id >= 0).toArray();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.coercer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class DataTransferObjectAccessorsTest {
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  public static class PublicBuilder {
+    private String name = "";
+    private int count;
+
+    public static PublicBuilder builder() {
+      return new PublicBuilder();
+    }
+
+    public PublicBuilder setName(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public PublicBuilder setCount(int count) {
+      this.count = count;
+      return this;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public String build() {
+      if (name.isEmpty()) {
+        throw new IllegalStateException("Cannot build, required attributes are not set [name]");
+      }
+      return name + count;
+    }
+  }
+
+  static class PackagePrivateBuilder {
+    private boolean enabled;
+
+    static PackagePrivateBuilder builder() {
+      return new PackagePrivateBuilder();
+    }
+
+    PackagePrivateBuilder setEnabled(boolean enabled) {
+      this.enabled = enabled;
+      return this;
+    }
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+  }
+
+  @Test
+  public void accessesMethodsOfPublicClass() throws Exception {
+    Supplier<Object> factory =
+        DataTransferObjectAccessors.staticFactory(PublicBuilder.class.getMethod("builder"));
+    BiConsumer<Object, Object> setName =
+        DataTransferObjectAccessors.instanceSetter(
+            PublicBuilder.class.getMethod("setName", String.class));
+    BiConsumer<Object, Object> setCount =
+        DataTransferObjectAccessors.instanceSetter(
+            PublicBuilder.class.getMethod("setCount", int.class));
+    Function<Object, Object> getCount =
+        DataTransferObjectAccessors.instanceGetter(PublicBuilder.class.getMethod("getCount"));
+    Function<Object, Object> build =
+        DataTransferObjectAccessors.instanceGetter(PublicBuilder.class.getMethod("build"));
+
+    Object builder = factory.get();
+    assertTrue(builder instanceof PublicBuilder);
+    setName.accept(builder, "foo");
+    setCount.accept(builder, 3);
+
+    assertEquals(3, getCount.apply(builder));
+    assertEquals("foo3", build.apply(builder));
+  }
+
+  @Test
+  public void accessesMethodsOfPackagePrivateClass() throws Exception {
+    Supplier<Object> factory =
+        DataTransferObjectAccessors.staticFactory(
+            PackagePrivateBuilder.class.getDeclaredMethod("builder"));
+    BiConsumer<Object, Object> setEnabled =
+        DataTransferObjectAccessors.instanceSetter(
+            PackagePrivateBuilder.class.getDeclaredMethod("setEnabled", boolean.class));
+    Function<Object, Object> isEnabled =
+        DataTransferObjectAccessors.instanceGetter(
+            PackagePrivateBuilder.class.getMethod("isEnabled"));
+
+    Object builder = factory.get();
+    setEnabled.accept(builder, true);
+
+    assertEquals(true, isEnabled.apply(builder));
+  }
+
+  @Test
+  public void accessesMethodsOfClassInAnotherClassLoader() throws Exception {
+    URL testClasses = PublicBuilder.class.getProtectionDomain().getCodeSource().getLocation();
+    try (URLClassLoader pluginClassLoader = new URLClassLoader(new URL[] {testClasses}, null)) {
+      Class<?> builderClass = pluginClassLoader.loadClass(PublicBuilder.class.getName());
+      assertNotSame(PublicBuilder.class, builderClass);
+
+      Supplier<Object> factory =
+          DataTransferObjectAccessors.staticFactory(builderClass.getMethod("builder"));
+      BiConsumer<Object, Object> setName =
+          DataTransferObjectAccessors.instanceSetter(
+              builderClass.getMethod("setName", String.class));
+      Function<Object, Object> getName =
+          DataTransferObjectAccessors.instanceGetter(builderClass.getMethod("getName"));
+
+      Object builder = factory.get();
+      assertSame(builderClass, builder.getClass());
+      setName.accept(builder, "foo");
+      assertEquals("foo", getName.apply(builder));
+    }
+  }
+
+  @Test
+  public void exceptionsArePropagatedUnwrapped() throws Exception {
+    Function<Object, Object> build =
+        DataTransferObjectAccessors.instanceGetter(PublicBuilder.class.getMethod("build"));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Cannot build");
+    build.apply(PublicBuilder.builder());
+  }
+
+  @Test
+  public void valuesOfWrongTypeAreRejected() throws Exception {
+    BiConsumer<Object, Object> setName =
+        DataTransferObjectAccessors.instanceSetter(
+            PublicBuilder.class.getMethod("setName", String.class));
+
+    thrown.expect(ClassCastException.class);
+    setName.accept(PublicBuilder.builder(), 42);
+  }
+}
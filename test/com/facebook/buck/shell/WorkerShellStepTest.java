@@ -123,6 +123,7 @@ public class WorkerShellStepTest {
             startupEnv,
             maxWorkers,
             isAsync,
+            1,
             persistentWorkerKey == null || workerHash == null
                 ? Optional.empty()
                 : Optional.of(WorkerProcessIdentity.of(persistentWorkerKey, workerHash))));
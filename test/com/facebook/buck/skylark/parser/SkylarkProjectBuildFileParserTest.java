@@ -35,6 +35,7 @@ import com.facebook.buck.core.model.targetgraph.DescriptionProvider;
 import com.facebook.buck.core.plugin.impl.BuckPluginManagerFactory;
 import com.facebook.buck.core.rules.knowntypes.TestKnownRuleTypesProvider;
 import com.facebook.buck.core.rules.knowntypes.provider.KnownRuleTypesProvider;
+import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
@@ -42,6 +43,7 @@ import com.facebook.buck.io.filesystem.skylark.SkylarkFilesystem;
 import com.facebook.buck.parser.LabelCache;
 import com.facebook.buck.parser.api.BuildFileManifest;
 import com.facebook.buck.parser.config.ParserConfig;
+import com.facebook.buck.parser.events.ParseBuckProfilerReportEvent;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.implicit.ImplicitInclude;
 import com.facebook.buck.parser.options.ImplicitNativeRulesState;
@@ -53,11 +55,14 @@ import com.facebook.buck.skylark.io.GlobSpec;
 import com.facebook.buck.skylark.io.GlobSpecWithResult;
 import com.facebook.buck.skylark.io.impl.NativeGlobber;
 import com.facebook.buck.skylark.parser.SkylarkProjectBuildFileParserTestUtils.RecordingParser;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.eventbus.Subscribe;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventCollector;
 import com.google.devtools.build.lib.events.EventHandler;
@@ -68,6 +73,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -1686,6 +1692,88 @@ public class SkylarkProjectBuildFileParserTest {
         stringContainsInOrder("name 'package' is not defined"));
   }
 
+  @Test
+  public void profilerReportAttributesCostToBuildFilesAndMacros() throws Exception {
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    List<ParseBuckProfilerReportEvent> reports = new ArrayList<>();
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void profilerReported(ParseBuckProfilerReportEvent event) {
+            reports.add(event);
+          }
+        });
+    parser =
+        SkylarkProjectBuildFileParserTestUtils.createParserWithOptions(
+            skylarkFilesystem,
+            new PrintingEventHandler(EventKind.ALL_EVENTS),
+            getDefaultParserOptions().setEnableProfiling(true).build(),
+            knownRuleTypesProvider,
+            cell.getRootCell(),
+            eventBus);
+
+    Path buildFile = projectFilesystem.resolve(Paths.get("src", "BUCK"));
+    Files.createDirectories(buildFile.getParent());
+    Files.write(
+        buildFile,
+        Arrays.asList(
+            "load('//src:rules.bzl', 'jar')",
+            "jar('foo', glob(['*.jar']))",
+            "jar('bar', [])"));
+    Files.write(
+        projectFilesystem.resolve(Paths.get("src", "rules.bzl")),
+        Arrays.asList(
+            "def jar(name, srcs):",
+            "  native.prebuilt_jar(name=name, binary_jar=name + '.jar', licenses=srcs)"));
+    parser.getManifest(buildFile);
+    parser.reportProfile();
+
+    ParseBuckProfilerReportEvent report = Iterables.getOnlyElement(reports);
+    assertEquals("json", report.getReportFileExtension());
+    JsonNode profile = ObjectMappers.READER.readTree(report.getReport());
+    JsonNode buildFileProfile = Iterables.getOnlyElement(profile.get("build_files"));
+    assertEquals(buildFile.toString(), buildFileProfile.get("path").asText());
+    assertEquals(1, buildFileProfile.get("evaluations").asLong());
+    assertEquals(1, buildFileProfile.get("globs").asLong());
+    JsonNode macroProfile = Iterables.getOnlyElement(profile.get("macros"));
+    assertEquals("//src:rules.bzl%jar", macroProfile.get("name").asText());
+    assertEquals(2, macroProfile.get("calls").asLong());
+    JsonNode extensionProfile = Iterables.getOnlyElement(profile.get("extensions"));
+    assertEquals("//src:rules.bzl", extensionProfile.get("name").asText());
+    assertEquals(2, extensionProfile.get("calls").asLong());
+    assertThat(
+        extensionProfile.get("wall_nanos").asLong(),
+        Matchers.lessThanOrEqualTo(buildFileProfile.get("wall_nanos").asLong()));
+  }
+
+  @Test
+  public void profilerReportIsNotPostedWithoutProfiling() throws Exception {
+    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+    List<ParseBuckProfilerReportEvent> reports = new ArrayList<>();
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void profilerReported(ParseBuckProfilerReportEvent event) {
+            reports.add(event);
+          }
+        });
+    parser =
+        SkylarkProjectBuildFileParserTestUtils.createParserWithOptions(
+            skylarkFilesystem,
+            new PrintingEventHandler(EventKind.ALL_EVENTS),
+            getDefaultParserOptions().build(),
+            knownRuleTypesProvider,
+            cell.getRootCell(),
+            eventBus);
+    Path buildFile = projectFilesystem.resolve("BUCK");
+    Files.write(buildFile, Collections.singletonList("prebuilt_jar(name='foo', binary_jar='a')"));
+
+    parser.getManifest(buildFile);
+    parser.reportProfile();
+
+    assertTrue(reports.isEmpty());
+  }
+
   private Map<String, Object> getSingleRule(Path buildFile)
       throws BuildFileParseException, InterruptedException, IOException {
     return SkylarkProjectBuildFileParserTestUtils.getSingleRule(parser, buildFile);
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.rules.knowntypes.provider.KnownRuleTypesProvider;
+import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.io.filesystem.skylark.SkylarkFilesystem;
 import com.facebook.buck.parser.LabelCache;
@@ -98,9 +99,25 @@ public class SkylarkProjectBuildFileParserTestUtils {
       ProjectBuildFileParserOptions options,
       KnownRuleTypesProvider knownRuleTypesProvider,
       Cell cell) {
+    return createParserWithOptions(
+        skylarkFilesystem,
+        eventHandler,
+        options,
+        knownRuleTypesProvider,
+        cell,
+        BuckEventBusForTests.newInstance());
+  }
+
+  public static SkylarkProjectBuildFileParser createParserWithOptions(
+      SkylarkFilesystem skylarkFilesystem,
+      EventHandler eventHandler,
+      ProjectBuildFileParserOptions options,
+      KnownRuleTypesProvider knownRuleTypesProvider,
+      Cell cell,
+      BuckEventBus eventBus) {
     return SkylarkProjectBuildFileParser.using(
         options,
-        BuckEventBusForTests.newInstance(),
+        eventBus,
         skylarkFilesystem,
         BuckGlobals.of(
             SkylarkBuildModule.BUILD_MODULE,
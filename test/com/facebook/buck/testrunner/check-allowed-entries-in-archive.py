@@ -43,6 +43,7 @@ com/facebook/buck/testrunner/BuckBlockJUnit4ClassRunner$1.class
 com/facebook/buck/testrunner/BuckBlockJUnit4ClassRunner.class
 com/facebook/buck/testrunner/BuckXmlTestRunListener.class
 com/facebook/buck/testrunner/CheckDependency.class
+com/facebook/buck/testrunner/ClassUsageAgent.class
 com/facebook/buck/testrunner/DelegateRunNotifier$1.class
 com/facebook/buck/testrunner/DelegateRunNotifier$2.class
 com/facebook/buck/testrunner/DelegateRunNotifier.class
@@ -69,6 +70,7 @@ com/facebook/buck/testrunner/TestNGRunner$JUnitReportReporterWithMethodParameter
 com/facebook/buck/testrunner/TestNGRunner$TestListener.class
 com/facebook/buck/testrunner/TestNGRunner.class
 com/facebook/buck/testrunner/TestResult.class
+com/facebook/buck/testrunner/TestRunnerServer.class
 com/facebook/buck/testrunner/TestXmlEscaper.class
 com/facebook/buck/testrunner/TestXmlEscaper$1.class
 com/facebook/buck/testrunner/TestXmlEscaper$AttributeEscaper.class
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.stringtable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.util.ImmutableMapWithNullValues;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class StringTableValueSerializerTest {
+
+  @Rule public ExpectedException thrown = ExpectedException.none();
+
+  private final StringTableValueSerializer serializer = new StringTableValueSerializer();
+  private final StringTableValueDeserializer deserializer = new StringTableValueDeserializer();
+
+  @Test
+  public void scalarsRoundTrip() throws IOException {
+    for (Object value :
+        Arrays.asList(
+            null,
+            true,
+            false,
+            0L,
+            -1L,
+            Long.MAX_VALUE,
+            Long.MIN_VALUE,
+            42,
+            Integer.MIN_VALUE,
+            1.5,
+            "",
+            "привет")) {
+      assertEquals(value, roundTrip(value));
+    }
+  }
+
+  @Test
+  public void collectionsRoundTrip() throws IOException {
+    Object value =
+        ImmutableMap.of(
+            "list",
+            ImmutableList.of("a", 1L, ImmutableList.of()),
+            "set",
+            ImmutableSet.of("b", "a"),
+            "sortedSet",
+            ImmutableSortedSet.of("b", "a"),
+            "genericMap",
+            ImmutableMap.of(1L, "one", 2L, "two"),
+            "sortedMap",
+            ImmutableSortedMap.of("y", 1L, "x", 2L));
+
+    Object result = roundTrip(value);
+
+    assertEquals(value, result);
+    Map<?, ?> map = (Map<?, ?>) result;
+    assertTrue(map.get("sortedSet") instanceof ImmutableSortedSet);
+    assertTrue(map.get("sortedMap") instanceof ImmutableSortedMap);
+    assertEquals(
+        ImmutableList.of("b", "a"), ImmutableList.copyOf((Iterable<?>) map.get("set")));
+  }
+
+  @Test
+  public void optionalsRoundTrip() throws IOException {
+    assertEquals(Optional.empty(), roundTrip(Optional.empty()));
+    assertEquals(Optional.of("a"), roundTrip(Optional.of("a")));
+  }
+
+  @Test
+  public void mapsWithNullValuesRoundTrip() throws IOException {
+    Map<String, Object> value = new HashMap<>();
+    value.put("a", null);
+    value.put("b", "c");
+
+    Object result = roundTrip(value);
+
+    assertTrue(result instanceof ImmutableMapWithNullValues);
+    assertEquals(value, result);
+  }
+
+  @Test
+  public void repeatedStringsAreStoredOnce() {
+    byte[] message = serializer.serialize(ImmutableList.of("repeated", "repeated", "repeated"));
+
+    String text = new String(message, StandardCharsets.ISO_8859_1);
+    assertEquals(text.indexOf("repeated"), text.lastIndexOf("repeated"));
+  }
+
+  @Test
+  public void stringsAreInterned() throws IOException {
+    String interned = "interned";
+    StringTableValueDeserializer interningDeserializer =
+        new StringTableValueDeserializer(ImmutableList.of(), s -> interned);
+
+    Object result =
+        interningDeserializer.deserialize(
+            serializer.serialize(ImmutableList.of(new String("interned"))));
+
+    assertSame(interned, ((ImmutableList<?>) result).get(0));
+  }
+
+  @Test
+  public void extensionsAreUsed() throws IOException {
+    StringTableValueExtension<StringBuilder> extension =
+        new StringTableValueExtension<StringBuilder>() {
+          @Override
+          public String getName() {
+            return "builder";
+          }
+
+          @Override
+          public Class<StringBuilder> getType() {
+            return StringBuilder.class;
+          }
+
+          @Override
+          public Object encode(StringBuilder value) {
+            return value.toString();
+          }
+
+          @Override
+          public StringBuilder decode(Object encoded) {
+            return new StringBuilder((String) encoded);
+          }
+        };
+    ImmutableList<StringTableValueExtension<?>> extensions = ImmutableList.of(extension);
+
+    Object result =
+        new StringTableValueDeserializer(extensions, Function.identity())
+            .deserialize(
+                new StringTableValueSerializer(extensions)
+                    .serialize(ImmutableList.of(new StringBuilder("value"))));
+
+    Object decoded = ((ImmutableList<?>) result).get(0);
+    assertTrue(decoded instanceof StringBuilder);
+    assertEquals("value", decoded.toString());
+  }
+
+  @Test
+  public void streamsRoundTrip() throws IOException {
+    Object value = ImmutableMap.of("key", ImmutableList.of("value"));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    serializer.serializeToStream(value, outputStream);
+    serializer.serializeToStream("second", outputStream);
+
+    assertArrayEquals(
+        serializer.serialize(value),
+        Arrays.copyOf(outputStream.toByteArray(), serializer.serialize(value).length));
+    ByteArrayInputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+    assertEquals(value, deserializer.deserialize(inputStream));
+    assertEquals("second", deserializer.deserialize(inputStream));
+  }
+
+  @Test
+  public void unsupportedTypesAreRejected() {
+    thrown.expect(IllegalArgumentException.class);
+    serializer.serialize(ImmutableList.of(new Object()));
+  }
+
+  @Test
+  public void truncatedMessagesAreRejected() throws IOException {
+    byte[] message = serializer.serialize(ImmutableList.of("a", "b"));
+
+    thrown.expect(EOFException.class);
+    deserializer.deserialize(
+        new ByteArrayInputStream(Arrays.copyOf(message, message.length - 1)));
+  }
+
+  @Test
+  public void corruptedMessagesAreRejected() throws IOException {
+    byte[] message = serializer.serialize("a");
+    message[0] = 0x7b;
+
+    thrown.expect(IOException.class);
+    deserializer.deserialize(message);
+  }
+
+  private Object roundTrip(Object value) throws IOException {
+    return deserializer.deserialize(serializer.serialize(value));
+  }
+}
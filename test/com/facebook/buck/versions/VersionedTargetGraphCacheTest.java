@@ -17,6 +17,8 @@
 package com.facebook.buck.versions;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -256,7 +258,60 @@ public class VersionedTargetGraphCacheTest {
     assertTimingsNotEmpty(stats);
   }
 
-  private TargetGraphCreationResult createSimpleGraph(String basePath) {
+  @Test
+  public void testGraphChangeReusesTranslationsOfUnchangedNodes() throws Exception {
+    VersionedTargetGraphCache cache = new VersionedTargetGraphCache();
+    ImmutableMap<String, VersionUniverse> versionUniverses =
+        ImmutableMap.of("foo", VersionUniverse.of(ImmutableMap.of(versionedAlias, version1)));
+    VersionedTargetGraphCache.VersionedTargetGraphCacheResult firstResult =
+        cache.toVersionedTargetGraph(
+            depsAwareExecutor.get(),
+            versionUniverses,
+            new DefaultTypeCoercerFactory(),
+            unconfiguredBuildTargetFactory,
+            createSimpleGraph("foo"),
+            new InstrumentingCacheStatsTracker(),
+            new TestCellBuilder().build());
+    TargetNode<?> extra =
+        new ExportFileBuilder(BuildTargetFactory.newInstance("//foo:extra")).build();
+    VersionedTargetGraphCache.VersionedTargetGraphCacheResult secondResult =
+        cache.toVersionedTargetGraph(
+            depsAwareExecutor.get(),
+            versionUniverses,
+            new DefaultTypeCoercerFactory(),
+            unconfiguredBuildTargetFactory,
+            createSimpleGraph("foo", extra),
+            new InstrumentingCacheStatsTracker(),
+            new TestCellBuilder().build());
+    assertMismatch(secondResult, firstResult.getTargetGraphCreationResult());
+
+    TargetNode<?> firstTest = getVersionedNode(firstResult, "test");
+    assertThat(
+        firstTest.getDeclaredDeps(), Matchers.contains(BuildTargetFactory.newInstance("//foo:v1")));
+    assertSame(firstTest, getVersionedNode(secondResult, "test"));
+    assertEquals(extra.getBuildTarget(), getVersionedNode(secondResult, "extra").getBuildTarget());
+
+    VersionedTargetGraphCache.VersionedTargetGraphCacheResult thirdResult =
+        cache.toVersionedTargetGraph(
+            depsAwareExecutor.get(),
+            ImmutableMap.of("foo", VersionUniverse.of(ImmutableMap.of(versionedAlias, version2))),
+            new DefaultTypeCoercerFactory(),
+            unconfiguredBuildTargetFactory,
+            createSimpleGraph("foo", extra),
+            new InstrumentingCacheStatsTracker(),
+            new TestCellBuilder().build());
+    assertNotEquals(firstTest, getVersionedNode(thirdResult, "test"));
+  }
+
+  private TargetNode<?> getVersionedNode(
+      VersionedTargetGraphCache.VersionedTargetGraphCacheResult result, String shortName) {
+    return result.getTargetGraphCreationResult().getTargetGraph().getNodes().stream()
+        .filter(node -> node.getBuildTarget().getShortName().equals(shortName))
+        .findFirst()
+        .get();
+  }
+
+  private TargetGraphCreationResult createSimpleGraph(String basePath, TargetNode<?>... extra) {
     TargetNode<?> root = new VersionRootBuilder(String.format("//%s:root", basePath)).build();
     TargetNode<ExportFileDescriptionArg> v1 =
         new ExportFileBuilder(BuildTargetFactory.newInstance(String.format("//%s:v1", basePath)))
@@ -276,14 +331,18 @@ public class VersionedTargetGraphCacheTest {
                 BuildTargetFactory.newInstance(String.format("//%s:test", basePath)))
             .setDeps(ImmutableSortedSet.of(alias.getBuildTarget()))
             .build();
-    TargetGraph graph = TargetGraphFactory.newInstance(root, pythonTest, alias, v1, v2);
+    ImmutableSet<TargetNode<?>> nodes =
+        ImmutableSet.<TargetNode<?>>builder()
+            .add(root, pythonTest, alias, v1, v2)
+            .add(extra)
+            .build();
+    TargetGraph graph = TargetGraphFactory.newInstance(nodes);
     return TargetGraphCreationResult.of(
         graph,
-        ImmutableSet.of(
-            root.getBuildTarget(),
-            pythonTest.getBuildTarget(),
-            v1.getBuildTarget(),
-            v2.getBuildTarget()));
+        nodes.stream()
+            .filter(node -> node != alias)
+            .map(TargetNode::getBuildTarget)
+            .collect(ImmutableSet.toImmutableSet()));
   }
 
   private void assertHit(
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.FakeProcessExecutor;
+import com.facebook.buck.util.ProcessExecutorParams;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class WorkerProcessPoolAsyncTest {
+
+  private final List<PendingWorkerProcess> startedProcesses =
+      Collections.synchronizedList(new ArrayList<>());
+  private volatile boolean hasMemory = true;
+  /** Counted down when a process starts, and awaited before it has started, if present. */
+  private volatile Optional<CountDownLatch> starting = Optional.empty();
+
+  private volatile Optional<CountDownLatch> mayStart = Optional.empty();
+
+  @Test
+  public void startsProcessesWhileTheOnesItHasAreBusy() throws Exception {
+    WorkerProcessPoolAsync pool = createPool(4, 2);
+
+    pool.submitJob("a");
+    pool.submitJob("b");
+    assertEquals(1, pool.getProcessCount());
+
+    pool.submitJob("c");
+    assertEquals(2, pool.getProcessCount());
+    pool.submitJob("d");
+    assertEquals(2, pool.getProcessCount());
+    assertEquals(2, startedProcesses.get(0).jobs.size());
+    assertEquals(2, startedProcesses.get(1).jobs.size());
+  }
+
+  @Test
+  public void sendsJobsToTheLeastBusyProcess() throws Exception {
+    WorkerProcessPoolAsync pool = createPool(4, 2);
+    for (String job : ImmutableList.of("a", "b", "c")) {
+      pool.submitJob(job);
+    }
+    startedProcesses.get(0).finishJobs();
+
+    pool.submitJob("d");
+    assertEquals(2, pool.getProcessCount());
+    assertEquals(3, startedProcesses.get(0).jobs.size());
+  }
+
+  @Test
+  public void doesNotStartProcessesWithoutMemory() throws Exception {
+    hasMemory = false;
+    WorkerProcessPoolAsync pool = createPool(4, 4);
+    for (String job : ImmutableList.of("a", "b", "c", "d")) {
+      pool.submitJob(job);
+    }
+    assertEquals(1, pool.getProcessCount());
+  }
+
+  @Test
+  public void stopsIdleProcessesWhenMemoryRunsLow() throws Exception {
+    WorkerProcessPoolAsync pool = createPool(4, 4);
+    for (String job : ImmutableList.of("a", "b", "c")) {
+      pool.submitJob(job);
+    }
+    assertEquals(3, pool.getProcessCount());
+    startedProcesses.get(1).finishJobs();
+    startedProcesses.get(2).finishJobs();
+
+    hasMemory = false;
+    pool.submitJob("d");
+    assertEquals(1, pool.getProcessCount());
+    assertFalse(startedProcesses.get(1).isAlive());
+    assertEquals(2, startedProcesses.get(0).jobs.size());
+  }
+
+  @Test
+  public void replacesDeadProcesses() throws Exception {
+    WorkerProcessPoolAsync pool = createPool(4, 1);
+    pool.submitJob("a");
+    startedProcesses.get(0).close();
+
+    pool.submitJob("b");
+    assertEquals(1, pool.getProcessCount());
+    assertEquals(2, startedProcesses.size());
+  }
+
+  @Test
+  public void sendsJobsToRunningProcessesWhileAnotherStarts() throws Exception {
+    WorkerProcessPoolAsync pool = createPool(4, 2);
+    pool.submitJob("a");
+    pool.submitJob("b");
+
+    starting = Optional.of(new CountDownLatch(1));
+    mayStart = Optional.of(new CountDownLatch(1));
+    Thread submitter =
+        new Thread(
+            () -> {
+              try {
+                pool.submitJob("c");
+              } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    submitter.start();
+    starting.get().await();
+
+    startedProcesses.get(0).finishJobs();
+    pool.submitJob("d");
+    assertEquals(1, pool.getProcessCount());
+    assertEquals(3, startedProcesses.get(0).jobs.size());
+
+    mayStart.get().countDown();
+    submitter.join();
+    assertEquals(2, pool.getProcessCount());
+    assertEquals(1, startedProcesses.get(1).jobs.size());
+  }
+
+  private WorkerProcessPoolAsync createPool(int maxRequests, int maxProcesses) {
+    return new WorkerProcessPoolAsync(
+        maxRequests,
+        maxProcesses,
+        HashCode.fromInt(0),
+        () -> {
+          starting.ifPresent(CountDownLatch::countDown);
+          if (mayStart.isPresent()) {
+            try {
+              mayStart.get().await();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+          }
+          PendingWorkerProcess process = new PendingWorkerProcess();
+          startedProcesses.add(process);
+          return process;
+        },
+        () -> hasMemory);
+  }
+
+  /** A process whose jobs run until they are finished by the test. */
+  private static class PendingWorkerProcess extends WorkerProcess {
+    private final List<SettableFuture<WorkerJobResult>> jobs = new ArrayList<>();
+    private boolean isAlive = true;
+
+    PendingWorkerProcess() throws IOException {
+      super(
+          new FakeProcessExecutor(),
+          ProcessExecutorParams.builder().setCommand(ImmutableList.of()).build(),
+          new FakeProjectFilesystem(),
+          Files.createTempFile("buck-worker-", "-stderr.log"),
+          Paths.get("tmp").toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isAlive() {
+      return isAlive;
+    }
+
+    @Override
+    public synchronized ListenableFuture<WorkerJobResult> submitJob(String jobArgs) {
+      SettableFuture<WorkerJobResult> job = SettableFuture.create();
+      jobs.add(job);
+      return job;
+    }
+
+    void finishJobs() {
+      for (SettableFuture<WorkerJobResult> job : jobs) {
+        job.set(WorkerJobResult.of(0, Optional.empty(), Optional.empty()));
+      }
+    }
+
+    @Override
+    public void close() {
+      isAlive = false;
+    }
+  }
+}
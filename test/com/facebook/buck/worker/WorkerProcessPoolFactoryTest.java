@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import java.util.OptionalLong;
+import org.junit.Test;
+
+public class WorkerProcessPoolFactoryTest {
+
+  @Test
+  public void readsTheAvailableMemoryFromMeminfo() {
+    assertEquals(
+        OptionalLong.of(2048L * 1024),
+        WorkerProcessPoolFactory.parseAvailableMemory(
+            ImmutableList.of(
+                "MemTotal:        8192 kB",
+                "MemFree:          512 kB",
+                "MemAvailable:    2048 kB")));
+  }
+
+  @Test
+  public void hasNoAvailableMemoryOnOldKernels() {
+    assertEquals(
+        OptionalLong.empty(),
+        WorkerProcessPoolFactory.parseAvailableMemory(
+            ImmutableList.of("MemTotal:        8192 kB", "MemFree:          512 kB")));
+  }
+}